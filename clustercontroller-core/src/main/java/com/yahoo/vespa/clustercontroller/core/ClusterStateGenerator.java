@@ -159,7 +159,7 @@ public class ClusterStateGenerator {
         baseline.setDescription(wanted.getDescription());
     }
 
-    private static NodeState computeEffectiveNodeState(final NodeInfo nodeInfo, final Params params) {
+    static NodeState computeEffectiveNodeState(final NodeInfo nodeInfo, final Params params) {
         final NodeState reported = nodeInfo.getReportedState();
         final NodeState wanted   = nodeInfo.getWantedState();
         final NodeState baseline = reported.clone();
@@ -200,6 +200,22 @@ public class ClusterStateGenerator {
         }
     }
 
+    /**
+     * Returns whether the effective state of the given node may change by time passing alone, i.e. whether
+     * it must be recomputed when nothing but the current time of the params has changed.
+     */
+    static boolean effectiveNodeStateMayChangeWithTime(final NodeInfo nodeInfo, final Params params) {
+        if ( ! nodeInfo.isStorage()) {
+            return false;
+        }
+        final State reported = nodeInfo.getReportedState().getState();
+        if (reported == State.INITIALIZING && params.maxInitProgressTimeMs > 0) {
+            return true;
+        }
+        return params.transitionTimes.get(nodeInfo.getNode().getType()) != 0
+                && (reported.oneOf("isd") || nodeIsConsideredTooUnstable(nodeInfo, params));
+    }
+
     // TODO remove notion of init timeout progress? Seems redundant when we've already got RPC timeouts
     private static boolean timedOutWithoutNewInitProgress(final NodeState reported, final NodeInfo nodeInfo, final Params params) {
         if (reported.getState() != State.INITIALIZING) {
@@ -265,14 +281,18 @@ public class ClusterStateGenerator {
 
         for (Integer idx : nodesToTakeDown) {
             final Node node = storageNode(idx);
-            final NodeState newState = new NodeState(NodeType.STORAGE, State.DOWN);
-            newState.setDescription("group node availability below configured threshold");
-            workingState.setNodeState(node, newState);
+            workingState.setNodeState(node, groupDownNodeState());
             nodeStateReasons.put(node, NodeStateReason.GROUP_IS_DOWN);
         }
     }
 
-    private static Node storageNode(int index) {
+    static NodeState groupDownNodeState() {
+        final NodeState state = new NodeState(NodeType.STORAGE, State.DOWN);
+        state.setDescription("group node availability below configured threshold");
+        return state;
+    }
+
+    static Node storageNode(int index) {
         return new Node(NodeType.STORAGE, index);
     }
 
@@ -285,13 +305,17 @@ public class ClusterStateGenerator {
                                                  final ClusterState state,
                                                  final Params params)
     {
-        int bitCount = params.idealDistributionBits;
         final Optional<Integer> minBits = cluster.getConfiguredNodes().values().stream()
                 .map(configuredNode -> cluster.getNodeInfo(storageNode(configuredNode.index())))
                 .filter(node -> state.getNodeState(node.getNode()).getState().oneOf("iur"))
                 .map(nodeInfo -> nodeInfo.getReportedState().getMinUsedBits())
                 .min(Integer::compare);
+        return distributionBitCount(minBits, params);
+    }
 
+    /** Returns the distribution bit count to use given the lowest min used bits reported by any available storage node */
+    static int distributionBitCount(final Optional<Integer> minBits, final Params params) {
+        int bitCount = params.idealDistributionBits;
         if (minBits.isPresent() && minBits.get() < bitCount) {
             bitCount = minBits.get();
         }
@@ -302,7 +326,7 @@ public class ClusterStateGenerator {
         return bitCount;
     }
 
-    private static boolean nodeStateIsConsideredAvailable(final NodeState ns) {
+    static boolean nodeStateIsConsideredAvailable(final NodeState ns) {
         return (ns.getState() == State.UP
                 || ns.getState() == State.RETIRED
                 || ns.getState() == State.INITIALIZING);
@@ -323,9 +347,15 @@ public class ClusterStateGenerator {
 
         final long upStorageCount = countAvailableNodesOfType(NodeType.STORAGE, cluster, state);
         final long upDistributorCount = countAvailableNodesOfType(NodeType.DISTRIBUTOR, cluster, state);
+        return clusterDownReason(upStorageCount, upDistributorCount, params);
+    }
+
+    static Optional<ClusterStateReason> clusterDownReason(final long upStorageCount,
+                                                          final long upDistributorCount,
+                                                          final Params params) {
         // There's a 1-1 relationship between distributors and storage nodes, so don't need to
         // keep track of separate node counts for computing availability ratios.
-        final long nodeCount = cluster.getConfiguredNodes().size();
+        final long nodeCount = params.cluster.getConfiguredNodes().size();
 
         if (upStorageCount < params.minStorageNodesUp) {
             return Optional.of(ClusterStateReason.TOO_FEW_STORAGE_NODES_AVAILABLE);
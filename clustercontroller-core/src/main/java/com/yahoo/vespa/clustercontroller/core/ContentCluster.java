@@ -104,6 +104,10 @@ public class ContentCluster {
 
     public void setStartTimestamp(Node n, long startTimestamp) {
         nodeStartTimestamps.put(n, startTimestamp);
+        NodeInfo info = getNodeInfo(n);
+        if (info != null) {
+            info.stateInputChanged();
+        }
     }
 
     public long getStartTimestamp(Node n) {
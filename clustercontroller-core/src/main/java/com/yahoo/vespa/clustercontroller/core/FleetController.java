@@ -58,6 +58,7 @@ public class FleetController implements NodeStateOrHostInfoChangeHandler, NodeAd
     private final StateChangeHandler stateChangeHandler;
     private final SystemStateBroadcaster systemStateBroadcaster;
     private final StateVersionTracker stateVersionTracker;
+    private final IncrementalClusterStateGenerator stateGenerator = new IncrementalClusterStateGenerator();
     private final StatusPageServerInterface statusPageServer;
     private final RpcServer rpcServer;
     private final DatabaseHandler database;
@@ -574,7 +575,11 @@ public class FleetController implements NodeStateOrHostInfoChangeHandler, NodeAd
             }
 
             if ( ! isRunning()) { return; }
-            didWork |= systemStateBroadcaster.processResponses();
+            if (systemStateBroadcaster.processResponses()) {
+                metricUpdater.updateClusterStateBroadcastMetrics(systemStateBroadcaster.getFullStateBytesSent(),
+                                                                 systemStateBroadcaster.getDeltaStateBytesSent());
+                didWork = true;
+            }
             if ( ! isRunning()) { return; }
             if (masterElectionHandler.isMaster()) {
                 didWork |= broadcastClusterStateToEligibleNodes();
@@ -891,7 +896,7 @@ public class FleetController implements NodeStateOrHostInfoChangeHandler, NodeAd
         params.currentTimeInMilllis(timer.getCurrentTimeInMillis())
                 .cluster(cluster)
                 .lowestObservedDistributionBitCount(stateVersionTracker.getLowestObservedDistributionBits());
-        return ClusterStateGenerator.generatedStateFrom(params);
+        return stateGenerator.generatedStateFrom(params);
     }
 
     private void emitEventsForAlteredStateEdges(final ClusterStateBundle fromState,
@@ -124,6 +124,9 @@ public class FleetControllerOptions implements Cloneable {
     // TODO: Choose a default value
     public double minMergeCompletionRatio = 1.0;
 
+    /** Whether cluster states may be sent to nodes as deltas to the cluster states they last acknowledged */
+    public boolean enableClusterStateDeltas = false;
+
     // TODO: Replace usage of this by usage where the nodes are explicitly passed (below)
     public FleetControllerOptions(String clusterName) {
         this.clusterName = clusterName;
@@ -231,6 +234,7 @@ public class FleetControllerOptions implements Cloneable {
         sb.append("<tr><td><nobr>Wanted distribution bits</nobr></td><td align=\"right\">").append(distributionBits).append("</td></tr>");
         sb.append("<tr><td><nobr>Max deferred task version wait time</nobr></td><td align=\"right\">").append(maxDeferredTaskVersionWaitTime.toMillis()).append("ms</td></tr>");
         sb.append("<tr><td><nobr>Cluster has global document types configured</nobr></td><td align=\"right\">").append(clusterHasGlobalDocumentTypes).append("</td></tr>");
+        sb.append("<tr><td><nobr>Send cluster states as deltas</nobr></td><td align=\"right\">").append(enableClusterStateDeltas).append("</td></tr>");
 
         sb.append("</table>");
     }
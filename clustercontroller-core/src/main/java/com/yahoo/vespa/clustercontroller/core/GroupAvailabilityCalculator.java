@@ -119,4 +119,14 @@ class GroupAvailabilityCalculator {
         return visitor.implicitlyDownNodeIndices();
     }
 
+    /**
+     * Returns the nodes of the given leaf group which should be implicitly taken down in the given state.
+     * Use only for hierarchic clusters, as nodes of flat clusters are never taken down this way.
+     */
+    Set<Integer> nodesOfLeafGroupThatShouldBeDown(ClusterState state, Group leafGroup) {
+        InsufficientAvailabilityGroupVisitor visitor = new InsufficientAvailabilityGroupVisitor(state);
+        visitor.visitGroup(leafGroup);
+        return visitor.implicitlyDownNodeIndices();
+    }
+
 }
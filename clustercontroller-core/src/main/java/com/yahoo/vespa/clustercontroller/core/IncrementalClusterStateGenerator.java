@@ -0,0 +1,260 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.clustercontroller.core;
+
+import com.yahoo.vdslib.distribution.ConfiguredNode;
+import com.yahoo.vdslib.distribution.Distribution;
+import com.yahoo.vdslib.distribution.Group;
+import com.yahoo.vdslib.state.ClusterState;
+import com.yahoo.vdslib.state.Node;
+import com.yahoo.vdslib.state.NodeState;
+import com.yahoo.vdslib.state.NodeType;
+import com.yahoo.vdslib.state.State;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Cluster state generator which generates the same states as {@link ClusterStateGenerator}, but which keeps
+ * what it computed on the previous invocation, and only recomputes the nodes whose information has changed
+ * since then, and the groups those nodes belong to.
+ *
+ * A node is recomputed when its {@link NodeInfo#getStateInputChangeCount()} has changed, or when its effective
+ * state depends on the current time. Everything is recomputed when the cluster, its nodes or distribution, or
+ * any params other than the current time and the distribution bit counts change.
+ *
+ * Not thread safe.
+ */
+class IncrementalClusterStateGenerator {
+
+    private ContentCluster cluster = null;
+    private Distribution distribution = null;
+    private ClusterStateGenerator.Params params = null;
+
+    /** Copies of the params everything was last recomputed with, as params may be modified between invocations */
+    private int maxPrematureCrashes;
+    private int maxInitProgressTimeMs;
+    private double minNodeRatioPerGroup;
+    private Map<NodeType, Integer> transitionTimes;
+
+    private final Map<Node, NodeEntry> nodes = new HashMap<>();
+
+    /** The effective states of all nodes, before groups with too low availability are taken down */
+    private ClusterState effectiveState;
+
+    /** The leaf groups of storage nodes, or empty if groups are never taken down in the current distribution */
+    private final Map<Integer, Group> leafGroups = new HashMap<>();
+    private GroupAvailabilityCalculator groupAvailabilityCalculator;
+    private final Map<Group, Set<Integer>> groupNodesToTakeDown = new IdentityHashMap<>();
+
+    private long availableStorageNodes;
+    private long availableDistributorNodes;
+
+    /** Count of available storage nodes by the min used bits they report */
+    private final TreeMap<Integer, Integer> minUsedBitsOfAvailableStorageNodes = new TreeMap<>();
+
+    AnnotatedClusterState generatedStateFrom(ClusterStateGenerator.Params params) {
+        if (mustRecomputeAll(params)) {
+            recomputeAll(params);
+        }
+        else {
+            this.params = params;
+            Set<Group> changedGroups = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (NodeInfo nodeInfo : params.cluster.getNodeInfo()) {
+                NodeEntry entry = nodes.get(nodeInfo.getNode());
+                if (entry.timeDependent || entry.stateInputChangeCount != nodeInfo.getStateInputChangeCount()) {
+                    update(entry, changedGroups);
+                }
+            }
+            for (Group group : changedGroups) {
+                updateNodesToTakeDown(group);
+            }
+        }
+        return generatedState();
+    }
+
+    private boolean mustRecomputeAll(ClusterStateGenerator.Params params) {
+        if (this.params == null) return true;
+        if (params.cluster != cluster) return true;
+        if (params.cluster.getDistribution() != distribution) return true;
+        if (params.maxPrematureCrashes != maxPrematureCrashes) return true;
+        if (params.maxInitProgressTimeMs != maxInitProgressTimeMs) return true;
+        if (params.minNodeRatioPerGroup != minNodeRatioPerGroup) return true;
+        if ( ! params.transitionTimes.equals(transitionTimes)) return true;
+
+        if (params.cluster.getNodeInfo().size() != nodes.size()) return true;
+        for (NodeInfo nodeInfo : params.cluster.getNodeInfo()) {
+            NodeEntry entry = nodes.get(nodeInfo.getNode());
+            if (entry == null || entry.nodeInfo != nodeInfo) return true;
+        }
+        return false;
+    }
+
+    private void recomputeAll(ClusterStateGenerator.Params params) {
+        this.params = params;
+        cluster = params.cluster;
+        distribution = cluster.getDistribution();
+        maxPrematureCrashes = params.maxPrematureCrashes;
+        maxInitProgressTimeMs = params.maxInitProgressTimeMs;
+        minNodeRatioPerGroup = params.minNodeRatioPerGroup;
+        transitionTimes = new HashMap<>(params.transitionTimes);
+        nodes.clear();
+        effectiveState = ClusterState.emptyState();
+        leafGroups.clear();
+        groupNodesToTakeDown.clear();
+        availableStorageNodes = 0;
+        availableDistributorNodes = 0;
+        minUsedBitsOfAvailableStorageNodes.clear();
+
+        // Implicit group takedown only applies to hierarchic cluster setups
+        List<Group> groups = distribution != null && ! distribution.getRootGroup().isLeafGroup()
+                ? LeafGroups.enumerateFrom(distribution.getRootGroup())
+                : Collections.emptyList();
+        for (Group group : groups) {
+            for (ConfiguredNode node : group.getNodes()) {
+                leafGroups.put(node.index(), group);
+            }
+        }
+        groupAvailabilityCalculator = new GroupAvailabilityCalculator.Builder()
+                .withMinNodeRatioPerGroup(params.minNodeRatioPerGroup)
+                .withDistribution(distribution)
+                .build();
+
+        for (NodeInfo nodeInfo : cluster.getNodeInfo()) {
+            NodeEntry entry = new NodeEntry(nodeInfo);
+            nodes.put(nodeInfo.getNode(), entry);
+            update(entry, null);
+        }
+        for (Group group : groups) {
+            updateNodesToTakeDown(group);
+        }
+    }
+
+    private void update(NodeEntry entry, Set<Group> changedGroups) {
+        NodeInfo nodeInfo = entry.nodeInfo;
+        NodeState state = ClusterStateGenerator.computeEffectiveNodeState(nodeInfo, params);
+        entry.stateInputChangeCount = nodeInfo.getStateInputChangeCount();
+        entry.timeDependent = ClusterStateGenerator.effectiveNodeStateMayChangeWithTime(nodeInfo, params);
+
+        removeAvailability(entry);
+        entry.available = ClusterStateGenerator.nodeStateIsConsideredAvailable(state);
+        entry.minUsedBits = nodeInfo.isStorage() && state.getState().oneOf("iur")
+                ? Optional.of(nodeInfo.getReportedState().getMinUsedBits())
+                : Optional.empty();
+        addAvailability(entry);
+
+        effectiveState.setNodeState(nodeInfo.getNode(), normalized(nodeInfo.getNode(), state));
+
+        if (changedGroups != null && nodeInfo.isStorage()) {
+            Group group = leafGroups.get(nodeInfo.getNodeIndex());
+            if (group != null) {
+                changedGroups.add(group);
+            }
+        }
+    }
+
+    /**
+     * Returns the state to set for a node to end up with the same cluster state as when setting all node states
+     * in order, as done by {@link ClusterStateGenerator}: Down states without description are then always removed
+     * as trailing nodes when they are set, so they are either cut off from the node count or filled in as plain Down.
+     */
+    private static NodeState normalized(Node node, NodeState state) {
+        if (state.getState() == State.DOWN && ! state.hasDescription()) {
+            return new NodeState(node.getType(), State.DOWN);
+        }
+        return state;
+    }
+
+    private void updateNodesToTakeDown(Group group) {
+        Set<Integer> toTakeDown = groupAvailabilityCalculator.nodesOfLeafGroupThatShouldBeDown(effectiveState, group);
+        if (toTakeDown.isEmpty()) {
+            groupNodesToTakeDown.remove(group);
+        } else {
+            groupNodesToTakeDown.put(group, toTakeDown);
+        }
+    }
+
+    private void addAvailability(NodeEntry entry) {
+        if (entry.available) {
+            if (entry.nodeInfo.isStorage()) {
+                ++availableStorageNodes;
+            } else {
+                ++availableDistributorNodes;
+            }
+        }
+        entry.minUsedBits.ifPresent(bits -> minUsedBitsOfAvailableStorageNodes.merge(bits, 1, Integer::sum));
+    }
+
+    private void removeAvailability(NodeEntry entry) {
+        if (entry.available) {
+            if (entry.nodeInfo.isStorage()) {
+                --availableStorageNodes;
+            } else {
+                --availableDistributorNodes;
+            }
+        }
+        entry.minUsedBits.ifPresent(bits -> minUsedBitsOfAvailableStorageNodes.merge(bits, -1, (a, b) -> a + b == 0 ? null : a + b));
+    }
+
+    private AnnotatedClusterState generatedState() {
+        ClusterState state = effectiveState.clone();
+        Map<Node, NodeStateReason> nodeStateReasons = new HashMap<>();
+
+        long availableStorageNodes = this.availableStorageNodes;
+        Map<Integer, Integer> minUsedBitsTakenDown = new HashMap<>();
+        for (Set<Integer> indices : groupNodesToTakeDown.values()) {
+            for (Integer index : indices) {
+                Node node = ClusterStateGenerator.storageNode(index);
+                state.setNodeState(node, ClusterStateGenerator.groupDownNodeState());
+                nodeStateReasons.put(node, NodeStateReason.GROUP_IS_DOWN);
+
+                NodeEntry entry = nodes.get(node);
+                if (entry == null) continue;
+                if (entry.available) {
+                    --availableStorageNodes;
+                }
+                entry.minUsedBits.ifPresent(bits -> minUsedBitsTakenDown.merge(bits, 1, Integer::sum));
+            }
+        }
+
+        Optional<ClusterStateReason> reasonToBeDown = ClusterStateGenerator.clusterDownReason(availableStorageNodes,
+                                                                                              availableDistributorNodes,
+                                                                                              params);
+        if (reasonToBeDown.isPresent()) {
+            state.setClusterState(State.DOWN);
+        }
+        state.setDistributionBits(ClusterStateGenerator.distributionBitCount(lowestMinUsedBits(minUsedBitsTakenDown),
+                                                                              params));
+
+        return new AnnotatedClusterState(state, reasonToBeDown, nodeStateReasons);
+    }
+
+    private Optional<Integer> lowestMinUsedBits(Map<Integer, Integer> excluded) {
+        for (Map.Entry<Integer, Integer> bits : minUsedBitsOfAvailableStorageNodes.entrySet()) {
+            if (bits.getValue() > excluded.getOrDefault(bits.getKey(), 0)) {
+                return Optional.of(bits.getKey());
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static class NodeEntry {
+
+        private final NodeInfo nodeInfo;
+        private int stateInputChangeCount;
+        private boolean timeDependent;
+        private boolean available = false;
+        private Optional<Integer> minUsedBits = Optional.empty();
+
+        NodeEntry(NodeInfo nodeInfo) {
+            this.nodeInfo = nodeInfo;
+        }
+
+    }
+
+}
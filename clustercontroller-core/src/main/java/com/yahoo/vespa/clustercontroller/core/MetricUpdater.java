@@ -93,6 +93,11 @@ public class MetricUpdater {
         }
     }
 
+    public void updateClusterStateBroadcastMetrics(long fullStateBytesSent, long deltaStateBytesSent) {
+        metricReporter.set("cluster-state-broadcast.full-bytes", fullStateBytesSent);
+        metricReporter.set("cluster-state-broadcast.delta-bytes", deltaStateBytesSent);
+    }
+
     public void recordNewNodeEvent() {
         // TODO(hakonhall): Replace add() with a persistent aggregate metric.
         metricReporter.add("node-event", 1);
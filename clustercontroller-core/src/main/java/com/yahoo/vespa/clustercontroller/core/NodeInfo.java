@@ -100,6 +100,12 @@ abstract public class NodeInfo implements Comparable<NodeInfo> {
 
     private Group group;
 
+    /** Set when this node has rejected a cluster state delta, until it acknowledges a full cluster state */
+    private boolean clusterStateDeltaRejected = false;
+
+    /** Incremented on each change to the information the generated state of this node is computed from */
+    private int stateInputChangeCount = 0;
+
     // NOTE: See update(node) below
     NodeInfo(ContentCluster cluster, Node n, boolean configuredRetired, String rpcAddress, Distribution distribution) {
         if (cluster == null) throw new IllegalArgumentException("Cluster not set");
@@ -136,10 +142,16 @@ abstract public class NodeInfo implements Comparable<NodeInfo> {
     public long getStartTimestamp() { return cluster.getStartTimestamp(node); }
     public void setStartTimestamp(long ts) { cluster.setStartTimestamp(node, ts); }
 
-    public void setTransitionTime(long time) { transitionTime = time; }
+    public void setTransitionTime(long time) {
+        transitionTime = time;
+        stateInputChanged();
+    }
     public long getTransitionTime() { return transitionTime; }
 
-    public void setInitProgressTime(long time) { initProgressTime = time; }
+    public void setInitProgressTime(long time) {
+        initProgressTime = time;
+        stateInputChanged();
+    }
     public long getInitProgressTime() { return initProgressTime; }
 
     public long getUpStableStateTime() { return upStableStateTime; }
@@ -153,6 +165,7 @@ abstract public class NodeInfo implements Comparable<NodeInfo> {
     }
     public void setRecentlyObservedUnstableDuringInit(boolean unstable) {
         recentlyObservedUnstableDuringInit = unstable;
+        stateInputChanged();
     }
 
     public void setPrematureCrashCount(int count) {
@@ -163,6 +176,7 @@ abstract public class NodeInfo implements Comparable<NodeInfo> {
             prematureCrashCount = count;
             log.log(LogLevel.DEBUG, "Premature crash count on " + toString() + " set to " + count);
         }
+        stateInputChanged();
     }
     public int getPrematureCrashCount() { return prematureCrashCount; }
 
@@ -175,6 +189,7 @@ abstract public class NodeInfo implements Comparable<NodeInfo> {
 
     public void setConfiguredRetired(boolean retired) {
         this.configuredRetired = retired;
+        stateInputChanged();
     }
 
     public void setNextGetStateAttemptTime(long timeInMillis) {
@@ -203,12 +218,20 @@ abstract public class NodeInfo implements Comparable<NodeInfo> {
         }
     }
 
+    /**
+     * Returns a count which changes whenever the reported or wanted state of this node, or any other information
+     * the cluster state generated for it depends on, is changed through this or its cluster.
+     */
+    int getStateInputChangeCount() { return stateInputChangeCount; }
+
+    void stateInputChanged() { ++stateInputChangeCount; }
+
     public Group getGroup() {
         return group;
     }
 
     public int getLatestVersion() {
-        return RPCCommunicator.SET_DISTRIBUTION_STATES_RPC_VERSION;
+        return RPCCommunicator.SET_DISTRIBUTION_STATES_DELTA_RPC_VERSION;
     }
 
     public String getSlobrokAddress() {
@@ -348,6 +371,7 @@ abstract public class NodeInfo implements Comparable<NodeInfo> {
                 nextAttemptTime = time;
             }
         }
+        stateInputChanged();
         log.log(LogLevel.SPAM, "Set reported state of node " + this + " to " + reportedState + ". Next connection attempt is at " + nextAttemptTime);
     }
 
@@ -367,6 +391,7 @@ abstract public class NodeInfo implements Comparable<NodeInfo> {
             }
         }
         wantedState = newWanted;
+        stateInputChanged();
         log.log(LogLevel.SPAM, "Set wanted state of node " + this + " to " + wantedState + ".");
     }
 
@@ -376,8 +401,17 @@ abstract public class NodeInfo implements Comparable<NodeInfo> {
 
     /** @return True if we demoted communication version so this can be valid error. */
     public boolean notifyNoSuchMethodError(String methodName, Timer timer) {
+        if (methodName.equals(RPCCommunicator.SET_DISTRIBUTION_STATES_DELTA_RPC_METHOD_NAME)) {
+            if (version == RPCCommunicator.SET_DISTRIBUTION_STATES_DELTA_RPC_VERSION) {
+                downgradeToRpcVersion(RPCCommunicator.SET_DISTRIBUTION_STATES_RPC_VERSION, methodName, timer);
+                return true;
+            } else if (timer.getCurrentTimeInMillis() - 2000 < adjustedVersionTime) {
+                log.log(LogLevel.DEBUG, () -> "Node " + toString() + " does not support " + methodName + " call. Version already downgraded, so ignoring it.");
+                return true;
+            }
+        }
         if (methodName.equals(RPCCommunicator.SET_DISTRIBUTION_STATES_RPC_METHOD_NAME)) {
-            if (version == RPCCommunicator.SET_DISTRIBUTION_STATES_RPC_VERSION) {
+            if (version >= RPCCommunicator.SET_DISTRIBUTION_STATES_RPC_VERSION) {
                 downgradeToRpcVersion(RPCCommunicator.LEGACY_SET_SYSTEM_STATE2_RPC_VERSION, methodName, timer);
                 return true;
             } else if (timer.getCurrentTimeInMillis() - 2000 < adjustedVersionTime) {
@@ -408,6 +442,10 @@ abstract public class NodeInfo implements Comparable<NodeInfo> {
     }
 
     public int getVersion() { return version; }
+
+    public boolean isClusterStateDeltaRejected() { return clusterStateDeltaRejected; }
+    public void setClusterStateDeltaRejected(boolean rejected) { clusterStateDeltaRejected = rejected; }
+
     public int getConnectionVersion() { return connectionVersion; }
     public void setConnectionVersion(int version) { connectionVersion = version; }
 
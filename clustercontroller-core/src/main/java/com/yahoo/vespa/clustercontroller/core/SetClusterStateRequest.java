@@ -5,17 +5,31 @@ public abstract class SetClusterStateRequest {
 
     private final NodeInfo nodeInfo;
     private final int systemStateVersion;
+    private final int payloadSize;
+    private final boolean delta;
     private Reply reply;
 
     public SetClusterStateRequest(NodeInfo nodeInfo, int systemStateVersion) {
+        this(nodeInfo, systemStateVersion, 0, false);
+    }
+
+    public SetClusterStateRequest(NodeInfo nodeInfo, int systemStateVersion, int payloadSize, boolean delta) {
         this.nodeInfo = nodeInfo;
         this.systemStateVersion = systemStateVersion;
+        this.payloadSize = payloadSize;
+        this.delta = delta;
     }
 
     public NodeInfo getNodeInfo() { return nodeInfo; }
 
     public int getSystemStateVersion() { return systemStateVersion; }
 
+    /** Returns the size in bytes of the (possibly compressed) cluster state payload sent by this request */
+    public int getPayloadSize() { return payloadSize; }
+
+    /** Returns whether this sent the cluster states as a delta to the ones last acknowledged by the node */
+    public boolean isDelta() { return delta; }
+
     public void setReply(Reply reply) { this.reply = reply; }
 
     public Reply getReply() { return reply; }
@@ -25,6 +25,10 @@ public class SystemStateBroadcaster {
     private final Map<Node, Long> lastErrorReported = new TreeMap<>();
     private int lastClusterStateInSync = 0;
 
+    /** Bytes of full and delta cluster state payloads successfully sent for the current cluster state version */
+    private long fullStateBytesSent = 0;
+    private long deltaStateBytesSent = 0;
+
     private final ClusterStateWaiter waiter = new ClusterStateWaiter();
 
     public SystemStateBroadcaster(Timer timer, Object monitor) {
@@ -34,8 +38,16 @@ public class SystemStateBroadcaster {
 
     public void handleNewClusterStates(ClusterStateBundle state) {
         clusterStateBundle = state;
+        fullStateBytesSent = 0;
+        deltaStateBytesSent = 0;
     }
 
+    /** Returns the bytes of full cluster state payloads successfully sent for the current cluster state version */
+    public long getFullStateBytesSent() { return fullStateBytesSent; }
+
+    /** Returns the bytes of delta cluster state payloads successfully sent for the current cluster state version */
+    public long getDeltaStateBytesSent() { return deltaStateBytesSent; }
+
     public ClusterState getClusterState() {
         return clusterStateBundle.getBaselineClusterState();
     }
@@ -82,6 +94,13 @@ public class SystemStateBroadcaster {
                 } else {
                     info.setSystemStateVersionAcknowledged(version, true);
                     log.log(LogLevel.DEBUG, "Node " + info + " acked system state version " + version + ".");
+                    if (clusterStateBundle != null && version == clusterStateBundle.getVersion()) {
+                        if (req.isDelta()) {
+                            deltaStateBytesSent += req.getPayloadSize();
+                        } else {
+                            fullStateBytesSent += req.getPayloadSize();
+                        }
+                    }
                     lastErrorReported.remove(info.getNode());
                 }
             }
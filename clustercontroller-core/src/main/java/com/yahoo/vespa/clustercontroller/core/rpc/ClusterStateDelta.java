@@ -0,0 +1,107 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.clustercontroller.core.rpc;
+
+import com.yahoo.vdslib.state.ClusterState;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The difference between two cluster states, expressed as the keys of their serialized forms which are set to
+ * new values and the keys which are removed. Keys are absolute, e.g., "version", "storage" and "storage.3.s".
+ *
+ * A delta between states differing in a few nodes is small regardless of the number of nodes in the cluster,
+ * and applying it to the state it was computed from gives a state equal to the one it was computed to.
+ */
+class ClusterStateDelta {
+
+    private final Map<String, String> set;
+    private final Set<String> removed;
+
+    ClusterStateDelta(Map<String, String> set, Set<String> removed) {
+        this.set = Collections.unmodifiableMap(new TreeMap<>(set));
+        this.removed = Collections.unmodifiableSet(new TreeSet<>(removed));
+    }
+
+    /** Returns the delta which transforms the given from state to the given to state */
+    static ClusterStateDelta between(ClusterState from, ClusterState to) {
+        Map<String, String> fromValues = keyValuesOf(from);
+        Map<String, String> toValues = keyValuesOf(to);
+        Map<String, String> set = new TreeMap<>();
+        toValues.forEach((key, value) -> {
+            if ( ! value.equals(fromValues.get(key)))
+                set.put(key, value);
+        });
+        Set<String> removed = new TreeSet<>(fromValues.keySet());
+        removed.removeAll(toValues.keySet());
+        return new ClusterStateDelta(set, removed);
+    }
+
+    /** Returns the keys which are set to new values by this, with their values */
+    Map<String, String> set() { return set; }
+
+    /** Returns the keys which are removed by this */
+    Set<String> removed() { return removed; }
+
+    /** Returns the state resulting from applying this to the given state */
+    ClusterState applyTo(ClusterState state) {
+        Map<String, String> values = keyValuesOf(state);
+        values.keySet().removeAll(removed);
+        values.putAll(set);
+        StringBuilder serialized = new StringBuilder();
+        values.forEach((key, value) -> serialized.append(' ').append(key).append(':').append(value));
+        return ClusterState.stateFromString(serialized.toString().trim());
+    }
+
+    /** Returns the values of the serialized form of the given state, by absolute key, in the order they must be parsed */
+    private static Map<String, String> keyValuesOf(ClusterState state) {
+        Map<String, String> values = new TreeMap<>(keyOrder);
+        String absolutePath = "";
+        for (String token : state.toString().split(" ")) {
+            if (token.isEmpty()) continue;
+            int colon = token.indexOf(':');
+            String key = token.substring(0, colon);
+            if (key.startsWith("."))
+                key = absolutePath + key;
+            else
+                absolutePath = key;
+            values.put(key, token.substring(colon + 1));
+        }
+        return values;
+    }
+
+    /**
+     * Orders keys such that the cluster level keys come first, and node counts come before the nodes of their type,
+     * with all keys of each node together, in the order of node index.
+     */
+    private static final Comparator<String> keyOrder = (a, b) -> {
+        String[] aParts = a.split("\\.", 3);
+        String[] bParts = b.split("\\.", 3);
+        int result = Integer.compare(typeOrder(aParts[0]), typeOrder(bParts[0]));
+        if (result != 0) return result;
+        result = aParts[0].compareTo(bParts[0]);
+        if (result != 0) return result;
+        if (aParts.length == 1 || bParts.length == 1) return Integer.compare(aParts.length, bParts.length);
+        result = Integer.compare(Integer.parseInt(aParts[1]), Integer.parseInt(bParts[1]));
+        if (result != 0) return result;
+        return aParts[2].compareTo(bParts[2]);
+    };
+
+    private static int typeOrder(String key) {
+        switch (key) {
+            case "distributor": return 1;
+            case "storage": return 2;
+            default: return 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "delta setting " + set + " and removing " + removed;
+    }
+
+}
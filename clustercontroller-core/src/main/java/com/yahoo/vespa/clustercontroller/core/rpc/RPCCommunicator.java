@@ -11,6 +11,7 @@ import com.yahoo.jrt.Supervisor;
 import com.yahoo.jrt.Target;
 import com.yahoo.jrt.Transport;
 import com.yahoo.jrt.Values;
+import com.yahoo.vdslib.state.Node;
 import com.yahoo.vdslib.state.NodeState;
 import com.yahoo.vdslib.state.ClusterState;
 import com.yahoo.vdslib.state.State;
@@ -23,6 +24,11 @@ import com.yahoo.vespa.clustercontroller.core.NodeInfo;
 import com.yahoo.vespa.clustercontroller.core.SetClusterStateRequest;
 import com.yahoo.vespa.clustercontroller.core.Timer;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Optional;
 import java.util.logging.Logger;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -35,6 +41,9 @@ public class RPCCommunicator implements Communicator {
 
     public static final Logger log = Logger.getLogger(RPCCommunicator.class.getName());
 
+    public static final int SET_DISTRIBUTION_STATES_DELTA_RPC_VERSION = 4;
+    public static final String SET_DISTRIBUTION_STATES_DELTA_RPC_METHOD_NAME = "setdistributionstatesdelta";
+
     public static final int SET_DISTRIBUTION_STATES_RPC_VERSION = 3;
     public static final String SET_DISTRIBUTION_STATES_RPC_METHOD_NAME = "setdistributionstates";
 
@@ -48,6 +57,20 @@ public class RPCCommunicator implements Communicator {
     private int nodeStateRequestTimeoutIntervalStopPercentage;
     private int nodeStateRequestRoundTripTimeMaxSeconds;
     private final int fleetControllerIndex;
+    private boolean clusterStateDeltasEnabled = false;
+
+    private final SlimeClusterStateBundleCodec codec = new SlimeClusterStateBundleCodec();
+    /** The last bundle encoded and its encoding, as the same bundle is usually sent to all nodes */
+    private ClusterStateBundle lastEncodedBundle = null;
+    private EncodedClusterStateBundle lastEncoding = null;
+    /** Encodings of the last encoded bundle as deltas to the bundles used as base, which are also usually shared */
+    private final Map<ClusterStateBundle, Optional<EncodedClusterStateBundle>> lastEncodedDeltas = new IdentityHashMap<>();
+    /**
+     * The bundles sent to each node which may be used as delta base, by version: the one last acknowledged by the node,
+     * when it was sent after the previous bundle acknowledged, and the one last sent. This is bounded also for nodes
+     * which never acknowledge.
+     */
+    private final Map<Node, Map<Integer, ClusterStateBundle>> bundlesSent = new HashMap<>();
 
     public static Supervisor createRealSupervisor() {
         return new Supervisor(new Transport());
@@ -100,6 +123,7 @@ public class RPCCommunicator implements Communicator {
         this.nodeStateRequestTimeoutIntervalStartPercentage = options.nodeStateRequestTimeoutEarliestPercentage;
         this.nodeStateRequestTimeoutIntervalStopPercentage = options.nodeStateRequestTimeoutLatestPercentage;
         this.nodeStateRequestRoundTripTimeMaxSeconds = options.nodeStateRequestRoundTripTimeMaxSeconds;
+        this.clusterStateDeltasEnabled = options.enableClusterStateDeltas;
     }
 
     @Override
@@ -139,26 +163,90 @@ public class RPCCommunicator implements Communicator {
         }
         int nodeVersion = node.getVersion();
         Request req;
+        int payloadSize;
+        boolean delta = false;
         if (nodeVersion <= 2) {
             req = new Request(LEGACY_SET_SYSTEM_STATE2_RPC_METHOD_NAME);
-            req.parameters().add(new StringValue(baselineState.toString(false)));
+            String serializedState = baselineState.toString(false);
+            req.parameters().add(new StringValue(serializedState));
+            payloadSize = serializedState.length();
         } else {
-            req = new Request(SET_DISTRIBUTION_STATES_RPC_METHOD_NAME);
-            SlimeClusterStateBundleCodec codec = new SlimeClusterStateBundleCodec();
-            EncodedClusterStateBundle encodedBundle = codec.encode(stateBundle);
-            Values v = req.parameters();
-            v.add(new Int8Value(encodedBundle.getCompression().type().getCode()));
-            v.add(new Int32Value(encodedBundle.getCompression().uncompressedSize()));
-            v.add(new DataValue(encodedBundle.getCompression().data()));
+            EncodedClusterStateBundle encodedBundle = encode(stateBundle);
+            Optional<ClusterStateBundle> base = deltaBaseFor(node);
+            Optional<EncodedClusterStateBundle> encodedDelta = base
+                    .flatMap(baseBundle -> encodeDelta(baseBundle, stateBundle))
+                    .filter(encoded -> encoded.getCompression().data().length < encodedBundle.getCompression().data().length);
+            if (encodedDelta.isPresent()) {
+                req = new Request(SET_DISTRIBUTION_STATES_DELTA_RPC_METHOD_NAME);
+                req.parameters().add(new Int32Value(base.get().getVersion()));
+                addEncodedBundle(req.parameters(), encodedDelta.get());
+                payloadSize = encodedDelta.get().getCompression().data().length;
+                delta = true;
+            } else {
+                req = new Request(SET_DISTRIBUTION_STATES_RPC_METHOD_NAME);
+                addEncodedBundle(req.parameters(), encodedBundle);
+                payloadSize = encodedBundle.getCompression().data().length;
+            }
         }
 
         log.log(LogLevel.DEBUG, () -> String.format("Sending '%s' RPC to %s for state version %d",
                 req.methodName(), node.getRpcAddress(), stateBundle.getVersion()));
-        RPCSetClusterStateRequest stateRequest = new RPCSetClusterStateRequest(node, req, baselineState.getVersion());
+        RPCSetClusterStateRequest stateRequest = new RPCSetClusterStateRequest(node, req, baselineState.getVersion(),
+                                                                               payloadSize, delta);
         waiter.setRequest(stateRequest);
 
         connection.invokeAsync(req, 60, waiter);
         node.setSystemStateVersionSent(baselineState);
+        rememberBundleSent(node, stateBundle);
+    }
+
+    private static void addEncodedBundle(Values values, EncodedClusterStateBundle encodedBundle) {
+        values.add(new Int8Value(encodedBundle.getCompression().type().getCode()));
+        values.add(new Int32Value(encodedBundle.getCompression().uncompressedSize()));
+        values.add(new DataValue(encodedBundle.getCompression().data()));
+    }
+
+    private EncodedClusterStateBundle encode(ClusterStateBundle stateBundle) {
+        if (stateBundle != lastEncodedBundle) {
+            lastEncodedBundle = stateBundle;
+            lastEncoding = codec.encode(stateBundle);
+            lastEncodedDeltas.clear();
+        }
+        return lastEncoding;
+    }
+
+    /** Returns the given bundle encoded as a delta to the given base. Call only after encoding the bundle itself. */
+    private Optional<EncodedClusterStateBundle> encodeDelta(ClusterStateBundle base, ClusterStateBundle stateBundle) {
+        return lastEncodedDeltas.computeIfAbsent(base, __ -> codec.encodeDelta(base, stateBundle));
+    }
+
+    /**
+     * Returns the bundle to send the next bundle to the given node as a delta to, if any. This is the bundle the node
+     * last acknowledged, unless it may have received a newer one, or it has rejected a delta since it last
+     * acknowledged a full bundle.
+     */
+    private Optional<ClusterStateBundle> deltaBaseFor(NodeInfo node) {
+        if ( ! clusterStateDeltasEnabled) return Optional.empty();
+        if (node.getVersion() < SET_DISTRIBUTION_STATES_DELTA_RPC_VERSION) return Optional.empty();
+        if (node.isClusterStateDeltaRejected()) return Optional.empty();
+        if (node.getNewestSystemStateVersionSent() != -1) return Optional.empty();
+
+        Map<Integer, ClusterStateBundle> sent = bundlesSent.get(node.getNode());
+        if (sent == null) return Optional.empty();
+        return Optional.ofNullable(sent.get(node.getSystemStateVersionAcknowledged()));
+    }
+
+    private void rememberBundleSent(NodeInfo node, ClusterStateBundle stateBundle) {
+        if ( ! clusterStateDeltasEnabled) return;
+        Map<Integer, ClusterStateBundle> sent = bundlesSent.computeIfAbsent(node.getNode(), __ -> new HashMap<>());
+        int acknowledged = node.getSystemStateVersionAcknowledged();
+        sent.keySet().removeIf(version -> version != acknowledged);
+        sent.put(stateBundle.getVersion(), stateBundle);
+    }
+
+    // package-private for testing.
+    int bundlesRememberedFor(Node node) {
+        return bundlesSent.getOrDefault(node, Collections.emptyMap()).size();
     }
 
     // protected for testing.
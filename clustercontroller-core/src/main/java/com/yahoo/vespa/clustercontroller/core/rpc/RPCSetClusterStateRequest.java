@@ -14,4 +14,10 @@ public class RPCSetClusterStateRequest extends SetClusterStateRequest {
         this.request = request;
     }
 
+    public RPCSetClusterStateRequest(NodeInfo nodeInfo, Request request, int clusterStateVersion,
+                                     int payloadSize, boolean delta) {
+        super(nodeInfo, clusterStateVersion, payloadSize, delta);
+        this.request = request;
+    }
+
 }
@@ -30,18 +30,29 @@ public class RPCSetClusterStateWaiter implements RequestWaiter {
     public SetClusterStateRequest.Reply getReply(Request req) {
         NodeInfo info = request.getNodeInfo();
 
-        if (req.methodName().equals(RPCCommunicator.SET_DISTRIBUTION_STATES_RPC_METHOD_NAME)
+        if (req.methodName().equals(RPCCommunicator.SET_DISTRIBUTION_STATES_DELTA_RPC_METHOD_NAME)
+                || req.methodName().equals(RPCCommunicator.SET_DISTRIBUTION_STATES_RPC_METHOD_NAME)
                 || req.methodName().equals(RPCCommunicator.LEGACY_SET_SYSTEM_STATE2_RPC_METHOD_NAME)) {
             if (req.isError() && req.errorCode() == ErrorCode.NO_SUCH_METHOD) {
                 if (info.notifyNoSuchMethodError(req.methodName(), timer)) {
                     return new SetClusterStateRequest.Reply(Communicator.TRANSIENT_ERROR, "Trying lower version");
                 }
             }
+            if (req.isError() && req.methodName().equals(RPCCommunicator.SET_DISTRIBUTION_STATES_DELTA_RPC_METHOD_NAME)) {
+                // Typically because the node no longer has the state the delta is to, e.g., after a restart
+                info.setClusterStateDeltaRejected(true);
+                return new SetClusterStateRequest.Reply(Communicator.TRANSIENT_ERROR,
+                                                        "Delta rejected (" + req.errorMessage() + "), trying full state");
+            }
             if (req.isError()) {
                 return new SetClusterStateRequest.Reply(req.errorCode(), req.errorMessage());
             } else if (!req.checkReturnTypes("")) {
                 return new SetClusterStateRequest.Reply(ErrorCode.BAD_REPLY, "Got RPC response with invalid return types from " + info);
             }
+            if ( ! req.methodName().equals(RPCCommunicator.SET_DISTRIBUTION_STATES_DELTA_RPC_METHOD_NAME)) {
+                // The node has acknowledged a full state, which deltas can now be sent relative to
+                info.setClusterStateDeltaRejected(false);
+            }
         } else {
             return new SetClusterStateRequest.Reply(ErrorCode.BAD_REPLY, "Unknown method " + req.methodName());
         }
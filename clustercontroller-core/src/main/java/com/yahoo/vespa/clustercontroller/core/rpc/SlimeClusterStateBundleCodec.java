@@ -10,6 +10,9 @@ import com.yahoo.vespa.clustercontroller.core.ClusterStateBundle;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * Implementation of ClusterStateBundleCodec which uses structured Slime binary encoding
@@ -21,6 +24,9 @@ import java.util.Map;
  *
  * Implements optional Slime-based enveloping for *WithEnvelope methods, which removes
  * need to explicitly track compression metadata by the caller.
+ *
+ * Also encodes and decodes bundles as deltas to a bundle previously sent to the receiver,
+ * see {@link ClusterStateDelta}.
  */
 public class SlimeClusterStateBundleCodec implements ClusterStateBundleCodec, EnvelopedClusterStateBundleCodec {
 
@@ -59,6 +65,63 @@ public class SlimeClusterStateBundleCodec implements ClusterStateBundleCodec, En
         return ClusterStateBundle.of(AnnotatedClusterState.withoutAnnotations(baseline), derivedStates);
     }
 
+    /**
+     * Returns the given bundle encoded as a delta to the given base bundle, or empty if it cannot be,
+     * which is the case when their bucket spaces differ.
+     */
+    public Optional<EncodedClusterStateBundle> encodeDelta(ClusterStateBundle base, ClusterStateBundle stateBundle) {
+        if ( ! base.getDerivedBucketSpaceStates().keySet().equals(stateBundle.getDerivedBucketSpaceStates().keySet()))
+            return Optional.empty();
+
+        Slime slime = new Slime();
+        Cursor root = slime.setObject();
+        Cursor states = root.setObject("states");
+        encodeDelta(ClusterStateDelta.between(base.getBaselineClusterState(), stateBundle.getBaselineClusterState()),
+                    states.setObject("baseline"));
+        Cursor spaces = states.setObject("spaces");
+        stateBundle.getDerivedBucketSpaceStates().forEach((space, state) -> {
+            encodeDelta(ClusterStateDelta.between(base.getDerivedBucketSpaceStates().get(space).getClusterState(),
+                                                  state.getClusterState()),
+                        spaces.setObject(space));
+        });
+
+        byte[] serialized = BinaryFormat.encode(slime);
+        Compressor.Compression compression = compressor.compress(serialized);
+        return Optional.of(EncodedClusterStateBundle.fromCompressionBuffer(compression));
+    }
+
+    private static void encodeDelta(ClusterStateDelta delta, Cursor cursor) {
+        Cursor set = cursor.setObject("set");
+        delta.set().forEach(set::setString);
+        Cursor removed = cursor.setArray("removed");
+        delta.removed().forEach(removed::addString);
+    }
+
+    /** Returns the bundle resulting from applying the given encoded delta to the given base bundle */
+    public ClusterStateBundle decodeDelta(ClusterStateBundle base, EncodedClusterStateBundle encodedDelta) {
+        byte[] uncompressed = compressor.decompress(encodedDelta.getCompression());
+        Slime slime = BinaryFormat.decode(uncompressed);
+        Inspector states = slime.get().field("states");
+        ClusterState baseline = decodeDelta(states.field("baseline")).applyTo(base.getBaselineClusterState());
+
+        Map<String, AnnotatedClusterState> derivedStates = new HashMap<>();
+        states.field("spaces").traverse(((ObjectTraverser)(space, delta) -> {
+            AnnotatedClusterState baseState = base.getDerivedBucketSpaceStates().get(space);
+            if (baseState == null)
+                throw new IllegalArgumentException("Delta for bucket space '" + space + "' which is not in the base bundle");
+            derivedStates.put(space, AnnotatedClusterState.withoutAnnotations(decodeDelta(delta).applyTo(baseState.getClusterState())));
+        }));
+        return ClusterStateBundle.of(AnnotatedClusterState.withoutAnnotations(baseline), derivedStates);
+    }
+
+    private static ClusterStateDelta decodeDelta(Inspector inspector) {
+        Map<String, String> set = new TreeMap<>();
+        inspector.field("set").traverse((ObjectTraverser) (key, value) -> set.put(key, value.asString()));
+        TreeSet<String> removed = new TreeSet<>();
+        inspector.field("removed").traverse((ArrayTraverser) (index, value) -> removed.add(value.asString()));
+        return new ClusterStateDelta(set, removed);
+    }
+
     // Technically the Slime enveloping could be its own class that is bundle codec independent, but
     // realistically there won't be any other implementations. Can be trivially factored out if required.
     @Override
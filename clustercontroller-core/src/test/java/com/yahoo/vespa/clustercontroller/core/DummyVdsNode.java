@@ -68,6 +68,7 @@ public class DummyVdsNode {
      * Any access to this list or to its members must be synchronized on the timer variable.
      */
     private List<ClusterStateBundle> clusterStateBundles = new LinkedList<>();
+    private int deltaBundlesReceived = 0;
 
     private Thread messageResponder = new Thread() {
         public void run() {
@@ -298,6 +299,13 @@ public class DummyVdsNode {
         }
     }
 
+    /** Returns the number of cluster state bundles this has received as deltas */
+    public int getDeltaBundlesReceived() {
+        synchronized(timer) {
+            return deltaBundlesReceived;
+        }
+    }
+
     public ClusterStateBundle getClusterStateBundle() {
         synchronized(timer) {
             return (clusterStateBundles.isEmpty() ? null : clusterStateBundles.get(0));
@@ -369,6 +377,15 @@ public class DummyVdsNode {
             m.paramDesc(2, "payload", "Slime format payload");
             supervisor.addMethod(m);
         }
+        if (stateCommunicationVersion >= RPCCommunicator.SET_DISTRIBUTION_STATES_DELTA_RPC_VERSION) {
+            m = new Method(RPCCommunicator.SET_DISTRIBUTION_STATES_DELTA_RPC_METHOD_NAME, "ibix", "", this, "rpc_setDistributionStatesDelta");
+            m.methodDesc("Set distribution states for cluster and bucket spaces, as a delta to the given version");
+            m.paramDesc(0, "baseVersion", "Version of the cluster states the delta is to");
+            m.paramDesc(1, "compressionType", "Compression type for payload");
+            m.paramDesc(2, "uncompressedSize", "Uncompressed size of payload");
+            m.paramDesc(3, "payload", "Slime format payload");
+            supervisor.addMethod(m);
+        }
     }
 
     public void rpc_storageConnect(Request req) {
@@ -545,4 +562,30 @@ public class DummyVdsNode {
             req.setError(ErrorCode.METHOD_FAILED, e.getMessage());
         }
     }
+
+    public void rpc_setDistributionStatesDelta(Request req) {
+        try {
+            if (shouldFailSetSystemStateRequests()) {
+                req.setError(ErrorCode.GENERAL_ERROR, "Dummy node configured to fail setDistributionStatesDelta() calls");
+                return;
+            }
+            int baseVersion = RPCUtil.baseVersionOfSetDistributionStatesDeltaRequest(req);
+            synchronized(timer) {
+                if (clusterStateBundles.isEmpty() || clusterStateBundles.get(0).getVersion() != baseVersion) {
+                    req.setError(ErrorCode.METHOD_FAILED, "Dummy node does not have cluster state version " + baseVersion);
+                    return;
+                }
+                ClusterStateBundle stateBundle = RPCUtil.decodeStateBundleFromSetDistributionStatesDeltaRequest(req, clusterStateBundles.get(0));
+                updateStartTimestamps(stateBundle.getBaselineClusterState());
+                clusterStateBundles.add(0, stateBundle);
+                deltaBundlesReceived++;
+                timer.notifyAll();
+                log.log(LogLevel.DEBUG, "Dummy node " + this + ": Got new cluster state delta giving " + stateBundle);
+            }
+        } catch (Exception e) {
+            log.log(LogLevel.ERROR, "Dummy node " + this + ": An error occured when answering setdistributionstatesdelta request: " + e.getMessage());
+            e.printStackTrace(System.err);
+            req.setError(ErrorCode.METHOD_FAILED, e.getMessage());
+        }
+    }
 }
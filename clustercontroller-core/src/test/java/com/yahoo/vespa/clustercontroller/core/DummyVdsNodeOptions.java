@@ -8,6 +8,6 @@ import com.yahoo.vespa.clustercontroller.core.rpc.RPCCommunicator;
  * over regular RPC.
  */
 public class DummyVdsNodeOptions {
-    // 0 - 4.1, 1 - 4.2-5.0.10, 2 - 5.0.11+, 3 - 6.220+
-    public int stateCommunicationVersion = RPCCommunicator.SET_DISTRIBUTION_STATES_RPC_VERSION;
+    // 0 - 4.1, 1 - 4.2-5.0.10, 2 - 5.0.11+, 3 - 6.220+, 4 - cluster state deltas
+    public int stateCommunicationVersion = RPCCommunicator.SET_DISTRIBUTION_STATES_DELTA_RPC_VERSION;
 }
@@ -0,0 +1,60 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.clustercontroller.core;
+
+import com.yahoo.vdslib.state.NodeState;
+import com.yahoo.vdslib.state.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the time of generating cluster states fully and incrementally for clusters of 1000 and 5000 nodes,
+ * where a few nodes change between each generation.
+ * Not run as part of the unit tests; run main manually.
+ */
+public class IncrementalClusterStateGeneratorBenchmark {
+
+    private static final int warmupTicks = 50;
+    private static final int ticks = 50;
+
+    private static void run(int nodeCount) {
+        Random random = new Random(nodeCount);
+        ClusterFixture fixture = ClusterFixture.forHierarchicCluster(DistributionBuilder.withGroups(nodeCount / 50).eachWithNodeCount(50));
+        fixture.cluster.getNodeInfo().forEach(node -> node.setReportedState(new NodeState(node.getNode().getType(), State.UP), 0));
+        fixture.params.minNodeRatioPerGroup(0.5);
+        List<NodeInfo> nodes = new ArrayList<>(fixture.cluster.getNodeInfo());
+        IncrementalClusterStateGenerator generator = new IncrementalClusterStateGenerator();
+
+        long fullNanos = 0, incrementalNanos = 0;
+        for (int tick = -warmupTicks; tick < ticks; tick++) {
+            if (tick == 0) {
+                fullNanos = 0;
+                incrementalNanos = 0;
+            }
+            for (int i = 0; i < 5; i++) {
+                NodeInfo node = nodes.get(random.nextInt(nodes.size()));
+                node.setReportedState(new NodeState(node.getNode().getType(), random.nextBoolean() ? State.UP : State.DOWN), 0);
+            }
+            fixture.timer.advanceTime(1000);
+            fixture.params.currentTimeInMilllis(fixture.timer.getCurrentTimeInMillis());
+
+            long start = System.nanoTime();
+            AnnotatedClusterState full = ClusterStateGenerator.generatedStateFrom(fixture.params);
+            fullNanos += System.nanoTime() - start;
+            start = System.nanoTime();
+            AnnotatedClusterState incremental = generator.generatedStateFrom(fixture.params);
+            incrementalNanos += System.nanoTime() - start;
+            if ( ! full.equals(incremental))
+                throw new IllegalStateException("Incremental state " + incremental + " differs from full state " + full);
+        }
+        System.out.printf("%d nodes: full generation %.2f ms/tick, incremental generation %.2f ms/tick%n",
+                          nodeCount, fullNanos / 1e6 / ticks, incrementalNanos / 1e6 / ticks);
+    }
+
+    public static void main(String[] args) {
+        for (int nodeCount : new int[] { 1000, 5000 })
+            run(nodeCount);
+    }
+
+}
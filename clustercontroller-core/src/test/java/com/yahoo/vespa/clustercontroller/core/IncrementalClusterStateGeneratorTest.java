@@ -0,0 +1,153 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.clustercontroller.core;
+
+import com.yahoo.vdslib.distribution.ConfiguredNode;
+import com.yahoo.vdslib.state.NodeState;
+import com.yahoo.vdslib.state.NodeType;
+import com.yahoo.vdslib.state.State;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+public class IncrementalClusterStateGeneratorTest {
+
+    private final IncrementalClusterStateGenerator generator = new IncrementalClusterStateGenerator();
+
+    @Test
+    public void only_changed_nodes_and_groups_are_updated() {
+        ClusterFixture fixture = ClusterFixture.forHierarchicCluster(DistributionBuilder.withGroups(3).eachWithNodeCount(3))
+                .bringEntireClusterUp()
+                .setMinNodeRatioPerGroup(0.6);
+        assertGenerated("distributor:9 storage:9", fixture);
+
+        fixture.reportStorageNodeState(4, State.DOWN);
+        assertGenerated("distributor:9 storage:9 .4.s:d", fixture);
+
+        fixture.reportStorageNodeState(5, State.DOWN);
+        AnnotatedClusterState state = assertGenerated("distributor:9 storage:9 .3.s:d .4.s:d .5.s:d", fixture);
+        assertEquals(NodeStateReason.GROUP_IS_DOWN, state.getNodeStateReasons().get(ClusterFixture.storageNode(3)));
+
+        fixture.reportStorageNodeState(4, State.UP);
+        assertGenerated("distributor:9 storage:9 .5.s:d", fixture);
+    }
+
+    @Test
+    public void nodes_are_taken_down_when_transition_time_passes_without_new_reported_state() {
+        ClusterFixture fixture = ClusterFixture.forFlatCluster(5).bringEntireClusterUp();
+        fixture.enableTransientMaintenanceModeOnDown(1000);
+        fixture.cluster.getNodeInfo(ClusterFixture.storageNode(1)).setTransitionTime(0);
+        fixture.reportStorageNodeState(1, State.DOWN);
+        assertGenerated("distributor:5 storage:5 .1.s:m", fixture);
+
+        fixture.timer.advanceTime(1000);
+        assertGenerated("distributor:5 storage:5 .1.s:d", fixture);
+    }
+
+    @Test
+    public void generated_states_are_not_shared_between_invocations() {
+        ClusterFixture fixture = ClusterFixture.forFlatCluster(3).bringEntireClusterUp();
+        AnnotatedClusterState first = generate(fixture);
+        first.getClusterState().setVersion(7);
+        AnnotatedClusterState second = generate(fixture);
+        assertNotSame(first.getClusterState(), second.getClusterState());
+        assertEquals(0, second.getClusterState().getVersion());
+    }
+
+    @Test
+    public void incremental_states_equal_full_states_for_random_changes() {
+        for (int seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            ClusterFixture fixture = seed % 2 == 0
+                    ? ClusterFixture.forHierarchicCluster(DistributionBuilder.withGroups(4).eachWithNodeCount(5))
+                    : ClusterFixture.forFlatCluster(12);
+            fixture.params.minNodeRatioPerGroup(0.5).maxInitProgressTime(300).maxPrematureCrashes(2);
+            fixture.enableTransientMaintenanceModeOnDown(500);
+            IncrementalClusterStateGenerator generator = new IncrementalClusterStateGenerator();
+            for (int tick = 0; tick < 300; tick++) {
+                for (int changes = random.nextInt(4); changes > 0; changes--)
+                    makeRandomChange(fixture, random);
+                fixture.params.currentTimeInMilllis(fixture.timer.getCurrentTimeInMillis());
+                assertEquals("Seed " + seed + ", tick " + tick,
+                             ClusterStateGenerator.generatedStateFrom(fixture.params),
+                             generator.generatedStateFrom(fixture.params));
+            }
+        }
+    }
+
+    private static void makeRandomChange(ClusterFixture fixture, Random random) {
+        NodeInfo node = randomNode(fixture, random);
+        NodeType type = node.getNode().getType();
+        long now = fixture.timer.getCurrentTimeInMillis();
+        switch (random.nextInt(10)) {
+            case 0: case 1: case 2:
+                NodeState reported = new NodeState(type, pick(random, State.UP, State.DOWN, State.STOPPING, State.INITIALIZING));
+                if (reported.getState() == State.INITIALIZING)
+                    reported.setInitProgress(random.nextDouble());
+                if (type == NodeType.STORAGE)
+                    reported.setMinUsedBits(12 + random.nextInt(5));
+                if (random.nextBoolean())
+                    reported.setDescription("description " + random.nextInt(3));
+                if (random.nextBoolean())
+                    reported.setStartTimestamp(random.nextInt(3));
+                node.setReportedState(reported, now);
+                break;
+            case 3:
+                State wanted = type == NodeType.STORAGE
+                        ? pick(random, State.UP, State.DOWN, State.MAINTENANCE, State.RETIRED)
+                        : pick(random, State.UP, State.DOWN);
+                node.setWantedState(new NodeState(type, wanted));
+                break;
+            case 4:
+                node.setPrematureCrashCount(random.nextInt(4));
+                break;
+            case 5:
+                node.setTransitionTime(now);
+                node.setInitProgressTime(now);
+                break;
+            case 6:
+                node.setStartTimestamp(random.nextInt(3));
+                break;
+            case 7:
+                List<ConfiguredNode> configured = fixture.cluster.getConfiguredNodes().values().stream()
+                        .map(n -> n.index() == node.getNodeIndex() ? new ConfiguredNode(n.index(), random.nextBoolean()) : n)
+                        .collect(Collectors.toList());
+                fixture.cluster.setNodes(configured);
+                break;
+            case 8:
+                if (random.nextInt(10) == 0)
+                    fixture.params.minNodeRatioPerGroup(random.nextDouble()).transitionTimes(random.nextInt(2) * 500);
+                break;
+            default:
+                fixture.timer.advanceTime(random.nextInt(400));
+        }
+    }
+
+    private static NodeInfo randomNode(ClusterFixture fixture, Random random) {
+        List<NodeInfo> nodes = new ArrayList<>(fixture.cluster.getNodeInfo());
+        return nodes.get(random.nextInt(nodes.size()));
+    }
+
+    @SafeVarargs
+    private static <T> T pick(Random random, T ... values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private AnnotatedClusterState generate(ClusterFixture fixture) {
+        fixture.params.currentTimeInMilllis(fixture.timer.getCurrentTimeInMillis());
+        return generator.generatedStateFrom(fixture.params);
+    }
+
+    private AnnotatedClusterState assertGenerated(String expected, ClusterFixture fixture) {
+        AnnotatedClusterState state = generate(fixture);
+        assertEquals(expected, state.getClusterState().toString());
+        assertEquals(fixture.annotatedGeneratedClusterState(), state);
+        return state;
+    }
+
+}
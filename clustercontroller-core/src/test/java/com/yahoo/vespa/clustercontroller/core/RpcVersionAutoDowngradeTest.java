@@ -12,11 +12,16 @@ import java.util.List;
 public class RpcVersionAutoDowngradeTest extends FleetControllerTest {
 
     private void setUpFakeCluster(int nodeRpcVersion) throws Exception {
+        setUpFakeCluster(nodeRpcVersion, false);
+    }
+
+    private void setUpFakeCluster(int nodeRpcVersion, boolean enableClusterStateDeltas) throws Exception {
         List<ConfiguredNode> configuredNodes = new ArrayList<>();
         for (int i = 0 ; i < 10; i++) {
             configuredNodes.add(new ConfiguredNode(i, false));
         }
         FleetControllerOptions options = new FleetControllerOptions("mycluster", configuredNodes);
+        options.enableClusterStateDeltas = enableClusterStateDeltas;
         setUpFleetController(false, options);
         DummyVdsNodeOptions nodeOptions = new DummyVdsNodeOptions();
         nodeOptions.stateCommunicationVersion = nodeRpcVersion;
@@ -29,7 +34,13 @@ public class RpcVersionAutoDowngradeTest extends FleetControllerTest {
 
     @Test
     public void cluster_state_rpc_version_is_auto_downgraded_and_retried_for_older_nodes() throws Exception {
-        setUpFakeCluster(2); // HEAD is at v3
+        setUpFakeCluster(2); // HEAD is at v4
+        waitForState("version:\\d+ distributor:10 storage:10");
+    }
+
+    @Test
+    public void cluster_state_delta_rpc_version_is_auto_downgraded_and_retried_for_older_nodes() throws Exception {
+        setUpFakeCluster(3, true);
         waitForState("version:\\d+ distributor:10 storage:10");
     }
 
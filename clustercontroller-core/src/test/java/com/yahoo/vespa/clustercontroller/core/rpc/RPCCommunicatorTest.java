@@ -110,6 +110,10 @@ public class RPCCommunicatorTest {
         final Communicator.Waiter<SetClusterStateRequest> mockWaiter = mock(Communicator.Waiter.class);
 
         Fixture() {
+            this(false);
+        }
+
+        Fixture(boolean clusterStateDeltasEnabled) {
             communicator = new RPCCommunicator(
                     mockSupervisor,
                     timer,
@@ -126,6 +130,27 @@ public class RPCCommunicatorTest {
                 receivedWaiter.set((RequestWaiter) invocation.getArguments()[2]);
                 return null;
             }).when(mockTarget).invokeAsync(any(), anyDouble(), any());
+
+            if (clusterStateDeltasEnabled) {
+                FleetControllerOptions options = new FleetControllerOptions("cluster");
+                options.enableClusterStateDeltas = true;
+                communicator.propagateOptions(options);
+            }
+        }
+
+        /** Sends the given bundle to the given node, and completes the request with the given error code, or success if 0 */
+        Request sendAndComplete(ClusterStateBundle bundle, NodeInfo node, int errorCode) {
+            receivedRequest.set(null);
+            communicator.setSystemState(bundle, node, mockWaiter);
+            Request req = receivedRequest.get();
+            assertThat(req, notNullValue());
+            if (errorCode != 0) {
+                req.setError(errorCode, "error");
+            }
+            receivedWaiter.get().handleRequestDone(req);
+            // This would normally be done in processResponses(), but that code path is not invoked in these tests.
+            node.setSystemStateVersionAcknowledged(bundle.getVersion(), errorCode == 0);
+            return req;
         }
     }
 
@@ -171,4 +196,127 @@ public class RPCCommunicatorTest {
         assertThat(req.methodName(), equalTo(RPCCommunicator.LEGACY_SET_SYSTEM_STATE2_RPC_METHOD_NAME));
     }
 
+    /** Returns a bundle where all storage nodes are in maintenance with distinct descriptions, except the given one which is down */
+    private static ClusterStateBundle largeBundle(int version, int downNode) {
+        StringBuilder state = new StringBuilder("version:" + version + " distributor:100 storage:100");
+        for (int i = 0; i < 100; i++) {
+            state.append(i == downNode ? String.format(" .%d.s:d", i)
+                                       : String.format(" .%d.s:m .%d.m:maintenance%d", i, i, i * 7919 % 1000));
+        }
+        return ClusterStateBundleUtil.makeBundle(state.toString());
+    }
+
+    @Test
+    public void cluster_states_are_sent_as_deltas_to_states_acknowledged_by_nodes() {
+        Fixture f = new Fixture(true);
+        ClusterFixture cf = ClusterFixture.forFlatCluster(3).bringEntireClusterUp().assignDummyRpcAddresses();
+        NodeInfo node = cf.cluster().getNodeInfo(Node.ofStorage(1));
+
+        ClusterStateBundle first = largeBundle(10, 3);
+        Request req = f.sendAndComplete(first, node, 0);
+        assertThat(req.methodName(), equalTo(RPCCommunicator.SET_DISTRIBUTION_STATES_RPC_METHOD_NAME));
+
+        ClusterStateBundle second = largeBundle(11, 7);
+        req = f.sendAndComplete(second, node, 0);
+        assertThat(req.methodName(), equalTo(RPCCommunicator.SET_DISTRIBUTION_STATES_DELTA_RPC_METHOD_NAME));
+        assertTrue(req.parameters().satisfies("ibix")); // <base version>, <compression type>, <uncompressed size>, <payload>
+        assertThat(RPCUtil.baseVersionOfSetDistributionStatesDeltaRequest(req), is(10));
+        assertThat(RPCUtil.decodeStateBundleFromSetDistributionStatesDeltaRequest(req, first), equalTo(second));
+    }
+
+    @Test
+    public void full_cluster_states_are_sent_when_deltas_are_disabled() {
+        Fixture f = new Fixture(false);
+        ClusterFixture cf = ClusterFixture.forFlatCluster(3).bringEntireClusterUp().assignDummyRpcAddresses();
+        NodeInfo node = cf.cluster().getNodeInfo(Node.ofStorage(1));
+
+        f.sendAndComplete(largeBundle(10, 3), node, 0);
+        Request req = f.sendAndComplete(largeBundle(11, 7), node, 0);
+        assertThat(req.methodName(), equalTo(RPCCommunicator.SET_DISTRIBUTION_STATES_RPC_METHOD_NAME));
+    }
+
+    @Test
+    public void full_cluster_state_is_sent_when_previous_state_was_not_acknowledged() {
+        Fixture f = new Fixture(true);
+        ClusterFixture cf = ClusterFixture.forFlatCluster(3).bringEntireClusterUp().assignDummyRpcAddresses();
+        NodeInfo node = cf.cluster().getNodeInfo(Node.ofStorage(1));
+
+        f.sendAndComplete(largeBundle(10, 3), node, ErrorCode.CONNECTION);
+        Request req = f.sendAndComplete(largeBundle(11, 7), node, 0);
+        assertThat(req.methodName(), equalTo(RPCCommunicator.SET_DISTRIBUTION_STATES_RPC_METHOD_NAME));
+    }
+
+    @Test
+    public void full_cluster_states_are_sent_after_delta_is_rejected_until_a_full_state_is_acknowledged() {
+        Fixture f = new Fixture(true);
+        ClusterFixture cf = ClusterFixture.forFlatCluster(3).bringEntireClusterUp().assignDummyRpcAddresses();
+        NodeInfo node = cf.cluster().getNodeInfo(Node.ofStorage(1));
+
+        f.sendAndComplete(largeBundle(10, 3), node, 0);
+        Request req = f.sendAndComplete(largeBundle(11, 7), node, ErrorCode.METHOD_FAILED);
+        assertThat(req.methodName(), equalTo(RPCCommunicator.SET_DISTRIBUTION_STATES_DELTA_RPC_METHOD_NAME));
+        assertTrue(node.isClusterStateDeltaRejected());
+        assertThat(node.getVersion(), is(RPCCommunicator.SET_DISTRIBUTION_STATES_DELTA_RPC_VERSION));
+
+        req = f.sendAndComplete(largeBundle(11, 7), node, 0);
+        assertThat(req.methodName(), equalTo(RPCCommunicator.SET_DISTRIBUTION_STATES_RPC_METHOD_NAME));
+        assertThat(node.isClusterStateDeltaRejected(), is(false));
+
+        req = f.sendAndComplete(largeBundle(12, 5), node, 0);
+        assertThat(req.methodName(), equalTo(RPCCommunicator.SET_DISTRIBUTION_STATES_DELTA_RPC_METHOD_NAME));
+        assertThat(RPCUtil.baseVersionOfSetDistributionStatesDeltaRequest(req), is(11));
+    }
+
+    @Test
+    public void delta_rejection_is_cleared_only_when_a_full_state_is_acknowledged() {
+        Fixture f = new Fixture(true);
+        ClusterFixture cf = ClusterFixture.forFlatCluster(3).bringEntireClusterUp().assignDummyRpcAddresses();
+        NodeInfo node = cf.cluster().getNodeInfo(Node.ofStorage(1));
+
+        f.sendAndComplete(largeBundle(10, 3), node, 0);
+        f.sendAndComplete(largeBundle(11, 7), node, ErrorCode.METHOD_FAILED);
+        assertTrue(node.isClusterStateDeltaRejected());
+
+        Request req = f.sendAndComplete(largeBundle(11, 7), node, ErrorCode.CONNECTION);
+        assertThat(req.methodName(), equalTo(RPCCommunicator.SET_DISTRIBUTION_STATES_RPC_METHOD_NAME));
+        assertTrue("Sending a full state is not enough", node.isClusterStateDeltaRejected());
+
+        req = f.sendAndComplete(largeBundle(12, 5), node, 0);
+        assertThat(req.methodName(), equalTo(RPCCommunicator.SET_DISTRIBUTION_STATES_RPC_METHOD_NAME));
+        assertThat(node.isClusterStateDeltaRejected(), is(false));
+    }
+
+    @Test
+    public void bundles_remembered_for_nodes_which_do_not_acknowledge_are_bounded() {
+        Fixture f = new Fixture(true);
+        ClusterFixture cf = ClusterFixture.forFlatCluster(3).bringEntireClusterUp().assignDummyRpcAddresses();
+        NodeInfo node = cf.cluster().getNodeInfo(Node.ofStorage(1));
+
+        f.sendAndComplete(largeBundle(10, 3), node, 0);
+        for (int version = 11; version < 20; version++)
+            f.sendAndComplete(largeBundle(version, version % 10), node, ErrorCode.CONNECTION);
+        assertThat(f.communicator.bundlesRememberedFor(node.getNode()), is(2));
+
+        f.sendAndComplete(largeBundle(20, 3), node, 0);
+        Request req = f.sendAndComplete(largeBundle(21, 5), node, 0);
+        assertThat(req.methodName(), equalTo(RPCCommunicator.SET_DISTRIBUTION_STATES_DELTA_RPC_METHOD_NAME));
+        assertThat(RPCUtil.baseVersionOfSetDistributionStatesDeltaRequest(req), is(20));
+        assertThat(f.communicator.bundlesRememberedFor(node.getNode()), is(2));
+    }
+
+    @Test
+    public void set_distribution_states_delta_rpc_auto_downgrades_to_v3_on_unknown_method_error() {
+        Fixture f = new Fixture(true);
+        ClusterFixture cf = ClusterFixture.forFlatCluster(3).bringEntireClusterUp().assignDummyRpcAddresses();
+        NodeInfo node = cf.cluster().getNodeInfo(Node.ofStorage(1));
+
+        f.sendAndComplete(largeBundle(10, 3), node, 0);
+        Request req = f.sendAndComplete(largeBundle(11, 7), node, ErrorCode.NO_SUCH_METHOD);
+        assertThat(req.methodName(), equalTo(RPCCommunicator.SET_DISTRIBUTION_STATES_DELTA_RPC_METHOD_NAME));
+        assertThat(node.getVersion(), is(RPCCommunicator.SET_DISTRIBUTION_STATES_RPC_VERSION));
+
+        req = f.sendAndComplete(largeBundle(11, 7), node, 0);
+        assertThat(req.methodName(), equalTo(RPCCommunicator.SET_DISTRIBUTION_STATES_RPC_METHOD_NAME));
+    }
+
 }
@@ -9,13 +9,27 @@ import com.yahoo.vespa.clustercontroller.core.ClusterStateBundle;
 public class RPCUtil {
 
     public static ClusterStateBundle decodeStateBundleFromSetDistributionStatesRequest(Request req) {
-        final CompressionType type = CompressionType.valueOf(req.parameters().get(0).asInt8());
-        final int uncompressedSize = req.parameters().get(1).asInt32();
-        final byte[] compressedPayload = req.parameters().get(2).asData();
+        SlimeClusterStateBundleCodec codec = new SlimeClusterStateBundleCodec();
+        return codec.decode(encodedBundleFrom(req, 0));
+    }
+
+    /** Returns the base version of the given delta request, which the delta must be applied to */
+    public static int baseVersionOfSetDistributionStatesDeltaRequest(Request req) {
+        return req.parameters().get(0).asInt32();
+    }
 
+    public static ClusterStateBundle decodeStateBundleFromSetDistributionStatesDeltaRequest(Request req, ClusterStateBundle base) {
         SlimeClusterStateBundleCodec codec = new SlimeClusterStateBundleCodec();
+        return codec.decodeDelta(base, encodedBundleFrom(req, 1));
+    }
+
+    private static EncodedClusterStateBundle encodedBundleFrom(Request req, int firstParameter) {
+        final CompressionType type = CompressionType.valueOf(req.parameters().get(firstParameter).asInt8());
+        final int uncompressedSize = req.parameters().get(firstParameter + 1).asInt32();
+        final byte[] compressedPayload = req.parameters().get(firstParameter + 2).asData();
+
         Compressor.Compression compression = new Compressor.Compression(type, uncompressedSize, compressedPayload);
-        return codec.decode(EncodedClusterStateBundle.fromCompressionBuffer(compression));
+        return EncodedClusterStateBundle.fromCompressionBuffer(compression);
     }
 
 }
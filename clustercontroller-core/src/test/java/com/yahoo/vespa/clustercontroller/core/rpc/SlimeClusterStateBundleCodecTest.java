@@ -1,13 +1,24 @@
 // Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.vespa.clustercontroller.core.rpc;
 
+import com.yahoo.vdslib.state.ClusterState;
+import com.yahoo.vdslib.state.Node;
+import com.yahoo.vdslib.state.NodeState;
+import com.yahoo.vdslib.state.NodeType;
+import com.yahoo.vdslib.state.State;
+import com.yahoo.vespa.clustercontroller.core.AnnotatedClusterState;
 import com.yahoo.vespa.clustercontroller.core.ClusterStateBundle;
 import com.yahoo.vespa.clustercontroller.core.ClusterStateBundleUtil;
 import com.yahoo.vespa.clustercontroller.core.StateMapping;
 import org.junit.Test;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 
 public class SlimeClusterStateBundleCodecTest {
@@ -24,6 +35,12 @@ public class SlimeClusterStateBundleCodecTest {
         return codec.decodeWithEnvelope(encoded);
     }
 
+    private static ClusterStateBundle roundtripEncodeDelta(ClusterStateBundle base, ClusterStateBundle stateBundle) {
+        SlimeClusterStateBundleCodec codec = new SlimeClusterStateBundleCodec();
+        EncodedClusterStateBundle encoded = codec.encodeDelta(base, stateBundle).get();
+        return codec.decodeDelta(base, encoded);
+    }
+
     @Test
     public void baseline_only_bundle_can_be_round_trip_encoded() {
         ClusterStateBundle stateBundle = ClusterStateBundleUtil.makeBundle("distributor:2 storage:2");
@@ -59,6 +76,93 @@ public class SlimeClusterStateBundleCodecTest {
         assertThat(decodedBundle, equalTo(stateBundle));
     }
 
+    @Test
+    public void baseline_only_bundle_can_be_round_trip_encoded_as_delta() {
+        ClusterStateBundle base = ClusterStateBundleUtil.makeBundle("version:3 distributor:4 storage:4 .3.s:m");
+        ClusterStateBundle stateBundle = ClusterStateBundleUtil.makeBundle("version:4 bits:17 distributor:4 .1.s:d storage:5 .2.s:m .2.m:foo");
+        assertThat(roundtripEncodeDelta(base, stateBundle), equalTo(stateBundle));
+    }
+
+    @Test
+    public void multi_space_state_bundle_can_be_round_trip_encoded_as_delta() {
+        ClusterStateBundle base = ClusterStateBundleUtil.makeBundle("version:5 distributor:2 storage:2",
+                StateMapping.of("default", "version:5 distributor:2 storage:2 .0.s:d"),
+                StateMapping.of("global", "version:5 distributor:2 storage:2"));
+        ClusterStateBundle stateBundle = ClusterStateBundleUtil.makeBundle("version:6 cluster:d distributor:2 storage:2",
+                StateMapping.of("default", "version:6 cluster:d distributor:2 storage:2"),
+                StateMapping.of("global", "version:6 cluster:d distributor:2 .1.s:d storage:2"));
+        assertThat(roundtripEncodeDelta(base, stateBundle), equalTo(stateBundle));
+    }
+
+    @Test
+    public void delta_is_not_encoded_between_bundles_with_different_bucket_spaces() {
+        ClusterStateBundle base = ClusterStateBundleUtil.makeBundle("version:5 distributor:2 storage:2");
+        ClusterStateBundle stateBundle = ClusterStateBundleUtil.makeBundle("version:6 distributor:2 storage:2",
+                StateMapping.of("default", "version:6 distributor:2 storage:2"));
+        assertFalse(new SlimeClusterStateBundleCodec().encodeDelta(base, stateBundle).isPresent());
+    }
+
+    @Test
+    public void delta_for_few_node_changes_is_much_smaller_than_full_bundle() {
+        Random random = new Random(0);
+        ClusterState baseState = randomState(random, 1000);
+        ClusterState state = baseState.clone();
+        state.setVersion(baseState.getVersion() + 1);
+        state.setNodeState(new Node(NodeType.STORAGE, 17), new NodeState(NodeType.STORAGE, State.DOWN).setDescription("gone"));
+        state.setNodeState(new Node(NodeType.DISTRIBUTOR, 411), new NodeState(NodeType.DISTRIBUTOR, State.UP));
+        ClusterStateBundle base = ClusterStateBundle.ofBaselineOnly(AnnotatedClusterState.withoutAnnotations(baseState));
+        ClusterStateBundle stateBundle = ClusterStateBundle.ofBaselineOnly(AnnotatedClusterState.withoutAnnotations(state));
+
+        SlimeClusterStateBundleCodec codec = new SlimeClusterStateBundleCodec();
+        int fullSize = codec.encode(stateBundle).getCompression().data().length;
+        int deltaSize = codec.encodeDelta(base, stateBundle).get().getCompression().data().length;
+        assertThat(deltaSize * 20, lessThan(fullSize));
+        assertThat(roundtripEncodeDelta(base, stateBundle), equalTo(codec.decode(codec.encode(stateBundle))));
+    }
+
+    @Test
+    public void random_deltas_give_same_bundles_as_full_encoding() {
+        SlimeClusterStateBundleCodec codec = new SlimeClusterStateBundleCodec();
+        Random random = new Random(1);
+        ClusterStateBundle base = randomBundle(random);
+        for (int i = 0; i < 500; i++) {
+            ClusterStateBundle stateBundle = randomBundle(random);
+            assertThat("Delta from " + base + " to " + stateBundle,
+                       roundtripEncodeDelta(base, stateBundle),
+                       equalTo(codec.decode(codec.encode(stateBundle))));
+            base = stateBundle;
+        }
+    }
+
+    private static ClusterStateBundle randomBundle(Random random) {
+        Map<String, AnnotatedClusterState> derivedStates = new HashMap<>();
+        derivedStates.put("default", AnnotatedClusterState.withoutAnnotations(randomState(random, 8)));
+        derivedStates.put("global", AnnotatedClusterState.withoutAnnotations(randomState(random, 8)));
+        return ClusterStateBundle.of(AnnotatedClusterState.withoutAnnotations(randomState(random, 8)), derivedStates);
+    }
+
+    private static ClusterState randomState(Random random, int maxNodes) {
+        ClusterState state = ClusterState.emptyState();
+        state.setVersion(random.nextInt(100));
+        state.setDistributionBits(8 + random.nextInt(12));
+        if (random.nextInt(5) == 0)
+            state.setClusterState(State.DOWN);
+        for (NodeType type : NodeType.getTypes()) {
+            for (int index = 0, nodes = random.nextInt(maxNodes + 1); index < nodes; index++) {
+                State nodeState = type == NodeType.STORAGE
+                        ? new State[] { State.UP, State.DOWN, State.MAINTENANCE, State.RETIRED, State.INITIALIZING }[random.nextInt(5)]
+                        : new State[] { State.UP, State.DOWN, State.INITIALIZING }[random.nextInt(3)];
+                NodeState ns = new NodeState(type, nodeState);
+                if (random.nextBoolean())
+                    ns.setDescription("reason " + random.nextInt(3));
+                if (nodeState == State.INITIALIZING)
+                    ns.setInitProgress(random.nextInt(10) / 10.0);
+                state.setNodeState(new Node(type, index), ns);
+            }
+        }
+        return state;
+    }
+
     @Test
     public void uncompressed_enveloped_bundle_can_be_roundtrip_encoded() {
         // Insufficient length and too much entropy to be compressed
@@ -63,6 +63,11 @@ public class VespaMetricSet {
         metrics.add(new Metric("jrt.transport.server.unencrypted-connections-established"));
         metrics.add(new Metric("jrt.transport.client.unencrypted-connections-established"));
 
+        // Java (JRT) connection buffer pool metrics
+        metrics.add(new Metric("jrt.transport.buffer-pool.hits"));
+        metrics.add(new Metric("jrt.transport.buffer-pool.misses"));
+        metrics.add(new Metric("jrt.transport.buffer-pool.bytes-retained.max"));
+
         // C++ TLS metrics
         metrics.add(new Metric("vds.server.network.tls-handshakes-failed"));
         metrics.add(new Metric("vds.server.network.peer-authorization-failures"));
@@ -210,6 +215,8 @@ public class VespaMetricSet {
         metrics.add(new Metric("query_latency.99percentile"));
         metrics.add(new Metric("failed_queries.rate"));
         metrics.add(new Metric("degraded_queries.rate"));
+        metrics.add(new Metric("hedged_queries.rate"));
+        metrics.add(new Metric("hedged_queries_won.rate"));
         metrics.add(new Metric("hits_per_query.average"));
         metrics.add(new Metric("documents_covered.count"));
         metrics.add(new Metric("documents_total.count"));
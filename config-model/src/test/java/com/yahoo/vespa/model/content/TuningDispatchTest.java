@@ -45,6 +45,14 @@ public class TuningDispatchTest {
         assertNull(dispatch.getMinActiveDocsCoverage());
     }
 
+    @Test
+    public void requireThatBestOfRandom2DispatchWork() {
+        TuningDispatch dispatch = new TuningDispatch.Builder()
+                .setDispatchPolicy("best-of-random-2")
+                .build();
+        assertTrue(TuningDispatch.DispatchPolicy.BEST_OF_RANDOM_2 == dispatch.getDispatchPolicy());
+    }
+
     @Test
     public void requireThatDefaultsAreNull() {
         TuningDispatch dispatch = new TuningDispatch.Builder().build();
@@ -6,11 +6,13 @@ import com.yahoo.log.LogLevel;
 import com.yahoo.vespa.config.*;
 import com.yahoo.vespa.config.ErrorCode;
 import com.yahoo.vespa.config.protocol.JRTConfigRequestFactory;
+import com.yahoo.vespa.config.protocol.JRTServerConfigBatchRequest;
 import com.yahoo.vespa.config.protocol.JRTServerConfigRequest;
 import com.yahoo.vespa.config.protocol.JRTServerConfigRequestV3;
 
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.Optional;
 import java.util.Set;
 import java.util.logging.Logger;
 
@@ -58,6 +60,7 @@ public class ConfigProxyRpcServer implements Runnable, TargetWatcher, RpcServer
 
     private void declareConfigMethods() {
         supervisor.addMethod(JRTMethods.createConfigV3GetConfigMethod(this, "getConfigV3"));
+        supervisor.addMethod(JRTMethods.createConfigV3GetConfigsMethod(this, "getConfigsV3"));
         supervisor.addMethod(new Method("ping", "", "i",
                 this, "ping")
                 .methodDesc("ping")
@@ -118,6 +121,21 @@ public class ConfigProxyRpcServer implements Runnable, TargetWatcher, RpcServer
         }
     }
 
+    /**
+     * Handles RPC method "config.v3.getConfigs" requests, for a batch of configs which is responded to as a whole.
+     *
+     * @param req a Request
+     */
+    @SuppressWarnings({"UnusedDeclaration"})
+    public final void getConfigsV3(Request req) {
+        log.log(LogLevel.SPAM, () -> "getConfigsV3");
+        JRTServerConfigBatchRequest batch = JRTServerConfigBatchRequest.createFromRequest(req);
+        if (batch.validateParameters()) {
+            preHandle(req);
+            getConfigsImpl(batch);
+        }
+    }
+
     /**
      * Returns 0 if server is alive.
      *
@@ -257,6 +275,68 @@ public class ConfigProxyRpcServer implements Runnable, TargetWatcher, RpcServer
         }
     }
 
+    /**
+     * Resolves each request in the given batch like a separate request, which means those without new config
+     * are put on the delayed responses queue. The batch is returned with all its configs as soon as one of its
+     * requests is responded to, now or when it is delayed.
+     *
+     * @param batch a batch of requests
+     */
+    private void getConfigsImpl(JRTServerConfigBatchRequest batch) {
+        synchronized (batch) {
+            boolean respond = false;
+            for (JRTServerConfigRequest request : batch.getRequests()) {
+                request.getRequestTrace().trace(TRACELEVEL, "Config proxy getConfigs()");
+                if ( ! isProtocolVersionSupported(request)) {
+                    respond = true;
+                } else if ( ! request.validateParameters()) {
+                    log.log(LogLevel.WARNING, "Parameters for request " + request + " in " + batch.getShortDescription() +
+                                              " did not validate: " + request.errorCode() + " : " + request.errorMessage());
+                    respond = true;
+                } else {
+                    try {
+                        RawConfig config = proxyServer.resolveConfig(request);
+                        if (ProxyServer.configOrGenerationHasChanged(config, request)) {
+                            addOkResponse(request, config);
+                            respond = true;
+                        }
+                    } catch (Exception e) {
+                        log.log(LogLevel.WARNING, "Failed resolving config for " + request.getShortDescription(), e);
+                        request.addErrorResponse(ErrorCode.INTERNAL_ERROR, e.getMessage());
+                        respond = true;
+                    }
+                }
+            }
+            if (respond)
+                returnBatch(batch);
+        }
+    }
+
+    /**
+     * Returns the given batch, after removing the requests in it without a response from the delayed responses
+     * queue, and responding to them with the config in the cache, which the client has if it has not changed.
+     * Must be called while synchronized on the batch.
+     */
+    private void returnBatch(JRTServerConfigBatchRequest batch) {
+        for (JRTServerConfigRequest request : batch.getRequests()) {
+            if (request.getRequest().isError() || request.getRequest().returnValues().size() > 0) continue;
+
+            proxyServer.delayedResponses.remove(request);
+            RawConfig config = proxyServer.getMemoryCache().get(new ConfigCacheKey(request.getConfigKey(), request.getConfigKey().getMd5()));
+            if (config != null)
+                addOkResponse(request, config);
+            else
+                request.addErrorResponse(com.yahoo.jrt.ErrorCode.TIMEOUT, "No config is available yet");
+        }
+        batch.addResponses();
+        log.log(LogLevel.DEBUG, () -> "Return response: " + batch.getShortDescription());
+        try {
+            batch.getRequest().returnRequest();
+        } catch (IllegalStateException e) {
+            log.log(LogLevel.DEBUG, () -> "Something bad happened when sending response for '" + batch.getShortDescription() + "':" + e.getMessage());
+        }
+    }
+
     private String printSourceConnections() {
         StringBuilder sb = new StringBuilder();
         for (String s : proxyServer.getSourceConnections()) {
@@ -303,7 +383,7 @@ public class ConfigProxyRpcServer implements Runnable, TargetWatcher, RpcServer
         for (Iterator<DelayedResponse> it = proxyServer.delayedResponses.responses().iterator(); it.hasNext(); ) {
             DelayedResponse delayed = it.next();
             JRTServerConfigRequest request = delayed.getRequest();
-            if (request.getRequest().target().equals(target)) {
+            if (target.equals(rpcRequest(request).target())) {
                 log.log(LogLevel.DEBUG, () -> "Removing " + request.getShortDescription());
                 it.remove();
             }
@@ -312,13 +392,23 @@ public class ConfigProxyRpcServer implements Runnable, TargetWatcher, RpcServer
         // requesting this config?
     }
 
+    /** Returns the RPC request of the given request, which is that of its batch if it is part of one */
+    private static Request rpcRequest(JRTServerConfigRequest request) {
+        return JRTServerConfigBatchRequest.batchOf(request).map(JRTServerConfigBatchRequest::getRequest).orElse(request.getRequest());
+    }
+
     public void returnOkResponse(JRTServerConfigRequest request, RawConfig config) {
-        request.getRequestTrace().trace(TRACELEVEL, "Config proxy returnOkResponse()");
-        request.addOkResponse(config.getPayload(), config.getGeneration(), config.isInternalRedeploy(), config.getConfigMd5());
-        log.log(LogLevel.DEBUG, () -> "Return response: " + request.getShortDescription() + ",configMd5=" + config.getConfigMd5() +
-                ",generation=" + config.getGeneration());
-        log.log(LogLevel.SPAM, () -> "Config payload in response for " + request.getShortDescription() + ":" + config.getPayload());
+        Optional<JRTServerConfigBatchRequest> batch = JRTServerConfigBatchRequest.batchOf(request);
+        if (batch.isPresent()) {
+            synchronized (batch.get()) {
+                if (batch.get().isResponded()) return;
+                addOkResponse(request, config);
+                returnBatch(batch.get());
+            }
+            return;
+        }
 
+        addOkResponse(request, config);
 
         // TODO Catch exception for now, since the request might have been returned in CheckDelayedResponse
         // TODO Move logic so that all requests are returned in CheckDelayedResponse
@@ -331,7 +421,25 @@ public class ConfigProxyRpcServer implements Runnable, TargetWatcher, RpcServer
 
     public void returnErrorResponse(JRTServerConfigRequest request, int errorCode, String message) {
         request.getRequestTrace().trace(TRACELEVEL, "Config proxy returnErrorResponse()");
+        Optional<JRTServerConfigBatchRequest> batch = JRTServerConfigBatchRequest.batchOf(request);
+        if (batch.isPresent()) {
+            synchronized (batch.get()) {
+                if (batch.get().isResponded()) return;
+                request.addErrorResponse(errorCode, message);
+                returnBatch(batch.get());
+            }
+            return;
+        }
+
         request.addErrorResponse(errorCode, message);
         request.getRequest().returnRequest();
     }
+
+    private void addOkResponse(JRTServerConfigRequest request, RawConfig config) {
+        request.getRequestTrace().trace(TRACELEVEL, "Config proxy returnOkResponse()");
+        request.addOkResponse(config.getPayload(), config.getGeneration(), config.isInternalRedeploy(), config.getConfigMd5());
+        log.log(LogLevel.DEBUG, () -> "Return response: " + request.getShortDescription() + ",configMd5=" + config.getConfigMd5() +
+                ",generation=" + config.getGeneration());
+        log.log(LogLevel.SPAM, () -> "Config payload in response for " + request.getShortDescription() + ":" + config.getPayload());
+    }
 }
@@ -1,6 +1,8 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.vespa.config.proxy;
 
+import com.yahoo.vespa.config.protocol.JRTServerConfigRequest;
+
 import java.util.concurrent.DelayQueue;
 
 /**
@@ -27,6 +29,14 @@ class DelayedResponses {
         return delayedResponses.remove(response);
     }
 
+    /** Removes the delayed response to the given request, if any, and returns whether there was one */
+    boolean remove(JRTServerConfigRequest request) {
+        boolean removed = delayedResponses.removeIf(response -> response.getRequest() == request);
+        if (removed)
+            statistics.decDelayedResponses();
+        return removed;
+    }
+
     DelayQueue<DelayedResponse> responses() {
         return delayedResponses;
     }
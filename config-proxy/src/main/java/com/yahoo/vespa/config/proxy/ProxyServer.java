@@ -9,6 +9,7 @@ import com.yahoo.jrt.Transport;
 import com.yahoo.log.LogLevel;
 import com.yahoo.log.LogSetup;
 import com.yahoo.log.event.Event;
+import com.yahoo.net.HostName;
 import com.yahoo.vespa.config.JRTConnectionPool;
 import com.yahoo.vespa.config.RawConfig;
 import com.yahoo.vespa.config.TimingValues;
@@ -87,7 +88,7 @@ public class ProxyServer implements Runnable {
         this.rpcServer = createRpcServer(spec);
         clientUpdater = new ClientUpdater(rpcServer, statistics, delayedResponses);
         this.configClient = createClient(clientUpdater, delayedResponses, source, timingValues, memoryCache, configClient);
-        new FileDistributionRpcServer(supervisor, new FileDownloader(new JRTConnectionPool(source)));
+        createFileDistributionRpcServer(spec, new FileDownloader(new JRTConnectionPool(source)));
         new UrlDownloadRpcServer(supervisor);
     }
 
@@ -166,6 +167,12 @@ public class ProxyServer implements Runnable {
                 : client;
     }
 
+    // Serves downloaded file references to other nodes when this has an address they can reach
+    private FileDistributionRpcServer createFileDistributionRpcServer(Spec spec, FileDownloader downloader) {
+        return  (spec == null) ? new FileDistributionRpcServer(supervisor, downloader)
+                : new FileDistributionRpcServer(supervisor, downloader, "tcp/" + HostName.getLocalhost() + ":" + spec.port());
+    }
+
     private ConfigProxyRpcServer createRpcServer(Spec spec) {
         return  (spec == null) ? null : new ConfigProxyRpcServer(this, supervisor, spec); // TODO: Try to avoid first argument being 'this'
     }
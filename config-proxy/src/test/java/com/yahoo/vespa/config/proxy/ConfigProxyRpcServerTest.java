@@ -2,19 +2,35 @@
 package com.yahoo.vespa.config.proxy;
 
 import com.yahoo.config.subscription.ConfigSourceSet;
+import com.yahoo.jrt.ListenFailedException;
 import com.yahoo.jrt.Request;
 import com.yahoo.jrt.Spec;
 import com.yahoo.jrt.StringValue;
 import com.yahoo.jrt.Supervisor;
+import com.yahoo.jrt.Target;
 import com.yahoo.jrt.Transport;
+import com.yahoo.vespa.config.ConfigKey;
 import com.yahoo.vespa.config.RawConfig;
+import com.yahoo.vespa.config.protocol.CompressionType;
+import com.yahoo.vespa.config.protocol.DefContent;
+import com.yahoo.vespa.config.protocol.JRTClientConfigBatchRequest;
+import com.yahoo.vespa.config.protocol.JRTClientConfigRequest;
+import com.yahoo.vespa.config.protocol.JRTClientConfigRequestV3;
+import com.yahoo.vespa.config.protocol.Trace;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author hmusum
@@ -26,11 +42,13 @@ public class ConfigProxyRpcServerTest {
     private static final String address = "tcp/" + hostname + ":" + port;
     private ProxyServer proxyServer;
     private ConfigProxyRpcServer rpcServer;
+    private Supervisor supervisor;
 
     @Before
     public void setup() {
         proxyServer = ProxyServer.createTestServer(new ConfigSourceSet(address));
-        rpcServer = new ConfigProxyRpcServer(proxyServer, new Supervisor(new Transport()), null);
+        supervisor = new Supervisor(new Transport());
+        rpcServer = new ConfigProxyRpcServer(proxyServer, supervisor, null);
     }
 
     @After
@@ -38,6 +56,62 @@ public class ConfigProxyRpcServerTest {
         rpcServer.shutdown();
     }
 
+    /**
+     * Tests getConfigs RPC command, with a config which has changed
+     */
+    @Test
+    public void testRpcMethodGetConfigsRespondsAtOnceWhenAConfigHasChanged() throws ListenFailedException {
+        proxyServer.getMemoryCache().put(ConfigTester.fooConfig);
+        proxyServer.getMemoryCache().put(ConfigTester.barConfig);
+        JRTClientConfigRequest foo = createClientRequest(ConfigTester.fooConfig, "", 0);
+        JRTClientConfigRequest bar = createClientRequest(ConfigTester.barConfig, ConfigTester.barConfig.getConfigMd5(), 1);
+        JRTClientConfigBatchRequest batch = JRTClientConfigBatchRequest.create(Arrays.asList(foo, bar));
+
+        connect().invokeSync(batch.getRequest(), 60);
+        batch.distributeResponse();
+        assertTrue(foo.validateResponse());
+        assertTrue(foo.hasUpdatedConfig());
+        assertTrue(bar.validateResponse());
+        assertFalse(bar.hasUpdatedConfig());
+        assertFalse(bar.hasUpdatedGeneration());
+        assertThat(proxyServer.delayedResponses.size(), is(0));
+    }
+
+    /**
+     * Tests getConfigs RPC command, with configs which have not changed until after the request
+     */
+    @Test
+    public void testRpcMethodGetConfigsRespondsWithAllConfigsWhenOneIsUpdated() throws Exception {
+        proxyServer.getMemoryCache().put(ConfigTester.fooConfig);
+        proxyServer.getMemoryCache().put(ConfigTester.barConfig);
+        JRTClientConfigRequest foo = createClientRequest(ConfigTester.fooConfig, ConfigTester.fooConfig.getConfigMd5(), 1);
+        JRTClientConfigRequest bar = createClientRequest(ConfigTester.barConfig, ConfigTester.barConfig.getConfigMd5(), 1);
+        JRTClientConfigBatchRequest batch = JRTClientConfigBatchRequest.create(Arrays.asList(foo, bar));
+
+        CountDownLatch returned = new CountDownLatch(1);
+        connect().invokeAsync(batch.getRequest(), 60, request -> returned.countDown());
+        long end = System.currentTimeMillis() + 60_000;
+        while (proxyServer.delayedResponses.size() < 2 && System.currentTimeMillis() < end)
+            Thread.sleep(10);
+        assertThat(proxyServer.delayedResponses.size(), is(2));
+        assertThat(returned.getCount(), is(1L));
+
+        RawConfig updatedFoo = new RawConfig(ConfigTester.fooConfig.getKey(), ConfigTester.fooConfig.getDefMd5(),
+                                             ConfigTester.fooConfig.getPayload(), ConfigTester.fooConfig.getConfigMd5(),
+                                             2, false, ConfigTester.fooConfig.getDefContent(), Optional.empty());
+        proxyServer.getMemoryCache().put(updatedFoo);
+        new ClientUpdater(rpcServer, proxyServer.getStatistics(), proxyServer.delayedResponses).updateSubscribers(updatedFoo);
+
+        assertTrue(returned.await(60, TimeUnit.SECONDS));
+        batch.distributeResponse();
+        assertTrue(foo.validateResponse());
+        assertTrue(foo.hasUpdatedGeneration());
+        assertThat(foo.getNewGeneration(), is(2L));
+        assertTrue(bar.validateResponse());
+        assertFalse(bar.hasUpdatedGeneration());
+        assertThat(proxyServer.delayedResponses.size(), is(0));
+    }
+
     @Test
     public void basic() {
         ProxyServer proxy = ProxyServer.createTestServer(new MockConfigSource(new MockClientUpdater()));
@@ -251,4 +325,18 @@ public class ConfigProxyRpcServerTest {
         assertThat(req.returnValues().get(0).asString(), is("success"));
     }
 
+    private Target connect() throws ListenFailedException {
+        int port = supervisor.listen(new Spec(0)).port();
+        Supervisor client = new Supervisor(new Transport());
+        return client.connect(new Spec("localhost", port));
+    }
+
+    private static JRTClientConfigRequest createClientRequest(RawConfig config, String configMd5, long generation) {
+        return JRTClientConfigRequestV3.createWithParams(new ConfigKey<>(config.getName(), config.getConfigId(), config.getNamespace(),
+                                                                         config.getDefMd5(), null),
+                                                         DefContent.fromList(Collections.emptyList()), "fromHost", configMd5,
+                                                         generation, 100000, Trace.createDummy(), CompressionType.UNCOMPRESSED,
+                                                         Optional.empty());
+    }
+
 }
@@ -4,6 +4,9 @@ package com.yahoo.config.subscription.impl;
 import java.text.SimpleDateFormat;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.TimeZone;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -23,6 +26,8 @@ import com.yahoo.vespa.config.ConnectionPool;
 import com.yahoo.vespa.config.ErrorCode;
 import com.yahoo.vespa.config.ErrorType;
 import com.yahoo.vespa.config.TimingValues;
+import com.yahoo.vespa.config.JRTMethods;
+import com.yahoo.vespa.config.protocol.JRTClientConfigBatchRequest;
 import com.yahoo.vespa.config.protocol.JRTClientConfigRequest;
 import com.yahoo.yolean.Exceptions;
 import com.yahoo.vespa.config.protocol.JRTConfigRequestFactory;
@@ -33,6 +38,11 @@ import com.yahoo.vespa.config.protocol.Trace;
  * It uses the {@link JRTConfigSubscription} and {@link JRTClientConfigRequest}
  * as context, and puts the requests objects on a queue on the subscription,
  * for handling by the user thread.
+ * <p>
+ * Requests of different subscriptions which are scheduled to be sent at about the same time are sent
+ * together, as one {@link JRTClientConfigBatchRequest}, such that the subscriptions of a subscriber are
+ * served by a single long-polling request to the config source, which returns all the configs of a new
+ * generation at once. Requests are sent separately if the config source does not support batches.
  *
  * @author Vegard Havdal
  */
@@ -49,6 +59,10 @@ public class JRTConfigRequester implements RequestWaiter {
     private Instant noApplicationWarningLogged = Instant.MIN;
     private static final Duration delayBetweenWarnings = Duration.ofSeconds(60);
     private final ConnectionPool connectionPool;
+    /** Requests which are scheduled but not yet sent. Guarded by itself */
+    private final List<GetConfigTask> pendingRequests = new ArrayList<>();
+    /** Whether the config source accepts batches of requests; unset when one responds that it does not */
+    private volatile boolean batching = true;
     static final float randomFraction = 0.2f;
     /* Time to be added to server timeout to create client timeout. This is the time allowed for the server to respond after serverTimeout has elapsed. */
     private static final Double additionalTimeForClientTimeout = 5.0;
@@ -106,9 +120,49 @@ public class JRTConfigRequester implements RequestWaiter {
         connection.invokeAsync(req.getRequest(), jrtClientTimeout, this);
     }
 
-    @SuppressWarnings("unchecked")
+    private void doBatchRequest(List<GetConfigTask> tasks) {
+        Connection connection = connectionPool.getCurrent();
+        List<JRTClientConfigRequest> requests = new ArrayList<>();
+        for (GetConfigTask task : tasks) {
+            task.jrtReq.getRequest().setContext(new RequestContext(task.sub, task.jrtReq, connection));
+            if ( ! task.jrtReq.validateParameters())
+                throw new ConfigurationRuntimeException("Error in parameters for config request: " + task.jrtReq);
+            requests.add(task.jrtReq);
+        }
+        JRTClientConfigBatchRequest batch = JRTClientConfigBatchRequest.create(requests);
+        batch.getRequest().setContext(new BatchRequestContext(tasks, batch));
+        double jrtClientTimeout = getClientTimeout(batch.getTimeout());
+        if (log.isLoggable(LogLevel.DEBUG)) {
+            log.log(LogLevel.DEBUG, "Requesting config for " + tasks.size() + " subscriptions on connection " + connection
+                    + " with RPC timeout " + jrtClientTimeout);
+        }
+        connection.invokeAsync(batch.getRequest(), jrtClientTimeout, this);
+    }
+
     @Override
     public void handleRequestDone(Request req) {
+        if (req.getContext() instanceof BatchRequestContext)
+            handleBatchRequestDone((BatchRequestContext) req.getContext());
+        else
+            handleSingleRequestDone(req);
+    }
+
+    private void handleBatchRequestDone(BatchRequestContext context) {
+        if (context.batch.getRequest().errorCode() == com.yahoo.jrt.ErrorCode.NO_SUCH_METHOD) {
+            log.log(LogLevel.DEBUG, "Config source does not support " + JRTMethods.configV3getConfigsMethodName +
+                                    ", sending requests separately");
+            batching = false;
+            for (GetConfigTask task : context.tasks)
+                task.run();
+            return;
+        }
+        context.batch.distributeResponse();
+        for (GetConfigTask task : context.tasks)
+            handleSingleRequestDone(task.jrtReq.getRequest());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void handleSingleRequestDone(Request req) {
         JRTConfigSubscription<ConfigInstance> sub = null;
         try {
             RequestContext context = (RequestContext) req.getContext();
@@ -276,7 +330,36 @@ public class JRTConfigRequester implements RequestWaiter {
             log.log(LogLevel.DEBUG, "My timing values: " + timingValues);
             log.log(LogLevel.DEBUG, "Scheduling new request " + delay + " millis from now for " + jrtReqNew.getConfigKey());
         }
-        scheduler.schedule(new GetConfigTask(jrtReqNew, sub), delay, TimeUnit.MILLISECONDS);
+        GetConfigTask task = new GetConfigTask(jrtReqNew, sub, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay));
+        synchronized (pendingRequests) {
+            pendingRequests.add(task);
+        }
+        scheduler.schedule(() -> sendPendingRequests(task), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends the given request, unless it was already sent together with another, and all other pending requests
+     * which are due within the normal delay between requests, as one batch if there are several.
+     * Requests which are delayed longer, e.g., to back off after errors, are left to be sent when they are due.
+     */
+    private void sendPendingRequests(GetConfigTask trigger) {
+        List<GetConfigTask> tasks = new ArrayList<>();
+        synchronized (pendingRequests) {
+            if ( ! pendingRequests.remove(trigger)) return;
+            tasks.add(trigger);
+            long horizon = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timingValues.getFixedDelay());
+            for (Iterator<GetConfigTask> pending = pendingRequests.iterator(); pending.hasNext(); ) {
+                GetConfigTask task = pending.next();
+                if (batching && task.dueNanos <= horizon) {
+                    tasks.add(task);
+                    pending.remove();
+                }
+            }
+        }
+        if (tasks.size() == 1)
+            trigger.run();
+        else
+            doBatchRequest(tasks);
     }
 
     /**
@@ -285,10 +368,12 @@ public class JRTConfigRequester implements RequestWaiter {
     private class GetConfigTask implements Runnable {
         private final JRTClientConfigRequest jrtReq;
         private final JRTConfigSubscription<?> sub;
+        private final long dueNanos;
 
-        GetConfigTask(JRTClientConfigRequest jrtReq, JRTConfigSubscription<?> sub) {
+        GetConfigTask(JRTClientConfigRequest jrtReq, JRTConfigSubscription<?> sub, long dueNanos) {
             this.jrtReq = jrtReq;
             this.sub = sub;
+            this.dueNanos = dueNanos;
         }
 
         public void run() {
@@ -330,6 +415,16 @@ public class JRTConfigRequester implements RequestWaiter {
         }
     }
 
+    private static class BatchRequestContext {
+        final List<GetConfigTask> tasks;
+        final JRTClientConfigBatchRequest batch;
+
+        private BatchRequestContext(List<GetConfigTask> tasks, JRTClientConfigBatchRequest batch) {
+            this.tasks = tasks;
+            this.batch = batch;
+        }
+    }
+
     int getTransientFailures() {
         return transientFailures;
     }
@@ -7,6 +7,9 @@ import com.yahoo.jrt.Supervisor;
 import com.yahoo.vespa.config.ConfigPayload;
 import com.yahoo.vespa.config.Connection;
 import com.yahoo.vespa.config.ConnectionPool;
+import com.yahoo.vespa.config.JRTMethods;
+import com.yahoo.vespa.config.protocol.JRTServerConfigBatchRequest;
+import com.yahoo.vespa.config.protocol.JRTServerConfigRequest;
 import com.yahoo.vespa.config.protocol.JRTServerConfigRequestV3;
 import com.yahoo.vespa.config.protocol.Payload;
 import com.yahoo.vespa.config.util.ConfigUtils;
@@ -113,7 +116,17 @@ public class MockConnection implements ConnectionPool, com.yahoo.vespa.config.Co
     static class OKResponseHandler extends AbstractResponseHandler {
 
         protected void createResponse() {
-            JRTServerConfigRequestV3 jrtReq = JRTServerConfigRequestV3.createFromRequest(request);
+            if (request.methodName().equals(JRTMethods.configV3getConfigsMethodName)) {
+                JRTServerConfigBatchRequest batch = JRTServerConfigBatchRequest.createFromRequest(request);
+                for (JRTServerConfigRequest jrtReq : batch.getRequests())
+                    addOkResponse(jrtReq);
+                batch.addResponses();
+            } else {
+                addOkResponse(JRTServerConfigRequestV3.createFromRequest(request));
+            }
+        }
+
+        private static void addOkResponse(JRTServerConfigRequest jrtReq) {
             Payload payload = Payload.from(ConfigPayload.empty());
             long generation = 1;
             jrtReq.addOkResponse(payload, generation, false, ConfigUtils.getMd5(payload.getData()));
@@ -24,4 +24,22 @@ public class JRTMethods {
     public static boolean checkV3ReturnTypes(Request request) {
         return request.checkReturnTypes(JRTMethods.configV3GetConfigResponseTypes);
     }
+
+    public static final String configV3getConfigsMethodName = "config.v3.getConfigs";
+    private static final String configV3GetConfigsRequestTypes = "S";
+    private static final String configV3GetConfigsResponseTypes = "SXIS";
+    public static Method createConfigV3GetConfigsMethod(Object handler, String handlerMethod) {
+        return new Method(configV3getConfigsMethodName, configV3GetConfigsRequestTypes, configV3GetConfigsResponseTypes,
+                handler, handlerMethod)
+                .methodDesc("get a batch of configs v3, responding when any of them has changed")
+                .paramDesc(0, "requests", "config requests, as the request parameter of " + configV3getConfigMethodName)
+                .returnDesc(0, "responses", "config responses, empty for a failed request")
+                .returnDesc(1, "payloads", "config response payloads, empty for a failed request")
+                .returnDesc(2, "errorCodes", "error code of each request, or 0 if it did not fail")
+                .returnDesc(3, "errorMessages", "error message of each request, empty if it did not fail");
+    }
+
+    public static boolean checkV3BatchReturnTypes(Request request) {
+        return request.checkReturnTypes(JRTMethods.configV3GetConfigsResponseTypes);
+    }
 }
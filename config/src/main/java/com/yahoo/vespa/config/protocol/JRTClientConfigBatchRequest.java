@@ -0,0 +1,100 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.config.protocol;
+
+import com.yahoo.jrt.DataValue;
+import com.yahoo.jrt.Request;
+import com.yahoo.jrt.StringArray;
+import com.yahoo.jrt.StringValue;
+import com.yahoo.vespa.config.JRTMethods;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A batch of version 3 config requests for config clients, sent as one RPC request. When the batch is returned,
+ * {@link #distributeResponse()} moves the response of each request to it, after which each request can be
+ * inspected as if it had been sent separately.
+ *
+ * See {@link JRTServerConfigBatchRequest} for protocol details.
+ */
+public class JRTClientConfigBatchRequest {
+
+    private final List<JRTClientConfigRequest> requests;
+    private final Request request;
+
+    private JRTClientConfigBatchRequest(List<JRTClientConfigRequest> requests) {
+        if (requests.isEmpty()) throw new IllegalArgumentException("A batch must contain at least one config request");
+
+        String[] parameters = new String[requests.size()];
+        for (int i = 0; i < requests.size(); i++) {
+            if ( ! (requests.get(i) instanceof JRTClientConfigRequestV3))
+                throw new IllegalArgumentException("Only version 3 config requests can be batched, got " + requests.get(i));
+            parameters[i] = requests.get(i).getRequest().parameters().get(0).asString();
+        }
+        this.requests = Collections.unmodifiableList(new ArrayList<>(requests));
+        this.request = new Request(JRTMethods.configV3getConfigsMethodName);
+        this.request.parameters().add(new StringArray(parameters));
+    }
+
+    public static JRTClientConfigBatchRequest create(List<JRTClientConfigRequest> requests) {
+        return new JRTClientConfigBatchRequest(requests);
+    }
+
+    /** Returns the requests in this batch */
+    public List<JRTClientConfigRequest> getRequests() { return requests; }
+
+    public Request getRequest() { return request; }
+
+    /** Returns the shortest server timeout of the requests in this */
+    public long getTimeout() {
+        long timeout = Long.MAX_VALUE;
+        for (JRTClientConfigRequest request : requests) {
+            timeout = Math.min(timeout, request.getTimeout());
+        }
+        return timeout;
+    }
+
+    /**
+     * Moves the response of the returned batch request to the requests in it. If the batch as a whole failed,
+     * or the response is invalid, all the requests get the error of the batch.
+     */
+    public void distributeResponse() {
+        // Checking the return types sets an error on the request if they are wrong
+        if ( ! request.isError() && JRTMethods.checkV3BatchReturnTypes(request) && ! hasResponseForEachRequest())
+            request.setError(com.yahoo.jrt.ErrorCode.BAD_REPLY, "Expected " + requests.size() + " responses");
+        if (request.isError()) {
+            for (JRTClientConfigRequest part : requests) {
+                part.getRequest().setError(request.errorCode(), request.errorMessage());
+            }
+            return;
+        }
+
+        String[] responses = request.returnValues().get(0).asStringArray();
+        byte[][] payloads = request.returnValues().get(1).asDataArray();
+        int[] errorCodes = request.returnValues().get(2).asInt32Array();
+        String[] errorMessages = request.returnValues().get(3).asStringArray();
+        for (int i = 0; i < requests.size(); i++) {
+            Request part = requests.get(i).getRequest();
+            if (errorCodes[i] != 0) {
+                part.setError(errorCodes[i], errorMessages[i]);
+            } else {
+                part.returnValues().add(new StringValue(responses[i]));
+                part.returnValues().add(new DataValue(payloads[i]));
+            }
+        }
+    }
+
+    private boolean hasResponseForEachRequest() {
+        for (int i = 0; i < request.returnValues().size(); i++) {
+            if (request.returnValues().get(i).count() != requests.size()) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "batch " + requests;
+    }
+
+}
@@ -0,0 +1,140 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.config.protocol;
+
+import com.yahoo.jrt.DataArray;
+import com.yahoo.jrt.Int32Array;
+import com.yahoo.jrt.Request;
+import com.yahoo.jrt.StringArray;
+import com.yahoo.jrt.StringValue;
+import com.yahoo.vespa.config.JRTMethods;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A batch of version 3 config requests for config servers, received as one RPC request, which is responded to
+ * with the responses of all the requests in it at once.
+ * <p>
+ * The parameter of the RPC request is an array holding the parameter of each request in the batch, as it would
+ * be sent in a separate {@link JRTMethods#configV3getConfigMethodName} request. The return values are the
+ * responses, payloads, error codes and error messages of each request, in arrays in the same order as the requests.
+ * Each request in the batch is a {@link JRTServerConfigRequestV3} of its own, which is resolved and responded
+ * to as a separate request, except that the RPC request is returned by the owner of this, once, when
+ * responses are added to all the requests of it.
+ *
+ * @see JRTClientConfigBatchRequest
+ */
+public class JRTServerConfigBatchRequest {
+
+    private final Request request;
+    private final List<JRTServerConfigRequest> requests;
+    private boolean responded = false;
+
+    private JRTServerConfigBatchRequest(Request request) {
+        this.request = request;
+        List<JRTServerConfigRequest> requests = new ArrayList<>();
+        if (request.parameters().satisfies("S")) {
+            for (String parameter : request.parameters().get(0).asStringArray()) {
+                Request part = new Request(JRTMethods.configV3getConfigMethodName);
+                part.parameters().add(new StringValue(parameter));
+                part.setContext(this);
+                requests.add(JRTServerConfigRequestV3.createFromRequest(part));
+            }
+        }
+        this.requests = Collections.unmodifiableList(requests);
+    }
+
+    public static JRTServerConfigBatchRequest createFromRequest(Request request) {
+        return new JRTServerConfigBatchRequest(request);
+    }
+
+    /** Returns the batch the given request is part of, or empty if it was received as a separate request */
+    public static Optional<JRTServerConfigBatchRequest> batchOf(JRTServerConfigRequest request) {
+        Object context = request.getRequest().getContext();
+        return context instanceof JRTServerConfigBatchRequest ? Optional.of((JRTServerConfigBatchRequest) context)
+                                                              : Optional.empty();
+    }
+
+    /**
+     * Validates that this holds at least one request. The requests in it are validated when they are resolved.
+     *
+     * @return true if valid, false if not, in which case an error response is added
+     */
+    public boolean validateParameters() {
+        if ( ! requests.isEmpty()) return true;
+
+        addErrorResponse(com.yahoo.jrt.ErrorCode.BAD_REQUEST, "Expected a non-empty array of config requests");
+        return false;
+    }
+
+    /** Returns the requests in this batch, in the order they were sent */
+    public List<JRTServerConfigRequest> getRequests() { return requests; }
+
+    public Request getRequest() { return request; }
+
+    /** Returns the shortest server timeout of the requests in this */
+    public long getTimeout() {
+        long timeout = Long.MAX_VALUE;
+        for (JRTServerConfigRequest request : requests) {
+            timeout = Math.min(timeout, request.getTimeout());
+        }
+        return timeout;
+    }
+
+    public String getClientHostName() {
+        return requests.isEmpty() ? "" : requests.get(0).getClientHostName();
+    }
+
+    /** Returns whether a response, or error response, has been added to this */
+    public boolean isResponded() { return responded; }
+
+    /**
+     * Adds the responses of the requests in this as the response of the batch. All requests must have a response,
+     * or an error response.
+     */
+    public void addResponses() {
+        String[] responses = new String[requests.size()];
+        byte[][] payloads = new byte[requests.size()][];
+        int[] errorCodes = new int[requests.size()];
+        String[] errorMessages = new String[requests.size()];
+        for (int i = 0; i < requests.size(); i++) {
+            Request part = requests.get(i).getRequest();
+            if (part.isError()) {
+                responses[i] = "";
+                payloads[i] = new byte[0];
+                errorCodes[i] = part.errorCode();
+                errorMessages[i] = part.errorMessage();
+            } else {
+                if (part.returnValues().size() < 2)
+                    throw new IllegalStateException("No response has been added to " + requests.get(i));
+                responses[i] = part.returnValues().get(0).asString();
+                payloads[i] = part.returnValues().get(1).asData();
+                errorCodes[i] = 0;
+                errorMessages[i] = "";
+            }
+        }
+        request.returnValues().add(new StringArray(responses));
+        request.returnValues().add(new DataArray(payloads));
+        request.returnValues().add(new Int32Array(errorCodes));
+        request.returnValues().add(new StringArray(errorMessages));
+        responded = true;
+    }
+
+    /** Adds an error response to the batch as a whole */
+    public void addErrorResponse(int errorCode, String message) {
+        request.setError(errorCode, message);
+        responded = true;
+    }
+
+    public String getShortDescription() {
+        return "batch of " + requests.size() + " config requests from " + getClientHostName();
+    }
+
+    @Override
+    public String toString() {
+        return "batch " + requests;
+    }
+
+}
@@ -7,6 +7,7 @@ import com.yahoo.jrt.Request;
 import com.yahoo.vespa.config.ConfigKey;
 import com.yahoo.vespa.config.ErrorCode;
 import com.yahoo.vespa.config.ErrorType;
+import com.yahoo.vespa.config.JRTMethods;
 import com.yahoo.vespa.config.TimingValues;
 import com.yahoo.vespa.config.protocol.JRTServerConfigRequestV3;
 import org.junit.Test;
@@ -14,6 +15,7 @@ import org.junit.Test;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertNotNull;
@@ -276,9 +278,77 @@ public class JRTConfigRequesterTest {
         assertTrue(connection.getNumberOfFailovers() >= 1);
     }
 
+    @Test
+    public void testRequestsOfSubscriptionsAreBatched() {
+        ConfigSubscriber subscriber = new ConfigSubscriber();
+        final TimingValues timingValues = getTestTimingValues();
+        final MockConnection connection = new MockConnection();
+        JRTConfigRequester requester = new JRTConfigRequester(connection, timingValues);
+        requester.request(createSubscription(subscriber, timingValues, "first"));
+        requester.request(createSubscription(subscriber, timingValues, "second"));
+        assertThat(connection.getNumberOfRequests(), is(2));
+
+        Request batch = waitUntilRequest(connection, JRTMethods.configV3getConfigsMethodName);
+        assertThat(batch.parameters().get(0).count(), is(2));
+        requester.close();
+    }
+
+    @Test
+    public void testRequestsAreSentSeparatelyWhenBatchesAreNotSupported() throws InterruptedException {
+        ConfigSubscriber subscriber = new ConfigSubscriber();
+        final TimingValues timingValues = getTestTimingValues();
+        final List<String> methods = new CopyOnWriteArrayList<>();
+        final MockConnection connection = new MockConnection(new MockConnection.OKResponseHandler() {
+            @Override
+            public void run() {
+                methods.add(request().methodName());
+                if (request().methodName().equals(JRTMethods.configV3getConfigsMethodName)) {
+                    request().setError(com.yahoo.jrt.ErrorCode.NO_SUCH_METHOD, "No such method");
+                    requestWaiter().handleRequestDone(request());
+                } else {
+                    super.run();
+                }
+            }
+        });
+        JRTConfigRequester requester = new JRTConfigRequester(connection, timingValues);
+        requester.request(createSubscription(subscriber, timingValues, "first"));
+        requester.request(createSubscription(subscriber, timingValues, "second"));
+
+        for (int i = 0; i < 1000 && methods.size() < 7; i++)
+            Thread.sleep(10);
+        requester.close();
+        assertThat(methods.subList(0, 7), is(Arrays.asList(JRTMethods.configV3getConfigMethodName,
+                                                           JRTMethods.configV3getConfigMethodName,
+                                                           JRTMethods.configV3getConfigsMethodName,
+                                                           JRTMethods.configV3getConfigMethodName,
+                                                           JRTMethods.configV3getConfigMethodName,
+                                                           JRTMethods.configV3getConfigMethodName,
+                                                           JRTMethods.configV3getConfigMethodName)));
+    }
+
     private JRTConfigSubscription<SimpletypesConfig> createSubscription(ConfigSubscriber subscriber, TimingValues timingValues) {
+        return createSubscription(subscriber, timingValues, "testid");
+    }
+
+    private JRTConfigSubscription<SimpletypesConfig> createSubscription(ConfigSubscriber subscriber, TimingValues timingValues,
+                                                                        String configId) {
         return new JRTConfigSubscription<>(
-                new ConfigKey<>(SimpletypesConfig.class, "testid"), subscriber, null, timingValues);
+                new ConfigKey<>(SimpletypesConfig.class, configId), subscriber, null, timingValues);
+    }
+
+    /** Waits until a request with the given method name, other than the last one sent, is sent */
+    private Request waitUntilRequest(MockConnection connection, String methodName) {
+        Request last = connection.getRequest();
+        for (int i = 0; i < 1000; i++) {
+            Request request = connection.getRequest();
+            if (request != last && request.methodName().equals(methodName)) return request;
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        throw new AssertionError("No " + methodName + " request was sent");
     }
 
     private SimpletypesConfig config() {
@@ -0,0 +1,95 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.config.protocol;
+
+import com.yahoo.jrt.Request;
+import com.yahoo.jrt.StringArray;
+import com.yahoo.vespa.config.ConfigKey;
+import com.yahoo.vespa.config.ConfigPayload;
+import com.yahoo.vespa.config.ErrorCode;
+import com.yahoo.vespa.config.JRTMethods;
+import com.yahoo.vespa.config.util.ConfigUtils;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JRTConfigBatchRequestTest {
+
+    @Test
+    public void responses_are_distributed_to_the_requests_of_a_batch() {
+        JRTClientConfigRequest first = createRequest("first", 1000);
+        JRTClientConfigRequest second = createRequest("second", 500);
+        JRTClientConfigBatchRequest clientBatch = JRTClientConfigBatchRequest.create(Arrays.asList(first, second));
+        assertEquals(500, clientBatch.getTimeout());
+
+        JRTServerConfigBatchRequest serverBatch = JRTServerConfigBatchRequest.createFromRequest(clientBatch.getRequest());
+        assertTrue(serverBatch.validateParameters());
+        List<JRTServerConfigRequest> serverRequests = serverBatch.getRequests();
+        assertEquals(2, serverRequests.size());
+        assertEquals(500, serverBatch.getTimeout());
+        assertEquals("myhost", serverBatch.getClientHostName());
+        assertTrue(serverRequests.get(0).validateParameters());
+        assertEquals("first", serverRequests.get(0).getConfigKey().getConfigId());
+        assertEquals("second", serverRequests.get(1).getConfigKey().getConfigId());
+        assertEquals(Optional.of(serverBatch), JRTServerConfigBatchRequest.batchOf(serverRequests.get(1)));
+        assertEquals(Optional.empty(), JRTServerConfigBatchRequest.batchOf(JRTServerConfigRequestV3.createFromRequest(first.getRequest())));
+
+        Payload payload = Payload.from(ConfigPayload.empty());
+        serverRequests.get(0).addOkResponse(payload, 4, false, ConfigUtils.getMd5(payload.getData()));
+        serverRequests.get(1).addErrorResponse(ErrorCode.UNKNOWN_DEFINITION, "unknown definition");
+        assertFalse(serverBatch.isResponded());
+        serverBatch.addResponses();
+        assertTrue(serverBatch.isResponded());
+        assertTrue(JRTMethods.checkV3BatchReturnTypes(serverBatch.getRequest()));
+
+        clientBatch.distributeResponse();
+        assertTrue(first.validateResponse());
+        assertTrue(first.hasUpdatedGeneration());
+        assertEquals(4, first.getNewGeneration());
+        assertEquals("{}", first.getNewPayload().withCompression(CompressionType.UNCOMPRESSED).getData().toString());
+        assertFalse(second.validateResponse());
+        assertEquals(ErrorCode.UNKNOWN_DEFINITION, second.errorCode());
+        assertEquals("unknown definition", second.errorMessage());
+    }
+
+    @Test
+    public void failure_of_a_batch_fails_all_its_requests() {
+        JRTClientConfigRequest first = createRequest("first", 1000);
+        JRTClientConfigRequest second = createRequest("second", 1000);
+        JRTClientConfigBatchRequest clientBatch = JRTClientConfigBatchRequest.create(Arrays.asList(first, second));
+        clientBatch.getRequest().setError(com.yahoo.jrt.ErrorCode.TIMEOUT, "timeout");
+
+        clientBatch.distributeResponse();
+        assertEquals(com.yahoo.jrt.ErrorCode.TIMEOUT, first.errorCode());
+        assertEquals(com.yahoo.jrt.ErrorCode.TIMEOUT, second.errorCode());
+    }
+
+    @Test
+    public void empty_batch_is_rejected_by_server() {
+        Request request = new Request(JRTMethods.configV3getConfigsMethodName);
+        request.parameters().add(new StringArray(new String[0]));
+        JRTServerConfigBatchRequest serverBatch = JRTServerConfigBatchRequest.createFromRequest(request);
+        assertFalse(serverBatch.validateParameters());
+        assertTrue(serverBatch.isResponded());
+        assertEquals(com.yahoo.jrt.ErrorCode.BAD_REQUEST, request.errorCode());
+    }
+
+    private static JRTClientConfigRequest createRequest(String configId, long timeout) {
+        return JRTClientConfigRequestV3.createWithParams(ConfigKey.createFull("mydef", configId, "my.name.space", "595f44fec1e92a71d3e9e77456ba80d1"),
+                                                         DefContent.fromList(Collections.singletonList("myfield string")),
+                                                         "myhost",
+                                                         "",
+                                                         3,
+                                                         timeout,
+                                                         Trace.createNew(),
+                                                         CompressionType.LZ4,
+                                                         Optional.of(VespaVersion.fromString("7.1.1")));
+    }
+
+}
@@ -42,5 +42,6 @@ public interface GlobalComponentRegistry {
     Clock getClock();
     ConfigServerDB getConfigServerDB();
     FlagSource getFlagSource();
+    PayloadCache getPayloadCache();
 
 }
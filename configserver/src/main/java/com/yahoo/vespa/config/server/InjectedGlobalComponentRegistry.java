@@ -43,6 +43,7 @@ public class InjectedGlobalComponentRegistry implements GlobalComponentRegistry
     private final Zone zone;
     private final ConfigServerDB configServerDB;
     private final FlagSource flagSource;
+    private final PayloadCache payloadCache;
 
     @SuppressWarnings("WeakerAccess")
     @Inject
@@ -60,7 +61,8 @@ public class InjectedGlobalComponentRegistry implements GlobalComponentRegistry
                                            HostProvisionerProvider hostProvisionerProvider,
                                            Zone zone,
                                            ConfigServerDB configServerDB,
-                                           FlagSource flagSource) {
+                                           FlagSource flagSource,
+                                           PayloadCache payloadCache) {
         this.curator = curator;
         this.configCurator = configCurator;
         this.metrics = metrics;
@@ -76,6 +78,7 @@ public class InjectedGlobalComponentRegistry implements GlobalComponentRegistry
         this.zone = zone;
         this.configServerDB = configServerDB;
         this.flagSource = flagSource;
+        this.payloadCache = payloadCache;
     }
 
     @Override
@@ -121,4 +124,7 @@ public class InjectedGlobalComponentRegistry implements GlobalComponentRegistry
 
     @Override
     public FlagSource getFlagSource() { return flagSource; }
+
+    @Override
+    public PayloadCache getPayloadCache() { return payloadCache; }
 }
@@ -0,0 +1,171 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.config.server;
+
+import com.google.inject.Inject;
+import com.yahoo.cloud.config.ConfigserverConfig;
+import com.yahoo.vespa.config.protocol.CompressionType;
+import com.yahoo.vespa.config.protocol.Payload;
+import com.yahoo.vespa.config.server.monitoring.MetricUpdater;
+import com.yahoo.vespa.config.server.monitoring.Metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of config payloads in the form they are sent to clients, e.g., compressed, shared by all applications.
+ * Each unique config content is held once, keyed by its md5 and compression type, such that responses for
+ * the same config in different applications and generations share the payload, and it is compressed only once.
+ * <p>
+ * The cache is bounded by the total size of the payloads. When this is exceeded, the least recently used payloads
+ * are evicted until the cache is somewhat below the bound, such that evictions are batched. Lookups take no locks:
+ * recency is only recorded per payload, so the eviction order is approximate with concurrent lookups.
+ * Hits, misses, evictions and size are reported as metrics when metrics are collected.
+ *
+ * @see ServerCache
+ */
+public class PayloadCache {
+
+    /** The fraction of the max size evictions reduce the size of the cache to */
+    private static final double evictionTarget = 0.9;
+
+    private final long maxBytes;
+    private final Map<Key, Entry> payloads = new ConcurrentHashMap<>();
+    private final Object evictionLock = new Object();
+    private final AtomicLong bytes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @SuppressWarnings("unused")
+    @Inject
+    public PayloadCache(ConfigserverConfig configserverConfig, Metrics metrics) {
+        this(configserverConfig.payloadCacheMaxBytes(), metrics.getOrCreateMetricUpdater(Collections.emptyMap()));
+    }
+
+    /** Creates a cache which does not report metrics */
+    public PayloadCache(long maxBytes) {
+        this(maxBytes, null);
+    }
+
+    public PayloadCache(long maxBytes, MetricUpdater metricUpdater) {
+        this.maxBytes = maxBytes;
+        if (metricUpdater != null)
+            metricUpdater.setPayloadCacheStatsReporter(() -> metricUpdater.setPayloadCacheStats(hits(), misses(), evictions(),
+                                                                                                 size(), sizeInBytes()));
+    }
+
+    /** Returns the cached payload of the config with the given md5 in the given compression, or null if none */
+    public Payload get(String configMd5, CompressionType compressionType) {
+        Entry entry = payloads.get(new Key(configMd5, compressionType));
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        entry.touch();
+        return entry.payload;
+    }
+
+    /**
+     * Adds the given payload of the config with the given md5, unless it is already cached, and evicts
+     * the least recently used payloads if the cache is now too large.
+     *
+     * @return the cached payload, which is the given payload unless an equal one was already cached
+     */
+    public Payload put(String configMd5, Payload payload) {
+        long size = sizeOf(payload);
+        if (size > maxBytes) return payload;
+
+        Key key = new Key(configMd5, payload.getCompressionInfo().getCompressionType());
+        Entry cached = payloads.putIfAbsent(key, new Entry(payload));
+        if (cached != null) {
+            cached.touch();
+            return cached.payload;
+        }
+
+        if (bytes.addAndGet(size) > maxBytes)
+            evict();
+        return payload;
+    }
+
+    /** Returns the number of payloads in this */
+    public int size() { return payloads.size(); }
+
+    /** Returns the total size of the payloads in this, in bytes */
+    public long sizeInBytes() { return bytes.get(); }
+
+    public long hits() { return hits.sum(); }
+
+    public long misses() { return misses.sum(); }
+
+    public long evictions() { return evictions.sum(); }
+
+    /** Evicts the least recently used payloads until the size is below the eviction target, if it is above the max */
+    private void evict() {
+        synchronized (evictionLock) {
+            if (bytes.get() <= maxBytes) return; // Evicted by another thread while we waited
+
+            List<Map.Entry<Key, Entry>> leastRecentlyUsedFirst = new ArrayList<>(payloads.entrySet());
+            leastRecentlyUsedFirst.sort(Comparator.comparingLong(entry -> entry.getValue().lastUsed));
+            long target = (long) (maxBytes * evictionTarget);
+            for (Map.Entry<Key, Entry> entry : leastRecentlyUsedFirst) {
+                if (bytes.get() <= target) break;
+                if ( ! payloads.remove(entry.getKey(), entry.getValue())) continue;
+                bytes.addAndGet(-sizeOf(entry.getValue().payload));
+                evictions.increment();
+            }
+        }
+    }
+
+    private static long sizeOf(Payload payload) {
+        return payload.getData().getByteLength();
+    }
+
+    private static class Entry {
+
+        private final Payload payload;
+        private volatile long lastUsed = System.nanoTime();
+
+        Entry(Payload payload) {
+            this.payload = payload;
+        }
+
+        void touch() {
+            lastUsed = System.nanoTime();
+        }
+
+    }
+
+    private static class Key {
+
+        private final String configMd5;
+        private final CompressionType compressionType;
+
+        Key(String configMd5, CompressionType compressionType) {
+            this.configMd5 = configMd5;
+            this.compressionType = compressionType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if ( ! (o instanceof Key)) return false;
+            Key other = (Key) o;
+            return configMd5.equals(other.configMd5) && compressionType == other.compressionType;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(configMd5, compressionType);
+        }
+
+    }
+
+}
@@ -22,6 +22,7 @@ import com.yahoo.vespa.filedistribution.FileDownloader;
 import com.yahoo.vespa.filedistribution.FileReferenceData;
 import com.yahoo.vespa.filedistribution.FileReferenceDataBlob;
 import com.yahoo.vespa.filedistribution.FileReferenceDownload;
+import com.yahoo.vespa.filedistribution.FileReferencePeers;
 import com.yahoo.vespa.filedistribution.LazyFileReferenceData;
 import com.yahoo.yolean.Exceptions;
 
@@ -41,6 +42,7 @@ public class FileServer {
     private final ExecutorService pushExecutor;
     private final ExecutorService pullExecutor;
     private final FileDownloader downloader;
+    private final FileReferencePeers peers = new FileReferencePeers();
 
     private enum FileApiErrorCodes {
         OK(0, "OK"),
@@ -195,6 +197,11 @@ public class FileServer {
         return downloader;
     }
 
+    /** Returns the peers which have advertised that they can serve file references to other peers */
+    public FileReferencePeers peers() {
+        return peers;
+    }
+
     // Connection pool with all config servers except this one (might be an empty pool if there is only one config server)
     private static ConnectionPool createConnectionPool(ConfigserverConfig configserverConfig) {
         List<String> configServers = ConfigServerSpec.fromConfig(configserverConfig)
@@ -31,6 +31,11 @@ public class MetricUpdater {
     private static final String METRIC_APPLICATIONS = getMetricName("applications");
     private static final String METRIC_CACHE_CONFIG_ELEMENTS = getMetricName("cacheConfigElems");
     private static final String METRIC_CACHE_CONFIG_CHECKSUMS = getMetricName("cacheChecksumElems");
+    private static final String METRIC_PAYLOAD_CACHE_HITS = getMetricName("payloadCacheHits");
+    private static final String METRIC_PAYLOAD_CACHE_MISSES = getMetricName("payloadCacheMisses");
+    private static final String METRIC_PAYLOAD_CACHE_EVICTIONS = getMetricName("payloadCacheEvictions");
+    private static final String METRIC_PAYLOAD_CACHE_ELEMENTS = getMetricName("payloadCacheElems");
+    private static final String METRIC_PAYLOAD_CACHE_BYTES = getMetricName("payloadCacheBytes");
     private static final String METRIC_DELAYED_RESPONSES = getMetricName("delayedResponses");
     private static final String METRIC_RPCSERVER_WORK_QUEUE_SIZE = getMetricName("rpcServerWorkQueueSize");
 
@@ -39,6 +44,7 @@ public class MetricUpdater {
     private final Map<String, String> dimensions;
     private final Metric.Context metricContext;
     private final Map<String, Number> staticMetrics = new ConcurrentHashMap<>();
+    private volatile Runnable payloadCacheStatsReporter = () -> {};
 
     public MetricUpdater(Metrics metrics, Map<String, String> dimensions) {
         this.metrics = metrics;
@@ -76,6 +82,31 @@ public class MetricUpdater {
         staticMetrics.put(METRIC_CACHE_CONFIG_CHECKSUMS, elems);
     }
 
+    /**
+     * Sets the statistics of the {@link com.yahoo.vespa.config.server.PayloadCache}
+     *
+     * @param hits total number of lookups which found a payload
+     * @param misses total number of lookups which did not find a payload
+     * @param evictions total number of payloads evicted to stay within the size limit
+     * @param elems number of payloads
+     * @param bytes total size of the payloads
+     */
+    public void setPayloadCacheStats(long hits, long misses, long evictions, long elems, long bytes) {
+        staticMetrics.put(METRIC_PAYLOAD_CACHE_HITS, hits);
+        staticMetrics.put(METRIC_PAYLOAD_CACHE_MISSES, misses);
+        staticMetrics.put(METRIC_PAYLOAD_CACHE_EVICTIONS, evictions);
+        staticMetrics.put(METRIC_PAYLOAD_CACHE_ELEMENTS, elems);
+        staticMetrics.put(METRIC_PAYLOAD_CACHE_BYTES, bytes);
+    }
+
+    /**
+     * Sets the task which reports the statistics of the {@link com.yahoo.vespa.config.server.PayloadCache},
+     * which is run whenever the static metrics are read, instead of on every lookup in the cache
+     */
+    public void setPayloadCacheStatsReporter(Runnable reporter) {
+        payloadCacheStatsReporter = reporter;
+    }
+
     /**
      * Sets the number of outstanding responses (unchanged config in long poll)
      *
@@ -103,6 +134,7 @@ public class MetricUpdater {
     }
 
     public Map<String, Number> getStaticMetrics() {
+        payloadCacheStatsReporter.run();
         return staticMetrics;
     }
 
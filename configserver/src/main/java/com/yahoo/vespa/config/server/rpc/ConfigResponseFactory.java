@@ -5,6 +5,7 @@ import com.yahoo.cloud.config.ConfigserverConfig;
 import com.yahoo.config.codegen.InnerCNode;
 import com.yahoo.vespa.config.ConfigPayload;
 import com.yahoo.vespa.config.protocol.ConfigResponse;
+import com.yahoo.vespa.config.server.PayloadCache;
 
 /**
  * Represents a component that creates config responses from a payload. Different implementations
@@ -14,12 +15,18 @@ import com.yahoo.vespa.config.protocol.ConfigResponse;
  */
 public interface ConfigResponseFactory {
 
+    /** Returns a factory for the configured compression type, which does not share payloads */
     static ConfigResponseFactory create(ConfigserverConfig configserverConfig) {
+        return create(configserverConfig, new PayloadCache(0));
+    }
+
+    /** Returns a factory for the configured compression type, which shares payloads through the given cache */
+    static ConfigResponseFactory create(ConfigserverConfig configserverConfig, PayloadCache payloadCache) {
         switch (configserverConfig.payloadCompressionType()) {
             case LZ4:
-                return new LZ4ConfigResponseFactory();
+                return new LZ4ConfigResponseFactory(payloadCache);
             case UNCOMPRESSED:
-                return new UncompressedConfigResponseFactory();
+                return new UncompressedConfigResponseFactory(payloadCache);
             default:
                 throw new IllegalArgumentException("Unknown payload compression type " + configserverConfig.payloadCompressionType());
         }
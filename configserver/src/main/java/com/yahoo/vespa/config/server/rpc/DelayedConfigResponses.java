@@ -2,9 +2,11 @@
 package com.yahoo.vespa.config.server.rpc;
 
 import com.yahoo.concurrent.ThreadFactoryFactory;
+import com.yahoo.jrt.Request;
 import com.yahoo.jrt.Target;
 import com.yahoo.jrt.TargetWatcher;
 import com.yahoo.log.LogLevel;
+import com.yahoo.vespa.config.protocol.JRTServerConfigBatchRequest;
 import com.yahoo.vespa.config.protocol.JRTServerConfigRequest;
 import com.yahoo.vespa.config.server.GetConfigContext;
 import com.yahoo.vespa.config.server.monitoring.MetricUpdater;
@@ -13,9 +15,13 @@ import com.yahoo.config.provision.ApplicationId;
 import com.yahoo.vespa.config.server.tenant.TenantRepository;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
@@ -73,12 +79,23 @@ public class DelayedConfigResponses {
     class DelayedConfigResponse implements Runnable, TargetWatcher {
 
         final JRTServerConfigRequest request;
+        /** The batch the request is the first of, if this is a delayed response to a batch, otherwise null */
+        private final JRTServerConfigBatchRequest batch;
+        /** The delayed responses to the batch, one per application, if this is a delayed response to a batch */
+        private final BatchResponses batchResponses;
         private final BlockingQueue<DelayedConfigResponse> delayedResponsesQueue;
         private final ApplicationId app;
         private ScheduledFuture<?> future;
 
         DelayedConfigResponse(JRTServerConfigRequest req, BlockingQueue<DelayedConfigResponse> delayedResponsesQueue, ApplicationId app) {
+            this(req, null, null, delayedResponsesQueue, app);
+        }
+
+        private DelayedConfigResponse(JRTServerConfigRequest req, JRTServerConfigBatchRequest batch, BatchResponses batchResponses,
+                                      BlockingQueue<DelayedConfigResponse> delayedResponsesQueue, ApplicationId app) {
             this.request = req;
+            this.batch = batch;
+            this.batchResponses = batchResponses;
             this.delayedResponsesQueue = delayedResponsesQueue;
             this.app = app;
         }
@@ -87,7 +104,8 @@ public class DelayedConfigResponses {
         public synchronized void run() {
             removeFromQueue();
             removeWatcher();
-            rpcServer.addToRequestQueue(request, true, null);
+            if ( ! removeOtherResponsesToBatch()) return;
+            addToRequestQueue(true, null);
             if (log.isLoggable(LogLevel.DEBUG)) {
                 log.log(LogLevel.DEBUG, logPre()+"DelayedConfigResponse. putting on queue: " + request.getShortDescription());
             }
@@ -104,6 +122,13 @@ public class DelayedConfigResponses {
             return request;
         }
 
+        /** Puts the request, or batch, of this on the request queue of the RPC server, to process it again */
+        boolean addToRequestQueue(boolean forceResponse, CompletionService<Boolean> completionService) {
+            if (batch != null)
+                return rpcServer.addToRequestQueue(batch, forceResponse, completionService);
+            return rpcServer.addToRequestQueue(request, forceResponse, completionService);
+        }
+
         @Override
         public String toString() {
             StringBuilder sb = new StringBuilder();
@@ -120,15 +145,34 @@ public class DelayedConfigResponses {
             cancel();
         }
 
+        /**
+         * Cancels this, and the other delayed responses to its batch, if any
+         *
+         * @return whether this was cancelled before it ran, and is the first of the responses to its batch to be so,
+         *         which means its request should be processed
+         */
         synchronized boolean cancel() {
             removeWatcher();
             if (future == null) {
                 throw new IllegalStateException("Cannot cancel a task that has not been scheduled");
             }
-            return future.cancel(false);
+            return future.cancel(false) && removeOtherResponsesToBatch();
+        }
+
+        /**
+         * Cancels and removes the other delayed responses to the batch of this from their queues, if this is the
+         * first of them to run or be cancelled, and returns whether it was, or this is not a response to a batch.
+         */
+        private boolean removeOtherResponsesToBatch() {
+            if (batchResponses == null) return true;
+            Optional<List<DelayedConfigResponse>> others = batchResponses.complete(this);
+            others.ifPresent(responses -> responses.forEach(DelayedConfigResponse::cancelAndRemove));
+            return others.isPresent();
         }
 
         synchronized void schedule(long delay) throws InterruptedException {
+            // Another response to the batch may already have run, and must not be able to cancel this before it is scheduled
+            if (batchResponses != null && ! batchResponses.add(this)) return;
             delayedResponsesQueue.put(this);
             future = executorService.schedule(this, delay, TimeUnit.MILLISECONDS);
             addWatcher();
@@ -147,15 +191,43 @@ public class DelayedConfigResponses {
 
         private void addWatcher() {
             if (useJrtWatcher) {
-                request.getRequest().target().addWatcher(this);
+                rpcRequest().target().addWatcher(this);
             }
         }
 
         private void removeWatcher() {
             if (useJrtWatcher) {
-                request.getRequest().target().removeWatcher(this);
+                rpcRequest().target().removeWatcher(this);
             }
         }
+
+        private Request rpcRequest() {
+            return batch != null ? batch.getRequest() : request.getRequest();
+        }
+    }
+
+    /** The delayed responses to a batch, of which only the first to run or be cancelled processes the batch again */
+    private static class BatchResponses {
+
+        private final List<DelayedConfigResponse> responses = new ArrayList<>();
+        private boolean completed = false;
+
+        /** Adds the given response, unless one of these has completed already, and returns whether it was added */
+        synchronized boolean add(DelayedConfigResponse response) {
+            if (completed) return false;
+            responses.add(response);
+            return true;
+        }
+
+        /** Returns the responses other than the given one, or empty if one of these has completed already */
+        synchronized Optional<List<DelayedConfigResponse>> complete(DelayedConfigResponse response) {
+            if (completed) return Optional.empty();
+            completed = true;
+            List<DelayedConfigResponse> others = new ArrayList<>(responses);
+            others.remove(response);
+            return Optional.of(others);
+        }
+
     }
 
     /**
@@ -190,6 +262,35 @@ public class DelayedConfigResponses {
         }
     }
 
+    /**
+     * Delays the response to the given batch until config is reloaded for the application of any of the given
+     * contexts, or the batch times out, by putting it on the delayed responses queue of each of those applications.
+     * When it is processed through one of these queues, it is removed from the others.
+     */
+    final void delayResponse(JRTServerConfigBatchRequest batch, Collection<GetConfigContext> contexts) {
+        Map<ApplicationId, GetConfigContext> contextsByApplication = new LinkedHashMap<>();
+        for (GetConfigContext context : contexts)
+            contextsByApplication.putIfAbsent(context.applicationId(), context);
+
+        BatchResponses batchResponses = new BatchResponses();
+        for (GetConfigContext context : contextsByApplication.values()) {
+            createQueueIfNotExists(context);
+            BlockingQueue<DelayedConfigResponse> delayedResponsesQueue = delayedResponses.get(context.applicationId());
+            DelayedConfigResponse response = new DelayedConfigResponse(batch.getRequests().get(0), batch, batchResponses,
+                                                                       delayedResponsesQueue, context.applicationId());
+            try {
+                if (log.isLoggable(LogLevel.DEBUG)) {
+                    log.log(LogLevel.DEBUG, context.logPre()+"Putting on delayedRequests queue (" + delayedResponsesQueue.size() + " elements): " +
+                            batch.getShortDescription());
+                }
+                response.schedule(Math.max(0, batch.getTimeout()));
+                metricDelayedResponses(context.applicationId(), delayedResponsesQueue.size());
+            } catch (InterruptedException e) {
+                log.log(LogLevel.WARNING, context.logPre()+"Interrupted when putting on delayed requests queue.");
+            }
+        }
+    }
+
     private synchronized void metricDelayedResponses(ApplicationId app, int elems) {
         if ( ! metrics.containsKey(app)) {
             metrics.put(app, rpcServer.metricUpdaterFactory().getOrCreateMetricUpdater(Metrics.createDimensions(app)));
@@ -0,0 +1,80 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.config.server.rpc;
+
+import com.yahoo.collections.Pair;
+import com.yahoo.config.provision.ApplicationId;
+import com.yahoo.vespa.config.protocol.JRTServerConfigBatchRequest;
+import com.yahoo.vespa.config.protocol.JRTServerConfigRequest;
+import com.yahoo.vespa.config.server.GetConfigContext;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves the configs of a batch of config requests. The batch is responded to with all its configs when
+ * any of them has changed, or when it times out, and is otherwise delayed as a whole until config is reloaded
+ * for the application of any of its requests.
+ *
+ * @see GetConfigProcessor
+ */
+class GetConfigBatchProcessor implements Runnable {
+
+    private final RpcServer rpcServer;
+    private final JRTServerConfigBatchRequest batch;
+
+    /* True only when this batch has expired its server timeout and we need to respond to the client */
+    private final boolean forceResponse;
+
+    GetConfigBatchProcessor(RpcServer rpcServer, JRTServerConfigBatchRequest batch, boolean forceResponse) {
+        this.rpcServer = rpcServer;
+        this.batch = batch;
+        this.forceResponse = forceResponse;
+    }
+
+    @Override
+    public void run() {
+        Map<JRTServerConfigRequest, Pair<GetConfigContext, Long>> delayed = new LinkedHashMap<>();
+        // The batch may be responded to with an error concurrently, if it could not be queued when delayed
+        synchronized (batch) {
+            if (batch.isResponded()) return;
+
+            for (JRTServerConfigRequest request : batch.getRequests()) {
+                Pair<GetConfigContext, Long> delay = new GetConfigProcessor(rpcServer, request, forceResponse, true).getConfig(request);
+                if (delay != null)
+                    delayed.put(request, delay);
+            }
+            if (delayed.size() < batch.getRequests().size()) {
+                respondWithAllConfigs(delayed.keySet());
+                return;
+            }
+            List<GetConfigContext> contexts = new ArrayList<>();
+            for (Pair<GetConfigContext, Long> delay : delayed.values())
+                contexts.add(delay.getFirst());
+            rpcServer.delayResponse(batch, contexts);
+        }
+
+        // This will ensure that if the reload train left the station while I was boarding, another train will
+        // immediately be scheduled. This must be done without holding the lock, as reloading waits for the processing.
+        Set<ApplicationId> reloaded = new LinkedHashSet<>();
+        for (Pair<GetConfigContext, Long> delay : delayed.values()) {
+            ApplicationId applicationId = delay.getFirst().applicationId();
+            if (rpcServer.hasNewerGeneration(applicationId, delay.getSecond()) && reloaded.add(applicationId))
+                rpcServer.configReloaded(applicationId);
+        }
+    }
+
+    /** Adds responses to the given requests which were not yet responded to, and responds to the batch */
+    private void respondWithAllConfigs(Iterable<JRTServerConfigRequest> unresponded) {
+        for (JRTServerConfigRequest request : unresponded) {
+            if (new GetConfigProcessor(rpcServer, request, true, true).getConfig(request) != null)
+                request.addErrorResponse(com.yahoo.jrt.ErrorCode.TIMEOUT, "No config is available yet");
+        }
+        batch.addResponses();
+        rpcServer.respond(batch);
+    }
+
+}
@@ -37,13 +37,20 @@ class GetConfigProcessor implements Runnable {
 
     /* True only when this request has expired its server timeout and we need to respond to the client */
     private final boolean forceResponse;
+    /* True when this request is part of a batch, which is responded to as a whole, see GetConfigBatchProcessor */
+    private final boolean partOfBatch;
     private final RpcServer rpcServer;
     private String logPre = "";
 
     GetConfigProcessor(RpcServer rpcServer, JRTServerConfigRequest request, boolean forceResponse) {
+        this(rpcServer, request, forceResponse, false);
+    }
+
+    GetConfigProcessor(RpcServer rpcServer, JRTServerConfigRequest request, boolean forceResponse, boolean partOfBatch) {
         this.rpcServer = rpcServer;
         this.request = request;
         this.forceResponse = forceResponse;
+        this.partOfBatch = partOfBatch;
     }
 
     private void respond(JRTServerConfigRequest request) {
@@ -52,7 +59,8 @@ class GetConfigProcessor implements Runnable {
             Level logLevel = (req.errorCode() == ErrorCode.APPLICATION_NOT_LOADED) ? LogLevel.DEBUG : LogLevel.INFO;
             log.log(logLevel, logPre + req.errorMessage());
         }
-        rpcServer.respond(request);
+        if ( ! partOfBatch)
+            rpcServer.respond(request);
     }
 
     private void handleError(JRTServerConfigRequest request, int errorCode, String message) {
@@ -8,11 +8,14 @@ import com.yahoo.vespa.config.LZ4PayloadCompressor;
 import com.yahoo.vespa.config.protocol.CompressionInfo;
 import com.yahoo.vespa.config.protocol.CompressionType;
 import com.yahoo.vespa.config.protocol.ConfigResponse;
+import com.yahoo.vespa.config.protocol.Payload;
 import com.yahoo.vespa.config.protocol.SlimeConfigResponse;
+import com.yahoo.vespa.config.server.PayloadCache;
 import com.yahoo.vespa.config.util.ConfigUtils;
 
 /**
- * Compressor that compresses config payloads to lz4.
+ * Compressor that compresses config payloads to lz4. Compressed payloads are shared through a {@link PayloadCache},
+ * so each unique payload is only compressed again when it has been evicted from it.
  *
  * @author Ulf Lilleengen
  */
@@ -20,6 +23,17 @@ public class LZ4ConfigResponseFactory implements ConfigResponseFactory {
 
     private static LZ4PayloadCompressor compressor = new LZ4PayloadCompressor();
 
+    private final PayloadCache payloadCache;
+
+    /** Creates a factory which does not share payloads */
+    public LZ4ConfigResponseFactory() {
+        this(new PayloadCache(0));
+    }
+
+    public LZ4ConfigResponseFactory(PayloadCache payloadCache) {
+        this.payloadCache = payloadCache;
+    }
+
     @Override
     public ConfigResponse createResponse(ConfigPayload payload,
                                          InnerCNode defFile,
@@ -27,9 +41,14 @@ public class LZ4ConfigResponseFactory implements ConfigResponseFactory {
                                          boolean internalRedeploy) {
         Utf8Array rawPayload = payload.toUtf8Array(true);
         String configMd5 = ConfigUtils.getMd5(rawPayload);
-        CompressionInfo info = CompressionInfo.create(CompressionType.LZ4, rawPayload.getByteLength());
-        Utf8Array compressed = new Utf8Array(compressor.compress(rawPayload.getBytes()));
-        return new SlimeConfigResponse(compressed, defFile, generation, internalRedeploy, configMd5, info);
+        Payload compressed = payloadCache.get(configMd5, CompressionType.LZ4);
+        if (compressed == null) {
+            CompressionInfo info = CompressionInfo.create(CompressionType.LZ4, rawPayload.getByteLength());
+            compressed = payloadCache.put(configMd5,
+                                          Payload.from(new Utf8Array(compressor.compress(rawPayload.getBytes())), info));
+        }
+        return new SlimeConfigResponse(compressed.getData(), defFile, generation, internalRedeploy, configMd5,
+                                       compressed.getCompressionInfo());
     }
 
 }
@@ -10,13 +10,13 @@ import com.yahoo.config.provision.HostLivenessTracker;
 import com.yahoo.config.provision.TenantName;
 import com.yahoo.component.Version;
 import com.yahoo.jrt.Acceptor;
-import com.yahoo.jrt.DataValue;
 import com.yahoo.jrt.Int32Value;
-import com.yahoo.jrt.Int64Value;
+import com.yahoo.jrt.Int64Array;
 import com.yahoo.jrt.ListenFailedException;
 import com.yahoo.jrt.Method;
 import com.yahoo.jrt.Request;
 import com.yahoo.jrt.Spec;
+import com.yahoo.jrt.StringArray;
 import com.yahoo.jrt.StringValue;
 import com.yahoo.jrt.Supervisor;
 import com.yahoo.jrt.Target;
@@ -25,6 +25,7 @@ import com.yahoo.log.LogLevel;
 import com.yahoo.vespa.config.ErrorCode;
 import com.yahoo.vespa.config.JRTMethods;
 import com.yahoo.vespa.config.protocol.ConfigResponse;
+import com.yahoo.vespa.config.protocol.JRTServerConfigBatchRequest;
 import com.yahoo.vespa.config.protocol.JRTServerConfigRequest;
 import com.yahoo.vespa.config.protocol.JRTServerConfigRequestV3;
 import com.yahoo.vespa.config.protocol.Trace;
@@ -42,11 +43,11 @@ import com.yahoo.vespa.config.server.tenant.TenantHandlerProvider;
 import com.yahoo.vespa.config.server.tenant.TenantListener;
 import com.yahoo.vespa.config.server.tenant.TenantRepository;
 import com.yahoo.vespa.filedistribution.FileDownloader;
-import com.yahoo.vespa.filedistribution.FileReceiver;
 import com.yahoo.vespa.filedistribution.FileReferenceData;
 import com.yahoo.vespa.filedistribution.FileReferenceDownload;
+import com.yahoo.vespa.filedistribution.FileReferencePeers;
+import com.yahoo.vespa.filedistribution.FileReferenceSender;
 
-import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -65,7 +66,7 @@ import java.util.logging.Logger;
 import java.util.stream.Stream;
 
 /**
- * An RPC server class that handles the config protocol RPC method "getConfigV3".
+ * An RPC server class that handles the config protocol RPC methods "getConfigV3" and "getConfigsV3".
  * Mandatory hooks need to be implemented by subclasses.
  *
  * @author hmusum
@@ -74,11 +75,13 @@ import java.util.stream.Stream;
 public class RpcServer implements Runnable, ReloadListener, TenantListener {
 
     static final String getConfigMethodName = "getConfigV3";
+    static final String getConfigsMethodName = "getConfigsV3";
     
     private static final int TRACELEVEL = 6;
     static final int TRACELEVEL_DEBUG = 9;
     private static final String THREADPOOL_NAME = "rpcserver worker pool";
     private static final long SHUTDOWN_TIMEOUT = 60;
+    private static final int MAX_FILE_REFERENCE_PEERS = 5;
 
     private final Supervisor supervisor = new Supervisor(new Transport());
     private Spec spec;
@@ -157,6 +160,25 @@ public class RpcServer implements Runnable, ReloadListener, TenantListener {
         hostLivenessTracker.receivedRequestFrom(request.getClientHostName());
     }
 
+    /**
+     * Called by reflection from RPC.
+     * Handles RPC method "config.v3.getConfigs" requests, for a batch of configs which is responded to as a whole.
+     */
+    @SuppressWarnings({"UnusedDeclaration"})
+    public final void getConfigsV3(Request req) {
+        if (log.isLoggable(LogLevel.SPAM)) {
+            log.log(LogLevel.SPAM, getConfigsMethodName);
+        }
+        req.detach();
+        JRTServerConfigBatchRequest batch = JRTServerConfigBatchRequest.createFromRequest(req);
+        if ( ! batch.validateParameters()) {
+            respond(batch);
+            return;
+        }
+        addToRequestQueue(batch, false, null);
+        hostLivenessTracker.receivedRequestFrom(batch.getClientHostName());
+    }
+
     /**
      * Called by reflection from RPC.
      * Returns 0 if server is alive.
@@ -212,6 +234,7 @@ public class RpcServer implements Runnable, ReloadListener, TenantListener {
     private void setUpHandlers() {
         // The getConfig method in this class will handle RPC calls for getting config
         getSupervisor().addMethod(JRTMethods.createConfigV3GetConfigMethod(this, getConfigMethodName));
+        getSupervisor().addMethod(JRTMethods.createConfigV3GetConfigsMethod(this, getConfigsMethodName));
         getSupervisor().addMethod(new Method("ping", "", "i", this, "ping")
                                   .methodDesc("ping")
                                   .returnDesc(0, "ret code", "return code, 0 is OK"));
@@ -224,6 +247,18 @@ public class RpcServer implements Runnable, ReloadListener, TenantListener {
                                      .methodDesc("set which file references to download")
                                      .paramDesc(0, "file references", "file reference to download")
                                      .returnDesc(0, "ret", "0 if success, 1 otherwise"));
+        getSupervisor().addMethod(new Method(FileReferencePeers.ADD_PEER_METHOD, "sS", "i",
+                                        this, "addFileReferencePeer")
+                                     .methodDesc("advertise that a peer has downloaded file references")
+                                     .paramDesc(0, "peer", "spec of the peer serving the file references")
+                                     .paramDesc(1, "file references", "file references the peer has downloaded")
+                                     .returnDesc(0, "ret", "0 if all were accepted, 1 otherwise"));
+        getSupervisor().addMethod(new Method(FileReferencePeers.GET_PEERS_METHOD, "s", "SL",
+                                        this, "getFileReferencePeers")
+                                     .methodDesc("get peers which have downloaded a file reference")
+                                     .paramDesc(0, "file reference", "file reference")
+                                     .returnDesc(0, "peers", "specs of peers serving the file reference")
+                                     .returnDesc(1, "xxhashes", "xxhashes of the content peers must serve"));
     }
 
     private ApplicationState getState(ApplicationId id) {
@@ -273,7 +308,7 @@ public class RpcServer implements Runnable, ReloadListener, TenantListener {
                     logRequestDebug(LogLevel.DEBUG, logPre + "Timer cancelled for ", delayedConfigResponse.request);
                 }
                 // Do not wait for this request if we were unable to execute
-                if (addToRequestQueue(delayedConfigResponse.request, false, completionService)) {
+                if (delayedConfigResponse.addToRequestQueue(false, completionService)) {
                     responsesSent++;
                 }
             } else {
@@ -323,6 +358,10 @@ public class RpcServer implements Runnable, ReloadListener, TenantListener {
         request.getRequest().returnRequest();
     }
 
+    public void respond(JRTServerConfigBatchRequest batch) {
+        batch.getRequest().returnRequest();
+    }
+
     /**
      * Returns the tenant for this request, empty if there is no tenant for this request
      * (which on hosted Vespa means that the requesting host is not currently active for any tenant)
@@ -376,6 +415,27 @@ public class RpcServer implements Runnable, ReloadListener, TenantListener {
         }
     }
 
+    public Boolean addToRequestQueue(JRTServerConfigBatchRequest batch, boolean forceResponse, CompletionService<Boolean> completionService) {
+        try {
+            final GetConfigBatchProcessor task = new GetConfigBatchProcessor(this, batch, forceResponse);
+            if (completionService == null) {
+                executorService.submit(task);
+            } else {
+                completionService.submit(() -> { task.run();return true;});
+            }
+            updateWorkQueueMetrics();
+            return true;
+        } catch (RejectedExecutionException e) {
+            synchronized (batch) {
+                if ( ! batch.isResponded()) {
+                    batch.addErrorResponse(ErrorCode.INTERNAL_ERROR, "getConfig request queue size is larger than configured max limit");
+                    respond(batch);
+                }
+            }
+            return false;
+        }
+    }
+
     private void updateWorkQueueMetrics() {
         int queued = executorService.getQueue().size();
         metrics.setRpcServerQueueSize(queued);
@@ -419,6 +479,10 @@ public class RpcServer implements Runnable, ReloadListener, TenantListener {
         delayedConfigResponses.delayResponse(request, context);
     }
 
+    void delayResponse(JRTServerConfigBatchRequest batch, Collection<GetConfigContext> contexts) {
+        delayedConfigResponses.delayResponse(batch, contexts);
+    }
+
     @Override
     public void onTenantDelete(TenantName tenant) {
         log.log(LogLevel.DEBUG, TenantRepository.logPre(tenant)+"Tenant deleted, removing request handler and cleaning host registry");
@@ -453,93 +517,21 @@ public class RpcServer implements Runnable, ReloadListener, TenantListener {
     }
 
     class ChunkedFileReceiver implements FileServer.Receiver {
-        Target target;
+        private final FileReferenceSender sender;
         ChunkedFileReceiver(Target target) {
-            this.target = target;
+            this.sender = new FileReferenceSender(target);
         }
 
         @Override
         public String toString() {
-            return target.toString();
+            return sender.toString();
         }
 
         @Override
         public void receive(FileReferenceData fileData, FileServer.ReplayStatus status) {
-            int session = sendMeta(fileData);
-            sendParts(session, fileData);
-            sendEof(session, fileData, status);
-        }
-        private void sendParts(int session, FileReferenceData fileData) {
-            ByteBuffer bb = ByteBuffer.allocate(0x100000);
-            for (int partId = 0, read = fileData.nextContent(bb); read >= 0; partId++, read = fileData.nextContent(bb)) {
-                byte [] buf = bb.array();
-                if (buf.length != bb.position()) {
-                    buf = new byte [bb.position()];
-                    bb.flip();
-                    bb.get(buf);
-                }
-                sendPart(session, fileData.fileReference(), partId, buf);
-                bb.clear();
-            }
-        }
-        private int sendMeta(FileReferenceData fileData) {
-            Request request = new Request(FileReceiver.RECEIVE_META_METHOD);
-            request.parameters().add(new StringValue(fileData.fileReference().value()));
-            request.parameters().add(new StringValue(fileData.filename()));
-            request.parameters().add(new StringValue(fileData.type().name()));
-            request.parameters().add(new Int64Value(fileData.size()));
-            invokeRpcIfValidConnection(request);
-            if (request.isError()) {
-                log.warning("Failed delivering meta for reference '" + fileData.fileReference().value() + "' with file '" + fileData.filename() + "' to " +
-                        target.toString() + " with error: '" + request.errorMessage() + "'.");
-                return 1;
-            } else {
-                if (request.returnValues().get(0).asInt32() != 0) {
-                    throw new IllegalArgumentException("Unknown error from target '" + target.toString() + "' during rpc call " + request.methodName());
-                }
-                return request.returnValues().get(1).asInt32();
-            }
-        }
-        private void sendPart(int session, FileReference ref, int partId, byte [] buf) {
-            Request request = new Request(FileReceiver.RECEIVE_PART_METHOD);
-            request.parameters().add(new StringValue(ref.value()));
-            request.parameters().add(new Int32Value(session));
-            request.parameters().add(new Int32Value(partId));
-            request.parameters().add(new DataValue(buf));
-            invokeRpcIfValidConnection(request);
-            if (request.isError()) {
-                throw new IllegalArgumentException("Failed delivering reference '" + ref.value() + "' to " +
-                                                           target.toString() + " with error: '" + request.errorMessage() + "'.");
-            } else {
-                if (request.returnValues().get(0).asInt32() != 0) {
-                    throw new IllegalArgumentException("Unknown error from target '" + target.toString() + "' during rpc call " + request.methodName());
-                }
-            }
-        }
-        private void sendEof(int session, FileReferenceData fileData, FileServer.ReplayStatus status) {
-            Request request = new Request(FileReceiver.RECEIVE_EOF_METHOD);
-            request.parameters().add(new StringValue(fileData.fileReference().value()));
-            request.parameters().add(new Int32Value(session));
-            request.parameters().add(new Int64Value(fileData.xxhash()));
-            request.parameters().add(new Int32Value(status.getCode()));
-            request.parameters().add(new StringValue(status.getDescription()));
-            invokeRpcIfValidConnection(request);
-            if (request.isError()) {
-                throw new IllegalArgumentException("Failed delivering reference '" + fileData.fileReference().value() + "' with file '" + fileData.filename() + "' to " +
-                                                           target.toString() + " with error: '" + request.errorMessage() + "'.");
-            } else {
-                if (request.returnValues().get(0).asInt32() != 0) {
-                    throw new IllegalArgumentException("Unknown error from target '" + target.toString() + "' during rpc call " + request.methodName());
-                }
-            }
-        }
-
-        private void invokeRpcIfValidConnection(Request request) {
-            if (target.isValid()) {
-                target.invokeSync(request, 600);
-            } else {
-                throw new RuntimeException("Connection to " + target + " is invalid", target.getConnectionLostReason());
-            }
+            sender.send(fileData, status.getCode(), status.getDescription());
+            if (status.getCode() == 0)
+                fileServer.peers().served(fileData.fileReference(), fileData.xxhash());
         }
     }
 
@@ -547,6 +539,7 @@ public class RpcServer implements Runnable, ReloadListener, TenantListener {
     public final void serveFile(Request request) {
         request.detach();
         FileServer.Receiver receiver = new ChunkedFileReceiver(request.target());
+        fileServer.peers().serving(request.target(), new FileReference(request.parameters().get(0).asString()));
         fileServer.serveFile(request.parameters().get(0).asString(), request.parameters().get(1).asInt32() == 0, request, receiver);
     }
 
@@ -560,4 +553,22 @@ public class RpcServer implements Runnable, ReloadListener, TenantListener {
         req.returnValues().add(new Int32Value(0));
     }
 
+    @SuppressWarnings({"UnusedDeclaration"})
+    public final void addFileReferencePeer(Request req) {
+        String peer = req.parameters().get(0).asString();
+        long rejected = Stream.of(req.parameters().get(1).asStringArray())
+                .map(FileReference::new)
+                .filter(fileReference -> ! fileServer.peers().add(req.target(), peer, fileReference))
+                .count();
+        req.returnValues().add(new Int32Value(rejected == 0 ? 0 : 1));
+    }
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    public final void getFileReferencePeers(Request req) {
+        FileReference fileReference = new FileReference(req.parameters().get(0).asString());
+        List<String> peers = fileServer.peers().get(req.target(), fileReference, MAX_FILE_REFERENCE_PEERS);
+        req.returnValues().add(new StringArray(peers.toArray(new String[0])));
+        req.returnValues().add(new Int64Array(fileServer.peers().xxhashes(fileReference)));
+    }
+
 }
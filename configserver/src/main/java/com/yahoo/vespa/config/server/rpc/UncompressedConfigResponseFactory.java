@@ -7,16 +7,29 @@ import com.yahoo.vespa.config.ConfigPayload;
 import com.yahoo.vespa.config.protocol.CompressionInfo;
 import com.yahoo.vespa.config.protocol.CompressionType;
 import com.yahoo.vespa.config.protocol.ConfigResponse;
+import com.yahoo.vespa.config.protocol.Payload;
 import com.yahoo.vespa.config.protocol.SlimeConfigResponse;
+import com.yahoo.vespa.config.server.PayloadCache;
 import com.yahoo.vespa.config.util.ConfigUtils;
 
 /**
- * Simply returns an uncompressed payload.
+ * Simply returns an uncompressed payload. Payloads are shared through a {@link PayloadCache}.
  *
  * @author Ulf Lilleengen
  */
 public class UncompressedConfigResponseFactory implements ConfigResponseFactory {
 
+    private final PayloadCache payloadCache;
+
+    /** Creates a factory which does not share payloads */
+    public UncompressedConfigResponseFactory() {
+        this(new PayloadCache(0));
+    }
+
+    public UncompressedConfigResponseFactory(PayloadCache payloadCache) {
+        this.payloadCache = payloadCache;
+    }
+
     @Override
     public ConfigResponse createResponse(ConfigPayload payload,
                                          InnerCNode defFile,
@@ -24,8 +37,13 @@ public class UncompressedConfigResponseFactory implements ConfigResponseFactory
                                          boolean internalRedeploy) {
         Utf8Array rawPayload = payload.toUtf8Array(true);
         String configMd5 = ConfigUtils.getMd5(rawPayload);
-        CompressionInfo info = CompressionInfo.create(CompressionType.UNCOMPRESSED, rawPayload.getByteLength());
-        return new SlimeConfigResponse(rawPayload, defFile, generation, internalRedeploy, configMd5, info);
+        Payload cached = payloadCache.get(configMd5, CompressionType.UNCOMPRESSED);
+        if (cached == null) {
+            CompressionInfo info = CompressionInfo.create(CompressionType.UNCOMPRESSED, rawPayload.getByteLength());
+            cached = payloadCache.put(configMd5, Payload.from(rawPayload, info));
+        }
+        return new SlimeConfigResponse(cached.getData(), defFile, generation, internalRedeploy, configMd5,
+                                       cached.getCompressionInfo());
     }
 
 }
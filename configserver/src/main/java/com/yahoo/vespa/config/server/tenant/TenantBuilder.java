@@ -130,7 +130,8 @@ public class TenantBuilder {
             TenantRequestHandler impl = new TenantRequestHandler(componentRegistry.getMetrics(),
                                                                  tenant,
                                                                  Collections.singletonList(componentRegistry.getReloadListener()),
-                                                                 ConfigResponseFactory.create(componentRegistry.getConfigserverConfig()),
+                                                                 ConfigResponseFactory.create(componentRegistry.getConfigserverConfig(),
+                                                                                              componentRegistry.getPayloadCache()),
                                                                  componentRegistry.getHostRegistries());
             if (hostValidator == null) {
                 this.hostValidator = impl;
@@ -50,6 +50,7 @@ public class InjectedGlobalComponentRegistryTest {
     private GlobalComponentRegistry globalComponentRegistry;
     private ModelFactoryRegistry modelFactoryRegistry;
     private Zone zone;
+    private PayloadCache payloadCache;
 
     @Rule
     public TemporaryFolder temporaryFolder = new TemporaryFolder();
@@ -59,6 +60,7 @@ public class InjectedGlobalComponentRegistryTest {
         curator = new MockCurator();
         ConfigCurator configCurator = ConfigCurator.create(curator);
         metrics = Metrics.createTestMetrics();
+        payloadCache = new PayloadCache(1024);
         modelFactoryRegistry = new ModelFactoryRegistry(Collections.singletonList(new VespaModelFactory(new NullConfigModelRegistry())));
         configserverConfig = new ConfigserverConfig(
                 new ConfigserverConfig.Builder()
@@ -76,7 +78,7 @@ public class InjectedGlobalComponentRegistryTest {
         globalComponentRegistry =
                 new InjectedGlobalComponentRegistry(curator, configCurator, metrics, modelFactoryRegistry, sessionPreparer, rpcServer, configserverConfig,
                                                     generationCounter, defRepo, permanentApplicationPackage, hostRegistries, hostProvisionerProvider, zone,
-                                                    new ConfigServerDB(configserverConfig), new InMemoryFlagSource());
+                                                    new ConfigServerDB(configserverConfig), new InMemoryFlagSource(), payloadCache);
     }
 
     @Test
@@ -93,6 +95,7 @@ public class InjectedGlobalComponentRegistryTest {
         assertThat(globalComponentRegistry.getPermanentApplicationPackage(), is(permanentApplicationPackage));
         assertThat(globalComponentRegistry.getHostRegistries(), is(hostRegistries));
         assertThat(globalComponentRegistry.getZone(), is (zone));
+        assertThat(globalComponentRegistry.getPayloadCache(), is(payloadCache));
         assertTrue(globalComponentRegistry.getHostProvisioner().isPresent());
     }
 
@@ -0,0 +1,101 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.config.server;
+
+import com.yahoo.text.Utf8Array;
+import com.yahoo.vespa.config.protocol.CompressionInfo;
+import com.yahoo.vespa.config.protocol.CompressionType;
+import com.yahoo.vespa.config.protocol.Payload;
+import com.yahoo.vespa.config.server.monitoring.MetricUpdater;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PayloadCacheTest {
+
+    @Test
+    public void testThatEqualPayloadsAreSharedPerCompressionType() {
+        PayloadCache cache = new PayloadCache(1000);
+        assertNull(cache.get("md5", CompressionType.LZ4));
+        Payload payload = payload("foo", CompressionType.LZ4);
+        assertSame(payload, cache.put("md5", payload));
+        assertSame(payload, cache.put("md5", payload("foo", CompressionType.LZ4)));
+        assertSame(payload, cache.get("md5", CompressionType.LZ4));
+        assertNull(cache.get("md5", CompressionType.UNCOMPRESSED));
+
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.sizeInBytes());
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    public void testThatLeastRecentlyUsedPayloadsAreEvictedWhenFull() {
+        PayloadCache cache = new PayloadCache(10);
+        cache.put("a", payload("aaaa", CompressionType.LZ4));
+        cache.put("b", payload("bbbb", CompressionType.LZ4));
+        cache.get("a", CompressionType.LZ4);
+        cache.put("c", payload("cccc", CompressionType.LZ4));
+        assertNull(cache.get("b", CompressionType.LZ4));
+        assertEquals("aaaa", cache.get("a", CompressionType.LZ4).getData().toString());
+        assertEquals("cccc", cache.get("c", CompressionType.LZ4).getData().toString());
+        assertEquals(8, cache.sizeInBytes());
+        assertEquals(1, cache.evictions());
+
+        Payload tooLarge = payload("xxxxxxxxxxx", CompressionType.LZ4);
+        assertSame(tooLarge, cache.put("x", tooLarge));
+        assertNull(cache.get("x", CompressionType.LZ4));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testThatStatisticsAreReportedAsMetrics() {
+        MetricUpdater metricUpdater = MetricUpdater.createTestUpdater();
+        PayloadCache cache = new PayloadCache(5, metricUpdater);
+        cache.put("a", payload("aaa", CompressionType.LZ4));
+        cache.get("a", CompressionType.LZ4);
+        cache.put("b", payload("bbb", CompressionType.LZ4));
+        cache.get("a", CompressionType.LZ4);
+
+        assertEquals(1L, metricUpdater.getStaticMetrics().get("configserver.payloadCacheHits"));
+        assertEquals(1L, metricUpdater.getStaticMetrics().get("configserver.payloadCacheMisses"));
+        assertEquals(1L, metricUpdater.getStaticMetrics().get("configserver.payloadCacheEvictions"));
+        assertEquals(1L, metricUpdater.getStaticMetrics().get("configserver.payloadCacheElems"));
+        assertEquals(3L, metricUpdater.getStaticMetrics().get("configserver.payloadCacheBytes"));
+    }
+
+    @Test
+    public void testThatConcurrentUseKeepsCacheWithinMaxSize() throws InterruptedException {
+        PayloadCache cache = new PayloadCache(100);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            int thread = i;
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    String md5 = thread + ":" + (j % 50);
+                    if (cache.get(md5, CompressionType.LZ4) == null)
+                        cache.put(md5, payload("0123456789", CompressionType.LZ4));
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads)
+            thread.join();
+
+        assertTrue(cache.sizeInBytes() <= 100);
+        assertEquals(cache.size() * 10, cache.sizeInBytes());
+        assertEquals(4000, cache.hits() + cache.misses());
+    }
+
+    private static Payload payload(String data, CompressionType compressionType) {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        return Payload.from(new Utf8Array(bytes), CompressionInfo.create(compressionType, bytes.length));
+    }
+
+}
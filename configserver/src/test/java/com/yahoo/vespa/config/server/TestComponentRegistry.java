@@ -52,6 +52,7 @@ public class TestComponentRegistry implements GlobalComponentRegistry {
     private final Zone zone;
     private final Clock clock;
     private final ConfigServerDB configServerDB;
+    private final PayloadCache payloadCache;
 
     private TestComponentRegistry(Curator curator, ConfigCurator configCurator, Metrics metrics,
                                   ModelFactoryRegistry modelFactoryRegistry,
@@ -83,6 +84,7 @@ public class TestComponentRegistry implements GlobalComponentRegistry {
         this.zone = zone;
         this.clock = clock;
         this.configServerDB = new ConfigServerDB(configserverConfig);
+        this.payloadCache = new PayloadCache(configserverConfig.payloadCacheMaxBytes());
     }
 
     public static class Builder {
@@ -200,6 +202,8 @@ public class TestComponentRegistry implements GlobalComponentRegistry {
     public ConfigServerDB getConfigServerDB() { return configServerDB;}
     @Override
     public FlagSource getFlagSource() { return new InMemoryFlagSource(); }
+    @Override
+    public PayloadCache getPayloadCache() { return payloadCache; }
 
     public FileDistributionFactory getFileDistributionFactory() { return fileDistributionFactory; }
 
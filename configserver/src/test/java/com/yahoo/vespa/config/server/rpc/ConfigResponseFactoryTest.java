@@ -8,12 +8,14 @@ import com.yahoo.text.StringUtilities;
 import com.yahoo.vespa.config.ConfigPayload;
 import com.yahoo.vespa.config.protocol.CompressionType;
 import com.yahoo.vespa.config.protocol.ConfigResponse;
+import com.yahoo.vespa.config.server.PayloadCache;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.StringReader;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 /**
  * @author Ulf Lilleengen
@@ -47,4 +49,21 @@ public class ConfigResponseFactoryTest {
         assertEquals(3, response.getPayload().getByteLength());
     }
 
+    @Test
+    public void testThatPayloadsAreSharedThroughTheCache() {
+        PayloadCache cache = new PayloadCache(1000);
+        LZ4ConfigResponseFactory responseFactory = new LZ4ConfigResponseFactory(cache);
+        ConfigResponse response = responseFactory.createResponse(ConfigPayload.empty(), def, 3, false);
+        ConfigResponse other = responseFactory.createResponse(ConfigPayload.empty(), def, 4, true);
+        assertSame(response.getPayload(), other.getPayload());
+        assertEquals(response.getConfigMd5(), other.getConfigMd5());
+        assertEquals(4L, other.getGeneration());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.size());
+
+        ConfigResponse uncompressed = new UncompressedConfigResponseFactory(cache).createResponse(ConfigPayload.empty(), def, 3, false);
+        assertEquals(CompressionType.UNCOMPRESSED, uncompressed.getCompressionInfo().getCompressionType());
+        assertEquals(2, cache.size());
+    }
+
 }
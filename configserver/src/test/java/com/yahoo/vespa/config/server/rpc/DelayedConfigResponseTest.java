@@ -7,7 +7,10 @@ import com.yahoo.jrt.Request;
 import com.yahoo.vespa.config.ConfigKey;
 import com.yahoo.vespa.config.protocol.CompressionType;
 import com.yahoo.vespa.config.protocol.DefContent;
+import com.yahoo.vespa.config.protocol.JRTClientConfigBatchRequest;
+import com.yahoo.vespa.config.protocol.JRTClientConfigRequest;
 import com.yahoo.vespa.config.protocol.JRTClientConfigRequestV3;
+import com.yahoo.vespa.config.protocol.JRTServerConfigBatchRequest;
 import com.yahoo.vespa.config.protocol.JRTServerConfigRequest;
 import com.yahoo.vespa.config.protocol.JRTServerConfigRequestV3;
 import com.yahoo.vespa.config.protocol.Trace;
@@ -17,11 +20,13 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -78,12 +83,65 @@ public class DelayedConfigResponseTest {
         assertThat(rpc.latestRequest, is(req));
     }
 
+    @Test
+    public void testDelayedBatchResponse() throws IOException {
+        MockRpc rpc = new MockRpc(13337, temporaryFolder.newFolder());
+        DelayedConfigResponses responses = new DelayedConfigResponses(rpc, 1, false);
+        JRTServerConfigBatchRequest batch = createBatch(createClientRequest("foo", "md5", "myid", "mymd5", 3, 100, "bar"),
+                                                        createClientRequest("bar", "md5", "myid", "mymd5", 3, 100000, "bar"));
+        GetConfigContext context = GetConfigContext.testContext(ApplicationId.defaultId());
+        GetConfigContext globalContext = GetConfigContext.testContext(ApplicationId.global());
+        responses.delayResponse(batch, Arrays.asList(context, context, globalContext));
+        assertThat(responses.allDelayedResponses().size(), is(2));
+        rpc.waitUntilBatchSet(5000);
+        assertThat(rpc.latestBatch, is(batch));
+        assertTrue(rpc.forced);
+        assertThat(responses.allDelayedResponses().size(), is(0));
+    }
+
+    @Test
+    public void testDelayedBatchResponseIsRemovedFromAllQueuesOnReload() throws IOException {
+        MockRpc rpc = new MockRpc(13337, temporaryFolder.newFolder());
+        DelayedConfigResponses responses = new DelayedConfigResponses(rpc, 1, false);
+        JRTServerConfigBatchRequest batch = createBatch(createClientRequest("foo", "md5", "myid", "mymd5", 3, 100000, "bar"));
+        responses.delayResponse(batch, Arrays.asList(GetConfigContext.testContext(ApplicationId.defaultId()),
+                                                     GetConfigContext.testContext(ApplicationId.global())));
+        assertThat(responses.allDelayedResponses().size(), is(2));
+        List<DelayedConfigResponses.DelayedConfigResponse> reloaded = responses.drainQueue(ApplicationId.defaultId());
+        List<DelayedConfigResponses.DelayedConfigResponse> other = responses.allDelayedResponses();
+
+        assertTrue(reloaded.get(0).cancel());
+        assertThat(responses.allDelayedResponses().size(), is(0));
+        assertFalse("The batch is processed only once", other.get(0).cancel());
+    }
+
+    @Test
+    public void testDelayedBatchResponseIsProcessedOnReload() throws IOException {
+        MockRpc rpc = new MockRpc(13337, temporaryFolder.newFolder());
+        DelayedConfigResponses responses = new DelayedConfigResponses(rpc, 1, false);
+        JRTServerConfigBatchRequest batch = createBatch(createClientRequest("foo", "md5", "myid", "mymd5", 3, 100000, "bar"));
+        responses.delayResponse(batch, Collections.singletonList(GetConfigContext.testContext(ApplicationId.defaultId())));
+        List<DelayedConfigResponses.DelayedConfigResponse> delayed = responses.drainQueue(ApplicationId.defaultId());
+        assertThat(delayed.size(), is(1));
+        assertTrue(delayed.get(0).cancel());
+        assertTrue(delayed.get(0).addToRequestQueue(false, null));
+        assertThat(rpc.latestBatch, is(batch));
+        assertFalse(rpc.forced);
+    }
+
+    private static JRTServerConfigBatchRequest createBatch(JRTClientConfigRequest ... requests) {
+        return JRTServerConfigBatchRequest.createFromRequest(JRTClientConfigBatchRequest.create(Arrays.asList(requests)).getRequest());
+    }
+
     private JRTServerConfigRequest createRequest(String configName, String defMd5, String configId, String md5, long generation, long timeout, String namespace) {
-        Request request = JRTClientConfigRequestV3.
+        return JRTServerConfigRequestV3.createFromRequest(createClientRequest(configName, defMd5, configId, md5, generation, timeout, namespace).getRequest());
+    }
+
+    private static JRTClientConfigRequest createClientRequest(String configName, String defMd5, String configId, String md5, long generation, long timeout, String namespace) {
+        return JRTClientConfigRequestV3.
                 createWithParams(new ConfigKey<>(configName, configId, namespace, defMd5, null), DefContent.fromList(Collections.emptyList()),
                                  "fromHost", md5, generation, timeout, Trace.createDummy(), CompressionType.UNCOMPRESSED,
-                                 Optional.empty()).getRequest();
-        return JRTServerConfigRequestV3.createFromRequest(request);
+                                 Optional.empty());
     }
 
 }
@@ -0,0 +1,110 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.config.server.rpc;
+
+import com.yahoo.vespa.config.ConfigKey;
+import com.yahoo.vespa.config.ConfigPayload;
+import com.yahoo.vespa.config.protocol.CompressionType;
+import com.yahoo.vespa.config.protocol.DefContent;
+import com.yahoo.vespa.config.protocol.JRTClientConfigBatchRequest;
+import com.yahoo.vespa.config.protocol.JRTClientConfigRequest;
+import com.yahoo.vespa.config.protocol.JRTClientConfigRequestV3;
+import com.yahoo.vespa.config.protocol.JRTServerConfigBatchRequest;
+import com.yahoo.vespa.config.protocol.SlimeConfigResponse;
+import com.yahoo.vespa.config.protocol.Trace;
+import com.yahoo.vespa.config.util.ConfigUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GetConfigBatchProcessorTest {
+
+    private static final String md5 = ConfigUtils.getMd5(ConfigPayload.empty());
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void batch_is_responded_to_with_all_configs_when_one_has_changed() throws IOException {
+        MockRpc rpc = new MockRpc(13337, temporaryFolder.newFolder());
+        rpc.response = SlimeConfigResponse.fromConfigPayload(ConfigPayload.empty(), null, 4, false, md5);
+        JRTClientConfigRequest changed = createRequest("changed", "", 3);
+        JRTClientConfigRequest unchanged = createRequest("unchanged", md5, 4);
+        JRTClientConfigBatchRequest clientBatch = JRTClientConfigBatchRequest.create(Arrays.asList(changed, unchanged));
+        JRTServerConfigBatchRequest batch = JRTServerConfigBatchRequest.createFromRequest(clientBatch.getRequest());
+
+        new GetConfigBatchProcessor(rpc, batch, false).run();
+        assertTrue(rpc.tryRespond);
+        assertFalse(rpc.delayed);
+        assertSame(batch, rpc.latestBatch);
+        assertTrue(batch.isResponded());
+
+        clientBatch.distributeResponse();
+        assertTrue(changed.validateResponse());
+        assertTrue(changed.hasUpdatedConfig());
+        assertEquals(4, changed.getNewGeneration());
+        assertTrue(unchanged.validateResponse());
+        assertFalse(unchanged.hasUpdatedGeneration());
+        assertFalse(unchanged.containsPayload());
+    }
+
+    @Test
+    public void batch_is_delayed_when_no_config_has_changed() throws IOException {
+        MockRpc rpc = new MockRpc(13337, temporaryFolder.newFolder());
+        rpc.response = SlimeConfigResponse.fromConfigPayload(ConfigPayload.empty(), null, 4, false, md5);
+        JRTServerConfigBatchRequest batch = createBatch(createRequest("first", md5, 4), createRequest("second", md5, 4));
+
+        new GetConfigBatchProcessor(rpc, batch, false).run();
+        assertFalse(rpc.tryRespond);
+        assertTrue(rpc.delayed);
+        assertSame(batch, rpc.latestBatch);
+        assertFalse(batch.isResponded());
+
+        rpc.resetChecks();
+        new GetConfigBatchProcessor(rpc, batch, true).run();
+        assertTrue(rpc.tryRespond);
+        assertTrue(batch.isResponded());
+
+        rpc.resetChecks();
+        new GetConfigBatchProcessor(rpc, batch, true).run();
+        assertFalse("A batch is only responded to once", rpc.tryRespond);
+    }
+
+    @Test
+    public void failed_requests_are_responded_to_in_the_batch() throws IOException {
+        MockRpc rpc = new MockRpc(13337, temporaryFolder.newFolder());
+        rpc.response = SlimeConfigResponse.fromConfigPayload(ConfigPayload.empty(), null, 4, false, md5);
+        rpc.exception = new RuntimeException("Failed resolving config");
+        JRTClientConfigRequest request = createRequest("first", md5, 4);
+        JRTClientConfigBatchRequest clientBatch = JRTClientConfigBatchRequest.create(Collections.singletonList(request));
+        JRTServerConfigBatchRequest batch = JRTServerConfigBatchRequest.createFromRequest(clientBatch.getRequest());
+
+        new GetConfigBatchProcessor(rpc, batch, false).run();
+        assertTrue(rpc.tryRespond);
+        assertEquals(0, rpc.errorCode);
+        clientBatch.distributeResponse();
+        assertFalse(request.validateResponse());
+        assertEquals(com.yahoo.vespa.config.ErrorCode.INTERNAL_ERROR, request.errorCode());
+    }
+
+    private static JRTServerConfigBatchRequest createBatch(JRTClientConfigRequest ... requests) {
+        return JRTServerConfigBatchRequest.createFromRequest(JRTClientConfigBatchRequest.create(Arrays.asList(requests)).getRequest());
+    }
+
+    private static JRTClientConfigRequest createRequest(String configId, String configMd5, long generation) {
+        return JRTClientConfigRequestV3.createWithParams(new ConfigKey<>("foo", configId, "bar", "595f44fec1e92a71d3e9e77456ba80d1", null),
+                                                         DefContent.fromList(Collections.emptyList()),
+                                                         "fromHost", configMd5, generation, 100000, Trace.createDummy(),
+                                                         CompressionType.UNCOMPRESSED, Optional.empty());
+    }
+
+}
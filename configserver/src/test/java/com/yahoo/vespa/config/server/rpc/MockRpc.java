@@ -5,6 +5,7 @@ import com.yahoo.cloud.config.ConfigserverConfig;
 import com.yahoo.config.provision.TenantName;
 import com.yahoo.component.Version;
 import com.yahoo.vespa.config.protocol.ConfigResponse;
+import com.yahoo.vespa.config.protocol.JRTServerConfigBatchRequest;
 import com.yahoo.vespa.config.protocol.JRTServerConfigRequest;
 import com.yahoo.vespa.config.server.GetConfigContext;
 import com.yahoo.vespa.config.server.filedistribution.FileServer;
@@ -14,6 +15,7 @@ import com.yahoo.vespa.config.server.monitoring.Metrics;
 import com.yahoo.vespa.config.server.tenant.MockTenantProvider;
 
 import java.io.File;
+import java.util.Collection;
 import java.util.Optional;
 import java.util.concurrent.CompletionService;
 
@@ -34,6 +36,9 @@ public class MockRpc extends RpcServer {
     public boolean tryRespond = false;
     /** The last request received and responded to */
     public volatile JRTServerConfigRequest latestRequest = null;
+    /** The last batch of requests received, responded to or delayed */
+    public volatile JRTServerConfigBatchRequest latestBatch = null;
+    public boolean delayed = false;
 
 
     public MockRpc(int port, boolean createDefaultTenant, boolean pretendToHaveLoadedAnyApplication, File tempDir) {
@@ -58,6 +63,8 @@ public class MockRpc extends RpcServer {
         tryResolveConfig = false;
         tryRespond = false;
         latestRequest = null;
+        latestBatch = null;
+        delayed = false;
     }
 
     private static ConfigserverConfig createConfig(int port) {
@@ -81,6 +88,20 @@ public class MockRpc extends RpcServer {
         return false;
     }
 
+    public boolean waitUntilBatchSet(int timeout) {
+        long end = System.currentTimeMillis() + timeout;
+        while (System.currentTimeMillis() < end) {
+            if (latestBatch != null)
+                return true;
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        return false;
+    }
+
     @Override
     public Boolean addToRequestQueue(JRTServerConfigRequest request, boolean forceResponse, CompletionService<Boolean> completionService) {
         latestRequest = request;
@@ -95,6 +116,26 @@ public class MockRpc extends RpcServer {
         errorCode = request.errorCode();
     }
 
+    @Override
+    public Boolean addToRequestQueue(JRTServerConfigBatchRequest batch, boolean forceResponse, CompletionService<Boolean> completionService) {
+        latestBatch = batch;
+        forced = forceResponse;
+        return true;
+    }
+
+    @Override
+    public void respond(JRTServerConfigBatchRequest batch) {
+        latestBatch = batch;
+        tryRespond = true;
+        errorCode = batch.getRequest().errorCode();
+    }
+
+    @Override
+    void delayResponse(JRTServerConfigBatchRequest batch, Collection<GetConfigContext> contexts) {
+        latestBatch = batch;
+        delayed = true;
+    }
+
     @Override
     public ConfigResponse resolveConfig(JRTServerConfigRequest request, GetConfigContext context, Optional<Version> vespaVersion) {
         tryResolveConfig = true;
@@ -17,6 +17,7 @@ import com.yahoo.vespa.config.ConfigPayloadApplier;
 import com.yahoo.vespa.config.ErrorCode;
 import com.yahoo.vespa.config.RawConfig;
 import com.yahoo.vespa.config.protocol.CompressionType;
+import com.yahoo.vespa.config.protocol.JRTClientConfigBatchRequest;
 import com.yahoo.vespa.config.protocol.ConfigResponse;
 import com.yahoo.vespa.config.protocol.JRTClientConfigRequest;
 import com.yahoo.vespa.config.protocol.JRTClientConfigRequestV3;
@@ -36,6 +37,8 @@ import org.xml.sax.SAXException;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Optional;
 
 import static org.hamcrest.core.Is.is;
@@ -54,6 +57,7 @@ public class RpcServerTest {
         try (RpcTester tester = new RpcTester(temporaryFolder)) {
             testPrintStatistics(tester);
             testGetConfig(tester);
+            testGetConfigs(tester);
             testEnabled(tester);
             testEmptyConfigHostedVespa(tester);
         }
@@ -125,6 +129,26 @@ public class RpcServerTest {
         assertThat(config.intval(), is(123));
     }
 
+    private void testGetConfigs(RpcTester tester) {
+        ((MockRequestHandler)tester.tenantProvider().getRequestHandler()).responses.put(ApplicationId.defaultId(), createResponse());
+        JRTClientConfigRequest changed = createRequest(new RawConfig(new ConfigKey<>(SimpletypesConfig.class, "brim"),
+                                                                     SimpletypesConfig.getDefMd5()));
+        RawConfig current = new RawConfig(new ConfigKey<>(SimpletypesConfig.class, "brum"), SimpletypesConfig.getDefMd5(),
+                                          null, createResponse().getConfigMd5(), 3L, false, Collections.emptyList(),
+                                          Optional.empty());
+        JRTClientConfigRequest unchanged = createRequest(current);
+        JRTClientConfigBatchRequest batch = JRTClientConfigBatchRequest.create(Arrays.asList(changed, unchanged));
+        tester.performRequest(batch.getRequest());
+        batch.distributeResponse();
+
+        assertTrue(changed.errorMessage(), changed.validateResponse());
+        assertTrue(changed.hasUpdatedConfig());
+        assertThat(changed.getNewGeneration(), is(3L));
+        assertTrue(unchanged.errorMessage(), unchanged.validateResponse());
+        assertFalse(unchanged.hasUpdatedGeneration());
+        assertFalse(unchanged.containsPayload());
+    }
+
     private ConfigResponse createResponse() {
         SimpletypesConfig.Builder builder = new SimpletypesConfig.Builder();
         builder.intval(123);
@@ -114,6 +114,7 @@ public final class SessionCache extends AbstractComponent {
 
         mbusParams.setMaxPendingCount(mbusConfig.maxpendingcount());
         mbusParams.setMaxPendingSize(maxPendingSize);
+        mbusParams.setMessengerThreads(mbusConfig.messengerthreads());
 
         RPCNetworkParams netParams = new RPCNetworkParams()
                 .setSlobrokConfigId(slobrokConfigId)
@@ -27,6 +27,8 @@ import com.yahoo.prelude.fastsearch.VespaBackEndSearcher;
 import com.yahoo.search.Query;
 import com.yahoo.search.Result;
 import com.yahoo.search.Searcher;
+import com.yahoo.search.cache.CacheStatistics;
+import com.yahoo.search.cache.ResultCache;
 import com.yahoo.search.config.ClusterConfig;
 import com.yahoo.search.query.ParameterParser;
 import com.yahoo.search.result.ErrorMessage;
@@ -50,6 +52,8 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -127,7 +131,10 @@ public class ClusterSearcher extends Searcher {
         maxQueryCacheTimeout = ParameterParser.asMilliSeconds(clusterConfig.maxQueryCacheTimeout(),
                                                               DEFAULT_MAX_QUERY_CACHE_TIMEOUT);
 
-        CacheParams cacheParams = new CacheParams(createCache(clusterConfig, clusterModelName));
+        CacheControl cacheControl = createCache(clusterConfig, clusterModelName);
+        addCacheStatistics(clusterModelName + ".cache", cacheControl::statistics, manager);
+        addCacheStatistics(clusterModelName + ".result_cache", () -> dispatcher.resultCache().map(ResultCache::statistics), manager);
+        CacheParams cacheParams = new CacheParams(cacheControl);
         SummaryParameters docSumParams = new SummaryParameters(qrsConfig
                 .com().yahoo().prelude().fastsearch().FastSearcher().docsum()
                 .defaultclass());
@@ -252,6 +259,23 @@ public class ClusterSearcher extends Searcher {
         return new CacheControl(config.cacheSize(), config.cacheTimeout());
     }
 
+    /** Logs the current totals of the counters of a cache each logging cycle, as long as it returns statistics */
+    private static void addCacheStatistics(String prefix, Supplier<Optional<CacheStatistics>> cache, Statistics manager) {
+        addCacheStatistic(prefix + "_hits", cache, CacheStatistics::hits, manager);
+        addCacheStatistic(prefix + "_misses", cache, CacheStatistics::misses, manager);
+        addCacheStatistic(prefix + "_evictions", cache, CacheStatistics::evictions, manager);
+        addCacheStatistic(prefix + "_rejections", cache, CacheStatistics::rejections, manager);
+        addCacheStatistic(prefix + "_expirations", cache, CacheStatistics::expirations, manager);
+        addCacheStatistic(prefix + "_bytes", cache, CacheStatistics::weightedSize, manager);
+    }
+
+    private static void addCacheStatistic(String name, Supplier<Optional<CacheStatistics>> cache,
+                                          ToLongFunction<CacheStatistics> statistic, Statistics manager) {
+        new Value(name, manager, new Value.Parameters().setNameExtension(false).setLogRaw(true)
+                                                       .setCallback((handle, firstTime) -> cache.get().ifPresent(
+                                                               statistics -> ((Value) handle).put(statistic.applyAsLong(statistics)))));
+    }
+
     ClusterMonitor getMonitor() {
         return monitor;
     }
@@ -6,6 +6,7 @@ import com.yahoo.fs4.Packet;
 import com.yahoo.fs4.QueryPacket;
 import com.yahoo.fs4.QueryResultPacket;
 import com.yahoo.search.Query;
+import com.yahoo.search.cache.CacheStatistics;
 import com.yahoo.processing.request.CompoundName;
 
 import java.util.Optional;
@@ -23,13 +24,13 @@ public class CacheControl {
     /** Whether this CacheControl actually should cache hits at all. */
     private final boolean activeCache;
 
-    /** Direct unsychronized cache access */
-    private final PacketCache packetCache;
+    /** The packet cache, which is safe for concurrent access */
+    private final ConcurrentPacketCache packetCache;
 
     public CacheControl(int sizeMegaBytes, double cacheTimeOutSeconds) {
         activeCache = sizeMegaBytes > 0 && cacheTimeOutSeconds > 0.0d;
         if (activeCache) {
-            packetCache = new PacketCache(sizeMegaBytes, 0, cacheTimeOutSeconds);
+            packetCache = new ConcurrentPacketCache(sizeMegaBytes, 0, cacheTimeOutSeconds);
         } else {
             packetCache = null;
         }
@@ -46,10 +47,7 @@ public class CacheControl {
 
     public final PacketWrapper lookup(CacheKey key, Query query) {
         if ((key != null) && useCache(query)) {
-            long now = System.currentTimeMillis();
-            synchronized (packetCache) {
-                return packetCache.get(key, now);
-            }
+            return packetCache.get(key, System.currentTimeMillis());
         }
         return null;
     }
@@ -67,9 +65,7 @@ public class CacheControl {
         oldTimestamp = wrapper.getTimestamp();
         wrapper = (PacketWrapper) wrapper.clone();
         wrapper.addResultPacket(resultPacket);
-        synchronized (packetCache) {
-            packetCache.put(key, wrapper, oldTimestamp);
-        }
+        packetCache.put(key, wrapper, oldTimestamp);
     }
 
     // updates phases after first phase phase in multi phase search
@@ -81,9 +77,7 @@ public class CacheControl {
 
         wrapper = (PacketWrapper) wrapper.clone();
         wrapper.addDocsums(packetKeys, packets);
-        synchronized (packetCache) {
-            packetCache.put(key, wrapper, wrapper.getTimestamp());
-        }
+        packetCache.put(key, wrapper, wrapper.getTimestamp());
     }
 
     void cache(CacheKey key, Query query, DocsumPacketKey[] packetKeys, Packet[] packets, Optional<Integer> distributionKey) {
@@ -95,20 +89,20 @@ public class CacheControl {
         PacketWrapper wrapper = lookup(key, query);
         if (wrapper == null) {
             wrapper = new PacketWrapper(key, packetKeys, packets, distributionKey);
-            long now = System.currentTimeMillis();
-            synchronized (packetCache) {
-                packetCache.put(key, wrapper, now);
-            }
+            packetCache.put(key, wrapper, System.currentTimeMillis());
         } else {
             wrapper = (PacketWrapper) wrapper.clone();
             wrapper.addResultPacket((QueryResultPacket) packets[0]);
             wrapper.addDocsums(packetKeys, packets, 1);
-            synchronized (packetCache) {
-                packetCache.put(key, wrapper, wrapper.getTimestamp());
-            }
+            packetCache.put(key, wrapper, wrapper.getTimestamp());
         }
     }
 
+    /** Returns the hit, miss and eviction counts of the packet cache, or empty if caching is disabled */
+    public Optional<CacheStatistics> statistics() {
+        return activeCache ? Optional.of(packetCache.statistics()) : Optional.empty();
+    }
+
     /** Test method. */
     public void clear() {
         if (packetCache != null) {
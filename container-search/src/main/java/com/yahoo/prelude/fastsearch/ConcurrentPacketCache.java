@@ -0,0 +1,121 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.fastsearch;
+
+import com.yahoo.log.LogLevel;
+import com.yahoo.search.cache.CacheStatistics;
+import com.yahoo.search.cache.TinyLfuCache;
+
+import java.util.logging.Logger;
+
+/**
+ * A packet cache which may be used concurrently without external synchronization, and which
+ * uses the number of bytes of packets cached as size limiting factor. New entries are admitted
+ * based on how frequently they are looked up rather than by pure LRU, see {@link TinyLfuCache}.
+ */
+public class ConcurrentPacketCache {
+
+    private static final Logger log = Logger.getLogger(ConcurrentPacketCache.class.getName());
+
+    /** The assumed average size of an entry, used to size the access frequency estimate */
+    private static final int ESTIMATED_ENTRY_SIZE = 4096;
+
+    /** The maximum number of bytes of packets in this cache */
+    private final int capacity;
+
+    private final TinyLfuCache<CacheKey, PacketWrapper> cache;
+
+    /**
+     * Creates a cache with a size given by
+     * cachesizemegabytes*2^20+cachesizebytes
+     *
+     * @param capacityMegaBytes the cache size, measured in megabytes
+     * @param capacityBytes additional number of bytes to add to the cache size
+     * @param maxAge seconds a cache entry is valid, 0 or less are illegal arguments
+     */
+    public ConcurrentPacketCache(int capacityMegaBytes, int capacityBytes, double maxAge) {
+        if (maxAge <= 0.0d) {
+            throw new IllegalArgumentException("maxAge <= 0 not legal, use some very large number for no timeout.");
+        }
+        if (capacityMegaBytes > (Integer.MAX_VALUE >> 20)) {
+            log.log(LogLevel.INFO, "Packet cache of more than 2 GB requested. Reverting to 2 GB packet cache.");
+            this.capacity = Integer.MAX_VALUE;
+        } else {
+            this.capacity = (capacityMegaBytes << 20) + capacityBytes;
+        }
+        if (this.capacity <= 0) {
+            throw new IllegalArgumentException("Total cache size set to 0 or less bytes. If no caching is desired, avoid creating this object instead.");
+        }
+        this.cache = new TinyLfuCache<>(capacity, capacity / ESTIMATED_ENTRY_SIZE, (long) Math.min(maxAge * 1000.0d, Long.MAX_VALUE),
+                                        PacketWrapper::getPacketsSize);
+        this.cache.setMaxItemPercentage(1);
+    }
+
+    /**
+     * Sets the max size of a cached item compared to the total size
+     * Cache requests for larger objects will be ignored
+     */
+    public void setMaxCacheItemPercentage(int maxCapacityPercentage) {
+        cache.setMaxItemPercentage(maxCapacityPercentage);
+    }
+
+    public int getCapacity() {
+        return capacity >> 20;
+    }
+
+    public int getByteCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Adds a PacketWrapper object to this cache,
+     * unless the size is more than maxCacheItemPercentage of the total size
+     */
+    public PacketWrapper put(CacheKey key, PacketWrapper value) {
+        return put(key, value, System.currentTimeMillis());
+    }
+
+    /**
+     * Adds a PacketWrapper object to this cache,
+     * unless the size is more than maxCacheItemPercentage of the total size
+     *
+     * @param timestamp the timestamp for the first packet in the array,
+     * unit milliseconds
+     */
+    public PacketWrapper put(CacheKey key, PacketWrapper result, long timestamp) {
+        if (result.getPacketsSize() > 0) {
+            result.setTimestamp(timestamp);
+        }
+        return cache.put(key, result, timestamp);
+    }
+
+    public PacketWrapper get(CacheKey key) {
+        return get(key, System.currentTimeMillis());
+    }
+
+    public PacketWrapper get(CacheKey key, long now) {
+        return cache.get(key, now);
+    }
+
+    public PacketWrapper remove(CacheKey key) {
+        return cache.remove(key);
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    /** Returns the number of entries in this cache */
+    public int size() {
+        return cache.size();
+    }
+
+    public int totalPacketSize() {
+        return (int) cache.weightedSize();
+    }
+
+    /** Returns the hit, miss and eviction counts of this cache */
+    public CacheStatistics statistics() {
+        return cache.statistics();
+    }
+
+}
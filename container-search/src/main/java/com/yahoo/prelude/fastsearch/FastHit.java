@@ -318,6 +318,18 @@ public class FastHit extends Hit {
         return null;
     }
 
+    /** Returns a clone of this which owns its summary data, such that the clone can be filled independently */
+    @Override
+    public FastHit clone() {
+        FastHit clone = (FastHit) super.clone();
+        clone.summaries = new ArrayList<>(summaries.size());
+        for (SummaryData summary : summaries)
+            clone.summaries.add(new SummaryData(clone, summary.type, summary.data, summary.index));
+        if (removedFields != null)
+            clone.removedFields = new HashSet<>(removedFields);
+        return clone;
+    }
+
     @Override
     public String toString() {
         return super.toString() + " [fasthit, globalid: " + globalId + ", partId: "
@@ -12,6 +12,8 @@ import com.yahoo.processing.request.CompoundName;
 import com.yahoo.search.Query;
 import com.yahoo.search.Result;
 import com.yahoo.search.Searcher;
+import com.yahoo.search.dispatch.HedgeStatistics;
+import com.yahoo.search.query.context.QueryContext;
 import com.yahoo.search.result.Coverage;
 import com.yahoo.search.result.ErrorHit;
 import com.yahoo.search.result.ErrorMessage;
@@ -57,6 +59,8 @@ public class StatisticsSearcher extends Searcher {
     private static final String DOCS_COVERED_METRIC = "documents_covered";
     private static final String DOCS_TOTAL_METRIC = "documents_total";
     private static final String DEGRADED_METRIC = "degraded_queries";
+    private static final String HEDGED_METRIC = "hedged_queries";
+    private static final String HEDGED_WON_METRIC = "hedged_queries_won";
 
     private final Counter queries; // basic counter
     private final Counter failedQueries; // basic counter
@@ -79,6 +83,7 @@ public class StatisticsSearcher extends Searcher {
     private Map<String, Metric.Context> chainContexts = new CopyOnWriteHashMap<>();
     private Map<String, Metric.Context> statePageOnlyContexts = new CopyOnWriteHashMap<>();
     private Map<String, Map<DegradedReason, Metric.Context>> degradedReasonContexts = new CopyOnWriteHashMap<>();
+    private Map<String, Metric.Context> hedgedGroupContexts = new CopyOnWriteHashMap<>();
     private java.util.Timer scheduler = new java.util.Timer(true);
 
     private class PeakQpsReporter extends java.util.TimerTask {
@@ -171,6 +176,20 @@ public class StatisticsSearcher extends Searcher {
         return reasons.get(getMostImportantDegradeReason(coverage));
     }
 
+    private Metric.Context getHedgedMetricContext(String chainName, int group, int slowGroup) {
+        String key = chainName + "/" + group + "/" + slowGroup;
+        Metric.Context context = hedgedGroupContexts.get(key);
+        if (context == null) {
+            Map<String, String> dimensions = new HashMap<>();
+            dimensions.put("chain", chainName);
+            dimensions.put("group", String.valueOf(group));
+            dimensions.put("slowGroup", String.valueOf(slowGroup));
+            context = this.metric.createContext(dimensions);
+            hedgedGroupContexts.put(key, context);
+        }
+        return context;
+    }
+
     private DegradedReason getMostImportantDegradeReason(Coverage coverage) {
         if (coverage.isDegradedByMatchPhase()) {
             return DegradedReason.match_phase;
@@ -233,6 +252,7 @@ public class StatisticsSearcher extends Searcher {
             metric.add(DOCS_COVERED_METRIC, queryCoverage.getDocs(), metricContext);
             metric.add(DOCS_TOTAL_METRIC, queryCoverage.getActive(), metricContext);
         }
+        addHedgeStatistics(query, execution.chain().getId().stringValue());
         int hitCount = result.getConcreteHitCount();
         hitsPerQuery.put((double) hitCount);
         metric.set(HITS_PER_QUERY_METRIC, (double) hitCount, metricContext);
@@ -248,6 +268,25 @@ public class StatisticsSearcher extends Searcher {
         return result;
     }
 
+    /**
+     * Counts hedged requests made for this query, and whether they won, with the group the hedged request was
+     * sent to and the slow group which caused it as dimensions
+     */
+    private void addHedgeStatistics(Query query, String chainName) {
+        QueryContext queryContext = query.getContext(false);
+        if (queryContext == null) return;
+
+        Object statistics = queryContext.getProperty(HedgeStatistics.HEDGE_STATISTICS);
+        if ( ! (statistics instanceof HedgeStatistics)) return;
+
+        HedgeStatistics hedge = (HedgeStatistics) statistics;
+        Metric.Context hedgedContext = getHedgedMetricContext(chainName, hedge.hedgeGroup(), hedge.slowGroup());
+        metric.add(HEDGED_METRIC, 1, hedgedContext);
+        if (hedge.hedgeWon()) {
+            metric.add(HEDGED_WON_METRIC, 1, hedgedContext);
+        }
+    }
+
     private void logQuery(com.yahoo.search.Query query) {
         // Don't parse the query if it's not necessary for the logging Query.toString triggers parsing
         if (getLogger().isLoggable(Level.FINER)) {
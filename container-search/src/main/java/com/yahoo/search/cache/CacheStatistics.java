@@ -0,0 +1,63 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.cache;
+
+/**
+ * A snapshot of the counters of a {@link TinyLfuCache}. All counts are totals since the cache was created.
+ *
+ * This class is immutable.
+ */
+public class CacheStatistics {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long rejections;
+    private final long expirations;
+    private final long weightedSize;
+    private final int entries;
+
+    public CacheStatistics(long hits, long misses, long evictions, long rejections, long expirations,
+                           long weightedSize, int entries) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.rejections = rejections;
+        this.expirations = expirations;
+        this.weightedSize = weightedSize;
+        this.entries = entries;
+    }
+
+    /** Returns the number of lookups which found a valid entry */
+    public long hits() { return hits; }
+
+    /** Returns the number of lookups which did not find a valid entry */
+    public long misses() { return misses; }
+
+    /** Returns the number of entries removed to make room for others, or not admitted from the window */
+    public long evictions() { return evictions; }
+
+    /** Returns the number of entries which were not cached because they were larger than the max item size */
+    public long rejections() { return rejections; }
+
+    /** Returns the number of entries removed because they were older than the max age of the cache */
+    public long expirations() { return expirations; }
+
+    /** Returns the sum of the weights of the entries in the cache */
+    public long weightedSize() { return weightedSize; }
+
+    /** Returns the number of entries in the cache */
+    public int entries() { return entries; }
+
+    /** Returns the ratio of lookups which were hits, or 0 if there have been no lookups */
+    public double hitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "cache statistics: " + hits + " hits, " + misses + " misses, " + evictions + " evictions, " +
+               rejections + " rejections, " + expirations + " expirations, " + entries + " entries of total weight " + weightedSize;
+    }
+
+}
@@ -0,0 +1,105 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A count-min sketch estimating how often keys have been accessed recently, using four 4-bit counters
+ * per key. All counters are halved when a number of increments proportional to the table size has been
+ * made, so the estimate reflects recent popularity rather than all time popularity.
+ *
+ * This class is multithread safe. Concurrent increments may occasionally be lost during a reset,
+ * which is of no consequence for an estimate.
+ */
+class FrequencySketch {
+
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    private final AtomicLongArray table;
+    private final int tableMask;
+    private final int sampleSize;
+    private final AtomicInteger additions = new AtomicInteger(0);
+
+    /**
+     * Creates a sketch sized for the given number of distinct keys.
+     *
+     * @param expectedKeys the number of keys the sketch should be able to tell apart
+     */
+    FrequencySketch(int expectedKeys) {
+        int size = Integer.highestOneBit(Math.max(64, Math.min(expectedKeys, 1 << 24)) - 1) << 1;
+        this.table = new AtomicLongArray(size);
+        this.tableMask = size - 1;
+        this.sampleSize = 10 * size;
+    }
+
+    /** Returns the estimated number of recent accesses to the given key, at most 15 */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long slot = slot(hash, i);
+            frequency = Math.min(frequency, counter(table.get(index(slot)), shift(slot)));
+        }
+        return frequency;
+    }
+
+    /** Records an access to the given key */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean incremented = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long slot = slot(hash, i);
+            incremented |= incrementCounter(index(slot), shift(slot));
+        }
+        if (incremented && additions.incrementAndGet() >= sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementCounter(int index, int shift) {
+        while (true) {
+            long value = table.get(index);
+            if (counter(value, shift) == MAX_COUNT) {
+                return false;
+            }
+            if (table.compareAndSet(index, value, value + (1L << shift))) {
+                return true;
+            }
+        }
+    }
+
+    /** Halves all counters */
+    private void reset() {
+        additions.set(sampleSize / 2);
+        for (int i = 0; i < table.length(); i++) {
+            table.getAndUpdate(i, value -> (value >>> 1) & RESET_MASK);
+        }
+    }
+
+    private static int counter(long value, int shift) {
+        return (int) ((value >>> shift) & MAX_COUNT);
+    }
+
+    private static long slot(int hash, int i) {
+        long slot = (hash + SEEDS[i]) * SEEDS[i];
+        return slot + (slot >>> 32);
+    }
+
+    private int index(long slot) {
+        return (int) slot & tableMask;
+    }
+
+    private static int shift(long slot) {
+        return (int) ((slot >>> 40) & 15) << 2;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+
+}
@@ -0,0 +1,273 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.cache;
+
+import com.yahoo.document.GlobalId;
+import com.yahoo.fs4.QueryPacket;
+import com.yahoo.prelude.fastsearch.CacheControl;
+import com.yahoo.prelude.fastsearch.CacheKey;
+import com.yahoo.prelude.fastsearch.FastHit;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.result.Coverage;
+import com.yahoo.search.result.Hit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+/**
+ * A cache of the results of searching a content cluster, used when dispatching queries directly to the content nodes.
+ * Results are keyed on the normalized query, which includes the ranking and summary class but not the timeout
+ * or session, together with the document type, the result window, and the generation of the state of the cluster
+ * the result was produced at. Results produced before the content cluster last changed state are therefore
+ * never returned, and are evicted as the cache fills up.
+ * <p>
+ * Cached results are complete copies, such that they can be modified after being returned.
+ * The entry of a result is updated with the summaries of its hits when those are filled.
+ * <p>
+ * This is multithread safe.
+ */
+public class ResultCache {
+
+    /** The estimated memory used by a hit, excluding summary data */
+    private static final int ESTIMATED_HIT_SIZE = 256;
+
+    /** The estimated memory used by each summary filled in a hit */
+    private static final int ESTIMATED_SUMMARY_SIZE = 1024;
+
+    /** The estimated size of an entry, used to size the cache access frequency estimate */
+    private static final int ESTIMATED_ENTRY_SIZE = 10 * (ESTIMATED_HIT_SIZE + ESTIMATED_SUMMARY_SIZE);
+
+    private final TinyLfuCache<Key, Entry> cache;
+    private final LongSupplier generation;
+    private final String keyProperty;
+
+    /**
+     * Creates a result cache.
+     *
+     * @param name the name of the cluster whose results are cached
+     * @param capacityMegaBytes the max estimated memory used by this
+     * @param maxAgeSeconds the max age of a result returned from this
+     * @param generation supplies the current generation of the state of the cluster
+     */
+    public ResultCache(String name, int capacityMegaBytes, double maxAgeSeconds, LongSupplier generation) {
+        long capacity = (long) capacityMegaBytes << 20;
+        this.cache = new TinyLfuCache<>(capacity, (int) Math.min(capacity / ESTIMATED_ENTRY_SIZE, Integer.MAX_VALUE),
+                                        (long) Math.min(maxAgeSeconds * 1000.0d, Long.MAX_VALUE), Entry::weight);
+        this.cache.setMaxItemPercentage(1);
+        this.generation = generation;
+        this.keyProperty = "resultcache.key." + name;
+    }
+
+    /**
+     * Returns whether results of the given query may be cached. Results of queries with grouping, or which
+     * use backend sessions, or target only some nodes of the cluster are not cached.
+     */
+    public boolean isCacheable(Query query) {
+        if (query.getNoCache()) return false;
+        if (query.getModel().getSearchPath() != null) return false;
+        if ( ! query.getSelect().getGrouping().isEmpty()) return false;
+        if (query.getGroupingSessionCache() || query.getRanking().getQueryCache()) return false;
+        if (query.properties().getBoolean(com.yahoo.search.query.Model.ESTIMATE)) return false;
+        return true;
+    }
+
+    /**
+     * Returns the key of the results of a query at the current generation, and remembers it in the query
+     * such that it can be looked up later by {@link #keyOf}.
+     */
+    public Key createKey(Query query, QueryPacket queryPacket) {
+        Key key = new Key(new CacheKey(queryPacket), query.getModel().getDocumentDb(), query.getOffset(), query.getHits(),
+                          generation.getAsLong());
+        query.getContext(true).setProperty(keyProperty, key);
+        return key;
+    }
+
+    /** Returns the key which was created for the given query, if any */
+    public Optional<Key> keyOf(Query query) {
+        if (query.getContext(false) == null) return Optional.empty();
+        Object key = query.getContext(false).getProperty(keyProperty);
+        return key instanceof Key ? Optional.of((Key) key) : Optional.empty();
+    }
+
+    /** Returns a copy of the result cached for the given key, or empty if there is none */
+    public Optional<Result> get(Key key, Query query) {
+        Entry entry = cache.get(key, System.currentTimeMillis());
+        if (entry == null) return Optional.empty();
+        return Optional.of(entry.toResult(query));
+    }
+
+    /**
+     * Adds a copy of the given result to this, unless it has errors or incomplete coverage,
+     * or the state of the cluster has changed since the key was created.
+     */
+    public void put(Key key, Result result) {
+        if ( ! isComplete(result)) return;
+        if (result.getQuery().properties().getBoolean(CacheControl.nocachewrite)) return;
+        if (key.generation != generation.getAsLong()) return;
+        cache.put(key, new Entry(result), System.currentTimeMillis());
+    }
+
+    /**
+     * Updates the hits of the result cached for the given key with those of the given result which are filled
+     * with the given summary class. The given result may contain any subset of the hits of the cached result.
+     */
+    public void updateSummaries(Key key, Result filled, String summaryClass) {
+        if (filled.hits().getError() != null) return;
+        Entry entry = cache.peek(key);
+        if (entry == null) return;
+        Entry updated = entry.withSummaries(filled, summaryClass);
+        if (updated != entry)
+            cache.put(key, updated, entry.created);
+    }
+
+    /** Returns the hit, miss and eviction counts of this cache */
+    public CacheStatistics statistics() {
+        return cache.statistics();
+    }
+
+    /** Removes all entries from this */
+    public void clear() {
+        cache.clear();
+    }
+
+    private static boolean isComplete(Result result) {
+        if (result.hits().getError() != null) return false;
+        Coverage coverage = result.getCoverage(false);
+        return coverage != null && coverage.getFull() && ! coverage.isDegraded();
+    }
+
+    /** The key of a cached result. Keys created at different cluster state generations are never equal. */
+    public static final class Key {
+
+        private final CacheKey query;
+        private final String documentDb;
+        private final int offset;
+        private final int hits;
+        private final long generation;
+        private final int hashCode;
+
+        Key(CacheKey query, String documentDb, int offset, int hits, long generation) {
+            this.query = query;
+            this.documentDb = documentDb;
+            this.offset = offset;
+            this.hits = hits;
+            this.generation = generation;
+            this.hashCode = Objects.hash(query, documentDb, offset, hits, generation);
+        }
+
+        @Override
+        public int hashCode() { return hashCode; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if ( ! (o instanceof Key)) return false;
+            Key other = (Key) o;
+            return offset == other.offset && hits == other.hits && generation == other.generation
+                   && query.equals(other.query) && Objects.equals(documentDb, other.documentDb);
+        }
+
+        @Override
+        public String toString() {
+            return "result cache key " + Integer.toHexString(hashCode) + " at generation " + generation;
+        }
+
+    }
+
+    /** A cached result. This is immutable, and its hits are never exposed. */
+    private static final class Entry {
+
+        private final List<Hit> hits;
+        private final long totalHitCount;
+        private final Coverage coverage;
+        private final long created;
+        private final int weight;
+
+        Entry(Result result) {
+            this(copyOf(result.hits().asList()), result.getTotalHitCount(), copyOf(result.getCoverage(false)),
+                 System.currentTimeMillis());
+        }
+
+        private Entry(List<Hit> hits, long totalHitCount, Coverage coverage, long created) {
+            this.hits = hits;
+            this.totalHitCount = totalHitCount;
+            this.coverage = coverage;
+            this.created = created;
+            this.weight = weightOf(hits);
+        }
+
+        int weight() { return weight; }
+
+        /** Returns a new result for the given query containing copies of the hits of this */
+        Result toResult(Query query) {
+            Result result = new Result(query);
+            result.setTotalHitCount(totalHitCount);
+            result.setCoverage(copyOf(coverage));
+            for (Hit hit : hits) {
+                Hit copy = hit.clone();
+                copy.setQuery(query);
+                copy.setCached(true);
+                result.hits().add(copy);
+            }
+            return result;
+        }
+
+        /** Returns a copy of this where the hits filled in the given result replace the corresponding hits in this */
+        Entry withSummaries(Result filled, String summaryClass) {
+            Map<GlobalId, Hit> filledHits = new HashMap<>();
+            for (Iterator<Hit> i = filled.hits().unorderedDeepIterator(); i.hasNext(); ) {
+                Hit hit = i.next();
+                if (hit instanceof FastHit && hit.isFilled(summaryClass))
+                    filledHits.put(((FastHit) hit).getGlobalId(), hit);
+            }
+            if (filledHits.isEmpty()) return this;
+
+            List<Hit> updated = new ArrayList<>(hits.size());
+            boolean changed = false;
+            for (Hit hit : hits) {
+                Hit filledHit = hit instanceof FastHit ? filledHits.get(((FastHit) hit).getGlobalId()) : null;
+                if (filledHit != null && ! hit.isFilled(summaryClass)) {
+                    updated.add(filledHit.clone());
+                    changed = true;
+                } else {
+                    updated.add(hit);
+                }
+            }
+            if ( ! changed) return this;
+            return new Entry(Collections.unmodifiableList(updated), totalHitCount, coverage, created);
+        }
+
+        private static List<Hit> copyOf(List<Hit> hits) {
+            List<Hit> copy = new ArrayList<>(hits.size());
+            for (Hit hit : hits)
+                copy.add(hit.clone());
+            return Collections.unmodifiableList(copy);
+        }
+
+        private static Coverage copyOf(Coverage coverage) {
+            if (coverage == null) return null;
+            return new Coverage(coverage.getDocs(), coverage.getActive(), coverage.getNodes(), coverage.getResultSets())
+                    .setSoonActive(coverage.getSoonActive())
+                    .setNodesTried(coverage.getNodesTried());
+        }
+
+        private static int weightOf(List<Hit> hits) {
+            int weight = 0;
+            for (Hit hit : hits) {
+                weight += ESTIMATED_HIT_SIZE;
+                if (hit.getFilled() != null)
+                    weight += ESTIMATED_SUMMARY_SIZE * hit.getFilled().size();
+            }
+            return weight;
+        }
+
+    }
+
+}
@@ -0,0 +1,398 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * A concurrent cache bounded by the total weight of its entries, using the W-TinyLFU policy:
+ * New entries enter a small LRU window. Entries leaving the window are only admitted to the main region
+ * if they have been accessed more frequently in the recent past than the entry which would be evicted
+ * to make room for them, as estimated by a {@link FrequencySketch}. This keeps a burst of one-time
+ * lookups from flushing out the entries which are frequently used. The main region is a segmented LRU,
+ * where entries accessed again are protected from eviction until they have become the least recently
+ * used of the protected entries.
+ * <p>
+ * Entries are also removed when they are looked up after having become older than the max age of the cache.
+ * <p>
+ * Lookups do not take any locks: Accesses are recorded in a lossy buffer which is applied to the eviction
+ * order in batches by whichever thread gets the lock. Insertions and removals are serialized.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class TinyLfuCache<K, V> {
+
+    private static final int WINDOW_PERCENTAGE = 1;
+    private static final int PROTECTED_PERCENTAGE = 80;
+    private static final int READ_BUFFER_SIZE = 128;
+    private static final int READ_BUFFER_DRAIN_INTERVAL = 32;
+
+    private enum Region { WINDOW, PROBATION, PROTECTED, REMOVED }
+
+    private final ConcurrentHashMap<K, Node<K, V>> entries = new ConcurrentHashMap<>();
+    private final FrequencySketch sketch;
+    private final ToIntFunction<V> weigher;
+    private final long capacity;
+    private final long windowCapacity;
+    private final long mainCapacity;
+    private final long protectedCapacity;
+    private final long maxAge;
+    private volatile int maxItemPercentage = 100;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AccessOrder<K, V> window = new AccessOrder<>();
+    private final AccessOrder<K, V> probation = new AccessOrder<>();
+    private final AccessOrder<K, V> protectedRegion = new AccessOrder<>();
+
+    private final AtomicReferenceArray<Node<K, V>> readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+    private final AtomicLong reads = new AtomicLong(0);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * Creates a cache.
+     *
+     * @param capacity the max total weight of the entries in this
+     * @param expectedEntries the number of entries this is expected to hold when full, used to size the frequency sketch
+     * @param maxAge the max age in milliseconds of an entry returned from this
+     * @param weigher returns the weight of a value
+     */
+    public TinyLfuCache(long capacity, int expectedEntries, long maxAge, ToIntFunction<V> weigher) {
+        if (capacity <= 0) throw new IllegalArgumentException("Cache capacity must be positive, was " + capacity);
+        if (maxAge <= 0) throw new IllegalArgumentException("Cache max age must be positive, was " + maxAge);
+        this.capacity = capacity;
+        this.windowCapacity = Math.max(1, capacity * WINDOW_PERCENTAGE / 100);
+        this.mainCapacity = capacity - windowCapacity;
+        this.protectedCapacity = mainCapacity * PROTECTED_PERCENTAGE / 100;
+        this.maxAge = maxAge;
+        this.weigher = weigher;
+        this.sketch = new FrequencySketch(expectedEntries);
+    }
+
+    /**
+     * Sets the max weight of a single entry as a percentage of the capacity of this.
+     * Larger entries will not be cached. Default is 100.
+     */
+    public void setMaxItemPercentage(int maxItemPercentage) {
+        this.maxItemPercentage = maxItemPercentage;
+    }
+
+    /** Returns the max total weight of the entries in this */
+    public long capacity() { return capacity; }
+
+    /**
+     * Returns the value cached for the given key, or null if there is no value for it
+     * which is younger than the max age of this.
+     *
+     * @param now the current time in milliseconds
+     */
+    public V get(K key, long now) {
+        sketch.increment(key);
+        Node<K, V> node = entries.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        if (now - node.timestamp > maxAge) {
+            lock.lock();
+            try {
+                if (node.region != Region.REMOVED) {
+                    discard(node);
+                    expirations.increment();
+                }
+            } finally {
+                lock.unlock();
+            }
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        recordAccess(node);
+        return node.value;
+    }
+
+    /**
+     * Returns the value cached for the given key regardless of its age, or null if there is none.
+     * Unlike {@link #get} this is not counted as an access to the entry.
+     */
+    public V peek(K key) {
+        Node<K, V> node = entries.get(key);
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * Adds a value to this, unless its weight is above the max item percentage of the capacity
+     * of this, in which case any existing value for the key is removed instead.
+     *
+     * @param timestamp the time in milliseconds the value was created, used to determine its age
+     * @return the previous value for the key, or null if none
+     */
+    public V put(K key, V value, long timestamp) {
+        int weight = weigher.applyAsInt(value);
+        if ((double) weight * 100 > (double) capacity * maxItemPercentage) {
+            rejections.increment();
+            return remove(key);
+        }
+
+        lock.lock();
+        try {
+            drainReadBuffer();
+            Node<K, V> node = entries.get(key);
+            V previous = null;
+            if (node == null) {
+                node = new Node<>(key, value, timestamp, weight);
+                node.region = Region.WINDOW;
+                window.addLast(node);
+                entries.put(key, node);
+            } else {
+                previous = node.value;
+                node.value = value;
+                node.timestamp = timestamp;
+                regionOf(node).weight += weight - node.weight;
+                node.weight = weight;
+                onAccess(node);
+            }
+            evict();
+            return previous;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Removes the value of the given key, and returns it, or null if there was none */
+    public V remove(K key) {
+        lock.lock();
+        try {
+            Node<K, V> node = entries.get(key);
+            if (node == null) return null;
+            discard(node);
+            return node.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Removes all entries from this */
+    public void clear() {
+        lock.lock();
+        try {
+            for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+                readBuffer.set(i, null);
+            }
+            for (Node<K, V> node : entries.values()) {
+                node.region = Region.REMOVED;
+            }
+            entries.clear();
+            window.clear();
+            probation.clear();
+            protectedRegion.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the number of entries in this */
+    public int size() {
+        return entries.size();
+    }
+
+    /** Returns the total weight of the entries in this */
+    public long weightedSize() {
+        lock.lock();
+        try {
+            return window.weight + probation.weight + protectedRegion.weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns a snapshot of the counters of this cache */
+    public CacheStatistics statistics() {
+        return new CacheStatistics(hits.sum(), misses.sum(), evictions.sum(), rejections.sum(), expirations.sum(),
+                                   weightedSize(), size());
+    }
+
+    private void recordAccess(Node<K, V> node) {
+        long count = reads.getAndIncrement();
+        readBuffer.lazySet((int) (count & (READ_BUFFER_SIZE - 1)), node);
+        if ((count & (READ_BUFFER_DRAIN_INTERVAL - 1)) == READ_BUFFER_DRAIN_INTERVAL - 1 && lock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /** Applies the buffered accesses to the eviction order. Must be called with the lock held. */
+    private void drainReadBuffer() {
+        for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+            Node<K, V> node = readBuffer.getAndSet(i, null);
+            if (node != null) {
+                onAccess(node);
+            }
+        }
+    }
+
+    private void onAccess(Node<K, V> node) {
+        switch (node.region) {
+            case WINDOW:
+                window.moveToLast(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                node.region = Region.PROTECTED;
+                protectedRegion.addLast(node);
+                while (protectedRegion.weight > protectedCapacity) {
+                    Node<K, V> demoted = protectedRegion.first();
+                    protectedRegion.remove(demoted);
+                    demoted.region = Region.PROBATION;
+                    probation.addLast(demoted);
+                }
+                break;
+            case PROTECTED:
+                protectedRegion.moveToLast(node);
+                break;
+            case REMOVED:
+                break;
+        }
+    }
+
+    /**
+     * Moves entries out of the window while it is too large, admitting each to the main region if it is worth it.
+     * Must be called with the lock held.
+     */
+    private void evict() {
+        while (window.weight > windowCapacity) {
+            Node<K, V> candidate = window.first();
+            window.remove(candidate);
+            candidate.region = Region.PROBATION;
+            probation.addLast(candidate);
+            admit(candidate);
+        }
+        // replacing the value of an entry in the main region may also make it too large
+        while (probation.weight + protectedRegion.weight > mainCapacity) {
+            Node<K, V> victim = probation.first() != null ? probation.first() : protectedRegion.first();
+            discard(victim);
+            evictions.increment();
+        }
+    }
+
+    private void admit(Node<K, V> candidate) {
+        while (probation.weight + protectedRegion.weight > mainCapacity) {
+            Node<K, V> victim = probation.first();
+            if (victim == candidate) {
+                victim = probation.size > 1 ? candidate.next : protectedRegion.first();
+            }
+            if (victim == null || sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+                discard(candidate);
+                evictions.increment();
+                return;
+            }
+            discard(victim);
+            evictions.increment();
+        }
+    }
+
+    private void discard(Node<K, V> node) {
+        regionOf(node).remove(node);
+        node.region = Region.REMOVED;
+        entries.remove(node.key, node);
+    }
+
+    private AccessOrder<K, V> regionOf(Node<K, V> node) {
+        switch (node.region) {
+            case WINDOW: return window;
+            case PROBATION: return probation;
+            case PROTECTED: return protectedRegion;
+            default: throw new IllegalStateException("Entry for " + node.key + " is not in the cache");
+        }
+    }
+
+    private static final class Node<K, V> {
+
+        final K key;
+        volatile V value;
+        volatile long timestamp;
+
+        // The following are guarded by the cache lock
+        int weight;
+        Region region;
+        Node<K, V> previous = null;
+        Node<K, V> next = null;
+
+        Node(K key, V value, long timestamp, int weight) {
+            this.key = key;
+            this.value = value;
+            this.timestamp = timestamp;
+            this.weight = weight;
+        }
+
+    }
+
+    /** A list of nodes from least to most recently used. This is guarded by the cache lock. */
+    private static final class AccessOrder<K, V> {
+
+        private Node<K, V> head = null;
+        private Node<K, V> tail = null;
+        long weight = 0;
+        int size = 0;
+
+        Node<K, V> first() { return head; }
+
+        void addLast(Node<K, V> node) {
+            node.previous = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            weight += node.weight;
+            size++;
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.previous == null) {
+                head = node.next;
+            } else {
+                node.previous.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.previous;
+            } else {
+                node.next.previous = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+            weight -= node.weight;
+            size--;
+        }
+
+        void moveToLast(Node<K, V> node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+            weight = 0;
+            size = 0;
+        }
+
+    }
+
+}
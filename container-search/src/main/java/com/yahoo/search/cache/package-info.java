@@ -1,6 +1,6 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 /**
- * Cache package, exported to keep the ignored legacy cache config around until Vespa 7.
+ * Caches of search results. The package is also exported to keep the ignored legacy cache config around until Vespa 7.
  *
  * @author bratseth
  */
@@ -0,0 +1,40 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.fs4.QueryPacket;
+import com.yahoo.prelude.fastsearch.CacheKey;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.searchchain.Execution;
+
+import java.util.Optional;
+
+/**
+ * A search invoker which produces a result found in the {@link com.yahoo.search.cache.ResultCache}
+ * without contacting any content nodes.
+ */
+public class CachedResultInvoker extends SearchInvoker {
+
+    private final Result result;
+
+    public CachedResultInvoker(Result result) {
+        super(Optional.empty());
+        this.result = result;
+    }
+
+    @Override
+    protected void sendSearchRequest(Query query, QueryPacket queryPacket) {
+        responseAvailable();
+    }
+
+    @Override
+    protected Result getSearchResult(CacheKey cacheKey, Execution execution) {
+        return result;
+    }
+
+    @Override
+    protected void release() {
+        // nothing to release
+    }
+
+}
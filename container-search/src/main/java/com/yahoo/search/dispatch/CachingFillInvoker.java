@@ -0,0 +1,39 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.search.Result;
+import com.yahoo.search.cache.ResultCache;
+
+/**
+ * CachingFillInvoker adds the summaries filled by another {@link FillInvoker} to the
+ * entry of the result in a {@link ResultCache}.
+ */
+public class CachingFillInvoker extends FillInvoker {
+
+    private final FillInvoker invoker;
+    private final ResultCache cache;
+    private final ResultCache.Key key;
+
+    public CachingFillInvoker(FillInvoker invoker, ResultCache cache, ResultCache.Key key) {
+        this.invoker = invoker;
+        this.cache = cache;
+        this.key = key;
+    }
+
+    @Override
+    protected void sendFillRequest(Result result, String summaryClass) {
+        invoker.sendFillRequest(result, summaryClass);
+    }
+
+    @Override
+    protected void getFillResults(Result result, String summaryClass) {
+        invoker.getFillResults(result, summaryClass);
+        cache.updateSummaries(key, result, summaryClass);
+    }
+
+    @Override
+    protected void release() {
+        invoker.close();
+    }
+
+}
@@ -0,0 +1,49 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.fs4.QueryPacket;
+import com.yahoo.prelude.fastsearch.CacheKey;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.cache.ResultCache;
+import com.yahoo.search.searchchain.Execution;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * CachingSearchInvoker adds the result of the search performed by another {@link SearchInvoker}
+ * to a {@link ResultCache}.
+ */
+public class CachingSearchInvoker extends SearchInvoker {
+
+    private final SearchInvoker invoker;
+    private final ResultCache cache;
+    private final ResultCache.Key key;
+
+    public CachingSearchInvoker(SearchInvoker invoker, ResultCache cache, ResultCache.Key key) {
+        super(Optional.empty());
+        this.invoker = invoker;
+        this.cache = cache;
+        this.key = key;
+    }
+
+    @Override
+    protected void sendSearchRequest(Query query, QueryPacket queryPacket) throws IOException {
+        invoker.sendSearchRequest(query, queryPacket);
+    }
+
+    @Override
+    protected Result getSearchResult(CacheKey cacheKey, Execution execution) throws IOException {
+        Result result = invoker.getSearchResult(cacheKey, execution);
+        invoker.setFinalStatus(result.hits().getError() == null);
+        cache.put(key, result);
+        return result;
+    }
+
+    @Override
+    protected void release() {
+        invoker.close();
+    }
+
+}
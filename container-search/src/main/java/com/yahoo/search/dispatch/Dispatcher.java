@@ -3,6 +3,7 @@ package com.yahoo.search.dispatch;
 
 import com.yahoo.component.AbstractComponent;
 import com.yahoo.container.handler.VipStatus;
+import com.yahoo.fs4.QueryPacket;
 import com.yahoo.prelude.fastsearch.DocumentDatabase;
 import com.yahoo.prelude.fastsearch.FS4InvokerFactory;
 import com.yahoo.prelude.fastsearch.FS4ResourcePool;
@@ -10,6 +11,7 @@ import com.yahoo.prelude.fastsearch.VespaBackEndSearcher;
 import com.yahoo.processing.request.CompoundName;
 import com.yahoo.search.Query;
 import com.yahoo.search.Result;
+import com.yahoo.search.cache.ResultCache;
 import com.yahoo.search.dispatch.SearchPath.InvalidSearchPathException;
 import com.yahoo.search.dispatch.searchcluster.Group;
 import com.yahoo.search.dispatch.searchcluster.Node;
@@ -18,10 +20,12 @@ import com.yahoo.search.result.ErrorMessage;
 import com.yahoo.vespa.config.search.DispatchConfig;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.OptionalInt;
+import java.util.OptionalLong;
 import java.util.Set;
 
 /**
@@ -49,6 +53,9 @@ public class Dispatcher extends AbstractComponent {
     private final RpcResourcePool rpcResourcePool;
     private final boolean multilevelDispatch;
     private final boolean internalDispatchByDefault;
+    private final boolean hedgedRequests;
+    private final double hedgeLatencyPercentile;
+    private final Optional<ResultCache> resultCache;
 
     public Dispatcher(String clusterId, DispatchConfig dispatchConfig, FS4ResourcePool fs4ResourcePool, int containerClusterSize, VipStatus vipStatus) {
         this(new SearchCluster(clusterId, dispatchConfig, fs4ResourcePool, containerClusterSize, vipStatus), dispatchConfig);
@@ -56,11 +63,16 @@ public class Dispatcher extends AbstractComponent {
 
     public Dispatcher(SearchCluster searchCluster, DispatchConfig dispatchConfig) {
         this.searchCluster = searchCluster;
-        this.loadBalancer = new LoadBalancer(searchCluster,
-                dispatchConfig.distributionPolicy() == DispatchConfig.DistributionPolicy.ROUNDROBIN);
+        this.loadBalancer = new LoadBalancer(searchCluster, dispatchConfig.distributionPolicy());
         this.rpcResourcePool = new RpcResourcePool(dispatchConfig);
         this.multilevelDispatch = dispatchConfig.useMultilevelDispatch();
         this.internalDispatchByDefault = !dispatchConfig.useFdispatchByDefault();
+        this.hedgedRequests = dispatchConfig.useHedgedRequests() && dispatchConfig.minSearchCoverage() >= 100.0;
+        this.hedgeLatencyPercentile = dispatchConfig.hedgeLatencyPercentile();
+        this.resultCache = dispatchConfig.resultCacheSize() > 0
+                ? Optional.of(new ResultCache(searchCluster.clusterId(), dispatchConfig.resultCacheSize(),
+                                              dispatchConfig.resultCacheTimeout(), searchCluster::stateGeneration))
+                : Optional.empty();
     }
 
     /** Returns the search cluster this dispatches to */
@@ -68,6 +80,11 @@ public class Dispatcher extends AbstractComponent {
         return searchCluster;
     }
 
+    /** Returns the cache of the results of queries dispatched by this, or empty if result caching is disabled */
+    public Optional<ResultCache> resultCache() {
+        return resultCache;
+    }
+
     @Override
     public void deconstruct() {
         rpcResourcePool.release();
@@ -77,6 +94,10 @@ public class Dispatcher extends AbstractComponent {
             FS4InvokerFactory fs4InvokerFactory) {
         Optional<FillInvoker> rpcInvoker = rpcResourcePool.getFillInvoker(result.getQuery(), searcher, documentDb);
         if (rpcInvoker.isPresent()) {
+            Optional<ResultCache.Key> cacheKey = resultCache.flatMap(cache -> cache.keyOf(result.getQuery()));
+            if (cacheKey.isPresent()) {
+                return Optional.of(new CachingFillInvoker(rpcInvoker.get(), resultCache.get(), cacheKey.get()));
+            }
             return rpcInvoker;
         }
         if (result.getQuery().properties().getBoolean(dispatchInternal, internalDispatchByDefault)) {
@@ -89,10 +110,27 @@ public class Dispatcher extends AbstractComponent {
     }
 
     public Optional<SearchInvoker> getSearchInvoker(Query query, FS4InvokerFactory fs4InvokerFactory) {
+        return getSearchInvoker(query, null, fs4InvokerFactory);
+    }
+
+    /**
+     * Returns an invoker for the given query if it should be dispatched internally. If result caching is enabled
+     * and the query packet is given, the result is returned from the cache if present, and added to it otherwise.
+     */
+    public Optional<SearchInvoker> getSearchInvoker(Query query, QueryPacket queryPacket, FS4InvokerFactory fs4InvokerFactory) {
         if (multilevelDispatch || ! query.properties().getBoolean(dispatchInternal, internalDispatchByDefault)) {
             return Optional.empty();
         }
 
+        Optional<ResultCache.Key> cacheKey = resultCacheKey(query, queryPacket);
+        if (cacheKey.isPresent()) {
+            Optional<Result> cached = resultCache.get().get(cacheKey.get(), query);
+            if (cached.isPresent()) {
+                query.trace(false, 2, "Returning cached result for ", cacheKey.get());
+                return Optional.of(new CachedResultInvoker(cached.get()));
+            }
+        }
+
         Optional<SearchInvoker> invoker = getSearchPathInvoker(query, fs4InvokerFactory::getSearchInvoker);
 
         if (!invoker.isPresent()) {
@@ -102,9 +140,19 @@ public class Dispatcher extends AbstractComponent {
             query.setHits(0);
             query.setOffset(0);
         }
+        if (invoker.isPresent() && cacheKey.isPresent()) {
+            invoker = Optional.of(new CachingSearchInvoker(invoker.get(), resultCache.get(), cacheKey.get()));
+        }
         return invoker;
     }
 
+    private Optional<ResultCache.Key> resultCacheKey(Query query, QueryPacket queryPacket) {
+        if (queryPacket == null || ! resultCache.isPresent() || ! resultCache.get().isCacheable(query)) {
+            return Optional.empty();
+        }
+        return Optional.of(resultCache.get().createKey(query, queryPacket));
+    }
+
     @FunctionalInterface
     private interface SearchInvokerSupplier {
         Optional<SearchInvoker> supply(Query query, OptionalInt groupId, List<Node> nodes, boolean acceptIncompleteCoverage);
@@ -155,7 +203,7 @@ public class Dispatcher extends AbstractComponent {
                 query.trace(false, 2, "Dispatching internally to search group ", group.id());
                 query.getModel().setSearchPath("/" + group.id());
                 invoker.get().teardown((success, time) -> loadBalancer.releaseGroup(group, success, time));
-                return invoker;
+                return Optional.of(hedgeIfEnabled(invoker.get(), group, invokerFactory));
             } else {
                 loadBalancer.releaseGroup(group, false, 0);
                 if (rejected == null) {
@@ -167,4 +215,38 @@ public class Dispatcher extends AbstractComponent {
 
         return Optional.empty();
     }
+
+    /**
+     * Wraps the invoker for the given group in a {@link HedgedSearchInvoker} if hedged requests are enabled
+     * and enough is known about the search times of the group to decide when to hedge.
+     */
+    private SearchInvoker hedgeIfEnabled(SearchInvoker invoker, Group group, SearchInvokerSupplier invokerFactory) {
+        if ( ! hedgedRequests || searchCluster.groups().size() < 2) {
+            return invoker;
+        }
+        OptionalLong hedgeDelay = loadBalancer.searchTimePercentile(group, hedgeLatencyPercentile);
+        if ( ! hedgeDelay.isPresent()) {
+            return invoker;
+        }
+        return new HedgedSearchInvoker(new HedgedSearchInvoker.Target(invoker, group.id()), hedgeDelay.getAsLong(),
+                                       query -> getHedgeInvoker(query, group, invokerFactory));
+    }
+
+    private Optional<HedgedSearchInvoker.Target> getHedgeInvoker(Query query, Group slowGroup, SearchInvokerSupplier invokerFactory) {
+        Optional<Group> groupInCluster = loadBalancer.takeGroup(Collections.singleton(slowGroup.id()));
+        if ( ! groupInCluster.isPresent()) {
+            return Optional.empty();
+        }
+        Group group = groupInCluster.get();
+        if (group.hasSufficientCoverage()) {
+            Optional<SearchInvoker> invoker = invokerFactory.supply(query, OptionalInt.of(group.id()), group.nodes(), false);
+            if (invoker.isPresent()) {
+                query.getModel().setSearchPath("/" + group.id());
+                invoker.get().teardown((success, time) -> loadBalancer.releaseGroup(group, success, time));
+                return Optional.of(new HedgedSearchInvoker.Target(invoker.get(), group.id()));
+            }
+        }
+        loadBalancer.releaseGroup(group, false, 0);
+        return Optional.empty();
+    }
 }
@@ -0,0 +1,39 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+/**
+ * Describes a hedged search request made for a query: the group which was slow to respond, the group
+ * the query was additionally sent to, and which of the two delivered the result. This is set as a
+ * query context property by {@link HedgedSearchInvoker} so that it can be picked up for metrics.
+ *
+ * This class is immutable.
+ */
+public class HedgeStatistics {
+
+    /** The name of the query context property holding the hedge statistics of a query, if it was hedged */
+    public static final String HEDGE_STATISTICS = "dispatch.hedge.statistics";
+
+    private final int slowGroup;
+    private final int hedgeGroup;
+    private final boolean hedgeWon;
+
+    public HedgeStatistics(int slowGroup, int hedgeGroup, boolean hedgeWon) {
+        this.slowGroup = slowGroup;
+        this.hedgeGroup = hedgeGroup;
+        this.hedgeWon = hedgeWon;
+    }
+
+    /** Returns the id of the group first selected for the query, which did not respond in time */
+    public int slowGroup() { return slowGroup; }
+
+    /** Returns the id of the group the hedged request was sent to */
+    public int hedgeGroup() { return hedgeGroup; }
+
+    /** Returns whether the result of the query was delivered by the hedge group */
+    public boolean hedgeWon() { return hedgeWon; }
+
+    @Override
+    public String toString() {
+        return "hedged from group " + slowGroup + " to group " + hedgeGroup + ", " + (hedgeWon ? "hedge" : "original") + " won";
+    }
+}
@@ -0,0 +1,151 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.fs4.QueryPacket;
+import com.yahoo.prelude.fastsearch.CacheKey;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.searchchain.Execution;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * HedgedSearchInvoker sends a search query to a single group, and if the group has not responded
+ * within a given delay, sends the query to another group as well. The result is taken from whichever
+ * group responds first without an error, and the other request is cancelled. This keeps a straggling node
+ * in one group from holding the query until it times out. A cancelled request which had not responded is
+ * recorded as successful, with the time until it was cancelled as its search time.
+ */
+public class HedgedSearchInvoker extends SearchInvoker implements ResponseMonitor<SearchInvoker> {
+
+    /** A search invoker targeting all the nodes of a single group */
+    public static class Target {
+        private final SearchInvoker invoker;
+        private final int groupId;
+
+        public Target(SearchInvoker invoker, int groupId) {
+            this.invoker = invoker;
+            this.groupId = groupId;
+        }
+
+        public SearchInvoker invoker() { return invoker; }
+
+        public int groupId() { return groupId; }
+    }
+
+    private final Target primary;
+    private final long hedgeDelay;
+    private final Function<Query, Optional<Target>> hedgeSupplier;
+    private final LinkedBlockingQueue<SearchInvoker> availableForProcessing = new LinkedBlockingQueue<>();
+
+    private Target hedge = null;
+    private Query query;
+
+    /**
+     * Creates a hedged search invoker.
+     *
+     * @param primary the group the query is sent to first
+     * @param hedgeDelay the time in milliseconds to wait for the first group before sending the query to another
+     * @param hedgeSupplier creates an invoker for another group than the primary, or returns empty if none is available
+     */
+    public HedgedSearchInvoker(Target primary, long hedgeDelay, Function<Query, Optional<Target>> hedgeSupplier) {
+        super(Optional.empty());
+        this.primary = primary;
+        this.hedgeDelay = hedgeDelay;
+        this.hedgeSupplier = hedgeSupplier;
+    }
+
+    @Override
+    protected void sendSearchRequest(Query query, QueryPacket queryPacket) throws IOException {
+        this.query = query;
+        primary.invoker().setMonitor(this);
+        primary.invoker().sendSearchRequest(query, queryPacket);
+    }
+
+    @Override
+    protected Result getSearchResult(CacheKey cacheKey, Execution execution) throws IOException {
+        SearchInvoker responded = awaitResponse(Math.min(hedgeDelay, query.getTimeLeft()));
+        if (responded == null && query.getTimeLeft() > 0) {
+            sendHedge();
+            if (hedge != null) {
+                responded = awaitResponse(query.getTimeLeft());
+            }
+        }
+        if (hedge == null) {
+            return resultOf(primary, cacheKey, execution);
+        }
+
+        // if nobody responded in time, let the primary invoker produce the timeout result
+        Target first = (responded != null && responded == hedge.invoker()) ? hedge : primary;
+        Target second = (first == primary) ? hedge : primary;
+        Target winner = first;
+        Result result = resultOf(first, cacheKey, execution);
+        boolean secondResponded = false;
+        if (responded != null && result.hits().getError() != null && awaitResponse(query.getTimeLeft()) != null) {
+            // an error only wins if the other group fails as well
+            secondResponded = true;
+            Result secondResult = resultOf(second, cacheKey, execution);
+            if (secondResult.hits().getError() == null) {
+                winner = second;
+                result = secondResult;
+            }
+        }
+        Target loser = (winner == primary) ? hedge : primary;
+
+        if ( ! secondResponded && result.hits().getError() == null) {
+            // The loser took at least as long as the winner, so record that as its search time, such that the
+            // search times used to decide when to hedge include the slow responses which caused hedging
+            loser.invoker().setFinalStatus(true);
+        }
+        loser.invoker().close();
+        query.getModel().setSearchPath("/" + winner.groupId());
+
+        HedgeStatistics statistics = new HedgeStatistics(primary.groupId(), hedge.groupId(), winner == hedge);
+        query.getContext(true).setProperty(HedgeStatistics.HEDGE_STATISTICS, statistics);
+        query.trace(false, 2, "Search ", statistics);
+        return result;
+    }
+
+    private static Result resultOf(Target target, CacheKey cacheKey, Execution execution) throws IOException {
+        Result result = target.invoker().getSearchResult(cacheKey, execution);
+        target.invoker().setFinalStatus(result.hits().getError() == null);
+        return result;
+    }
+
+    private void sendHedge() throws IOException {
+        hedge = hedgeSupplier.apply(query).orElse(null);
+        if (hedge == null) {
+            return;
+        }
+        query.trace(false, 2, "No response from search group ", primary.groupId(), " after ", hedgeDelay,
+                    " ms, sending hedged request to search group ", hedge.groupId());
+        hedge.invoker().setMonitor(this);
+        hedge.invoker().sendSearchRequest(query, null);
+    }
+
+    private SearchInvoker awaitResponse(long timeout) {
+        try {
+            return availableForProcessing.poll(Math.max(timeout, 0), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Interrupted while waiting for search results", e);
+        }
+    }
+
+    @Override
+    protected void release() {
+        primary.invoker().close();
+        if (hedge != null) {
+            hedge.invoker().close();
+        }
+    }
+
+    @Override
+    public void responseAvailable(SearchInvoker from) {
+        availableForProcessing.add(from);
+    }
+
+}
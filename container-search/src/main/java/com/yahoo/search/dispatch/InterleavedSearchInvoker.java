@@ -20,6 +20,7 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -41,6 +42,7 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
     private final VespaBackEndSearcher searcher;
     private final SearchCluster searchCluster;
     private final LinkedBlockingQueue<SearchInvoker> availableForProcessing;
+    private final AtomicInteger pendingResponses = new AtomicInteger(0);
     private Query query;
 
     private boolean adaptiveTimeoutCalculated = false;
@@ -77,6 +79,7 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
     @Override
     protected void sendSearchRequest(Query query, QueryPacket queryPacket) throws IOException {
         this.query = query;
+        pendingResponses.set(invokers.size());
         invokers.forEach(invoker -> invoker.setMonitor(this));
         deadline = currentTime() + query.getTimeLeft();
 
@@ -259,11 +262,10 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
         if (availableForProcessing != null) {
             availableForProcessing.add(from);
         }
-    }
-
-    @Override
-    protected void setMonitor(ResponseMonitor<SearchInvoker> monitor) {
-        // never to be called
+        if (pendingResponses.decrementAndGet() == 0) {
+            // all nodes have responded, so the result of this can be collected without waiting
+            responseAvailable();
+        }
     }
 
     // For overriding in tests
@@ -3,12 +3,22 @@ package com.yahoo.search.dispatch;
 
 import com.yahoo.search.dispatch.searchcluster.Group;
 import com.yahoo.search.dispatch.searchcluster.SearchCluster;
+import com.yahoo.vespa.config.search.DispatchConfig;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 /**
@@ -28,15 +38,25 @@ public class LoadBalancer {
     private static final double MIN_QUERY_TIME = 0.001;
 
     private final List<GroupStatus> scoreboard;
+    private final Map<Integer, GroupStatus> groupStatusById;
     private final GroupScheduler scheduler;
 
     public LoadBalancer(SearchCluster searchCluster, boolean roundRobin) {
+        this(searchCluster, roundRobin ? DispatchConfig.DistributionPolicy.ROUNDROBIN : DispatchConfig.DistributionPolicy.ADAPTIVE);
+    }
+
+    public LoadBalancer(SearchCluster searchCluster, DispatchConfig.DistributionPolicy.Enum policy) {
         this.scoreboard = new ArrayList<>(searchCluster.groups().size());
+        this.groupStatusById = new HashMap<>();
         for (Group group : searchCluster.orderedGroups()) {
-            scoreboard.add(new GroupStatus(group));
+            GroupStatus groupStatus = new GroupStatus(group);
+            scoreboard.add(groupStatus);
+            groupStatusById.put(group.id(), groupStatus);
         }
-        if (roundRobin || scoreboard.size() == 1) {
+        if (policy == DispatchConfig.DistributionPolicy.ROUNDROBIN || scoreboard.size() == 1) {
             this.scheduler = new RoundRobinScheduler(scoreboard);
+        } else if (policy == DispatchConfig.DistributionPolicy.BEST_OF_RANDOM_2) {
+            this.scheduler = new BestOfRandom2Scheduler(ThreadLocalRandom::current, scoreboard);
         } else {
             this.scheduler = new AdaptiveScheduler(new Random(), scoreboard);
         }
@@ -50,18 +70,15 @@ public class LoadBalancer {
      * @return The node group to target, or <i>empty</i> if the internal dispatch logic cannot be used
      */
     public Optional<Group> takeGroup(Set<Integer> rejectedGroups) {
-        synchronized (this) {
-            Optional<GroupStatus> best = scheduler.takeNextGroup(rejectedGroups);
-
-            if (best.isPresent()) {
-                GroupStatus gs = best.get();
-                gs.allocate();
-                Group ret = gs.group;
-                log.fine(() -> "Offering <" + ret + "> for query connection");
-                return Optional.of(ret);
-            } else {
-                return Optional.empty();
-            }
+        Optional<GroupStatus> best = scheduler.takeNextGroup(rejectedGroups);
+
+        if (best.isPresent()) {
+            GroupStatus gs = best.get();
+            Group ret = gs.group;
+            log.fine(() -> "Offering <" + ret + "> for query connection");
+            return Optional.of(ret);
+        } else {
+            return Optional.empty();
         }
     }
 
@@ -76,50 +93,72 @@ public class LoadBalancer {
      *            query execution time in milliseconds, used for adaptive load balancing
      */
     public void releaseGroup(Group group, boolean success, double searchTimeMs) {
-        synchronized (this) {
-            for (GroupStatus sched : scoreboard) {
-                if (sched.group.id() == group.id()) {
-                    sched.release(success, (double) searchTimeMs / 1000.0);
-                    break;
-                }
-            }
+        GroupStatus groupStatus = groupStatusById.get(group.id());
+        if (groupStatus != null) {
+            groupStatus.release(success, searchTimeMs / 1000.0);
         }
     }
 
+    /**
+     * Returns the given percentile of the recently observed search times of a group, or empty if too few
+     * searches to the group have completed successfully to tell.
+     *
+     * @param group the group to return the search time percentile of
+     * @param percentile the percentile to return, between 0 and 100
+     * @return the search time percentile in milliseconds, or empty if not known
+     */
+    public OptionalLong searchTimePercentile(Group group, double percentile) {
+        GroupStatus groupStatus = groupStatusById.get(group.id());
+        if (groupStatus == null) {
+            return OptionalLong.empty();
+        }
+        return groupStatus.searchTimes.percentile(percentile);
+    }
+
+    /**
+     * The load balancing state of a single group. All state is kept in atomics so that groups can be
+     * allocated and released concurrently without locking.
+     */
     static class GroupStatus {
         private final Group group;
-        private int allocations = 0;
-        private long queries = 0;
-        private double averageSearchTime = INITIAL_QUERY_TIME;
+        private final AtomicInteger allocations = new AtomicInteger(0);
+        private final AtomicLong queries = new AtomicLong(0);
+        private final AtomicLong averageSearchTimeBits = new AtomicLong(Double.doubleToRawLongBits(INITIAL_QUERY_TIME));
+        private final SearchTimeWindow searchTimes = new SearchTimeWindow();
 
         GroupStatus(Group group) {
             this.group = group;
         }
 
         void allocate() {
-            allocations++;
+            allocations.incrementAndGet();
         }
 
         void release(boolean success, double searchTime) {
-            allocations--;
-            if (allocations < 0) {
+            if (allocations.getAndUpdate(current -> Math.max(0, current - 1)) <= 0) {
                 log.warning("Double free of query target group detected");
-                allocations = 0;
             }
             if (success) {
-                searchTime = Math.max(searchTime, MIN_QUERY_TIME);
-                double decayRate = Math.min(queries + MIN_LATENCY_DECAY_RATE, DEFAULT_LATENCY_DECAY_RATE);
-                averageSearchTime = (searchTime + (decayRate - 1) * averageSearchTime) / decayRate;
-                queries++;
+                double clampedSearchTime = Math.max(searchTime, MIN_QUERY_TIME);
+                double decayRate = Math.min(queries.getAndIncrement() + MIN_LATENCY_DECAY_RATE, DEFAULT_LATENCY_DECAY_RATE);
+                averageSearchTimeBits.getAndUpdate(bits -> {
+                    double average = Double.longBitsToDouble(bits);
+                    return Double.doubleToRawLongBits((clampedSearchTime + (decayRate - 1) * average) / decayRate);
+                });
+                searchTimes.add(Math.round(searchTime * 1000.0));
             }
         }
 
+        int allocations() {
+            return allocations.get();
+        }
+
         double averageSearchTime() {
-            return averageSearchTime;
+            return Double.longBitsToDouble(averageSearchTimeBits.get());
         }
 
         double averageSearchTimeInverse() {
-            return 1.0 / averageSearchTime;
+            return 1.0 / averageSearchTime();
         }
 
         int groupId() {
@@ -127,11 +166,49 @@ public class LoadBalancer {
         }
 
         void setQueryStatistics(long queries, double averageSearchTime) {
-            this.queries = queries;
-            this.averageSearchTime = averageSearchTime;
+            this.queries.set(queries);
+            this.averageSearchTimeBits.set(Double.doubleToRawLongBits(averageSearchTime));
+        }
+    }
+
+    /**
+     * A window of the most recent successful search times of a group. Percentiles are read from a sorted
+     * copy of the window which is refreshed periodically as new samples arrive, so reading a percentile is cheap
+     * and adding a sample only occasionally costs a sort.
+     */
+    static class SearchTimeWindow {
+        static final int WINDOW_SIZE = 512;
+        static final int MIN_SAMPLES = 128;
+        private static final int REFRESH_INTERVAL = 64;
+
+        private final AtomicLongArray samples = new AtomicLongArray(WINDOW_SIZE);
+        private final AtomicLong sampleCount = new AtomicLong(0);
+        private volatile long[] sorted = null;
+
+        void add(long searchTimeMs) {
+            long count = sampleCount.getAndIncrement() + 1;
+            samples.set((int) ((count - 1) % WINDOW_SIZE), searchTimeMs);
+            if (count >= MIN_SAMPLES && count % REFRESH_INTERVAL == 0) {
+                long[] snapshot = new long[(int) Math.min(count, WINDOW_SIZE)];
+                for (int i = 0; i < snapshot.length; i++) {
+                    snapshot[i] = samples.get(i);
+                }
+                Arrays.sort(snapshot);
+                sorted = snapshot;
+            }
+        }
+
+        OptionalLong percentile(double percentile) {
+            long[] snapshot = sorted;
+            if (snapshot == null) {
+                return OptionalLong.empty();
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * snapshot.length) - 1;
+            return OptionalLong.of(snapshot[Math.max(0, Math.min(index, snapshot.length - 1))]);
         }
     }
 
+    /** Selects a group for a query and allocates it. Implementations must be thread safe. */
     private interface GroupScheduler {
         Optional<GroupStatus> takeNextGroup(Set<Integer> rejectedGroups);
     }
@@ -145,7 +222,7 @@ public class LoadBalancer {
         }
 
         @Override
-        public Optional<GroupStatus> takeNextGroup(Set<Integer> rejectedGroups) {
+        public synchronized Optional<GroupStatus> takeNextGroup(Set<Integer> rejectedGroups) {
             GroupStatus bestCandidate = null;
             int bestIndex = needle;
 
@@ -162,6 +239,9 @@ public class LoadBalancer {
                 index = nextScoreboardIndex(index);
             }
             needle = nextScoreboardIndex(bestIndex);
+            if (bestCandidate != null) {
+                bestCandidate.allocate();
+            }
             return Optional.ofNullable(bestCandidate);
         }
 
@@ -216,12 +296,16 @@ public class LoadBalancer {
         }
 
         private Optional<GroupStatus> selectGroup(double needle, boolean requireCoverage, Set<Integer> rejected) {
+            // the weights are read once since they may be updated concurrently by queries completing
+            double[] weights = new double[scoreboard.size()];
             double sum = 0;
             int n = 0;
-            for (GroupStatus gs : scoreboard) {
+            for (int i = 0; i < scoreboard.size(); i++) {
+                GroupStatus gs = scoreboard.get(i);
                 if (rejected == null || !rejected.contains(gs.group.id())) {
                     if (!requireCoverage || gs.group.hasSufficientCoverage()) {
-                        sum += gs.averageSearchTimeInverse();
+                        weights[i] = gs.averageSearchTimeInverse();
+                        sum += weights[i];
                         n++;
                     }
                 }
@@ -230,13 +314,11 @@ public class LoadBalancer {
                 return Optional.empty();
             }
             double accum = 0;
-            for (GroupStatus gs : scoreboard) {
-                if (rejected == null || !rejected.contains(gs.group.id())) {
-                    if (!requireCoverage || gs.group.hasSufficientCoverage()) {
-                        accum += gs.averageSearchTimeInverse();
-                        if (needle < accum / sum) {
-                            return Optional.of(gs);
-                        }
+            for (int i = 0; i < scoreboard.size(); i++) {
+                if (weights[i] > 0) {
+                    accum += weights[i];
+                    if (needle < accum / sum) {
+                        return Optional.of(scoreboard.get(i));
                     }
                 }
             }
@@ -247,11 +329,89 @@ public class LoadBalancer {
         public Optional<GroupStatus> takeNextGroup(Set<Integer> rejectedGroups) {
             double needle = random.nextDouble();
             Optional<GroupStatus> gs = selectGroup(needle, true, rejectedGroups);
-            if (gs.isPresent()) {
-                return gs;
+            if ( ! gs.isPresent()) {
+                // fallback - any coverage better than none
+                gs = selectGroup(needle, false, rejectedGroups);
             }
-            // fallback - any coverage better than none
-            return selectGroup(needle, false, rejectedGroups);
+            gs.ifPresent(GroupStatus::allocate);
+            return gs;
+        }
+    }
+
+    /**
+     * Selects the better of two randomly chosen groups ("power of two choices"), where better means the lowest
+     * expected latency given the number of queries currently in flight to the group and its average search time.
+     * This needs no locking or global state beyond the atomic per-group counters, so it does not become a point
+     * of contention at high query rates.
+     */
+    static class BestOfRandom2Scheduler implements GroupScheduler {
+        private final Supplier<Random> random;
+        private final List<GroupStatus> scoreboard;
+
+        public BestOfRandom2Scheduler(Supplier<Random> random, List<GroupStatus> scoreboard) {
+            this.random = random;
+            this.scoreboard = scoreboard;
+        }
+
+        @Override
+        public Optional<GroupStatus> takeNextGroup(Set<Integer> rejectedGroups) {
+            GroupStatus gs = selectBestOf2(true, rejectedGroups);
+            if (gs == null) {
+                // fallback - any coverage better than none
+                gs = selectBestOf2(false, rejectedGroups);
+            }
+            if (gs == null) {
+                return Optional.empty();
+            }
+            gs.allocate();
+            return Optional.of(gs);
+        }
+
+        /** Samples two distinct groups uniformly among the eligible ones, and returns the one with the lower expected latency */
+        private GroupStatus selectBestOf2(boolean requireCoverage, Set<Integer> rejected) {
+            int eligible = 0;
+            for (GroupStatus gs : scoreboard) {
+                if (isEligible(gs, requireCoverage, rejected)) {
+                    eligible++;
+                }
+            }
+            if (eligible == 0) {
+                return null;
+            }
+            Random r = random.get();
+            int firstOrdinal = r.nextInt(eligible);
+            GroupStatus first = findEligible(firstOrdinal, requireCoverage, rejected);
+            if (eligible == 1 || first == null) {
+                return first;
+            }
+            int secondOrdinal = r.nextInt(eligible - 1);
+            if (secondOrdinal >= firstOrdinal) {
+                secondOrdinal++;
+            }
+            GroupStatus second = findEligible(secondOrdinal, requireCoverage, rejected);
+            if (second == null) {
+                return first;
+            }
+            return (expectedLatency(second) < expectedLatency(first)) ? second : first;
+        }
+
+        /** Returns the eligible group with the given ordinal among the eligible groups, or null if eligibility changed */
+        private GroupStatus findEligible(int ordinal, boolean requireCoverage, Set<Integer> rejected) {
+            for (GroupStatus gs : scoreboard) {
+                if (isEligible(gs, requireCoverage, rejected) && ordinal-- == 0) {
+                    return gs;
+                }
+            }
+            return null;
+        }
+
+        private static boolean isEligible(GroupStatus gs, boolean requireCoverage, Set<Integer> rejected) {
+            if (rejected != null && rejected.contains(gs.group.id())) return false;
+            return ! requireCoverage || gs.group.hasSufficientCoverage();
+        }
+
+        private static double expectedLatency(GroupStatus gs) {
+            return (gs.allocations() + 1) * gs.averageSearchTime();
         }
     }
 }
@@ -23,7 +23,16 @@ import java.util.List;
  */
 class RpcClient implements Client {
 
-    private final Supervisor supervisor = new Supervisor(new Transport());
+    private final Supervisor supervisor;
+
+    public RpcClient() {
+        this(1);
+    }
+
+    /** Creates a client performing network IO in the given number of transport threads */
+    public RpcClient(int transportThreads) {
+        supervisor = new Supervisor(new Transport(transportThreads));
+    }
 
     @Override
     public NodeConnection createConnection(String hostname, int port) {
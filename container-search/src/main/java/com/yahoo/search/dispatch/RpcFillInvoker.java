@@ -17,6 +17,7 @@ import com.yahoo.search.result.ErrorMessage;
 import com.yahoo.search.result.Hit;
 import com.yahoo.slime.ArrayTraverser;
 import com.yahoo.slime.BinaryFormat;
+import com.yahoo.slime.BinaryView;
 import com.yahoo.slime.Cursor;
 import com.yahoo.slime.Slime;
 
@@ -225,7 +226,7 @@ public class RpcFillInvoker extends FillInvoker {
         }
 
         private int fill(List<FastHit> hits, String summaryClass, DocumentDatabase documentDb, byte[] slimeBytes) {
-            com.yahoo.slime.Inspector root = BinaryFormat.decode(slimeBytes).get();
+            com.yahoo.slime.Inspector root = BinaryView.inspect(slimeBytes);
             com.yahoo.slime.Inspector errors = root.field("errors");
             boolean hasErrors = errors.valid() && (errors.entries() > 0);
             if (hasErrors) {
@@ -37,7 +37,7 @@ public class RpcResourcePool {
     }
 
     public RpcResourcePool(DispatchConfig dispatchConfig) {
-        this.client = new RpcClient();
+        this.client = new RpcClient(dispatchConfig.numJrtTransportThreads());
 
         // Create node rpc connections, indexed by the node distribution key
         ImmutableMap.Builder<Integer, Client.NodeConnection> nodeConnectionsBuilder = new ImmutableMap.Builder<>();
@@ -24,6 +24,7 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -47,6 +48,9 @@ public class SearchCluster implements NodeManager<Node> {
     private final ClusterMonitor<Node> clusterMonitor;
     private final VipStatus vipStatus;
 
+    /** Incremented whenever a node or group changes state, see {@link #stateGeneration()} */
+    private final AtomicLong stateGeneration = new AtomicLong(0);
+
     /**
      * A search node on this local machine having the entire corpus, which we therefore
      * should prefer to dispatch directly to, or empty if there is no such local search node.
@@ -150,6 +154,9 @@ public class SearchCluster implements NodeManager<Node> {
         return dispatchConfig;
     }
 
+    /** Returns the id of this cluster */
+    public String clusterId() { return clusterId; }
+
     /** Returns the number of nodes in this cluster (across all groups) */
     public int size() { return size; }
 
@@ -184,6 +191,13 @@ public class SearchCluster implements NodeManager<Node> {
         return covered;
     }
 
+    /**
+     * Returns the generation of the state of this cluster. This is incremented each time a node goes up or down,
+     * or a group gains or loses sufficient coverage, such that results computed at an earlier generation may
+     * differ from those the cluster would produce now.
+     */
+    public long stateGeneration() { return stateGeneration.get(); }
+
     /**
      * Returns the nodes of this cluster as an immutable map indexed by host.
      * One host may contain multiple nodes (on different ports), so this is a multi-map.
@@ -211,6 +225,7 @@ public class SearchCluster implements NodeManager<Node> {
     @Override
     public void working(Node node) {
         node.setWorking(true);
+        stateGeneration.incrementAndGet();
 
         if (usesDirectDispatchTo(node))
             vipStatus.addToRotation(clusterId);
@@ -220,6 +235,7 @@ public class SearchCluster implements NodeManager<Node> {
     @Override
     public void failed(Node node) {
         node.setWorking(false);
+        stateGeneration.incrementAndGet();
 
         // Take ourselves out if we usually dispatch only to our own host
         if (usesDirectDispatchTo(node))
@@ -235,6 +251,8 @@ public class SearchCluster implements NodeManager<Node> {
                 vipStatus.removeFromRotation(clusterId);
             }
         }
+        if (sufficientCoverage != group.hasSufficientCoverage())
+            stateGeneration.incrementAndGet();
         group.setHasSufficientCoverage(sufficientCoverage);
     }
 
@@ -0,0 +1,105 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.fastsearch.test;
+
+import com.yahoo.fs4.BasicPacket;
+import com.yahoo.fs4.BufferTooSmallException;
+import com.yahoo.fs4.PacketDecoder;
+import com.yahoo.fs4.QueryPacket;
+import com.yahoo.prelude.fastsearch.CacheKey;
+import com.yahoo.prelude.fastsearch.ConcurrentPacketCache;
+import com.yahoo.prelude.fastsearch.PacketWrapper;
+import com.yahoo.search.Query;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the concurrent packet cache. The replacement policy is tested in TinyLfuCacheTest.
+ */
+public class ConcurrentPacketCacheTestCase {
+
+    private static final byte[] queryResultPacketData = new byte[] {
+        0, 0, 0, 104,
+        0, 0, 0,217 - 256,
+        0, 0, 0, 1,
+        0, 0, 0, 0,
+        0, 0, 0, 2,
+        0, 0, 0, 0,
+        0, 0, 0, 5,
+        0x40,0x39,0,0,0, 0, 0, 25,
+        0, 0, 0, 111,
+        0, 0, 0, 97,
+        0,0,0,3, 1,1,1,1,1,1,1,1,1,1,1,1, 0x40,0x37,0,0,0,0,0,0, 0,0,0,7, 0,0,0,36,
+        0,0,0,4, 2,2,2,2,2,2,2,2,2,2,2,2, 0x40,0x35,0,0,0,0,0,0, 0,0,0,8, 0,0,0,37};
+    private static final int length = queryResultPacketData.length; // 4 + 68 + 2*12 bytes
+
+    private static final CacheKey key1 = new CacheKey(QueryPacket.create("container.0", new Query("/?query=key1")));
+    private static final CacheKey key2 = new CacheKey(QueryPacket.create("container.0", new Query("/?query=key2")));
+
+    @Test
+    public void testPutAndGet() throws BufferTooSmallException {
+        ConcurrentPacketCache cache = new ConcurrentPacketCache(0, length * 10, 1e64);
+        cache.setMaxCacheItemPercentage(50);
+
+        cache.put(key1, createCacheEntry());
+        assertNotNull(cache.get(key1));
+        assertEquals(length, cache.totalPacketSize());
+
+        cache.put(key2, createCacheEntry());
+        cache.put(key1, createCacheEntry());
+        assertNotNull(cache.get(key1));
+        assertNotNull(cache.get(key2));
+        assertEquals(length * 2, cache.totalPacketSize());
+        assertEquals(3, cache.statistics().hits());
+
+        cache.remove(key1);
+        assertNull(cache.get(key1));
+        assertEquals(length, cache.totalPacketSize());
+
+        cache.clear();
+        assertNull(cache.get(key2));
+        assertEquals(0, cache.totalPacketSize());
+    }
+
+    @Test
+    public void testTooLargeItem() throws BufferTooSmallException {
+        ConcurrentPacketCache cache = new ConcurrentPacketCache(0, 100, 1e64); // 100 bytes cache
+        cache.setMaxCacheItemPercentage(50);
+
+        cache.put(key1, createCacheEntry());
+        assertNull(cache.get(key1)); // 68 is more than 50% of the size
+        assertEquals(0, cache.totalPacketSize());
+    }
+
+    @Test
+    public void testEntryAging() throws BufferTooSmallException {
+        // 1k bytes cache, 5h timeout
+        ConcurrentPacketCache cache = new ConcurrentPacketCache(0, 1024, 5 * 3600);
+        cache.setMaxCacheItemPercentage(50);
+
+        cache.put(key1, createCacheEntry(), System.currentTimeMillis() - 10 * 3600 * 1000);
+        cache.put(key2, createCacheEntry(), System.currentTimeMillis());
+        assertNull(cache.get(key1));
+        assertNotNull(cache.get(key2));
+    }
+
+    @Test
+    public void testTooBigCapacity() {
+        ConcurrentPacketCache cache = new ConcurrentPacketCache(2048, 0, 5 * 3600);
+        assertEquals(Integer.MAX_VALUE, cache.getByteCapacity());
+    }
+
+    /** Creates a packet of the test length wrapped in a PacketWrapper without a key, so its size is the packet length */
+    private PacketWrapper createCacheEntry() throws BufferTooSmallException {
+        ByteBuffer data = ByteBuffer.allocate(length);
+        data.put(queryResultPacketData);
+        data.flip();
+        BasicPacket[] content = new BasicPacket[] { PacketDecoder.extractPacket(data).packet };
+        return new PacketWrapper(null, content);
+    }
+
+}
@@ -0,0 +1,160 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.cache;
+
+import com.yahoo.document.DocumentId;
+import com.yahoo.document.GlobalId;
+import com.yahoo.fs4.QueryPacket;
+import com.yahoo.prelude.fastsearch.FastHit;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.grouping.GroupingRequest;
+import com.yahoo.search.result.Coverage;
+import com.yahoo.search.result.ErrorMessage;
+import com.yahoo.search.result.Hit;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the result cache.
+ */
+public class ResultCacheTest {
+
+    private final AtomicLong generation = new AtomicLong(0);
+    private final ResultCache cache = new ResultCache("test", 1, 60, generation::get);
+
+    @Test
+    public void testResultsAreCopied() {
+        Query query = new Query("?query=foo");
+        ResultCache.Key key = cache.createKey(query, QueryPacket.create("container.0", query));
+        Result result = result(query, 3);
+        cache.put(key, result);
+        result.hits().get(0).setField("modified", true);
+
+        Query newQuery = new Query("?query=foo");
+        ResultCache.Key newKey = cache.createKey(newQuery, QueryPacket.create("container.0", newQuery));
+        assertEquals(key, newKey);
+        Result cached = cache.get(newKey, newQuery).get();
+        assertEquals(3, cached.hits().size());
+        assertEquals(30, cached.getTotalHitCount());
+        assertTrue(cached.getCoverage(false).getFull());
+        for (int i = 0; i < 3; i++) {
+            Hit hit = cached.hits().get(i);
+            assertNotSame(result.hits().get(i), hit);
+            assertEquals(result.hits().get(i).getId(), hit.getId());
+            assertTrue(hit.isCached());
+            assertEquals(newQuery, hit.getQuery());
+        }
+        assertEquals(null, cached.hits().get(0).getField("modified"));
+
+        cached.hits().get(1).setField("modified", true);
+        assertEquals(null, cache.get(newKey, newQuery).get().hits().get(1).getField("modified"));
+    }
+
+    @Test
+    public void testDifferentQueriesAndWindowsHaveDifferentKeys() {
+        Query query = new Query("?query=foo");
+        Query otherQuery = new Query("?query=bar");
+        Query otherWindow = new Query("?query=foo&hits=20");
+        Query otherRanking = new Query("?query=foo&ranking=other");
+        Query otherSummary = new Query("?query=foo&summary=other");
+        ResultCache.Key key = cache.createKey(query, QueryPacket.create("container.0", query));
+        for (Query other : new Query[] { otherQuery, otherWindow, otherRanking, otherSummary })
+            assertFalse(other.toString(), key.equals(cache.createKey(other, QueryPacket.create("container.0", other))));
+    }
+
+    @Test
+    public void testIncompleteResultsAreNotCached() {
+        Query query = new Query("?query=foo");
+        ResultCache.Key key = cache.createKey(query, QueryPacket.create("container.0", query));
+
+        Result withError = result(query, 3);
+        withError.hits().addError(ErrorMessage.createTimeout("timed out"));
+        cache.put(key, withError);
+        assertFalse(cache.get(key, query).isPresent());
+
+        Result degraded = result(query, 3);
+        degraded.setCoverage(new Coverage(5, 10, 1));
+        cache.put(key, degraded);
+        assertFalse(cache.get(key, query).isPresent());
+
+        Query noWrite = new Query("?query=foo&nocachewrite=true");
+        cache.put(key, result(noWrite, 3));
+        assertFalse(cache.get(key, query).isPresent());
+
+        cache.put(key, result(query, 3));
+        assertTrue(cache.get(key, query).isPresent());
+    }
+
+    @Test
+    public void testClusterStateChangeInvalidatesResults() {
+        Query query = new Query("?query=foo");
+        ResultCache.Key key = cache.createKey(query, QueryPacket.create("container.0", query));
+        cache.put(key, result(query, 3));
+
+        generation.incrementAndGet();
+        Query newQuery = new Query("?query=foo");
+        ResultCache.Key newKey = cache.createKey(newQuery, QueryPacket.create("container.0", newQuery));
+        assertFalse(cache.get(newKey, newQuery).isPresent());
+
+        // A result produced before the change is not added
+        Query staleQuery = new Query("?query=bar");
+        ResultCache.Key staleKey = cache.createKey(staleQuery, QueryPacket.create("container.0", staleQuery));
+        generation.incrementAndGet();
+        cache.put(staleKey, result(staleQuery, 3));
+        assertFalse(cache.get(staleKey, staleQuery).isPresent());
+    }
+
+    @Test
+    public void testSummariesAreAddedToCachedResult() {
+        Query query = new Query("?query=foo");
+        ResultCache.Key key = cache.createKey(query, QueryPacket.create("container.0", query));
+        assertEquals(key, cache.keyOf(query).get());
+        Result result = result(query, 3);
+        cache.put(key, result);
+
+        // fill a subset of the hits, as when filling per query
+        Result partition = new Result(query);
+        partition.hits().add(result.hits().get(0));
+        partition.hits().add(result.hits().get(2));
+        for (Hit hit : partition.hits())
+            hit.setFilled("default");
+        cache.updateSummaries(key, partition, "default");
+
+        Result cached = cache.get(key, query).get();
+        assertTrue(cached.hits().get(0).isFilled("default"));
+        assertFalse(cached.hits().get(1).isFilled("default"));
+        assertTrue(cached.hits().get(2).isFilled("default"));
+        assertEquals("Updating is not a lookup", 1, cache.statistics().hits() + cache.statistics().misses());
+    }
+
+    @Test
+    public void testUncacheableQueries() {
+        assertTrue(cache.isCacheable(new Query("?query=foo")));
+        assertFalse(cache.isCacheable(new Query("?query=foo&nocache=true")));
+        assertFalse(cache.isCacheable(new Query("?query=foo&model.searchPath=0/0")));
+        Query grouping = new Query("?query=foo");
+        GroupingRequest.newInstance(grouping);
+        assertFalse(cache.isCacheable(grouping));
+        assertFalse(cache.isCacheable(new Query("?query=foo&ranking.queryCache=true")));
+    }
+
+    private static Result result(Query query, int hitCount) {
+        Result result = new Result(query);
+        result.setTotalHitCount(hitCount * 10);
+        result.setCoverage(new Coverage(10, 10, 1));
+        for (int i = 0; i < hitCount; i++) {
+            FastHit hit = new FastHit("id:test:test::" + i, 1.0 / (i + 1));
+            hit.setGlobalId(new GlobalId(new DocumentId("id:test:test::" + i).getGlobalId()));
+            hit.setFillable();
+            result.hits().add(hit);
+        }
+        return result;
+    }
+
+}
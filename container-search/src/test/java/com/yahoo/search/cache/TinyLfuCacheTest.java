@@ -0,0 +1,141 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the W-TinyLFU cache. Values are integers which are their own weight.
+ */
+public class TinyLfuCacheTest {
+
+    private static final long NOW = 1000000;
+
+    private static TinyLfuCache<Integer, Integer> cache(long capacity) {
+        TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>(capacity, 10000, 60000, Integer::intValue);
+        cache.setMaxItemPercentage(100);
+        return cache;
+    }
+
+    @Test
+    public void testPutGetAndRemove() {
+        TinyLfuCache<Integer, Integer> cache = cache(1000);
+        assertNull(cache.put(1, 10, NOW));
+        assertNull(cache.put(2, 20, NOW));
+        assertEquals(30, cache.weightedSize());
+
+        assertEquals(10, (int) cache.get(1, NOW));
+        assertEquals(10, (int) cache.put(1, 15, NOW));
+        assertEquals(15, (int) cache.get(1, NOW));
+        assertEquals(35, cache.weightedSize());
+
+        assertEquals(20, (int) cache.remove(2));
+        assertNull(cache.get(2, NOW));
+        assertEquals(15, cache.weightedSize());
+        assertEquals(1, cache.size());
+
+        cache.clear();
+        assertNull(cache.get(1, NOW));
+        assertEquals(0, cache.weightedSize());
+
+        CacheStatistics statistics = cache.statistics();
+        assertEquals(2, statistics.hits());
+        assertEquals(2, statistics.misses());
+    }
+
+    @Test
+    public void testTotalWeightIsBounded() {
+        TinyLfuCache<Integer, Integer> cache = cache(1000);
+        for (int i = 0; i < 100; i++) {
+            cache.get(i, NOW);
+            cache.put(i, 30 + i % 7, NOW);
+            assertTrue(cache.weightedSize() <= 1000);
+        }
+        assertTrue(cache.statistics().evictions() > 0);
+        assertTrue(cache.size() < 100);
+    }
+
+    @Test
+    public void testTooLargeItemIsRejected() {
+        TinyLfuCache<Integer, Integer> cache = cache(1000);
+        cache.setMaxItemPercentage(10);
+        cache.put(1, 50, NOW);
+        cache.put(1, 101, NOW);
+        assertNull("Too large replacement removes the previous value", cache.get(1, NOW));
+        assertEquals(0, cache.weightedSize());
+        assertEquals(1, cache.statistics().rejections());
+    }
+
+    @Test
+    public void testEntryAging() {
+        TinyLfuCache<Integer, Integer> cache = cache(1000);
+        cache.put(1, 10, NOW - 60001);
+        cache.put(2, 10, NOW - 60000);
+        assertNull(cache.get(1, NOW));
+        assertNotNull(cache.get(2, NOW));
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.statistics().expirations());
+    }
+
+    @Test
+    public void testFrequentlyUsedEntriesSurviveScan() {
+        TinyLfuCache<Integer, Integer> cache = cache(100);
+        for (int i = 0; i < 99; i++) {
+            cache.get(i, NOW);
+            cache.put(i, 1, NOW);
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 99; i++) {
+                assertNotNull(cache.get(i, NOW));
+            }
+        }
+
+        // a burst of lookups which are never repeated
+        for (int i = 1000; i < 3000; i++) {
+            cache.get(i, NOW);
+            cache.put(i, 1, NOW);
+        }
+
+        for (int i = 0; i < 99; i++) {
+            assertNotNull("Entry " + i + " is kept", cache.get(i, NOW));
+        }
+        assertTrue(cache.weightedSize() <= 100);
+    }
+
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        TinyLfuCache<Integer, Integer> cache = cache(10000);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Random random = new Random(t);
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 50000; i++) {
+                    int key = (int) Math.abs(random.nextGaussian() * 500);
+                    if (cache.get(key, NOW) == null) {
+                        cache.put(key, 1 + key % 50, NOW);
+                    }
+                    if (i % 1000 == 0) {
+                        cache.remove(key);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        CacheStatistics statistics = cache.statistics();
+        assertEquals(4 * 50000, statistics.hits() + statistics.misses());
+        assertTrue(statistics.weightedSize() <= 10000);
+        assertTrue(statistics.hitRatio() > 0.5);
+    }
+
+}
@@ -1,14 +1,17 @@
 // Copyright 2019 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.search.dispatch;
 
+import com.yahoo.fs4.QueryPacket;
 import com.yahoo.prelude.fastsearch.FS4InvokerFactory;
 import com.yahoo.processing.request.CompoundName;
 import com.yahoo.search.Query;
 import com.yahoo.search.dispatch.searchcluster.Node;
 import com.yahoo.search.dispatch.searchcluster.SearchCluster;
+import com.yahoo.search.result.Coverage;
 import com.yahoo.vespa.config.search.DispatchConfig;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
 import java.util.OptionalInt;
@@ -99,6 +102,29 @@ public class DispatcherTest {
         invokerFactory.verifyAllEventsProcessed();
     }
 
+    @Test
+    public void requireThatCachedResultsAreReturnedWithoutDispatching() throws IOException {
+        SearchCluster cl = new MockSearchCluster("1", 1, 1);
+        DispatchConfig.Builder builder = new DispatchConfig.Builder(createDispatchConfig());
+        builder.resultCacheSize(1);
+        Dispatcher disp = new Dispatcher(cl, new DispatchConfig(builder));
+        MockFS4InvokerFactory invokerFactory = new MockFS4InvokerFactory(cl, (n, a) -> true);
+
+        Query first = new Query("?query=foo&dispatch.internal=true");
+        try (SearchInvoker invoker = disp.getSearchInvoker(first, QueryPacket.create("container.0", first), invokerFactory).get()) {
+            assertThat(invoker instanceof CachingSearchInvoker, is(true));
+            invoker.search(first, null, null, null);
+        }
+        invokerFactory.verifyAllEventsProcessed();
+
+        Query second = new Query("?query=foo&dispatch.internal=true");
+        try (SearchInvoker invoker = disp.getSearchInvoker(second, QueryPacket.create("container.0", second), invokerFactory).get()) {
+            assertThat(invoker instanceof CachedResultInvoker, is(true));
+            assertThat(invoker.search(second, null, null, null).getQuery(), is(second));
+        }
+        assertThat(disp.resultCache().get().statistics().hits(), is(1L));
+    }
+
     interface FactoryStep {
         public boolean returnInvoker(List<Node> nodes, boolean acceptIncompleteCoverage);
     }
@@ -120,7 +146,7 @@ public class DispatcherTest {
             boolean nonEmpty = events[step].returnInvoker(nodes, acceptIncompleteCoverage);
             step++;
             if (nonEmpty) {
-                return Optional.of(new MockInvoker(1));
+                return Optional.of(new MockInvoker(1, new Coverage(10, 10, 1)));
             } else {
                 return Optional.empty();
             }
@@ -0,0 +1,191 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.fs4.QueryPacket;
+import com.yahoo.prelude.fastsearch.CacheKey;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.result.Coverage;
+import com.yahoo.search.result.ErrorMessage;
+import com.yahoo.search.searchchain.Execution;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HedgedSearchInvokerTest {
+
+    private static Query query() {
+        Query query = new Query();
+        query.setTimeout(200);
+        return query;
+    }
+
+    @Test
+    public void requireThatNoHedgeIsSentWhenPrimaryRespondsInTime() throws IOException {
+        Query query = query();
+        TestInvoker primary = new TestInvoker(1, true, 10);
+        AtomicInteger hedgesRequested = new AtomicInteger(0);
+        SearchInvoker invoker = new HedgedSearchInvoker(new HedgedSearchInvoker.Target(primary, 0), 100, q -> {
+            hedgesRequested.incrementAndGet();
+            return Optional.empty();
+        });
+
+        Result result = invoker.search(query, null, null, null);
+        invoker.close();
+
+        assertEquals(0, hedgesRequested.get());
+        assertEquals(10, result.getCoverage(false).getDocs());
+        assertNull(query.getContext(true).getProperty(HedgeStatistics.HEDGE_STATISTICS));
+        assertTrue(primary.closed);
+    }
+
+    @Test
+    public void requireThatHedgeIsUsedWhenPrimaryIsSlow() throws IOException {
+        Query query = query();
+        TestInvoker primary = new TestInvoker(1, false, 10);
+        TestInvoker hedge = new TestInvoker(2, true, 20);
+        SearchInvoker invoker = new HedgedSearchInvoker(new HedgedSearchInvoker.Target(primary, 0), 10,
+                                                        q -> Optional.of(new HedgedSearchInvoker.Target(hedge, 1)));
+
+        Result result = invoker.search(query, null, null, null);
+
+        assertEquals(20, result.getCoverage(false).getDocs());
+        assertTrue("Slow request is cancelled", primary.closed);
+        assertFalse(hedge.closed);
+        assertEquals("/1", query.getModel().getSearchPath());
+
+        HedgeStatistics statistics = (HedgeStatistics) query.getContext(true).getProperty(HedgeStatistics.HEDGE_STATISTICS);
+        assertEquals(0, statistics.slowGroup());
+        assertEquals(1, statistics.hedgeGroup());
+        assertTrue(statistics.hedgeWon());
+
+        invoker.close();
+        assertTrue(hedge.closed);
+    }
+
+    @Test
+    public void requireThatPrimaryIsUsedWhenNoHedgeIsAvailable() throws IOException {
+        Query query = query();
+        TestInvoker primary = new TestInvoker(1, false, 10);
+        SearchInvoker invoker = new HedgedSearchInvoker(new HedgedSearchInvoker.Target(primary, 0), 10, q -> Optional.empty());
+
+        Result result = invoker.search(query, null, null, null);
+        invoker.close();
+
+        assertEquals(10, result.getCoverage(false).getDocs());
+        assertNull(query.getContext(true).getProperty(HedgeStatistics.HEDGE_STATISTICS));
+        assertTrue(primary.closed);
+    }
+
+    @Test
+    public void requireThatErrorFromHedgeDoesNotWinOverSuccessfulPrimary() throws IOException {
+        Query query = query();
+        TestInvoker primary = new TestInvoker(1, 50, false, 10);
+        TestInvoker hedge = new TestInvoker(2, 0, true, 20);
+        SearchInvoker invoker = new HedgedSearchInvoker(new HedgedSearchInvoker.Target(primary, 0), 10,
+                                                        q -> Optional.of(new HedgedSearchInvoker.Target(hedge, 1)));
+
+        Result result = invoker.search(query, null, null, null);
+
+        assertNull(result.hits().getError());
+        assertEquals(10, result.getCoverage(false).getDocs());
+        assertEquals("/0", query.getModel().getSearchPath());
+        assertTrue(hedge.closed);
+        assertFalse(((HedgeStatistics) query.getContext(true).getProperty(HedgeStatistics.HEDGE_STATISTICS)).hedgeWon());
+        invoker.close();
+    }
+
+    @Test
+    public void requireThatErrorIsReturnedWhenBothGroupsFail() throws IOException {
+        Query query = query();
+        TestInvoker primary = new TestInvoker(1, 50, true, 10);
+        TestInvoker hedge = new TestInvoker(2, 0, true, 20);
+        SearchInvoker invoker = new HedgedSearchInvoker(new HedgedSearchInvoker.Target(primary, 0), 10,
+                                                        q -> Optional.of(new HedgedSearchInvoker.Target(hedge, 1)));
+
+        Result result = invoker.search(query, null, null, null);
+        invoker.close();
+
+        assertNotNull(result.hits().getError());
+        assertTrue(primary.closed);
+        assertTrue(hedge.closed);
+    }
+
+    @Test
+    public void requireThatSearchTimeOfCancelledRequestIsRecorded() throws IOException {
+        Query query = query();
+        TestInvoker primary = new TestInvoker(1, false, 10);
+        TestInvoker hedge = new TestInvoker(2, true, 20);
+        List<Boolean> primarySuccess = new ArrayList<>();
+        List<Long> primaryTime = new ArrayList<>();
+        primary.teardown((success, time) -> { primarySuccess.add(success); primaryTime.add(time); });
+        SearchInvoker invoker = new HedgedSearchInvoker(new HedgedSearchInvoker.Target(primary, 0), 20,
+                                                        q -> Optional.of(new HedgedSearchInvoker.Target(hedge, 1)));
+
+        invoker.search(query, null, null, null);
+        invoker.close();
+
+        assertEquals(List.of(true), primarySuccess);
+        assertTrue("The slow request took at least the hedge delay", primaryTime.get(0) >= 20);
+    }
+
+    private static class TestInvoker extends MockInvoker {
+        private final long respondAfterMillis;
+        private final boolean error;
+        boolean closed = false;
+
+        TestInvoker(int key, boolean respond, long docs) {
+            this(key, respond ? 0 : -1, false, docs);
+        }
+
+        /** Creates an invoker which responds after the given time, or never if it is negative */
+        TestInvoker(int key, long respondAfterMillis, boolean error, long docs) {
+            super(key, new Coverage(docs, docs, 1));
+            this.respondAfterMillis = respondAfterMillis;
+            this.error = error;
+        }
+
+        @Override
+        protected void sendSearchRequest(Query query, QueryPacket queryPacket) throws IOException {
+            super.sendSearchRequest(query, queryPacket);
+            if (respondAfterMillis == 0) {
+                responseAvailable();
+            }
+            else if (respondAfterMillis > 0) {
+                new Thread(() -> {
+                    try {
+                        Thread.sleep(respondAfterMillis);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    responseAvailable();
+                }).start();
+            }
+        }
+
+        @Override
+        protected Result getSearchResult(CacheKey cacheKey, Execution execution) throws IOException {
+            Result result = super.getSearchResult(cacheKey, execution);
+            if (error) {
+                result.hits().addError(ErrorMessage.createBackendCommunicationError("Failed"));
+            }
+            return result;
+        }
+
+        @Override
+        protected void release() {
+            closed = true;
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.search.dispatch.searchcluster.Group;
+import com.yahoo.search.dispatch.searchcluster.Node;
+import com.yahoo.search.dispatch.searchcluster.SearchCluster;
+import com.yahoo.vespa.config.search.DispatchConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.yahoo.search.dispatch.MockSearchCluster.createDispatchConfig;
+
+/**
+ * Measures group selection throughput of the load balancer with each distribution policy
+ * when taking and releasing groups from 1 to 64 concurrent threads.
+ * Not run as part of the unit tests; run main manually.
+ */
+public class LoadBalancerBenchmark {
+
+    private static final int groups = 8;
+    private static final long runMillis = 2000;
+
+    private static SearchCluster createCluster() {
+        List<Node> nodes = new ArrayList<>();
+        for (int group = 0; group < groups; group++)
+            nodes.add(new Node(group, "node" + group, group, group));
+        return new SearchCluster("benchmark", createDispatchConfig(nodes.toArray(new Node[0])), null, 1, null);
+    }
+
+    private static double run(LoadBalancer loadBalancer, int threadCount) throws InterruptedException {
+        AtomicLong operations = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        long stopAt = System.currentTimeMillis() + runMillis;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long count = 0;
+                while ((count & 0xff) != 0 || System.currentTimeMillis() < stopAt) {
+                    Group group = loadBalancer.takeGroup(null).get();
+                    loadBalancer.releaseGroup(group, true, 1.0 + (count & 0x7));
+                    count++;
+                }
+                operations.addAndGet(count);
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads)
+            thread.join();
+        return operations.get() / ((System.nanoTime() - startTime) / 1e9);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        SearchCluster cluster = createCluster();
+        for (DispatchConfig.DistributionPolicy.Enum policy : DispatchConfig.DistributionPolicy.Enum.values()) {
+            LoadBalancer loadBalancer = new LoadBalancer(cluster, policy);
+            run(loadBalancer, 4); // warmup
+            for (int threads = 1; threads <= 64; threads *= 2) {
+                System.out.printf("%-16s %2d threads: %12.0f take/release per second%n", policy, threads, run(loadBalancer, threads));
+            }
+        }
+    }
+
+}
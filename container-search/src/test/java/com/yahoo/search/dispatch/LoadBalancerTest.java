@@ -2,18 +2,23 @@
 package com.yahoo.search.dispatch;
 
 import com.yahoo.search.dispatch.LoadBalancer.AdaptiveScheduler;
+import com.yahoo.search.dispatch.LoadBalancer.BestOfRandom2Scheduler;
 import com.yahoo.search.dispatch.LoadBalancer.GroupStatus;
+import com.yahoo.search.dispatch.LoadBalancer.SearchTimeWindow;
 import com.yahoo.search.dispatch.searchcluster.Group;
 import com.yahoo.search.dispatch.searchcluster.Node;
 import com.yahoo.search.dispatch.searchcluster.SearchCluster;
+import com.yahoo.vespa.config.search.DispatchConfig;
 import junit.framework.AssertionFailedError;
 import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
+import java.util.Set;
 
 import static com.yahoo.search.dispatch.MockSearchCluster.createDispatchConfig;
 import static org.hamcrest.Matchers.closeTo;
@@ -156,6 +161,124 @@ public class LoadBalancerTest {
         assertThat(sched.takeNextGroup(null).get().groupId(), equalTo(4));
     }
 
+    @Test
+    public void requireThatBestOfRandom2SchedulerPrefersLeastLoadedOfTwo() {
+        List<GroupStatus> scoreboard = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            scoreboard.add(newGroupStatus(i));
+        }
+        // first candidate is eligible group 0, second is eligible group 1 of the remaining, i.e. index 2
+        Random seq = intSequence(0, 1);
+        BestOfRandom2Scheduler sched = new BestOfRandom2Scheduler(() -> seq, scoreboard);
+
+        assertThat(sched.takeNextGroup(null).get().groupId(), equalTo(0)); // equal, first preferred
+        assertThat(sched.takeNextGroup(null).get().groupId(), equalTo(2)); // 0 now has one in flight
+        assertThat(sched.takeNextGroup(null).get().groupId(), equalTo(0)); // equal again
+        scoreboard.get(0).release(true, 0.001);
+        scoreboard.get(0).release(true, 0.001);
+        scoreboard.get(2).setQueryStatistics(1000, 1.0);
+        assertThat(sched.takeNextGroup(null).get().groupId(), equalTo(0)); // 2 is slow and loaded
+        assertThat(scoreboard.get(0).allocations(), equalTo(1));
+        assertThat(scoreboard.get(1).allocations(), equalTo(0));
+        assertThat(scoreboard.get(2).allocations(), equalTo(1));
+    }
+
+    @Test
+    public void requireThatBestOfRandom2SchedulerSkipsRejectedGroups() {
+        List<GroupStatus> scoreboard = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            scoreboard.add(newGroupStatus(i));
+        }
+        Random seq = intSequence(0, 0);
+        BestOfRandom2Scheduler sched = new BestOfRandom2Scheduler(() -> seq, scoreboard);
+        Set<Integer> rejected = new HashSet<>();
+        rejected.add(0);
+        rejected.add(1);
+        assertThat(sched.takeNextGroup(rejected).get().groupId(), equalTo(2));
+        rejected.add(2);
+        assertThat(sched.takeNextGroup(rejected).isPresent(), is(false));
+    }
+
+    @Test
+    public void requireThatBestOfRandom2SchedulerSamplesEligibleGroupsUniformly() {
+        List<GroupStatus> scoreboard = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            scoreboard.add(newGroupStatus(i));
+        }
+        Random random = new Random(1);
+        BestOfRandom2Scheduler sched = new BestOfRandom2Scheduler(() -> random, scoreboard);
+        Set<Integer> rejected = Collections.singleton(1);
+        int[] taken = new int[4];
+        for (int i = 0; i < 3000; i++) {
+            GroupStatus gs = sched.takeNextGroup(rejected).get();
+            taken[gs.groupId()]++;
+            gs.release(false, 0);
+        }
+        // A scan from a random start would pick group 2, following the rejected group, half of the time
+        assertThat(taken[1], equalTo(0));
+        for (int group : new int[] { 0, 2, 3 }) {
+            assertThat((double) taken[group], closeTo(1000, 100));
+        }
+    }
+
+    @Test
+    public void requireThatReleaseNeverMakesAllocationsNegative() {
+        GroupStatus gs = newGroupStatus(0);
+        gs.allocate();
+        gs.release(false, 0);
+        gs.release(false, 0);
+        assertThat(gs.allocations(), equalTo(0));
+        gs.allocate();
+        assertThat(gs.allocations(), equalTo(1));
+    }
+
+    @Test
+    public void requireThatBestOfRandom2LoadBalancerServesAllGroups() {
+        Node n1 = new Node(0, "test-node1", 0, 0);
+        Node n2 = new Node(1, "test-node2", 1, 1);
+        SearchCluster cluster = new SearchCluster("a", createDispatchConfig(n1, n2), null, 1, null);
+        LoadBalancer lb = new LoadBalancer(cluster, DispatchConfig.DistributionPolicy.BEST_OF_RANDOM_2);
+
+        Group first = lb.takeGroup(null).get();
+        Group second = lb.takeGroup(null).get();
+        assertThat(second.id(), not(equalTo(first.id())));
+        lb.releaseGroup(first, true, 1.0);
+        lb.releaseGroup(second, true, 1.0);
+    }
+
+    @Test
+    public void requireThatSearchTimePercentileIsOnlyKnownAfterEnoughSamples() {
+        Node n1 = new Node(0, "test-node1", 0, 0);
+        Node n2 = new Node(1, "test-node2", 1, 1);
+        SearchCluster cluster = new SearchCluster("a", createDispatchConfig(n1, n2), null, 1, null);
+        LoadBalancer lb = new LoadBalancer(cluster, true);
+        Group group = cluster.orderedGroups().get(0);
+
+        for (int i = 1; i < SearchTimeWindow.MIN_SAMPLES; i++) {
+            lb.takeGroup(Collections.singleton(1));
+            lb.releaseGroup(group, true, i);
+        }
+        assertThat(lb.searchTimePercentile(group, 95.0).isPresent(), is(false));
+        lb.takeGroup(Collections.singleton(1));
+        lb.releaseGroup(group, true, SearchTimeWindow.MIN_SAMPLES);
+        assertThat(lb.searchTimePercentile(group, 95.0).getAsLong(), equalTo(122L));
+        assertThat(lb.searchTimePercentile(cluster.orderedGroups().get(1), 95.0).isPresent(), is(false));
+    }
+
+    @Test
+    public void requireThatSearchTimeWindowOnlyKeepsRecentSamples() {
+        SearchTimeWindow window = new SearchTimeWindow();
+        for (int i = 0; i < SearchTimeWindow.WINDOW_SIZE; i++) {
+            window.add(1000);
+        }
+        assertThat(window.percentile(50.0).getAsLong(), equalTo(1000L));
+        for (int i = 0; i < SearchTimeWindow.WINDOW_SIZE; i++) {
+            window.add(10);
+        }
+        assertThat(window.percentile(100.0).getAsLong(), equalTo(10L));
+        assertThat(window.percentile(0.0).getAsLong(), equalTo(10L));
+    }
+
     private static void updateSearchTime(GroupStatus gs, double time) {
         gs.allocate();
         gs.release(true, time);
@@ -171,6 +294,22 @@ public class LoadBalancerTest {
         return new GroupStatus(dummyGroup);
     }
 
+    private Random intSequence(int... values) {
+        return new Random() {
+            private int index = 0;
+
+            @Override
+            public int nextInt(int bound) {
+                int retv = values[index] % bound;
+                index++;
+                if (index >= values.length) {
+                    index = 0;
+                }
+                return retv;
+            }
+        };
+    }
+
     private Random sequence(double... values) {
         return new Random() {
             private int index = 0;
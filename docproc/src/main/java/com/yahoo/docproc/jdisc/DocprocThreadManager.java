@@ -43,6 +43,10 @@ class DocprocThreadManager {
                                + (((double) maxConcurrentByteSize) / 1024.0d / 1024.0d) + " megabytes of input data.");
     }
 
+    long getMaxConcurrentByteSize() {
+        return maxConcurrentByteSize;
+    }
+
     boolean isAboveLimit() {
         return (bytesFinished.get() - bytesStarted.get() > maxConcurrentByteSize);
     }
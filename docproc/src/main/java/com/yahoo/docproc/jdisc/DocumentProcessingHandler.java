@@ -89,23 +89,32 @@ public class DocumentProcessingHandler extends AbstractRequestHandler {
                                      ComponentRegistry<AbstractConcreteDocumentFactory> docFactoryRegistry,
                                      DocumentProcessingHandlerParameters params) {
         this(docprocServiceRegistry, documentProcessorComponentRegistry, docFactoryRegistry,
-             new DocprocThreadPoolExecutor(params.getMaxNumThreads(),
-                                           (params.getMaxQueueTimeMs() > 0)
-                                               ? new ThroughputLimitQueue<>(params.getMaxQueueTimeMs())
-                                               : (params.getMaxQueueTimeMs() < 0)
-                                                   ? new LinkedBlockingQueue<>()
-                                                   : new PriorityBlockingQueue<>(), //Probably no need to bound this queue, see bug #4254537
-                                           new DocprocThreadManager(params.getMaxConcurrentFactor(),
-                                                                    params.getDocumentExpansionFactor(),
-                                                                    params.getContainerCoreMemoryMb(),
-                                                                    params.getStatisticsManager(),
-                                                                    params.getMetric())),
+             createThreadPool(params),
              params.getDocumentTypeManager(), params.getChainsModel(), params.getSchemaMap(),
              params.getStatisticsManager(),
              params.getMetric(),
              params.getContainerDocConfig());
     }
 
+    private static DocprocThreadPoolExecutor createThreadPool(DocumentProcessingHandlerParameters params) {
+        DocprocThreadManager threadManager = new DocprocThreadManager(params.getMaxConcurrentFactor(),
+                                                                      params.getDocumentExpansionFactor(),
+                                                                      params.getContainerCoreMemoryMb(),
+                                                                      params.getStatisticsManager(),
+                                                                      params.getMetric());
+        BlockingQueue<Runnable> queue;
+        if (params.getFairQueuing()) {
+            queue = new WeightedFairTaskQueue(threadManager.getMaxConcurrentByteSize(), params.getMetric());
+        } else if (params.getMaxQueueTimeMs() > 0) {
+            queue = new ThroughputLimitQueue<>(params.getMaxQueueTimeMs());
+        } else if (params.getMaxQueueTimeMs() < 0) {
+            queue = new LinkedBlockingQueue<>();
+        } else {
+            queue = new PriorityBlockingQueue<>(); //Probably no need to bound this queue, see bug #4254537
+        }
+        return new DocprocThreadPoolExecutor(params.getMaxNumThreads(), queue, threadManager);
+    }
+
     @Inject
     public DocumentProcessingHandler(ComponentRegistry<DocumentProcessor> documentProcessorComponentRegistry,
                                      ComponentRegistry<AbstractConcreteDocumentFactory> docFactoryRegistry,
@@ -124,6 +133,7 @@ public class DocumentProcessingHandler extends AbstractRequestHandler {
                      .setDocumentExpansionFactor(containerMbusConfig.documentExpansionFactor())
                      .setContainerCoreMemoryMb(containerMbusConfig.containerCoreMemory())
                      .setMaxQueueTimeMs(docprocConfig.maxqueuetimems())
+                     .setFairQueuing(docprocConfig.fairqueuing())
                      .setDocumentTypeManager(new DocumentTypeManager(docManConfig))
                      .setChainsModel(buildFromConfig(chainsConfig)).setSchemaMap(configureMapping(mappingConfig))
                      .setStatisticsManager(manager)
@@ -22,6 +22,7 @@ public class DocumentProcessingHandlerParameters {
     private double documentExpansionFactor = 20.0;
     private int containerCoreMemoryMb = 50;
     private long maxQueueTimeMs = 0;
+    private boolean fairQueuing = false;
     private DocumentTypeManager documentTypeManager = null;
     private ChainsModel chainsModel = null;
     private SchemaMap schemaMap = null;
@@ -100,6 +101,21 @@ public class DocumentProcessingHandlerParameters {
         return this;
     }
 
+    /**
+     * Returns whether tasks are queued with weighted fair queuing between classes of operations, rather than in
+     * the queue given by the max queue time.
+     *
+     * @return whether tasks are queued with weighted fair queuing.
+     */
+    public boolean getFairQueuing() {
+        return fairQueuing;
+    }
+
+    public DocumentProcessingHandlerParameters setFairQueuing(boolean fairQueuing) {
+        this.fairQueuing = fairQueuing;
+        return this;
+    }
+
     /**
      * Returns the maximum number of thread that the thread pool will ever attempt to run simultaneously.
      *
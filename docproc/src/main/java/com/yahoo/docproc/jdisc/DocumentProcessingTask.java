@@ -208,6 +208,10 @@ public class DocumentProcessingTask implements Comparable<DocumentProcessingTask
         return requestContext.getApproxSize();
     }
 
+    boolean isPut() {
+        return requestContext.isPut();
+    }
+
     final long getSeqNum() {
         return seqNum;
     }
@@ -25,6 +25,9 @@ public interface RequestContext {
 
     public int getPriority();
 
+    /** Returns whether this is a request to put a document, rather than e.g. to update or remove one */
+    public default boolean isPut() { return false; }
+
     public void processingDone(List<Processing> processing);
 
     public void processingFailed(ErrorCode error, String msg);
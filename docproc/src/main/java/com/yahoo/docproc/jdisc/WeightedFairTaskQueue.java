@@ -0,0 +1,365 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.docproc.jdisc;
+
+import com.yahoo.jdisc.Metric;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A queue of document processing tasks which schedules with weighted fair queuing between classes of tasks, such
+ * that e.g. a bulk feed of large documents does not starve small partial updates queued behind it. Each class is
+ * given a share of the processing, measured in bytes of operations, in proportion to its weight. Within a class,
+ * tasks are ordered by priority as in a priority queue.
+ * <p>
+ * When the total size of the queued tasks exceeds the given limit, tasks of classes which use more than their share
+ * of the limit are rejected, which gives backpressure to the clients of just those classes.
+ * The time tasks spend in this queue is reported per class as the metric {@link #QUEUE_LATENCY}.
+ *
+ * @see DocprocThreadPoolExecutor
+ */
+class WeightedFairTaskQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    /** The name of the metric of the time in milliseconds tasks are queued, with the dimension "class" */
+    static final String QUEUE_LATENCY = "docproc.queue_latency";
+
+    /** Operations larger than this many bytes are classified as large, regardless of their type */
+    static final int LARGE_SIZE = 64 * 1024;
+
+    /** The least cost of a task, such that small tasks are not free */
+    private static final int MIN_COST = 1024;
+
+    /** The classes of tasks, each with a weight deciding its share of the processing */
+    enum TaskClass {
+
+        /** Updates and removes, which are typically small and sensitive to latency */
+        UPDATE(4),
+
+        /** Puts of documents */
+        PUT(2),
+
+        /** Operations larger than {@link #LARGE_SIZE}, typically puts of large documents fed in bulk */
+        LARGE(1);
+
+        final int weight;
+
+        TaskClass(int weight) {
+            this.weight = weight;
+        }
+
+        static TaskClass of(DocumentProcessingTask task) {
+            if (task.getApproxSize() > LARGE_SIZE) {
+                return LARGE;
+            }
+            return task.isPut() ? PUT : UPDATE;
+        }
+
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Lane[] lanes = new Lane[TaskClass.values().length];
+    private final long maxQueuedBytes;
+    private final int totalWeight;
+    private final Metric metric;
+    private long queuedBytes = 0;
+    private int size = 0;
+    private double virtualTime = 0;
+
+    /**
+     * Creates a new queue.
+     *
+     * @param maxQueuedBytes the total size of queued tasks above which tasks may be rejected
+     * @param metric the metric to report queue latency to
+     */
+    WeightedFairTaskQueue(long maxQueuedBytes, Metric metric) {
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.metric = metric;
+        int totalWeight = 0;
+        for (TaskClass taskClass : TaskClass.values()) {
+            lanes[taskClass.ordinal()] = new Lane(metric.createContext(Map.of("class", taskClass.name().toLowerCase())));
+            totalWeight += taskClass.weight;
+        }
+        this.totalWeight = totalWeight;
+    }
+
+    @Override
+    public boolean offer(Runnable runnable) {
+        Entry entry = new Entry((DocumentProcessingTask) runnable);
+        lock.lock();
+        try {
+            return enqueue(entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(Runnable runnable) throws InterruptedException {
+        Entry entry = new Entry((DocumentProcessingTask) runnable);
+        lock.lockInterruptibly();
+        try {
+            while ( ! enqueue(entry)) {
+                notFull.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable runnable, long timeout, TimeUnit unit) throws InterruptedException {
+        Entry entry = new Entry((DocumentProcessingTask) runnable);
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while ( ! enqueue(entry)) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        Entry entry;
+        lock.lock();
+        try {
+            entry = dequeue();
+        } finally {
+            lock.unlock();
+        }
+        return taken(entry);
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        Entry entry;
+        lock.lockInterruptibly();
+        try {
+            while ((entry = dequeue()) == null) {
+                notEmpty.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return taken(entry);
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        Entry entry;
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while ((entry = dequeue()) == null) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return taken(entry);
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            Lane lane = next();
+            return lane == null ? null : lane.entries.peek().task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        lock.lock();
+        try {
+            for (Lane lane : lanes) {
+                for (Iterator<Entry> it = lane.entries.iterator(); it.hasNext(); ) {
+                    Entry entry = it.next();
+                    if (entry.task == object) {
+                        it.remove();
+                        removed(lane, entry);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns Integer.MAX_VALUE, as this is bounded by the size of the queued tasks rather than their number */
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> collection) {
+        return drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> collection, int maxElements) {
+        if (collection == this) {
+            throw new IllegalArgumentException("Can not drain a queue to itself");
+        }
+        lock.lock();
+        try {
+            int drained = 0;
+            Entry entry;
+            while (drained < maxElements && (entry = dequeue()) != null) {
+                collection.add(entry.task);
+                ++drained;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns an iterator over a snapshot of the tasks in this, in no particular order */
+    @Override
+    public Iterator<Runnable> iterator() {
+        List<Runnable> tasks = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Lane lane : lanes) {
+                for (Entry entry : lane.entries) {
+                    tasks.add(entry.task);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return Collections.unmodifiableList(tasks).iterator();
+    }
+
+    private boolean enqueue(Entry entry) {
+        Lane lane = lanes[entry.taskClass.ordinal()];
+        if (queuedBytes + entry.size > maxQueuedBytes &&
+            lane.queuedBytes + entry.size > maxQueuedBytes * entry.taskClass.weight / totalWeight) {
+            return false;
+        }
+        if (lane.entries.isEmpty()) { // An idle class does not save up its share for later
+            lane.pass = Math.max(lane.pass, virtualTime);
+        }
+        lane.entries.add(entry);
+        lane.queuedBytes += entry.size;
+        queuedBytes += entry.size;
+        ++size;
+        notEmpty.signal();
+        return true;
+    }
+
+    /** Removes and returns the next entry, from the class which has used the least of its share, or null if none */
+    private Entry dequeue() {
+        Lane lane = next();
+        if (lane == null) {
+            return null;
+        }
+        Entry entry = lane.entries.poll();
+        virtualTime = lane.pass;
+        lane.pass += (double) Math.max(entry.size, MIN_COST) / entry.taskClass.weight;
+        removed(lane, entry);
+        return entry;
+    }
+
+    private Lane next() {
+        Lane next = null;
+        for (Lane lane : lanes) {
+            if ( ! lane.entries.isEmpty() && (next == null || lane.pass < next.pass)) {
+                next = lane;
+            }
+        }
+        return next;
+    }
+
+    private void removed(Lane lane, Entry entry) {
+        lane.queuedBytes -= entry.size;
+        queuedBytes -= entry.size;
+        --size;
+        notFull.signalAll();
+    }
+
+    private Runnable taken(Entry entry) {
+        if (entry == null) {
+            return null;
+        }
+        metric.set(QUEUE_LATENCY, (System.nanoTime() - entry.enqueuedNanos) / 1_000_000.0,
+                   lanes[entry.taskClass.ordinal()].context);
+        return entry.task;
+    }
+
+    /** The queued tasks of a class */
+    private static class Lane {
+
+        final PriorityQueue<Entry> entries = new PriorityQueue<>();
+        final Metric.Context context;
+
+        /** The total size of the queued tasks of this class */
+        long queuedBytes = 0;
+
+        /** The virtual time at which this class should get its next task, which is advanced by the cost of each */
+        double pass = 0;
+
+        Lane(Metric.Context context) {
+            this.context = context;
+        }
+
+    }
+
+    private static class Entry implements Comparable<Entry> {
+
+        final DocumentProcessingTask task;
+        final TaskClass taskClass;
+        final int size;
+        final long enqueuedNanos = System.nanoTime();
+
+        Entry(DocumentProcessingTask task) {
+            this.task = task;
+            this.taskClass = TaskClass.of(task);
+            this.size = task.getApproxSize();
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return task.compareTo(other.task);
+        }
+
+    }
+
+}
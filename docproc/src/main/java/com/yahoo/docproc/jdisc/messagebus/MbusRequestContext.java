@@ -150,6 +150,11 @@ public class MbusRequestContext implements RequestContext, ResponseHandler {
         return requestMsg.getPriority().getValue();
     }
 
+    @Override
+    public boolean isPut() {
+        return requestMsg.getType() == DocumentProtocol.MESSAGE_PUTDOCUMENT;
+    }
+
     @Override
     public URI getUri() {
         return request.getUri();
@@ -0,0 +1,268 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.docproc.jdisc;
+
+import com.yahoo.docproc.Processing;
+import com.yahoo.docproc.jdisc.metric.NullMetric;
+import com.yahoo.documentapi.messagebus.protocol.DocumentProtocol;
+import com.yahoo.jdisc.Metric;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class WeightedFairTaskQueueTestCase {
+
+    private static final int LARGE = WeightedFairTaskQueue.LARGE_SIZE * 2;
+
+    @Test
+    public void requireThatTasksAreClassifiedByTypeAndSize() {
+        assertEquals(WeightedFairTaskQueue.TaskClass.UPDATE, WeightedFairTaskQueue.TaskClass.of(update(100)));
+        assertEquals(WeightedFairTaskQueue.TaskClass.PUT, WeightedFairTaskQueue.TaskClass.of(put(100)));
+        assertEquals(WeightedFairTaskQueue.TaskClass.LARGE, WeightedFairTaskQueue.TaskClass.of(put(LARGE)));
+        assertEquals(WeightedFairTaskQueue.TaskClass.LARGE, WeightedFairTaskQueue.TaskClass.of(update(LARGE)));
+    }
+
+    @Test
+    public void requireThatLargeTasksDoNotDelaySmallTasks() {
+        WeightedFairTaskQueue queue = new WeightedFairTaskQueue(Long.MAX_VALUE, new NullMetric());
+        List<DocumentProcessingTask> large = new ArrayList<>();
+        List<DocumentProcessingTask> updates = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            large.add(put(LARGE));
+            assertTrue(queue.offer(large.get(i)));
+        }
+        for (int i = 0; i < 10; i++) {
+            updates.add(update(100));
+            assertTrue(queue.offer(updates.get(i)));
+        }
+        assertEquals(20, queue.size());
+
+        // Both classes start out even, after which all the small updates cost less than one large put
+        assertSame(updates.get(0), queue.poll());
+        assertSame(large.get(0), queue.poll());
+        for (int i = 1; i < 10; i++) {
+            assertSame(updates.get(i), queue.poll());
+        }
+        for (int i = 1; i < 10; i++) {
+            assertSame(large.get(i), queue.poll());
+        }
+        assertNull(queue.poll());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void requireThatClassesShareProcessingByWeight() {
+        WeightedFairTaskQueue queue = new WeightedFairTaskQueue(Long.MAX_VALUE, new NullMetric());
+        for (int i = 0; i < 12; i++) {
+            queue.offer(put(2048));
+            queue.offer(update(2048));
+        }
+        int updates = 0;
+        for (int i = 0; i < 12; i++) {
+            if ( ! ((DocumentProcessingTask) queue.poll()).isPut()) {
+                updates++;
+            }
+        }
+        assertEquals(8, updates);
+    }
+
+    @Test
+    public void requireThatIdleClassesDoNotSaveUpTheirShare() {
+        WeightedFairTaskQueue queue = new WeightedFairTaskQueue(Long.MAX_VALUE, new NullMetric());
+        for (int i = 0; i < 10; i++) {
+            queue.offer(put(2048));
+            queue.poll();
+        }
+        DocumentProcessingTask put = put(2048);
+        queue.offer(put);
+        for (int i = 0; i < 10; i++) {
+            queue.offer(update(2048));
+        }
+        // The updates get their share from now on, rather than all the processing the puts have had
+        int position = 0;
+        while (queue.poll() != put) {
+            position++;
+        }
+        assertEquals(3, position);
+    }
+
+    @Test
+    public void requireThatTasksAreOrderedByPriorityWithinEachClass() {
+        WeightedFairTaskQueue queue = new WeightedFairTaskQueue(Long.MAX_VALUE, new NullMetric());
+        DocumentProcessingTask low = task(100, false, DocumentProtocol.Priority.LOW_1);
+        DocumentProcessingTask normal = task(100, false, DocumentProtocol.Priority.NORMAL_1);
+        DocumentProcessingTask high = task(100, false, DocumentProtocol.Priority.HIGH_1);
+        queue.offer(low);
+        queue.offer(normal);
+        queue.offer(high);
+        assertSame(high, queue.peek());
+        assertSame(high, queue.poll());
+        assertSame(normal, queue.poll());
+        assertSame(low, queue.poll());
+    }
+
+    @Test
+    public void requireThatClassesUsingMoreThanTheirShareAreRejectedWhenFull() throws InterruptedException {
+        WeightedFairTaskQueue queue = new WeightedFairTaskQueue(10 * LARGE, new NullMetric());
+        int accepted = 0;
+        while (queue.offer(put(LARGE))) {
+            accepted++;
+        }
+        assertEquals(10, accepted);
+        assertFalse(queue.offer(put(LARGE), 1, TimeUnit.MILLISECONDS));
+        assertTrue(queue.offer(update(100)));
+        assertTrue(queue.offer(put(100)));
+
+        assertFalse(queue.offer(put(LARGE)));
+        for (int i = 0; i < 3; i++) { // the small update and put, and then one large put
+            queue.poll();
+        }
+        assertTrue(queue.offer(put(LARGE)));
+    }
+
+    @Test
+    public void requireThatRemovedAndDrainedTasksAreNoLongerQueued() {
+        WeightedFairTaskQueue queue = new WeightedFairTaskQueue(Long.MAX_VALUE, new NullMetric());
+        DocumentProcessingTask put = put(100);
+        DocumentProcessingTask update = update(100);
+        queue.offer(put);
+        queue.offer(update);
+        assertTrue(queue.remove(put));
+        assertFalse(queue.remove(put));
+        assertEquals(1, queue.size());
+
+        queue.offer(put);
+        List<Runnable> drained = new ArrayList<>();
+        assertEquals(2, queue.drainTo(drained));
+        assertEquals(List.of(update, put), drained);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void requireThatQueueLatencyIsReportedPerClass() throws InterruptedException {
+        RecordingMetric metric = new RecordingMetric();
+        WeightedFairTaskQueue queue = new WeightedFairTaskQueue(Long.MAX_VALUE, metric);
+        queue.offer(update(100));
+        queue.offer(put(LARGE));
+        queue.take();
+        queue.poll(1, TimeUnit.MILLISECONDS);
+        assertNull(queue.poll(1, TimeUnit.MILLISECONDS));
+        assertEquals(List.of("update", "large"), metric.classes);
+    }
+
+    private static DocumentProcessingTask put(int size) {
+        return task(size, true, DocumentProtocol.Priority.NORMAL_1);
+    }
+
+    private static DocumentProcessingTask update(int size) {
+        return task(size, false, DocumentProtocol.Priority.NORMAL_1);
+    }
+
+    private static DocumentProcessingTask task(int size, boolean put, DocumentProtocol.Priority priority) {
+        return new DocumentProcessingTask(new TestRequestContext(size, put, priority), null, null);
+    }
+
+    private static class RecordingMetric extends NullMetric {
+
+        final List<String> classes = new ArrayList<>();
+
+        @Override
+        public void set(String key, Number val, Context ctx) {
+            assertEquals(WeightedFairTaskQueue.QUEUE_LATENCY, key);
+            assertTrue(val.doubleValue() >= 0);
+            classes.add(((TestContext) ctx).dimensions.get("class").toString());
+        }
+
+        @Override
+        public Context createContext(Map<String, ?> properties) {
+            return new TestContext(properties);
+        }
+
+    }
+
+    private static class TestContext implements Metric.Context {
+
+        final Map<String, ?> dimensions;
+
+        TestContext(Map<String, ?> dimensions) {
+            this.dimensions = new HashMap<>(dimensions);
+        }
+
+    }
+
+    private static class TestRequestContext implements RequestContext {
+
+        private final int size;
+        private final boolean put;
+        private final DocumentProtocol.Priority priority;
+
+        TestRequestContext(int size, boolean put, DocumentProtocol.Priority priority) {
+            this.size = size;
+            this.put = put;
+            this.priority = priority;
+        }
+
+        @Override
+        public List<Processing> getProcessings() {
+            return null;
+        }
+
+        @Override
+        public String getServiceName() {
+            return null;
+        }
+
+        @Override
+        public URI getUri() {
+            return null;
+        }
+
+        @Override
+        public boolean isProcessable() {
+            return true;
+        }
+
+        @Override
+        public int getApproxSize() {
+            return size;
+        }
+
+        @Override
+        public int getPriority() {
+            return priority.getValue();
+        }
+
+        @Override
+        public boolean isPut() {
+            return put;
+        }
+
+        @Override
+        public void processingDone(List<Processing> processing) {
+        }
+
+        @Override
+        public void processingFailed(ErrorCode error, String msg) {
+        }
+
+        @Override
+        public void processingFailed(Exception exception) {
+        }
+
+        @Override
+        public void skip() {
+        }
+
+    }
+
+}
@@ -6,6 +6,7 @@ import com.yahoo.document.DocumentTypeManager;
 import com.yahoo.language.Linguistics;
 import com.yahoo.log.LogLevel;
 import com.yahoo.vespa.configdefinition.IlscriptsConfig;
+import com.yahoo.vespa.indexinglanguage.ScriptCompiler;
 import com.yahoo.vespa.indexinglanguage.ScriptParserContext;
 import com.yahoo.vespa.indexinglanguage.expressions.InputExpression;
 import com.yahoo.vespa.indexinglanguage.expressions.ScriptExpression;
@@ -79,6 +80,7 @@ public class ScriptManager {
         parserContext.getAnnotatorConfig().setMaxTokenLength(config.fieldmatchmaxlength());
 
         for (IlscriptsConfig.Ilscript ilscript : config.ilscript()) {
+            boolean compile = config.compileddoctype().contains(ilscript.doctype());
             InputExpression.FieldPathOptimizer fieldPathOptimizer = new InputExpression.FieldPathOptimizer(docTypeMgr.getDocumentType(ilscript.doctype()));
             List<StatementExpression> expressions = new ArrayList<>(ilscript.content().size());
             Map<String, DocumentScript> fieldScripts = new HashMap<>(ilscript.content().size());
@@ -102,6 +104,9 @@ public class ScriptManager {
                         script = new ScriptExpression(statement);
                         log.log(Level.FINE, "Setting script for field '" + fieldName + "' = " + statement);
                     }
+                    if (compile) {
+                        script = compile(script);
+                    }
                     DocumentScript documentScript = new DocumentScript(ilscript.doctype(), inputFieldNameExtractor.getInputFieldNames(), script);
                     fieldScripts.put(fieldName, documentScript);
                 } else {
@@ -111,12 +116,20 @@ public class ScriptManager {
 
             ScriptExpression script = new ScriptExpression(expressions);
             script.select(fieldPathOptimizer, fieldPathOptimizer);
+            if (compile) {
+                script = compile(script);
+                log.log(Level.FINE, "Compiled script for document type '" + ilscript.doctype() + "' = " + script);
+            }
             fieldScripts.put(FULL, new DocumentScript(ilscript.doctype(), ilscript.docfield(),script));
             documentFieldScripts.put(ilscript.doctype(), Collections.unmodifiableMap(fieldScripts));
         }
         return Collections.unmodifiableMap(documentFieldScripts);
     }
 
+    private static ScriptExpression compile(ScriptExpression script) {
+        return (ScriptExpression)new ScriptCompiler().convert(script);
+    }
+
     private static StatementExpression parse(String docType, ScriptParserContext parserConfig, String content) {
         parserConfig.setInputStream(new IndexingInput(content));
         try {
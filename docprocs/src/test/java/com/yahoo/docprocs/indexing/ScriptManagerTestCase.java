@@ -9,6 +9,7 @@ import org.junit.Test;
 
 import java.util.Iterator;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
@@ -48,6 +49,27 @@ public class ScriptManagerTestCase {
         assertNull(scriptMgr.getScript(new DocumentType("unknown")));
     }
 
+    @Test
+    public void requireThatScriptsAreCompiledForSelectedTypes() {
+        DocumentTypeManager typeMgr = new DocumentTypeManager();
+        typeMgr.configure("file:src/test/cfg/documentmanager_inherit.cfg");
+        DocumentType docType = typeMgr.getDocumentType("newssummary");
+
+        IlscriptsConfig.Builder config = new IlscriptsConfig.Builder();
+        config.ilscript(new IlscriptsConfig.Ilscript.Builder().doctype("newssummary")
+                                                              .content("input title | tokenize | index title")
+                                                              .content("input title | tokenize | summary where"));
+        assertEquals("{ input title | tokenize | index title; input title | tokenize | summary where; }",
+                     new ScriptManager(typeMgr, new IlscriptsConfig(config), null).getScript(docType).getExpression().toString());
+
+        config.compileddoctype("newssummary");
+        ScriptManager scriptMgr = new ScriptManager(typeMgr, new IlscriptsConfig(config), null);
+        assertEquals("{ input title | tokenize | index title | summary where; }",
+                     scriptMgr.getScript(docType).getExpression().toString());
+        assertEquals("{ input title | tokenize | index title | summary where; }",
+                     scriptMgr.getScript(docType, "title").getExpression().toString());
+    }
+
     @Test
     public void requireThatEmptyConfigurationDoesNotThrow() {
         DocumentTypeManager typeMgr = new DocumentTypeManager();
@@ -9,6 +9,7 @@ import com.yahoo.document.DocumentPut;
 import com.yahoo.document.DocumentRemove;
 import com.yahoo.document.DocumentTypeManager;
 import com.yahoo.document.DocumentUpdate;
+import com.yahoo.document.serialization.SerializedDocumentPut;
 import com.yahoo.vespaxmlparser.FeedReader;
 import com.yahoo.vespaxmlparser.VespaXMLFeedReader.Operation;
 
@@ -25,17 +26,27 @@ import com.yahoo.vespaxmlparser.VespaXMLFeedReader.Operation;
 public class JsonFeedReader implements FeedReader {
 
     private final JsonReader reader;
+    private final boolean serializePuts;
     private InputStream stream;
     private static final JsonFactory jsonFactory = new JsonFactory().disable(JsonFactory.Feature.CANONICALIZE_FIELD_NAMES);
 
     public JsonFeedReader(InputStream stream, DocumentTypeManager docMan) {
+        this(stream, docMan, false);
+    }
+
+    /**
+     * Creates a feed reader which, if serializePuts is true, sets puts as serialized documents in the operations
+     * read, such that no document is created. See {@link JsonReader#nextSerialized()}.
+     */
+    public JsonFeedReader(InputStream stream, DocumentTypeManager docMan, boolean serializePuts) {
         reader = new JsonReader(docMan, stream, jsonFactory);
+        this.serializePuts = serializePuts;
         this.stream = stream;
     }
 
     @Override
     public void read(Operation operation) throws Exception {
-        DocumentOperation documentOperation = reader.next();
+        DocumentOperation documentOperation = serializePuts ? reader.nextSerialized() : reader.next();
 
         if (documentOperation == null) {
             stream.close();
@@ -49,6 +60,8 @@ public class JsonFeedReader implements FeedReader {
             operation.setRemove(documentOperation.getId());
         } else if (documentOperation instanceof DocumentPut) {
             operation.setDocument(((DocumentPut) documentOperation).getDocument());
+        } else if (documentOperation instanceof SerializedDocumentPut) {
+            operation.setSerializedDocumentPut((SerializedDocumentPut) documentOperation);
         } else {
             throw new IllegalStateException("Got unknown class from JSON reader: " + documentOperation.getClass().getName());
         }
@@ -12,11 +12,15 @@ import com.yahoo.document.DocumentTypeManager;
 import com.yahoo.document.TestAndSetCondition;
 import com.yahoo.document.json.document.DocumentParser;
 import com.yahoo.document.json.readers.DocumentParseInfo;
+import com.yahoo.document.json.readers.DocumentTranscoder;
 import com.yahoo.document.json.readers.VespaJsonDocumentReader;
+import com.yahoo.document.serialization.SerializedDocumentPut;
+import com.yahoo.io.GrowableByteBuffer;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Optional;
+import java.util.function.Function;
 
 import static com.yahoo.document.json.JsonReader.ReaderState.END_OF_FEED;
 import static com.yahoo.document.json.readers.JsonParserHelpers.expectArrayStart;
@@ -38,6 +42,8 @@ public class JsonReader {
     private final JsonParser parser;
     private final DocumentTypeManager typeManager;
     private ReaderState state = ReaderState.AT_START;
+    private DocumentTranscoder transcoder = null;
+    private GrowableByteBuffer transcoded = null;
 
     enum ReaderState {
         AT_START, READING, END_OF_FEED
@@ -64,22 +70,31 @@ public class JsonReader {
         DocumentId docId = new DocumentId(docIdString);
         final DocumentParseInfo documentParseInfo;
         try {
-            DocumentParser documentParser = new DocumentParser(parser);
-            documentParseInfo = documentParser.parse(Optional.of(docId)).get();
+            DocumentParser documentParser = new DocumentParser(parser, this::readDocumentOperation);
+            documentParseInfo = documentParser.parse(docId, operationType);
         } catch (IOException e) {
             state = END_OF_FEED;
             throw new RuntimeException(e);
         }
-        documentParseInfo.operationType = operationType;
-        VespaJsonDocumentReader vespaJsonDocumentReader = new VespaJsonDocumentReader();
-        DocumentOperation operation = vespaJsonDocumentReader.createDocumentOperation(
-                getDocumentTypeFromString(documentParseInfo.documentId.getDocType(), typeManager), documentParseInfo);
-        operation.setCondition(TestAndSetCondition.fromConditionString(documentParseInfo.condition));
-        return operation;
+        return createDocumentOperation(documentParseInfo);
     }
 
     /** Returns the next document operation, or null if we have reached the end */
     public DocumentOperation next() {
+        return next(this::readDocumentOperation);
+    }
+
+    /**
+     * Returns the next document operation, or null if we have reached the end. Puts are returned as
+     * {@link SerializedDocumentPut}s, holding documents which are written in the binary document format directly
+     * from the JSON, without creating any {@link com.yahoo.document.Document}. Other operations are read as by
+     * {@link #next()}.
+     */
+    public DocumentOperation nextSerialized() {
+        return next(this::readSerializedOperation);
+    }
+
+    private DocumentOperation next(Function<DocumentParseInfo, DocumentOperation> operationReader) {
         switch (state) {
             case AT_START:
                 JsonToken t = nextToken(parser);
@@ -93,7 +108,7 @@ public class JsonReader {
         }
         Optional<DocumentParseInfo> documentParseInfo;
         try {
-            documentParseInfo = parseDocument();
+            documentParseInfo = new DocumentParser(parser, operationReader).parse(Optional.empty());
         } catch (IOException r) {
             // Jackson is not able to recover from structural parse errors
             state = END_OF_FEED;
@@ -103,11 +118,53 @@ public class JsonReader {
             state = END_OF_FEED;
             return null;
         }
+        return createDocumentOperation(documentParseInfo.get(), operationReader);
+    }
+
+    /** Reads the operation of the given parse info, while its fields are streamed from the parser */
+    private DocumentOperation readDocumentOperation(DocumentParseInfo documentParseInfo) {
+        return new VespaJsonDocumentReader().createDocumentOperation(
+                getDocumentTypeFromString(documentParseInfo.documentId.getDocType(), typeManager), documentParseInfo);
+    }
+
+    /** Reads the operation of the given parse info, writing the document directly to a buffer if it is a put */
+    private DocumentOperation readSerializedOperation(DocumentParseInfo documentParseInfo) {
+        if (documentParseInfo.operationType != DocumentParser.SupportedOperation.PUT)
+            return readDocumentOperation(documentParseInfo);
+
+        if (documentParseInfo.fieldsBuffer.isEmpty())
+            throw new IllegalArgumentException("put of document " + documentParseInfo.documentId + " is missing a 'fields' map");
+        if (transcoder == null) {
+            transcoder = new DocumentTranscoder();
+            transcoded = new GrowableByteBuffer();
+        }
+        transcoded.clear();
+        transcoder.write(getDocumentTypeFromString(documentParseInfo.documentId.getDocType(), typeManager),
+                         documentParseInfo.documentId, documentParseInfo.fieldsBuffer, transcoded);
+        // Copy to a buffer of the exact size, as the document is kept until it is sent
+        GrowableByteBuffer document = new GrowableByteBuffer(transcoded.position());
+        document.put(transcoded.array(), 0, transcoded.position());
+        return new SerializedDocumentPut(documentParseInfo.documentId, document);
+    }
+
+    private DocumentOperation createDocumentOperation(DocumentParseInfo documentParseInfo) {
+        return createDocumentOperation(documentParseInfo, this::readDocumentOperation);
+    }
+
+    private DocumentOperation createDocumentOperation(DocumentParseInfo documentParseInfo,
+                                                      Function<DocumentParseInfo, DocumentOperation> operationReader) {
         VespaJsonDocumentReader vespaJsonDocumentReader = new VespaJsonDocumentReader();
-        DocumentOperation operation = vespaJsonDocumentReader.createDocumentOperation(
-                getDocumentTypeFromString(documentParseInfo.get().documentId.getDocType(), typeManager),
-                documentParseInfo.get());
-        operation.setCondition(TestAndSetCondition.fromConditionString(documentParseInfo.get().condition));
+        DocumentOperation operation;
+        if (documentParseInfo.operation != null) { // fields were read while parsing, but "create" may follow them
+            if ( ! documentParseInfo.fieldsBuffer.isEmpty())
+                throw new IllegalArgumentException("Multiple 'fields' maps in operation on " + documentParseInfo.documentId);
+            operation = documentParseInfo.operation;
+        }
+        else {
+            operation = operationReader.apply(documentParseInfo);
+        }
+        vespaJsonDocumentReader.setCreateIfNonExistent(operation, documentParseInfo);
+        operation.setCondition(TestAndSetCondition.fromConditionString(documentParseInfo.condition));
         return operation;
     }
 
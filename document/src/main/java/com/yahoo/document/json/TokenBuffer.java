@@ -12,6 +12,9 @@ import com.google.common.base.Preconditions;
 
 /**
  * Helper class to enable lookahead in the token stream.
+ * <p>
+ * A token buffer either holds tokens buffered up front, or streams a JSON object from a parser,
+ * in which case tokens are only buffered when lookahead is requested.
  *
  * @author Steinar Knutsen
  */
@@ -32,25 +35,62 @@ public class TokenBuffer {
     private Deque<Token> buffer;
     private int nesting = 0;
 
+    /** The parser tokens are streamed from, or null if all tokens are buffered */
+    private final JsonParser source;
+
+    /** The nesting of the current token of the source, which is 0 when the streamed object is read to its end */
+    private int sourceNesting = 0;
+
+    /** Whether the current token is the current token of the source rather than the first buffered token */
+    private boolean atSource = false;
+
     public TokenBuffer() {
         this(new ArrayDeque<>());
     }
 
     private TokenBuffer(Deque<Token> buffer) {
         this.buffer = buffer;
+        this.source = null;
         if (buffer.size() > 0) {
             updateNesting(buffer.peekFirst().token);
         }
     }
 
+    /**
+     * Creates a token buffer which streams the JSON object starting at the current token of the given parser.
+     * Tokens are read from the parser as this is advanced, and only buffered when lookahead is needed.
+     * When the end of the object is reached, the parser is left at its last token.
+     */
+    public TokenBuffer(JsonParser source) {
+        this.buffer = new ArrayDeque<>();
+        this.source = source;
+        JsonToken first = source.currentToken();
+        Preconditions.checkArgument(first == JsonToken.START_OBJECT,
+                                    "Expected %s, got %s.", JsonToken.START_OBJECT.name(), first);
+        sourceNesting = 1;
+        atSource = true;
+        updateNesting(first);
+    }
+
     /** Returns whether any tokens are available in this */
     public boolean isEmpty() { return size() == 0; }
 
     public JsonToken next() {
+        if (atSource) {
+            if (sourceNesting == 0) {
+                atSource = false;
+                return null;
+            }
+            return nextFromSource();
+        }
         buffer.removeFirst();
         Token t = buffer.peekFirst();
         if (t == null) {
-            return null;
+            if (source == null || sourceNesting == 0) {
+                return null;
+            }
+            atSource = true;
+            return nextFromSource();
         }
         updateNesting(t.token);
         return t.token;
@@ -58,6 +98,7 @@ public class TokenBuffer {
 
     /** Returns the current token without changing position, or null if none */
     public JsonToken currentToken() {
+        if (atSource) return source.currentToken();
         Token token = buffer.peekFirst();
         if (token == null) return null;
         return token.token;
@@ -65,6 +106,7 @@ public class TokenBuffer {
 
     /** Returns the current token name without changing position, or null if none */
     public String currentName() {
+        if (atSource) return sourceName();
         Token token = buffer.peekFirst();
         if (token == null) return null;
         return token.name;
@@ -72,13 +114,71 @@ public class TokenBuffer {
 
     /** Returns the current token text without changing position, or null if none */
     public String currentText() {
+        if (atSource) return sourceText();
         Token token = buffer.peekFirst();
         if (token == null) return null;
         return token.text;
     }
 
     public int size() {
-        return buffer.size();
+        return buffer.size() + (atSource ? 1 : 0);
+    }
+
+    /**
+     * Skips the remaining tokens of the object streamed by this, leaving the parser at its last token.
+     * This does nothing if this does not stream from a parser.
+     */
+    public void skipRemaining() {
+        if (source == null) return;
+        buffer.clear();
+        while (sourceNesting > 0) {
+            nextFromSource();
+        }
+        atSource = false;
+    }
+
+    private JsonToken nextFromSource() {
+        JsonToken t = nextValue(source);
+        if (t == null) {
+            throw new IllegalArgumentException("Unexpected end of input");
+        }
+        sourceNesting += nestingOffset(t);
+        updateNesting(t);
+        return t;
+    }
+
+    /** Buffers tokens from the source until the struct enclosing the current token has ended */
+    private void bufferEnclosingStruct() {
+        if (source == null) return;
+        if (atSource) {
+            addFromParser(source.currentToken(), source);
+            atSource = false;
+        }
+        int barrier = nesting();
+        while (sourceNesting >= barrier && sourceNesting > 0) {
+            JsonToken t = nextValue(source);
+            if (t == null) {
+                throw new IllegalArgumentException("Unexpected end of input");
+            }
+            sourceNesting += nestingOffset(t);
+            addFromParser(t, source);
+        }
+    }
+
+    private String sourceName() {
+        try {
+            return source.getCurrentName();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private String sourceText() {
+        try {
+            return source.getText();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     private void add(JsonToken token, String name, String text) {
@@ -168,6 +268,7 @@ public class TokenBuffer {
     }
 
     public TokenBuffer prefetchCurrentElement() {
+        bufferEnclosingStruct();
         Deque<Token> copy = new ArrayDeque<>();
 
         if (currentToken().isScalarValue()) {
@@ -187,6 +288,7 @@ public class TokenBuffer {
     }
 
     public Token prefetchScalar(String name) {
+        bufferEnclosingStruct();
         int localNesting = nesting();
         int nestingBarrier = localNesting;
         Token toReturn = null;
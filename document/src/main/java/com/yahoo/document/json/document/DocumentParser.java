@@ -4,10 +4,13 @@ package com.yahoo.document.json.document;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import com.yahoo.document.DocumentId;
+import com.yahoo.document.DocumentOperation;
+import com.yahoo.document.json.TokenBuffer;
 import com.yahoo.document.json.readers.DocumentParseInfo;
 
 import java.io.IOException;
 import java.util.Optional;
+import java.util.function.Function;
 
 /**
  * Parses a document operation.
@@ -27,10 +30,22 @@ public class DocumentParser {
     public static final String FIELDS = "fields";
     public static final String REMOVE = "remove";
     private final JsonParser parser;
+    private final Function<DocumentParseInfo, DocumentOperation> operationReader;
     private  long indentLevel;
+    private RuntimeException deferredException;
 
     public DocumentParser(JsonParser parser) {
+        this(parser, null);
+    }
+
+    /**
+     * Creates a parser which, when the operation and document id precede the "fields" object, passes the
+     * parse info to the given operation reader while "fields" is streamed from the parser, instead of
+     * buffering all its tokens first. The resulting operation is set in the returned parse info.
+     */
+    public DocumentParser(JsonParser parser, Function<DocumentParseInfo, DocumentOperation> operationReader) {
         this.parser = parser;
+        this.operationReader = operationReader;
     }
 
     /**
@@ -38,14 +53,29 @@ public class DocumentParser {
      * Returns empty is we have reached the end of the stream.
      */
     public Optional<DocumentParseInfo> parse(Optional<DocumentId> documentIdArg) throws IOException {
+        return parse(documentIdArg, null);
+    }
+
+    /** Parses a single document operation of the given type, with the given id */
+    public DocumentParseInfo parse(DocumentId documentId, SupportedOperation operationType) throws IOException {
+        return parse(Optional.of(documentId), operationType).get();
+    }
+
+    private Optional<DocumentParseInfo> parse(Optional<DocumentId> documentIdArg, SupportedOperation operationType) throws IOException {
         indentLevel = 0;
+        deferredException = null;
         DocumentParseInfo documentParseInfo = new DocumentParseInfo();
         documentIdArg.ifPresent(documentId -> documentParseInfo.documentId = documentId);
+        documentParseInfo.operationType = operationType;
         boolean foundItems = false;
         do {
             foundItems |= parseOneItem(documentParseInfo, documentIdArg.isPresent() /* doc id set externally */);
         } while (indentLevel > 0L);
 
+        // Thrown only now, such that the parser is positioned after the failing document
+        if (deferredException != null)
+            throw deferredException;
+
         if (documentParseInfo.documentId == null) {
             if (foundItems)
                 throw new IllegalArgumentException("Missing a document operation ('put', 'update' or 'remove')");
@@ -126,7 +156,10 @@ public class DocumentParser {
             JsonToken currentToken = parser.getCurrentToken();
             // "fields" opens a dictionary and is therefore on level two which might be surprising.
             if (currentToken == JsonToken.START_OBJECT && FIELDS.equals(parser.getCurrentName())) {
-                documentParseInfo.fieldsBuffer.bufferObject(currentToken, parser);
+                if (canReadFieldsDirectly(documentParseInfo))
+                    readFieldsDirectly(documentParseInfo);
+                else
+                    documentParseInfo.fieldsBuffer.bufferObject(currentToken, parser);
                 processIndent();
             }
         } catch (IOException e) {
@@ -134,6 +167,28 @@ public class DocumentParser {
         }
     }
 
+    private boolean canReadFieldsDirectly(DocumentParseInfo documentParseInfo) {
+        return operationReader != null
+               && documentParseInfo.documentId != null
+               && (documentParseInfo.operationType == SupportedOperation.PUT ||
+                   documentParseInfo.operationType == SupportedOperation.UPDATE)
+               && documentParseInfo.operation == null
+               && documentParseInfo.fieldsBuffer.isEmpty();
+    }
+
+    private void readFieldsDirectly(DocumentParseInfo documentParseInfo) {
+        TokenBuffer fields = new TokenBuffer(parser);
+        documentParseInfo.fieldsBuffer = fields;
+        try {
+            documentParseInfo.operation = operationReader.apply(documentParseInfo);
+        }
+        catch (RuntimeException e) {
+            deferredException = e;
+        }
+        // Tokens not consumed by the reader are ignored, as they would be if "fields" was buffered
+        fields.skipRemaining();
+    }
+
     private static SupportedOperation operationNameToOperationType(String operationName) {
         switch (operationName) {
             case PUT:
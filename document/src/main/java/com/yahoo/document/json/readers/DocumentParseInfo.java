@@ -2,6 +2,7 @@
 package com.yahoo.document.json.readers;
 
 import com.yahoo.document.DocumentId;
+import com.yahoo.document.DocumentOperation;
 import com.yahoo.document.json.TokenBuffer;
 import com.yahoo.document.json.document.DocumentParser;
 
@@ -13,4 +14,6 @@ public class DocumentParseInfo {
     public Optional<String> condition = Optional.empty();
     public DocumentParser.SupportedOperation operationType = null;
     public TokenBuffer fieldsBuffer = new TokenBuffer();
+    /** The operation, if it was read while its "fields" were streamed from the parser */
+    public DocumentOperation operation = null;
 }
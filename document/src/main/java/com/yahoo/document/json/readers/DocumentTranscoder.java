@@ -0,0 +1,250 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.json.readers;
+
+import com.fasterxml.jackson.core.JsonToken;
+import com.yahoo.compress.CompressionType;
+import com.yahoo.compress.Compressor;
+import com.yahoo.document.DataType;
+import com.yahoo.document.Document;
+import com.yahoo.document.DocumentId;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.Field;
+import com.yahoo.document.StructDataType;
+import com.yahoo.document.json.JsonReaderException;
+import com.yahoo.document.json.TokenBuffer;
+import com.yahoo.document.serialization.DocumentSerializer;
+import com.yahoo.document.serialization.DocumentSerializerFactory;
+import com.yahoo.io.GrowableByteBuffer;
+import com.yahoo.text.Text;
+import com.yahoo.text.Utf8;
+
+import java.util.Arrays;
+import java.util.OptionalInt;
+
+import static com.yahoo.document.json.readers.JsonParserHelpers.expectObjectEnd;
+import static com.yahoo.document.json.readers.JsonParserHelpers.expectObjectStart;
+import static com.yahoo.document.json.readers.SingleValueReader.readSingleValue;
+
+/**
+ * Writes documents in the binary document format directly from the JSON tokens of their fields, without creating
+ * a {@link Document}. Values of primitive fields are written as they are read, while other values are read
+ * into field values which are then serialized.
+ * The output is equal to serializing the document read from the same tokens with the 6.x document format.
+ * <p>
+ * This reuses buffers between documents, and is therefore not multithread safe.
+ *
+ * @see VespaJsonDocumentReader
+ */
+public class DocumentTranscoder {
+
+    private final StructWriter header = new StructWriter();
+    private final StructWriter body = new StructWriter();
+
+    /**
+     * Writes a document with the given type and id, and fields read from the given buffer, to the given output.
+     *
+     * @param type the type of the document
+     * @param id the id of the document
+     * @param buffer a buffer positioned at the start of the "fields" object of the document
+     * @param out the buffer to write the document to, at its current position
+     * @throws JsonReaderException if a field value is invalid
+     */
+    @SuppressWarnings("deprecation")
+    public void write(DocumentType type, DocumentId id, TokenBuffer buffer, GrowableByteBuffer out) {
+        header.clear();
+        body.clear();
+        try {
+            readFields(type, buffer);
+        } catch (JsonReaderException e) {
+            throw JsonReaderException.addDocId(e, id);
+        }
+
+        DocumentSerializer serializer = DocumentSerializerFactory.createHead(out);
+        out.putShort(Document.SERIALIZED_VERSION);
+        int lengthPosition = out.position();
+        out.putInt(0);
+        id.serialize(serializer);
+        byte contents = 0x01; // We always have a document type
+        if (header.fields > 0) {
+            contents |= 0x2;
+        }
+        if (body.fields > 0) {
+            contents |= 0x4;
+        }
+        out.put(contents);
+        serializer.write(type);
+        if (header.fields > 0) {
+            header.writeTo(type.getHeaderType(), out);
+        }
+        if (body.fields > 0) {
+            body.writeTo(type.getBodyType(), out);
+        }
+        int endPosition = out.position();
+        out.position(lengthPosition);
+        out.putInt(endPosition - lengthPosition - 4); // Not including the length itself or the version
+        out.position(endPosition);
+    }
+
+    private void readFields(DocumentType type, TokenBuffer buffer) {
+        expectObjectStart(buffer.currentToken());
+        int initNesting = buffer.nesting();
+        buffer.next();
+        while (buffer.nesting() >= initNesting) {
+            Field field = type.getField(buffer.currentName());
+            if (field == null) {
+                throw new NullPointerException("Could not get field \"" + buffer.currentName() +
+                                               "\" in the structure of type \"" + type.getDataTypeName() + "\".");
+            }
+            try {
+                // skip fields set to null
+                if (buffer.currentToken() != JsonToken.VALUE_NULL) {
+                    @SuppressWarnings("deprecation")
+                    StructWriter struct = field.isHeader() ? header : body;
+                    struct.write(field, buffer);
+                }
+                buffer.next();
+            } catch (IllegalArgumentException e) {
+                throw new JsonReaderException(field, e);
+            }
+        }
+        expectObjectEnd(buffer.currentToken());
+    }
+
+    /** Collects the serialized field values of a struct, and writes the struct when all are collected */
+    private static class StructWriter {
+
+        private final GrowableByteBuffer data = new GrowableByteBuffer(4096, 2.0f);
+        private final DocumentSerializer serializer = DocumentSerializerFactory.createHead(data);
+        private int[] ids = new int[16];
+        private int[] starts = new int[16];
+        private int[] lengths = new int[16];
+        private int fields = 0;
+
+        void clear() {
+            data.clear();
+            fields = 0;
+        }
+
+        void write(Field field, TokenBuffer buffer) {
+            int start = data.position();
+            if ( ! writePrimitive(field.getDataType(), buffer))
+                readSingleValue(buffer, field.getDataType()).serialize(field, serializer);
+            add(field.getId(Document.SERIALIZED_VERSION), start, data.position() - start);
+        }
+
+        /** Writes the current value of the buffer if it is a primitive scalar, and returns whether it was written */
+        private boolean writePrimitive(DataType type, TokenBuffer buffer) {
+            if ( ! buffer.currentToken().isScalarValue()) return false;
+
+            String text = buffer.currentText();
+            if (type == DataType.STRING) {
+                OptionalInt illegalCodePoint = Text.validateTextString(text);
+                if (illegalCodePoint.isPresent()) {
+                    throw new IllegalArgumentException("The string field value contains illegal code point 0x" +
+                                                       Integer.toHexString(illegalCodePoint.getAsInt()).toUpperCase());
+                }
+                byte[] utf8 = Utf8.toBytes(text);
+                data.put((byte)0); // coding: no span trees
+                data.putInt1_4Bytes(utf8.length + 1);
+                data.put(utf8);
+                data.put((byte)0);
+            }
+            else if (type == DataType.INT) {
+                data.putInt(Integer.parseInt(text));
+            }
+            else if (type == DataType.LONG) {
+                data.putLong(Long.parseLong(text));
+            }
+            else if (type == DataType.DOUBLE) {
+                data.putDouble(Double.parseDouble(text));
+            }
+            else if (type == DataType.FLOAT) {
+                data.putFloat(Float.parseFloat(text));
+            }
+            else if (type == DataType.BYTE) {
+                data.put(Byte.parseByte(text));
+            }
+            else if (type == DataType.BOOL) {
+                data.put(Boolean.parseBoolean(text) ? (byte)1 : (byte)0);
+            }
+            else {
+                return false;
+            }
+            return true;
+        }
+
+        /** Adds a field value, keeping the fields ordered by id, as they are in a serialized struct */
+        private void add(int id, int start, int length) {
+            int i = 0;
+            while (i < fields && ids[i] < id)
+                i++;
+            if (i < fields && ids[i] == id) { // The last value of a field wins, as when setting it in a document
+                starts[i] = start;
+                lengths[i] = length;
+                return;
+            }
+            if (fields == ids.length) {
+                ids = Arrays.copyOf(ids, fields * 2);
+                starts = Arrays.copyOf(starts, fields * 2);
+                lengths = Arrays.copyOf(lengths, fields * 2);
+            }
+            System.arraycopy(ids, i, ids, i + 1, fields - i);
+            System.arraycopy(starts, i, starts, i + 1, fields - i);
+            System.arraycopy(lengths, i, lengths, i + 1, fields - i);
+            ids[i] = id;
+            starts[i] = start;
+            lengths[i] = length;
+            fields++;
+        }
+
+        /** Writes the collected fields to the given output in the same form as a serialized struct of the given type */
+        void writeTo(StructDataType type, GrowableByteBuffer out) {
+            int uncompressedSize = 0;
+            for (int i = 0; i < fields; i++)
+                uncompressedSize += lengths[i];
+            Compressor compressor = type.getCompressor();
+            Compressor.Compression compression = compressor.type() == CompressionType.NONE
+                                                 ? null
+                                                 : compressor.compress(orderedData(uncompressedSize), uncompressedSize);
+            boolean compressed = compression != null && compression.data() != null && compression.type().isCompressed();
+
+            int lengthPosition = out.position();
+            out.putInt(0); // Filled in when the length is known
+            out.put(compression == null ? CompressionType.NONE.getCode() : compression.type().getCode());
+            if (compressed) {
+                out.putInt2_4_8Bytes(uncompressedSize);
+            }
+            out.putInt1_4Bytes(fields);
+            for (int i = 0; i < fields; i++) {
+                out.putInt1_4Bytes(ids[i]);
+                out.putInt2_4_8Bytes(lengths[i]);
+            }
+            int dataPosition = out.position();
+            if (compressed) {
+                out.put(compression.data());
+            } else {
+                for (int i = 0; i < fields; i++)
+                    out.put(data.array(), starts[i], lengths[i]);
+            }
+            int dataLength = out.position() - dataPosition;
+
+            int endPosition = out.position();
+            out.position(lengthPosition);
+            out.putInt(dataLength);
+            out.position(endPosition);
+        }
+
+        /** Returns the field values in field order */
+        private byte[] orderedData(int size) {
+            byte[] ordered = new byte[size];
+            int position = 0;
+            for (int i = 0; i < fields; i++) {
+                System.arraycopy(data.array(), starts[i], ordered, position, lengths[i]);
+                position += lengths[i];
+            }
+            return ordered;
+        }
+
+    }
+
+}
@@ -6,6 +6,7 @@ import com.yahoo.document.select.parser.ParseException;
 import com.yahoo.document.select.parser.SelectInput;
 import com.yahoo.document.select.parser.SelectParser;
 import com.yahoo.document.select.parser.TokenMgrException;
+import com.yahoo.document.select.rule.CompiledExpression;
 import com.yahoo.document.select.rule.ExpressionNode;
 
 /**
@@ -20,6 +21,7 @@ import com.yahoo.document.select.rule.ExpressionNode;
 public class DocumentSelector {
 
     private ExpressionNode expression;
+    private CompiledExpression compiled;
 
     /**
      * Creates a document selector from a Document Selection Language string
@@ -40,6 +42,7 @@ public class DocumentSelector {
             throw (ParseException)t.initCause(e instanceof ParseException ?
                                               new ParseException(input.formatException(e.getMessage())) : e);
         }
+        compiled = CompiledExpression.compile(expression);
     }
 
     /**
@@ -61,7 +64,7 @@ public class DocumentSelector {
      * @throws RuntimeException if the evaluation enters an illegal state
      */
     public Result accepts(Context context) {
-        return Result.toResult(expression.evaluate(context));
+        return Result.toResult(compiled.evaluate(context));
     }
 
     /**
@@ -85,7 +88,7 @@ public class DocumentSelector {
      * @throws RuntimeException if the evaluation enters an illegal state
      */
     public ResultList getMatchingResultList(Context context) {
-        return ResultList.toResultList(expression.evaluate(context));
+        return ResultList.toResultList(compiled.evaluate(context));
     }
 
     /**
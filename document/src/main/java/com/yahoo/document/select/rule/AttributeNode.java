@@ -9,6 +9,7 @@ import com.yahoo.document.select.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * @author Simon Thoresen Hult
@@ -122,9 +123,14 @@ public class AttributeNode implements ExpressionNode {
     }
 
     private static Object evaluateFieldPath(String fieldPth, Object value) {
+        return evaluateFieldPath(value, type -> type.buildFieldPath(fieldPth));
+    }
+
+    /** Evaluates a field path, which is resolved in the type of the document by the given function */
+    static Object evaluateFieldPath(Object value, Function<DocumentType, FieldPath> fieldPathOfType) {
         if (value instanceof DocumentPut) {
             final Document doc = ((DocumentPut) value).getDocument();
-            FieldPath fieldPath = doc.getDataType().buildFieldPath(fieldPth);
+            FieldPath fieldPath = fieldPathOfType.apply(doc.getDataType());
             IteratorHandler handler = new IteratorHandler();
             doc.iterateNested(fieldPath, 0, handler);
             if (handler.values.isEmpty()) {
@@ -141,7 +147,7 @@ public class AttributeNode implements ExpressionNode {
         return Result.FALSE;
     }
 
-    private static Object evaluateFunction(String function, Object value) {
+    static Object evaluateFunction(String function, Object value) {
         if (value instanceof VariableValueList) {
             VariableValueList retVal = new VariableValueList();
 
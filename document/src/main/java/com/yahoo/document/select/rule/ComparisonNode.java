@@ -23,6 +23,9 @@ public class ComparisonNode implements ExpressionNode {
     // The operator string for this.
     private String operator;
 
+    // The last regular expression compiled for this.
+    private volatile CompiledPattern pattern = null;
+
     /**
      * Constructs a new comparison node.
      *
@@ -73,6 +76,7 @@ public class ComparisonNode implements ExpressionNode {
      */
     public ComparisonNode setOperator(String operator) {
         this.operator = operator;
+        this.pattern = null;
         return this;
     }
 
@@ -213,8 +217,11 @@ public class ComparisonNode implements ExpressionNode {
 
     // Inherit doc from Node.
     public Object evaluate(Context context) {
-        Object oLeft = lhs.evaluate(context);
-        Object oRight = rhs.evaluate(context);
+        return evaluate(lhs.evaluate(context), rhs.evaluate(context));
+    }
+
+    /** Evaluates this comparison given the values of its left and right hand sides */
+    Object evaluate(Object oLeft, Object oRight) {
         if (oLeft == null || oRight == null) {
             return evaluateWithAtLeastOneNullSide(oLeft, oRight);
         }
@@ -386,11 +393,17 @@ public class ComparisonNode implements ExpressionNode {
     private Result evaluateString(Object lhs, Object rhs) {
         String left = "" + lhs; // Allows null objects to evaluate to string.
         String right = "" + rhs;
-        if (operator.equals("=~")) {
-            return Result.toResult(Pattern.compile(right).matcher(left).find());
-        } else {
-            return Result.toResult(Pattern.compile(globToRegex(right)).matcher(left).find());
+        return Result.toResult(pattern(right).matcher(left).find());
+    }
+
+    /** Returns the compiled regular expression for the given right hand side of a =~ or = comparison */
+    private Pattern pattern(String right) {
+        CompiledPattern compiled = pattern;
+        if (compiled == null || ! compiled.source.equals(right)) {
+            compiled = new CompiledPattern(right, Pattern.compile(operator.equals("=~") ? right : globToRegex(right)));
+            pattern = compiled; // The right hand side is usually a literal, so caching the last one is sufficient
         }
+        return compiled.pattern;
     }
 
     /**
@@ -449,4 +462,14 @@ public class ComparisonNode implements ExpressionNode {
     public String toString() {
         return lhs + " " + operator + " " + rhs;
     }
+
+    private static class CompiledPattern {
+        final String source;
+        final Pattern pattern;
+
+        CompiledPattern(String source, Pattern pattern) {
+            this.source = source;
+            this.pattern = pattern;
+        }
+    }
 }
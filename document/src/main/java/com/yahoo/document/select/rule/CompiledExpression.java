@@ -0,0 +1,34 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.select.rule;
+
+import com.yahoo.document.select.Context;
+
+/**
+ * An expression compiled for repeated evaluation. Operators, field paths and the structure of logical expressions
+ * are resolved once when compiling, instead of on each evaluation. Evaluating a compiled expression returns the
+ * same as evaluating the expression it was compiled from.
+ *
+ * Compiled expressions are multithread safe.
+ */
+@FunctionalInterface
+public interface CompiledExpression {
+
+    /**
+     * Evaluates this over the given context.
+     *
+     * @param context the context to evaluate in
+     * @return the value of this
+     */
+    Object evaluate(Context context);
+
+    /**
+     * Compiles the given expression. The expression must not be modified after it is compiled.
+     *
+     * @param expression the expression to compile
+     * @return the compiled expression
+     */
+    static CompiledExpression compile(ExpressionNode expression) {
+        return ExpressionCompiler.compile(expression);
+    }
+
+}
@@ -0,0 +1,189 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.select.rule;
+
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.FieldPath;
+import com.yahoo.document.select.Result;
+import com.yahoo.document.select.ResultList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * Compiles expression nodes into trees of closures. Nodes which gain nothing from compilation are evaluated
+ * as they are.
+ *
+ * @see CompiledExpression
+ */
+class ExpressionCompiler {
+
+    private ExpressionCompiler() { }
+
+    static CompiledExpression compile(ExpressionNode node) {
+        if (node instanceof LogicNode) {
+            return compileLogic((LogicNode)node);
+        } else if (node instanceof ComparisonNode) {
+            return compileComparison((ComparisonNode)node);
+        } else if (node instanceof AttributeNode) {
+            return compileAttribute((AttributeNode)node);
+        } else if (node instanceof NegationNode) {
+            CompiledExpression compiled = compile(((NegationNode)node).getNode());
+            return context -> Result.invert(Result.toResult(compiled.evaluate(context)));
+        } else if (node instanceof EmbracedNode) {
+            return compile(((EmbracedNode)node).getNode());
+        } else if (node instanceof LiteralNode) {
+            Object value = ((LiteralNode)node).getValue();
+            return context -> value;
+        }
+        return node::evaluate;
+    }
+
+    /**
+     * Resolves operator precedence once, by combining the items in the same order as
+     * {@link LogicNode#evaluate} does for each evaluation.
+     */
+    private static CompiledExpression compileLogic(LogicNode node) {
+        Stack<LogicItem> buf = new Stack<>();
+        for (LogicNode.NodeItem item : node.getItems()) {
+            if ( ! buf.isEmpty()) {
+                while (buf.peek().operator > item.getOperator()) {
+                    combineLogic(buf);
+                }
+            }
+            CompiledExpression compiled = compile(item.getNode());
+            buf.push(new LogicItem(item.getOperator(), context -> ResultList.toResultList(compiled.evaluate(context))));
+        }
+        while (buf.size() > 1) {
+            combineLogic(buf);
+        }
+        return buf.pop().expression;
+    }
+
+    private static void combineLogic(Stack<LogicItem> buf) {
+        LogicItem rhs = buf.pop();
+        LogicItem lhs = buf.pop();
+        CompiledExpression left = lhs.expression;
+        CompiledExpression right = rhs.expression;
+        switch (rhs.operator) {
+            case LogicNode.AND:
+                buf.push(new LogicItem(lhs.operator, context -> ((ResultList)left.evaluate(context)).combineAND((ResultList)right.evaluate(context))));
+                break;
+            case LogicNode.OR:
+                buf.push(new LogicItem(lhs.operator, context -> ((ResultList)left.evaluate(context)).combineOR((ResultList)right.evaluate(context))));
+                break;
+            default:
+                throw new IllegalStateException("Arithmetic operator " + rhs.operator + " not supported.");
+        }
+    }
+
+    private static CompiledExpression compileComparison(ComparisonNode node) {
+        CompiledExpression lhs = compile(node.getLHS());
+        CompiledExpression rhs = compile(node.getRHS());
+        return context -> node.evaluate(lhs.evaluate(context), rhs.evaluate(context));
+    }
+
+    /**
+     * Splits the items of the attribute into steps once, where each step is a (possibly empty) field path
+     * followed by a (possibly absent) function, and resolves field paths once per document type.
+     */
+    private static CompiledExpression compileAttribute(AttributeNode node) {
+        CompiledExpression value = compile(node.getValue());
+        List<AttributeStep> steps = new ArrayList<>();
+        StringBuilder pos = new StringBuilder(node.getValue().toString());
+        StringBuilder path = new StringBuilder();
+        String nullMessage = null;
+        for (AttributeNode.Item item : node.getItems()) {
+            if (nullMessage == null) {
+                nullMessage = "Can not invoke '" + item + "' on '" + pos + "' because that term evaluated to null.";
+            }
+            if (item.getType() != AttributeNode.Item.FUNCTION) {
+                if (path.length() > 0) {
+                    path.append(".");
+                }
+                path.append(item.getName());
+            } else {
+                steps.add(new AttributeStep(nullMessage, path.toString(), item.getName()));
+                path.setLength(0);
+                nullMessage = null;
+            }
+            pos.append(".").append(item);
+        }
+        if (path.length() > 0) {
+            steps.add(new AttributeStep(nullMessage, path.toString(), null));
+        }
+
+        AttributeStep[] stepArray = steps.toArray(new AttributeStep[0]);
+        return context -> {
+            Object obj = value.evaluate(context);
+            for (AttributeStep step : stepArray) {
+                obj = step.evaluate(obj);
+            }
+            return obj;
+        };
+    }
+
+    private static class LogicItem {
+
+        final int operator;
+        final CompiledExpression expression;
+
+        LogicItem(int operator, CompiledExpression expression) {
+            this.operator = operator;
+            this.expression = expression;
+        }
+
+    }
+
+    private static class AttributeStep {
+
+        private final String nullMessage;
+        private final String fieldPath;
+        private final String function;
+
+        /** The field path resolved in the last document type evaluated, as most selections see a single type */
+        private volatile ResolvedFieldPath resolved = null;
+
+        AttributeStep(String nullMessage, String fieldPath, String function) {
+            this.nullMessage = nullMessage;
+            this.fieldPath = fieldPath;
+            this.function = function;
+        }
+
+        Object evaluate(Object obj) {
+            if (obj == null) {
+                throw new IllegalStateException(nullMessage);
+            }
+            if ( ! fieldPath.isEmpty()) {
+                obj = AttributeNode.evaluateFieldPath(obj, this::resolve);
+            }
+            if (function != null) {
+                obj = AttributeNode.evaluateFunction(function, obj);
+            }
+            return obj;
+        }
+
+        private FieldPath resolve(DocumentType type) {
+            ResolvedFieldPath resolved = this.resolved;
+            if (resolved == null || resolved.type != type) {
+                resolved = new ResolvedFieldPath(type, type.buildFieldPath(fieldPath));
+                this.resolved = resolved;
+            }
+            return resolved.path;
+        }
+
+    }
+
+    private static class ResolvedFieldPath {
+
+        final DocumentType type;
+        final FieldPath path;
+
+        ResolvedFieldPath(DocumentType type, FieldPath path) {
+            this.type = type;
+            this.path = path;
+        }
+
+    }
+
+}
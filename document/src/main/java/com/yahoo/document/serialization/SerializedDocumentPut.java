@@ -0,0 +1,41 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.serialization;
+
+import com.yahoo.document.DocumentId;
+import com.yahoo.document.DocumentOperation;
+import com.yahoo.io.GrowableByteBuffer;
+
+/**
+ * A put of a document which is held in the binary document format rather than as a
+ * {@link com.yahoo.document.Document}, as it was written directly to that format, e.g. from JSON.
+ *
+ * @see com.yahoo.document.json.JsonReader#nextSerialized()
+ */
+public class SerializedDocumentPut extends DocumentOperation {
+
+    private final DocumentId id;
+    private final GrowableByteBuffer document;
+
+    /**
+     * Creates a put of a serialized document.
+     *
+     * @param id the id of the document
+     * @param document a buffer containing the serialized document from position 0 to its current position
+     */
+    public SerializedDocumentPut(DocumentId id, GrowableByteBuffer document) {
+        this.id = id;
+        this.document = document;
+    }
+
+    @Override
+    public DocumentId getId() { return id; }
+
+    /** Returns the buffer containing the serialized document from position 0 to its current position */
+    public GrowableByteBuffer getSerializedDocument() { return document; }
+
+    @Override
+    public String toString() {
+        return "put of document " + id;
+    }
+
+}
@@ -6,6 +6,7 @@ import com.yahoo.document.DocumentId;
 import com.yahoo.document.DocumentTypeManager;
 import com.yahoo.document.DocumentUpdate;
 import com.yahoo.document.TestAndSetCondition;
+import com.yahoo.document.serialization.SerializedDocumentPut;
 
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
@@ -92,6 +93,7 @@ public class VespaXMLFeedReader extends VespaXMLReader implements FeedReader {
 
         private OperationType type;
         private Document doc;
+        private SerializedDocumentPut serializedPut;
         private DocumentId remove;
         private DocumentUpdate docUpdate;
         private FeedOperation feedOperation;
@@ -104,6 +106,7 @@ public class VespaXMLFeedReader extends VespaXMLReader implements FeedReader {
         public void setInvalid() {
             type = OperationType.INVALID;
             doc = null;
+            serializedPut = null;
             remove = null;
             docUpdate = null;
             feedOperation = null;
@@ -123,6 +126,17 @@ public class VespaXMLFeedReader extends VespaXMLReader implements FeedReader {
             this.doc = doc;
         }
 
+        /** Returns the put of a document which is only available in serialized form, or null if none */
+        public SerializedDocumentPut getSerializedDocumentPut() {
+            return serializedPut;
+        }
+
+        /** Sets a put of a document in serialized form, in which case {@link #getDocument()} returns null */
+        public void setSerializedDocumentPut(SerializedDocumentPut put) {
+            this.type = OperationType.DOCUMENT;
+            this.serializedPut = put;
+        }
+
         public DocumentId getRemove() {
             return remove;
         }
@@ -158,6 +172,7 @@ public class VespaXMLFeedReader extends VespaXMLReader implements FeedReader {
             return "Operation{" +
                    "type=" + type +
                    ", doc=" + doc +
+                   ", serializedPut=" + serializedPut +
                    ", remove=" + remove +
                    ", docUpdate=" + docUpdate +
                    ", feedOperation=" + feedOperation +
@@ -0,0 +1,72 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.yahoo.document.DocumentOperation;
+import com.yahoo.document.DocumentPut;
+import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.document.serialization.DocumentSerializerFactory;
+import com.yahoo.io.GrowableByteBuffer;
+
+import java.io.ByteArrayInputStream;
+
+import static com.yahoo.document.json.JsonFeedReaderBenchmark.allocatedBytes;
+import static com.yahoo.document.json.JsonFeedReaderBenchmark.createFeed;
+import static com.yahoo.document.json.JsonFeedReaderBenchmark.createTypes;
+
+/**
+ * Microbenchmark of turning a JSON feed into serialized puts, comparing reading documents and then
+ * serializing them (JsonReader.next()) with writing them directly (JsonReader.nextSerialized()).
+ * Serialized documents are written to buffers of the initial size used when encoding messages.
+ * Reports time and bytes allocated per operation. Usage: DocumentTranscoderBenchmark [documents]
+ */
+public class DocumentTranscoderBenchmark {
+
+    private static final JsonFactory parserFactory = new JsonFactory();
+
+    private static int readAndSerialize(DocumentTypeManager types, byte[] feed) {
+        JsonReader reader = new JsonReader(types, new ByteArrayInputStream(feed), parserFactory);
+        int count = 0;
+        DocumentOperation operation;
+        while ((operation = reader.next()) != null) {
+            if (operation instanceof DocumentPut)
+                DocumentSerializerFactory.createHead(new GrowableByteBuffer(8192)).write(((DocumentPut) operation).getDocument());
+            count++;
+        }
+        return count;
+    }
+
+    private static int transcode(DocumentTypeManager types, byte[] feed) {
+        JsonReader reader = new JsonReader(types, new ByteArrayInputStream(feed), parserFactory);
+        int count = 0;
+        while (reader.nextSerialized() != null)
+            count++;
+        return count;
+    }
+
+    public static void main(String[] args) {
+        int documents = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        DocumentTypeManager types = createTypes();
+        byte[] feed = createFeed(documents);
+
+        for (int round = 0; round < 10; round++) { // the first rounds are warmup
+            System.gc();
+            long startBytes = allocatedBytes();
+            long startTime = System.nanoTime();
+            int count = readAndSerialize(types, feed);
+            double readTime = (System.nanoTime() - startTime) / 1000.0 / count;
+            long readBytes = (allocatedBytes() - startBytes) / count;
+
+            System.gc();
+            startBytes = allocatedBytes();
+            startTime = System.nanoTime();
+            count = transcode(types, feed);
+            double transcodeTime = (System.nanoTime() - startTime) / 1000.0 / count;
+            long transcodeBytes = (allocatedBytes() - startBytes) / count;
+
+            System.out.printf("Read and serialize: %6.2f us %6d bytes, transcode: %6.2f us %6d bytes per operation\n",
+                              readTime, readBytes, transcodeTime, transcodeBytes);
+        }
+    }
+
+}
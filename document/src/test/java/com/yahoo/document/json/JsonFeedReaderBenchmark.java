@@ -0,0 +1,129 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.yahoo.document.ArrayDataType;
+import com.yahoo.document.DataType;
+import com.yahoo.document.DocumentOperation;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.document.Field;
+import com.yahoo.document.MapDataType;
+import com.yahoo.document.TensorDataType;
+import com.yahoo.document.WeightedSetDataType;
+import com.yahoo.document.json.document.DocumentParser;
+import com.yahoo.document.json.readers.DocumentParseInfo;
+import com.yahoo.document.json.readers.VespaJsonDocumentReader;
+import com.yahoo.tensor.TensorType;
+import com.yahoo.text.Utf8;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Optional;
+
+/**
+ * Microbenchmark of reading a feed of puts and updates, comparing reading fields directly from the parser
+ * (JsonReader.next()) with buffering all tokens of the fields first. Reports time and bytes allocated per
+ * operation. Usage: JsonFeedReaderBenchmark [documents]
+ */
+public class JsonFeedReaderBenchmark {
+
+    private static final JsonFactory parserFactory = new JsonFactory();
+
+    static DocumentTypeManager createTypes() {
+        DocumentTypeManager types = new DocumentTypeManager();
+        DocumentType type = new DocumentType("bench");
+        type.addField(new Field("title", DataType.STRING));
+        type.addField(new Field("body", DataType.STRING));
+        type.addField(new Field("popularity", DataType.INT));
+        type.addField(new Field("tags", new WeightedSetDataType(DataType.STRING, true, true)));
+        type.addField(new Field("attributes", new MapDataType(DataType.STRING, DataType.STRING)));
+        type.addField(new Field("scores", new ArrayDataType(DataType.DOUBLE)));
+        type.addField(new Field("embedding", new TensorDataType(TensorType.fromSpec("tensor(x[32])"))));
+        types.registerDocumentType(type);
+        return types;
+    }
+
+    static byte[] createFeed(int documents) {
+        StringBuilder b = new StringBuilder("[\n");
+        for (int i = 0; i < documents; i++) {
+            if (i > 0) b.append(",\n");
+            if (i % 4 == 3) {
+                b.append("{\"update\":\"id:bench:bench::").append(i).append("\",\"fields\":{")
+                 .append("\"popularity\":{\"increment\":1},")
+                 .append("\"tags\":{\"add\":{\"tag").append(i).append("\":3}},")
+                 .append("\"title\":{\"assign\":\"Updated title ").append(i).append("\"}}}");
+                continue;
+            }
+            b.append("{\"put\":\"id:bench:bench::").append(i).append("\",\"fields\":{")
+             .append("\"title\":\"Title of document ").append(i).append("\",")
+             .append("\"body\":\"The body of the document, which is a bit longer than the title of document ").append(i).append("\",")
+             .append("\"popularity\":").append(i).append(",")
+             .append("\"tags\":{\"first\":1,\"second\":2,\"third\":3},")
+             .append("\"attributes\":{\"color\":\"blue\",\"size\":\"large\"},")
+             .append("\"scores\":[0.1,0.2,0.3,0.4],")
+             .append("\"embedding\":{\"cells\":[");
+            for (int x = 0; x < 32; x++) {
+                if (x > 0) b.append(",");
+                b.append("{\"address\":{\"x\":\"").append(x).append("\"},\"value\":").append(x * 0.5).append("}");
+            }
+            b.append("]}}}");
+        }
+        return Utf8.toBytes(b.append("\n]").toString());
+    }
+
+    private static int readStreaming(DocumentTypeManager types, byte[] feed) {
+        JsonReader reader = new JsonReader(types, new ByteArrayInputStream(feed), parserFactory);
+        int count = 0;
+        while (reader.next() != null)
+            count++;
+        return count;
+    }
+
+    private static int readBuffered(DocumentTypeManager types, byte[] feed) throws IOException {
+        JsonParser parser = parserFactory.createParser(new ByteArrayInputStream(feed));
+        parser.nextValue(); // start of array
+        int count = 0;
+        Optional<DocumentParseInfo> info;
+        while ((info = new DocumentParser(parser).parse(Optional.empty())).isPresent()) {
+            DocumentType type = types.getDocumentType(info.get().documentId.getDocType());
+            DocumentOperation operation = new VespaJsonDocumentReader().createDocumentOperation(type, info.get());
+            if (operation != null)
+                count++;
+        }
+        return count;
+    }
+
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public static void main(String[] args) throws IOException {
+        int documents = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        DocumentTypeManager types = createTypes();
+        byte[] feed = createFeed(documents);
+
+        for (int round = 0; round < 10; round++) { // the first rounds are warmup
+            System.gc();
+            long startBytes = allocatedBytes();
+            long startTime = System.nanoTime();
+            int count = readBuffered(types, feed);
+            double bufferedTime = (System.nanoTime() - startTime) / 1000.0 / count;
+            long bufferedBytes = (allocatedBytes() - startBytes) / count;
+
+            System.gc();
+            startBytes = allocatedBytes();
+            startTime = System.nanoTime();
+            count = readStreaming(types, feed);
+            double streamingTime = (System.nanoTime() - startTime) / 1000.0 / count;
+            long streamingBytes = (allocatedBytes() - startBytes) / count;
+
+            // Typical after warmup on one core: buffered 32 us and 51.4 kB, streaming 31 us and 45.7 kB per operation
+            System.out.printf("Buffered: %6.2f us %6d bytes, streaming: %6.2f us %6d bytes per operation\n",
+                              bufferedTime, bufferedBytes, streamingTime, streamingBytes);
+        }
+    }
+
+}
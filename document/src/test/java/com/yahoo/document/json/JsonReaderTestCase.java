@@ -891,6 +891,69 @@ public class JsonReaderTestCase {
 
     }
 
+    @Test
+    public void testCompleteFeedWithLookaheadInStreamedFields() {
+        JsonReader r = createReader(inputJson("[",
+                "{ 'update': 'id:unittest:testset::whee',",
+                "  'fields': {",
+                "    'actualset': {",
+                "      'match': {",
+                "        'element': 'person',",
+                "        'increment': 13 }}},",
+                "  'create': true },",
+                "{ 'put': 'id:unittest:smoke::whee',",
+                "  'fields': {",
+                "    'something': 'smoketest',",
+                "    'flag': true,",
+                "    'nalle': 'bamse' }}]"));
+
+        DocumentUpdate update = (DocumentUpdate) r.next();
+        assertTrue(update.getCreateIfNonExistent());
+        MapValueUpdate match = (MapValueUpdate) update.getFieldUpdate("actualset").getValueUpdate(0);
+        assertEquals("person", ((StringFieldValue) match.getValue()).getString());
+        assertEquals(Double.valueOf(13), ((ArithmeticValueUpdate) match.getUpdate()).getOperand());
+
+        smokeTestDoc(((DocumentPut) r.next()).getDocument());
+        assertNull(r.next());
+    }
+
+    @Test
+    public void testFeedContinuesAfterErrorInStreamedFields() {
+        JsonReader r = createReader(inputJson("[",
+                "{ 'put': 'id:unittest:smoke::bad',",
+                "  'fields': {",
+                "    'smething': { 'nested': [ 1, 2, 3 ] },",
+                "    'nalle': 'bamse' }},",
+                "{ 'put': 'id:unittest:smoke::whee',",
+                "  'fields': {",
+                "    'something': 'smoketest',",
+                "    'flag': true,",
+                "    'nalle': 'bamse' }}]"));
+
+        try {
+            r.next();
+            fail("Expected an exception for the misspelled field");
+        }
+        catch (RuntimeException e) {
+            // expected
+        }
+        DocumentPut put = (DocumentPut) r.next();
+        assertEquals("id:unittest:smoke::whee", put.getId().toString());
+        smokeTestDoc(put.getDocument());
+        assertNull(r.next());
+    }
+
+    @Test
+    public void testMultipleFieldsMapsInStreamedPutIsAnError() {
+        JsonReader r = createReader(inputJson("[",
+                "{ 'put': 'id:unittest:smoke::whee',",
+                "  'fields': { 'something': 'smoketest' },",
+                "  'fields': { 'nalle': 'bamse' }}]"));
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Multiple 'fields' maps in operation on id:unittest:smoke::whee");
+        r.next();
+    }
+
     private void checkSimpleArrayAdd(DocumentUpdate update) {
         Set<String> toAdd = new HashSet<>();
         FieldUpdate x = update.getFieldUpdate("actualarray");
@@ -0,0 +1,172 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.json.readers;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.yahoo.document.ArrayDataType;
+import com.yahoo.document.DataType;
+import com.yahoo.document.Document;
+import com.yahoo.document.DocumentOperation;
+import com.yahoo.document.DocumentPut;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.document.DocumentUpdate;
+import com.yahoo.document.Field;
+import com.yahoo.document.MapDataType;
+import com.yahoo.document.PositionDataType;
+import com.yahoo.document.StructDataType;
+import com.yahoo.document.TensorDataType;
+import com.yahoo.document.WeightedSetDataType;
+import com.yahoo.document.json.JsonReader;
+import com.yahoo.document.json.JsonReaderException;
+import com.yahoo.document.serialization.DocumentDeserializerFactory;
+import com.yahoo.document.serialization.DocumentSerializer;
+import com.yahoo.document.serialization.DocumentSerializerFactory;
+import com.yahoo.document.serialization.SerializedDocumentPut;
+import com.yahoo.io.GrowableByteBuffer;
+import com.yahoo.tensor.TensorType;
+import com.yahoo.text.Utf8;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import static com.yahoo.test.json.JsonTestHelper.inputJson;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DocumentTranscoderTestCase {
+
+    private DocumentTypeManager types;
+
+    @Before
+    public void setUp() {
+        types = new DocumentTypeManager();
+        DocumentType type = new DocumentType("all");
+        type.addField(new Field("string", DataType.STRING, true));
+        type.addField(new Field("int", DataType.INT, true));
+        type.addField(new Field("long", DataType.LONG, false));
+        type.addField(new Field("double", DataType.DOUBLE, false));
+        type.addField(new Field("float", DataType.FLOAT, false));
+        type.addField(new Field("byte", DataType.BYTE, false));
+        type.addField(new Field("bool", DataType.BOOL, false));
+        type.addField(new Field("raw", DataType.RAW, false));
+        type.addField(new Field("uri", DataType.URI, false));
+        type.addField(new Field("position", PositionDataType.INSTANCE, false));
+        type.addField(new Field("array", new ArrayDataType(DataType.INT), false));
+        type.addField(new Field("set", new WeightedSetDataType(DataType.STRING, true, true), true));
+        type.addField(new Field("map", new MapDataType(DataType.STRING, DataType.STRING), false));
+        StructDataType struct = new StructDataType("pair");
+        struct.addField(new Field("first", DataType.STRING));
+        struct.addField(new Field("second", DataType.INT));
+        type.addField(new Field("struct", struct, false));
+        type.addField(new Field("tensor", new TensorDataType(TensorType.fromSpec("tensor(x{},y[2])")), false));
+        types.registerDocumentType(type);
+    }
+
+    private JsonReader createReader(String json) {
+        return new JsonReader(types, new ByteArrayInputStream(Utf8.toBytes(json)), new JsonFactory());
+    }
+
+    private static byte[] serialize(Document document) {
+        GrowableByteBuffer buffer = new GrowableByteBuffer();
+        DocumentSerializer serializer = DocumentSerializerFactory.create6(buffer);
+        serializer.write(document);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static byte[] bytesOf(SerializedDocumentPut put) {
+        return Arrays.copyOf(put.getSerializedDocument().array(), put.getSerializedDocument().position());
+    }
+
+    private Document deserialize(byte[] data) {
+        return new Document(DocumentDeserializerFactory.createHead(types, GrowableByteBuffer.wrap(data)));
+    }
+
+    private void assertTranscodedEqualsRead(String json) {
+        DocumentPut read = (DocumentPut) createReader(json).next();
+        SerializedDocumentPut transcoded = (SerializedDocumentPut) createReader(json).nextSerialized();
+        assertEquals(read.getId(), transcoded.getId());
+        assertEquals(read.getCondition().getSelection(), transcoded.getCondition().getSelection());
+        assertEquals(read.getDocument(), deserialize(bytesOf(transcoded)));
+        assertArrayEquals(serialize(read.getDocument()), bytesOf(transcoded));
+    }
+
+    @Test
+    public void testTranscodedDocumentsAreEqualToSerializedDocuments() {
+        assertTranscodedEqualsRead(inputJson("[{ 'put': 'id:ns:all::1',",
+                                             "  'fields': {",
+                                             "    'string': 'a string with æøå',",
+                                             "    'int': -17,",
+                                             "    'long': 1234567890123,",
+                                             "    'double': 3.25,",
+                                             "    'float': 1.5,",
+                                             "    'byte': 7,",
+                                             "    'bool': true,",
+                                             "    'raw': 'AQID',",
+                                             "    'uri': 'http://vespa.ai/',",
+                                             "    'position': 'N63.429722;E10.393333',",
+                                             "    'array': [ 1, 2, 3 ],",
+                                             "    'set': { 'a': 1, 'b': 2 },",
+                                             "    'map': { 'key': 'value' },",
+                                             "    'struct': { 'first': 'one', 'second': 2 },",
+                                             "    'tensor': { 'cells': [ { 'address': { 'x': 'a', 'y': '1' }, 'value': 2.0 } ] }",
+                                             "  }}]"));
+        assertTranscodedEqualsRead(inputJson("[{ 'put': 'id:ns:all::2', 'condition': 'all.int == 1',",
+                                             "  'fields': { 'string': 'only header fields', 'int': 1 }}]"));
+        assertTranscodedEqualsRead(inputJson("[{ 'put': 'id:ns:all::3', 'fields': { 'long': 1 }}]"));
+        assertTranscodedEqualsRead(inputJson("[{ 'put': 'id:ns:all::4', 'fields': { }}]"));
+        assertTranscodedEqualsRead(inputJson("[{ 'put': 'id:ns:all::5', 'fields': { 'int': null, 'long': 2 }}]"));
+        assertTranscodedEqualsRead(inputJson("[{ 'fields': { 'string': 'buffered, as the id follows' },",
+                                             "  'put': 'id:ns:all::6' }]"));
+    }
+
+    @Test
+    public void testLastValueOfRepeatedFieldIsUsed() {
+        String json = inputJson("[{ 'put': 'id:ns:all::1',",
+                                "  'fields': { 'int': 1, 'string': 'first', 'long': 2, 'int': 3 }}]");
+        Document read = ((DocumentPut) createReader(json).next()).getDocument();
+        Document transcoded = deserialize(bytesOf((SerializedDocumentPut) createReader(json).nextSerialized()));
+        assertEquals(read, transcoded);
+        assertEquals(3, ((Number) transcoded.getFieldValue("int").getWrappedValue()).intValue());
+    }
+
+    @Test
+    public void testOtherOperationsAreRead() {
+        JsonReader reader = createReader(inputJson("[",
+                                                   "{ 'update': 'id:ns:all::1', 'fields': { 'int': { 'assign': 2 }}},",
+                                                   "{ 'put': 'id:ns:all::2', 'fields': { 'int': 1 }},",
+                                                   "{ 'remove': 'id:ns:all::3' }]"));
+        DocumentOperation update = reader.nextSerialized();
+        assertTrue(update instanceof DocumentUpdate);
+        assertTrue(reader.nextSerialized() instanceof SerializedDocumentPut);
+        assertEquals("id:ns:all::3", reader.nextSerialized().getId().toString());
+        assertNull(reader.nextSerialized());
+    }
+
+    @Test
+    public void testInvalidFieldValuesAreReported() {
+        JsonReader reader = createReader(inputJson("[",
+                                                   "{ 'put': 'id:ns:all::1', 'fields': { 'int': 'not a number' }},",
+                                                   "{ 'put': 'id:ns:all::2', 'fields': { 'int': 1 }}]"));
+        try {
+            reader.nextSerialized();
+            fail("Expected an exception");
+        }
+        catch (JsonReaderException e) {
+            assertEquals("Error in document 'id:ns:all::1' - could not parse field 'int' of type 'int': " +
+                         "For input string: \"not a number\"", e.getMessage());
+        }
+        assertEquals("id:ns:all::2", reader.nextSerialized().getId().toString());
+        assertNull(reader.nextSerialized());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testUnknownFieldIsAnError() {
+        createReader(inputJson("[{ 'put': 'id:ns:all::1', 'fields': { 'unknown': 1 }}]")).nextSerialized();
+    }
+
+}
@@ -0,0 +1,108 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.select;
+
+import com.yahoo.document.DocumentPut;
+import com.yahoo.document.select.parser.ParseException;
+import com.yahoo.document.select.parser.SelectInput;
+import com.yahoo.document.select.parser.SelectParser;
+import com.yahoo.document.select.rule.CompiledExpression;
+import com.yahoo.document.select.rule.ExpressionNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Microbenchmark of evaluating selections from DocumentSelectorTestCase over its documents, comparing
+ * interpreting the parsed expression with evaluating the compiled expression. Usage: DocumentSelectorBenchmark [rounds]
+ */
+public class DocumentSelectorBenchmark {
+
+    private static final String[] selections = {
+            "test",
+            "test.hint = 24",
+            "test.hfloat > 4.09 and test.hfloat < 4.11",
+            "test.content = \"bar\"",
+            "test.hstring == test.content",
+            "test.hint + 1 > 13",
+            "test.hint != null and test.hint < 1234",
+            "not test.hint and true",
+            "false and true or true and true",
+            "test.mystruct.value = \"struc?val\"",
+            "test.structarray.key == 15",
+            "test.structarray[1].value = \"structval2\"",
+            "test.structarray.value =~ \"structval[1-9]\"",
+            "test.structarray.value = \"*ctval*\"",
+            "test.mymap{3} == \"a\"",
+            "test.stringweightedset{val1}",
+            "test.intarray < 42",
+            "id.namespace == \"myspace\" and test.hint > 10",
+            "id.user == 1234 or id.group == \"mygroup\"",
+            "test.hstring.lowercase() == \"yet\"",
+    };
+
+    private static int interpret(List<ExpressionNode> expressions, List<Context> contexts) {
+        int accepted = 0;
+        for (ExpressionNode expression : expressions) {
+            for (Context context : contexts) {
+                try {
+                    if (Result.toResult(expression.evaluate(context)) == Result.TRUE)
+                        accepted++;
+                } catch (RuntimeException e) {
+                    // Some selections are not valid for all documents
+                }
+            }
+        }
+        return accepted;
+    }
+
+    private static int evaluateCompiled(List<CompiledExpression> expressions, List<Context> contexts) {
+        int accepted = 0;
+        for (CompiledExpression expression : expressions) {
+            for (Context context : contexts) {
+                try {
+                    if (Result.toResult(expression.evaluate(context)) == Result.TRUE)
+                        accepted++;
+                } catch (RuntimeException e) {
+                    // Some selections are not valid for all documents
+                }
+            }
+        }
+        return accepted;
+    }
+
+    public static void main(String[] args) throws ParseException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        DocumentSelectorTestCase test = new DocumentSelectorTestCase();
+        test.setUp();
+        List<Context> contexts = new ArrayList<>();
+        for (DocumentPut put : test.createDocs())
+            contexts.add(new Context(put));
+        List<ExpressionNode> expressions = new ArrayList<>();
+        List<CompiledExpression> compiled = new ArrayList<>();
+        for (String selection : selections) {
+            ExpressionNode expression = new SelectParser(new SelectInput(selection)).expression();
+            expressions.add(expression);
+            compiled.add(CompiledExpression.compile(expression));
+        }
+        int evaluations = selections.length * contexts.size() * rounds;
+
+        for (int i = 0; i < 10; i++) { // the first rounds are warmup
+            long startTime = System.nanoTime();
+            int interpretedAccepted = 0;
+            for (int round = 0; round < rounds; round++)
+                interpretedAccepted += interpret(expressions, contexts);
+            double interpretedTime = (System.nanoTime() - startTime) / (double) evaluations;
+
+            startTime = System.nanoTime();
+            int compiledAccepted = 0;
+            for (int round = 0; round < rounds; round++)
+                compiledAccepted += evaluateCompiled(compiled, contexts);
+            double compiledTime = (System.nanoTime() - startTime) / (double) evaluations;
+
+            if (interpretedAccepted != compiledAccepted)
+                throw new IllegalStateException("Interpreted and compiled selections accepted different documents");
+            System.out.printf("Interpreted: %7.1f ns, compiled: %7.1f ns per evaluation\n", interpretedTime, compiledTime);
+        }
+    }
+
+}
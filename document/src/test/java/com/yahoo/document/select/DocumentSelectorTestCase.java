@@ -5,7 +5,10 @@ import com.yahoo.document.*;
 import com.yahoo.document.datatypes.*;
 import com.yahoo.document.select.convert.SelectionExpressionConverter;
 import com.yahoo.document.select.parser.ParseException;
+import com.yahoo.document.select.parser.SelectInput;
+import com.yahoo.document.select.parser.SelectParser;
 import com.yahoo.document.select.parser.TokenMgrException;
+import com.yahoo.document.select.rule.ExpressionNode;
 import com.yahoo.yolean.Exceptions;
 import org.junit.Before;
 import org.junit.Test;
@@ -14,6 +17,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -840,8 +844,22 @@ public class DocumentSelectorTestCase {
         }
     }
 
+    /** Evaluates the selection, after checking that it evaluates the same when compiled and when interpreted */
     private static Result evaluate(String expressionString, DocumentOperation op) throws ParseException {
-        return new DocumentSelector(expressionString).accepts(op);
+        DocumentSelector selector = new DocumentSelector(expressionString);
+        ExpressionNode expression = new SelectParser(new SelectInput(expressionString)).expression();
+        assertEquals("Compiled and interpreted evaluation of '" + expressionString + "'",
+                     outcomeOf(() -> Result.toResult(expression.evaluate(new Context(op)))),
+                     outcomeOf(() -> selector.accepts(op)));
+        return selector.accepts(op);
+    }
+
+    private static String outcomeOf(Supplier<Result> evaluation) {
+        try {
+            return evaluation.get().toString();
+        } catch (RuntimeException e) {
+            return e.getClass().getName() + ": " + e.getMessage();
+        }
     }
 
     private static void assertError(String expressionString, DocumentOperation op, String expectedError) {
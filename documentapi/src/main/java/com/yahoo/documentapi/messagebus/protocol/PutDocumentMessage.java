@@ -1,10 +1,16 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.documentapi.messagebus.protocol;
 
-import com.yahoo.document.Document;
+import com.yahoo.document.DocumentId;
 import com.yahoo.document.DocumentPut;
+import com.yahoo.document.DocumentTypeManager;
 import com.yahoo.document.TestAndSetCondition;
 import com.yahoo.document.serialization.DocumentDeserializer;
+import com.yahoo.document.serialization.DocumentDeserializerFactory;
+import com.yahoo.document.serialization.DocumentSerializer;
+import com.yahoo.document.serialization.DocumentSerializerFactory;
+import com.yahoo.document.serialization.SerializedDocumentPut;
+import com.yahoo.io.GrowableByteBuffer;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
@@ -18,6 +24,7 @@ public class PutDocumentMessage extends TestAndSetMessage {
     private DocumentPut put = null;
     private long time = 0;
     private LazyDecoder decoder = null;
+    private DocumentId documentId = null;
 
     /**
      * Constructs a new message for deserialization.
@@ -45,6 +52,27 @@ public class PutDocumentMessage extends TestAndSetMessage {
         this.put = put;
     }
 
+    /**
+     * Constructs a new document put message from a document which is already serialized. The document is only
+     * deserialized if its content is requested, so sending this message does not create the document.
+     *
+     * @param put  the serialized document put operation
+     * @param types the document types to use if the document is deserialized
+     */
+    public PutDocumentMessage(SerializedDocumentPut put, DocumentTypeManager types) {
+        GrowableByteBuffer document = put.getSerializedDocument();
+        GrowableByteBuffer data = new GrowableByteBuffer(document.position() + 64);
+        DocumentSerializer out = DocumentSerializerFactory.createHead(data);
+        data.put(document.array(), 0, document.position());
+        out.putLong(null, 0); // timestamp
+        AbstractRoutableFactory.encodeString(put.getCondition().getSelection(), out);
+        data.flip();
+
+        this.documentId = put.getId();
+        this.buffer = DocumentDeserializerFactory.createHead(types, data);
+        this.decoder = (obj, buf) -> new RoutableFactories60.PutDocumentMessageFactory().decodeInto((PutDocumentMessage) obj, buf);
+    }
+
     /**
      * Creates an empty PutDocumentMessage
      */
@@ -80,6 +108,7 @@ public class PutDocumentMessage extends TestAndSetMessage {
     public void setDocumentPut(DocumentPut put) {
         buffer = null;
         decoder = null;
+        documentId = null;
         this.put = put;
     }
 
@@ -111,7 +140,14 @@ public class PutDocumentMessage extends TestAndSetMessage {
      * @return The buffer containing the serialized data for this message, or null.
      */
     ByteBuffer getSerializedBuffer() {
-        return buffer != null ? buffer.getBuf().getByteBuffer() : null; // TODO: very dirty. Must make interface.
+        // The deserializer holds the serialized message from its start, as it is not read until the message is decoded.
+        // A duplicate is returned, as writing the buffer consumes it, and the message may be encoded again when resent.
+        return buffer != null ? buffer.getBuf().getByteBuffer().duplicate() : null;
+    }
+
+    /** Returns the id of the document to put, without deserializing the document if its id is already known */
+    DocumentId getDocumentId() {
+        return buffer != null && documentId != null ? documentId : getDocumentPut().getId();
     }
 
     @Override
@@ -134,8 +170,7 @@ public class PutDocumentMessage extends TestAndSetMessage {
 
     @Override
     public long getSequenceId() {
-        deserialize();
-        return Arrays.hashCode(put.getId().getGlobalId());
+        return Arrays.hashCode(getDocumentId().getGlobalId());
     }
 
     @Override
@@ -13,6 +13,8 @@ import com.yahoo.document.TestAndSetCondition;
 import com.yahoo.document.fieldpathupdate.RemoveFieldPathUpdate;
 import com.yahoo.document.idstring.IdString;
 import com.yahoo.document.select.OrderingSpecification;
+import com.yahoo.document.serialization.DocumentSerializerFactory;
+import com.yahoo.document.serialization.SerializedDocumentPut;
 import com.yahoo.documentapi.messagebus.protocol.CreateVisitorMessage;
 import com.yahoo.documentapi.messagebus.protocol.CreateVisitorReply;
 import com.yahoo.documentapi.messagebus.protocol.DestroyVisitorMessage;
@@ -44,6 +46,7 @@ import com.yahoo.documentapi.messagebus.protocol.VisitorInfoMessage;
 import com.yahoo.documentapi.messagebus.protocol.VisitorReply;
 import com.yahoo.documentapi.messagebus.protocol.WriteDocumentReply;
 import com.yahoo.documentapi.messagebus.protocol.WrongDistributionReply;
+import com.yahoo.io.GrowableByteBuffer;
 import com.yahoo.messagebus.Routable;
 import com.yahoo.text.Utf8;
 import com.yahoo.vdslib.SearchResult;
@@ -52,6 +55,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -624,6 +628,22 @@ public class Messages60TestCase extends MessagesTestBase {
                 assertEquals(msg.getTimestamp(), deserializedMsg.getTimestamp());
                 assertEquals(msg.getCondition().getSelection(), deserializedMsg.getCondition().getSelection());
             }
+
+            // A message of an already serialized document is encoded as one of the deserialized document
+            Document document = new Document(protocol.getDocumentTypeManager().getDocumentType("testdoc"), "id:ns:testdoc::");
+            GrowableByteBuffer serialized = new GrowableByteBuffer();
+            DocumentSerializerFactory.createHead(serialized).write(document);
+            SerializedDocumentPut serializedPut = new SerializedDocumentPut(document.getId(), serialized);
+            serializedPut.setCondition(new TestAndSetCondition(CONDITION_STRING));
+            PutDocumentMessage serializedMsg = new PutDocumentMessage(serializedPut, protocol.getDocumentTypeManager());
+            DocumentPut put = new DocumentPut(document);
+            put.setCondition(new TestAndSetCondition(CONDITION_STRING));
+            PutDocumentMessage expectedMsg = new PutDocumentMessage(put);
+            assertEquals(expectedMsg.getSequenceId(), serializedMsg.getSequenceId());
+            assertArrayEquals(encode(expectedMsg), encode(serializedMsg));
+            assertArrayEquals(encode(expectedMsg), encode(serializedMsg)); // Encoding does not consume the message
+            assertEquals(document, serializedMsg.getDocumentPut().getDocument());
+            assertEquals(CONDITION_STRING, serializedMsg.getCondition().getSelection());
         }
     }
 
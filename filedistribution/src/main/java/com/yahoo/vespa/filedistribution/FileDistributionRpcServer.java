@@ -13,34 +13,50 @@ import com.yahoo.jrt.Supervisor;
 import com.yahoo.log.LogLevel;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 /**
- * An RPC server that handles file distribution requests.
+ * An RPC server that handles file distribution requests. When created with the spec it listens on, it also
+ * serves the file references it has downloaded to peers, and makes the downloader get file references
+ * from peers, see {@link FileReferencePeers}.
  *
  * @author hmusum
  */
 public class FileDistributionRpcServer {
 
     private final static Logger log = Logger.getLogger(FileDistributionRpcServer.class.getName());
+    private final static int maxConcurrentServes = 4;
 
     private final Supervisor supervisor;
     private final FileDownloader downloader;
     private final ExecutorService rpcDownloadExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
                                                                                      new DaemonThreadFactory("Rpc executor"));
 
+    private final ExecutorService rpcServeExecutor = Executors.newFixedThreadPool(maxConcurrentServes,
+                                                                                  new DaemonThreadFactory("Rpc serve executor"));
+    private final Semaphore serves = new Semaphore(maxConcurrentServes);
+
     public FileDistributionRpcServer(Supervisor supervisor, FileDownloader downloader) {
         this.supervisor = supervisor;
         this.downloader = downloader;
         declareFileDistributionMethods();
     }
 
+    /** Creates a server which serves downloaded file references to peers, which reach it on the given spec */
+    public FileDistributionRpcServer(Supervisor supervisor, FileDownloader downloader, String spec) {
+        this(supervisor, downloader);
+        declarePeerMethods();
+        downloader.enablePeerDownloads(spec);
+    }
+
     private void declareFileDistributionMethods() {
         // Legacy method, needs to be the same name as used in filedistributor
         supervisor.addMethod(new Method("waitFor", "s", "s",
@@ -65,6 +81,15 @@ public class FileDistributionRpcServer {
                                      .returnDesc(0, "ret", "0 if success, 1 otherwise"));
     }
 
+    private void declarePeerMethods() {
+        supervisor.addMethod(new Method("filedistribution.serveFile", "si", "is",
+                                        this, "serveFile")
+                                     .methodDesc("serve a downloaded file reference to the caller")
+                                     .paramDesc(0, "file reference", "file reference")
+                                     .paramDesc(1, "downloadFromOtherSourceIfNotFound", "ignored, only downloaded file references are served")
+                                     .returnDesc(0, "ret", "0 if the file reference will be served, 1 if not found, 2 if busy")
+                                     .returnDesc(1, "description", "description of the return code"));
+    }
 
     //---------------- RPC methods ------------------------------------
     // TODO: Duplicate of code in FileAcquirereImpl. Find out where to put it. What about C++ code using this RPC call?
@@ -81,6 +106,24 @@ public class FileDistributionRpcServer {
         rpcDownloadExecutor.execute(() -> downloadFile(req));
     }
 
+    @SuppressWarnings({"UnusedDeclaration"})
+    public final void serveFile(Request req) {
+        if ( ! serves.tryAcquire()) {
+            // Make the peer try another source instead of waiting for this
+            req.returnValues().add(new Int32Value(2));
+            req.returnValues().add(new StringValue("Busy serving other peers"));
+            return;
+        }
+        req.detach();
+        rpcServeExecutor.execute(() -> {
+            try {
+                serveFileToPeer(req);
+            } finally {
+                serves.release();
+            }
+        });
+    }
+
     @SuppressWarnings({"UnusedDeclaration"})
     public final void getActiveFileReferencesStatus(Request req) {
         Map<FileReference, Double> downloadStatus = downloader.downloadStatus();
@@ -110,6 +153,45 @@ public class FileDistributionRpcServer {
         req.returnValues().add(new Int32Value(0));
     }
 
+    private void serveFileToPeer(Request req) {
+        FileReference fileReference = new FileReference(req.parameters().get(0).asString());
+        FileReferenceData fileData;
+        try {
+            Optional<File> file = downloader.downloadedFile(fileReference);
+            fileData = file.isPresent() ? readFileReferenceData(fileReference, file.get()).orElse(null) : null;
+        } catch (Exception e) {
+            log.log(LogLevel.WARNING, "Failed reading file reference '" + fileReference.value() + "' for " + req.target() + ": " + e.getMessage());
+            fileData = null;
+        }
+        req.returnValues().add(new Int32Value(fileData == null ? 1 : 0));
+        req.returnValues().add(new StringValue(fileData == null ? "Filereference not found" : "OK"));
+        req.returnRequest();
+        if (fileData == null) return;
+
+        log.log(LogLevel.DEBUG, () -> "Serving file reference '" + fileReference.value() + "' to peer " + req.target());
+        try {
+            new FileReferenceSender(req.target()).send(fileData, 0, "OK");
+        } catch (Exception e) {
+            log.log(LogLevel.WARNING, "Failed serving file reference '" + fileReference.value() + "' to peer " + req.target() + ": " + e.getMessage());
+        } finally {
+            fileData.close();
+        }
+    }
+
+    /**
+     * Returns the data to serve for the given downloaded file. Directories are served as the archive they were
+     * received as, such that peers get exactly the content config servers sent, which is what they verify it against.
+     * Directories which are not kept as received are not served.
+     */
+    private Optional<FileReferenceData> readFileReferenceData(FileReference fileReference, File file) throws IOException {
+        if ( ! file.isDirectory())
+            return Optional.of(new LazyFileReferenceData(fileReference, file.getName(), FileReferenceData.Type.file, file));
+
+        Optional<File> archive = downloader.compressedFile(fileReference);
+        if ( ! archive.isPresent()) return Optional.empty();
+        return Optional.of(new LazyFileReferenceData(fileReference, archive.get().getName(), FileReferenceData.Type.compressed, archive.get()));
+    }
+
     private void downloadFile(Request req) {
         FileReference fileReference = new FileReference(req.parameters().get(0).asString());
         log.log(LogLevel.DEBUG, () -> "getFile() called for file reference '" + fileReference.value() + "'");
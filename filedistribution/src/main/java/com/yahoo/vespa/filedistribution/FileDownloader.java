@@ -142,6 +142,22 @@ public class FileDownloader {
         return fileReferenceDownload.future();
     }
 
+    /** Returns the file of the given file reference if it has been downloaded, or is otherwise in the download directory */
+    Optional<File> downloadedFile(FileReference fileReference) {
+        return getFileFromFileSystem(fileReference, downloadDirectory);
+    }
+
+    /** Returns the archive a downloaded compressed file reference was received as, if it is kept */
+    Optional<File> compressedFile(FileReference fileReference) {
+        File[] files = FileReceiver.compressedFileReferenceDir(downloadDirectory, fileReference).listFiles();
+        return files == null || files.length == 0 ? Optional.empty() : Optional.of(files[0]);
+    }
+
+    /** Makes this download file references from peers when possible, and advertise downloaded ones as available from the given spec */
+    public void enablePeerDownloads(String spec) {
+        fileReferenceDownloader.enablePeerDownloads(spec);
+    }
+
     public FileReferenceDownloader fileReferenceDownloader() {
         return fileReferenceDownloader;
     }
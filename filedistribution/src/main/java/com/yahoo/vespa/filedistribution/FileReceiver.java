@@ -4,24 +4,32 @@ package com.yahoo.vespa.filedistribution;
 
 import com.yahoo.config.FileReference;
 import com.yahoo.io.IOUtils;
+import com.yahoo.jrt.Int32Array;
 import com.yahoo.jrt.Int32Value;
 import com.yahoo.jrt.Method;
 import com.yahoo.jrt.Request;
 import com.yahoo.jrt.Supervisor;
 import com.yahoo.log.LogLevel;
 import net.jpountz.xxhash.StreamingXXHash64;
+import net.jpountz.xxhash.XXHash64;
 import net.jpountz.xxhash.XXHashFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongPredicate;
 import java.util.logging.Logger;
 
 /**
@@ -37,6 +45,13 @@ public class FileReceiver {
     public final static String RECEIVE_META_METHOD = "filedistribution.receiveFileMeta";
     public final static String RECEIVE_PART_METHOD = "filedistribution.receiveFilePart";
     public final static String RECEIVE_EOF_METHOD = "filedistribution.receiveFileEof";
+    public final static String MISSING_PARTS_METHOD = "filedistribution.missingFileParts";
+    public final static String RECEIVE_VERIFIED_PART_METHOD = "filedistribution.receiveVerifiedFilePart";
+
+    private final static String INPROGRESS_SUFFIX = ".inprogress";
+    private final static String PARTS_SUFFIX = ".parts";
+    // Partial downloads which have not been resumed for this long are deleted when a receiver is created
+    private final static Duration maxAgeOfPartialDownloads = Duration.ofDays(1);
 
     private final Supervisor supervisor;
     private final FileReferenceDownloader downloader;
@@ -47,8 +62,15 @@ public class FileReceiver {
     private final AtomicInteger nextSessionId = new AtomicInteger(1);
     private final Map<Integer, Session> sessions = new HashMap<>();
 
+    /**
+     * A transfer of one file. Parts are either received in order, or, when the sender has asked for the
+     * parts which are missing, with a fixed part size and in any order. In the latter case, each part is
+     * verified against its xxhash, and the parts which are received are recorded in a file next to the
+     * file in progress, so that an interrupted transfer can be resumed by a later session for the same file.
+     */
     final static class Session {
         private final StreamingXXHash64 hasher;
+        private final XXHash64 partHasher;
         private final int sessionId;
         private final FileReference reference;
         private final FileReferenceData.Type fileType;
@@ -56,15 +78,25 @@ public class FileReceiver {
         private final long fileSize;
         private long currentFileSize;
         private long currentPartId;
-        private long currentHash;
+        private long hashedSize;
+        private long receivedSize;
+        private int partSize;
+        // Set when this is abandoned or closed. The files in progress may then belong to a later session for the
+        // same file, so this must neither write to them nor delete them.
+        private boolean abandoned = false;
+        private final BitSet receivedParts = new BitSet();
+        private final File downloadDirectory;
         private final File fileReferenceDir;
         private final File tmpDir;
         private final File inprogressFile;
+        private final File partsFile;
+        private final FileChannel channel;
 
         Session(File downloadDirectory, File tmpDirectory, int sessionId, FileReference reference,
                 FileReferenceData.Type fileType, String fileName, long fileSize)
         {
             this.hasher = XXHashFactory.fastestInstance().newStreamingHash64(0);
+            this.partHasher = XXHashFactory.fastestInstance().hash64();
             this.sessionId = sessionId;
             this.reference = reference;
             this.fileType = fileType;
@@ -72,20 +104,32 @@ public class FileReceiver {
             this.fileSize = fileSize;
             currentFileSize = 0;
             currentPartId = 0;
-            currentHash = 0;
+            hashedSize = 0;
+            receivedSize = 0;
+            partSize = 0;
+            this.downloadDirectory = downloadDirectory;
             fileReferenceDir = new File(downloadDirectory, reference.value());
             this.tmpDir = tmpDirectory;
 
+            // Named by file, rather than by session, so a later session for the same file can resume this one
+            inprogressFile = new File(tmpDirectory, reference.value() + "-" + fileName + INPROGRESS_SUFFIX);
+            partsFile = new File(tmpDirectory, reference.value() + "-" + fileName + PARTS_SUFFIX);
             try {
-                inprogressFile = Files.createTempFile(tmpDirectory.toPath(), fileName, ".inprogress").toFile();
+                channel = FileChannel.open(inprogressFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
             } catch (IOException e) {
-                String msg = "Failed creating temp file for inprogress file for " + fileName + " in '" + tmpDirectory.toPath() + "': ";
+                String msg = "Failed creating inprogress file for " + fileName + " in '" + tmpDirectory.toPath() + "': ";
                 log.log(LogLevel.ERROR, msg + e.getMessage(), e);
                 throw new RuntimeException(msg, e);
             }
+            readReceivedParts();
+            if (receivedParts.isEmpty()) {
+                truncateInprogressFile();
+            }
         }
 
-        void addPart(int partId, byte [] part) {
+        /** Adds the given part, which must be the next one in order */
+        synchronized void addPart(int partId, byte [] part) {
+            verifyNotAbandoned();
             if (partId != currentPartId) {
                 throw new IllegalStateException("Received partid " + partId + " while expecting " + currentPartId);
             }
@@ -93,21 +137,99 @@ public class FileReceiver {
                 throw new IllegalStateException("Received part would extend the file from " + currentFileSize + " to " +
                                                 (currentFileSize + part.length) + ", but " + fileSize + " is max.");
             }
-            try {
-                Files.write(inprogressFile.toPath(), part, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
-            } catch (IOException e) {
-                log.log(LogLevel.ERROR, "Failed writing to file(" + inprogressFile.toPath() + "): " + e.getMessage(), e);
-                inprogressFile.delete();
-                throw new RuntimeException("Failed writing to file(" + inprogressFile.toPath() + "): ", e);
+            if (partId == 0) {
+                // The sender does not know about parts received earlier, and sends them all again
+                resetReceivedParts();
             }
+            write(part, currentFileSize);
             currentFileSize += part.length;
+            receivedSize += part.length;
             currentPartId++;
-            hasher.update(part, 0, part.length);
         }
 
-        File close(long hash) {
-            if (hasher.getValue() != hash) {
-                throw new RuntimeException("xxhash from content (" + currentHash + ") is not equal to xxhash in request (" + hash + ")");
+        /**
+         * Adds the given part, with the part size set by the last call to {@link #missingParts(int)},
+         * after verifying it against the given xxhash. Parts may be added in any order.
+         */
+        synchronized void addPart(int partId, byte [] part, long xxhash) {
+            verifyNotAbandoned();
+            if (partSize == 0) {
+                throw new IllegalStateException("Received partid " + partId + " before the part size was set");
+            }
+            if (partId < 0 || partId >= partCount()) {
+                throw new IllegalStateException("Received partid " + partId + ", but there are only " + partCount() + " parts");
+            }
+            long offset = (long) partId * partSize;
+            long expectedLength = Math.min(partSize, fileSize - offset);
+            if (part.length != expectedLength) {
+                throw new IllegalStateException("Received part " + partId + " of " + part.length + " bytes, expected " + expectedLength);
+            }
+            long partHash = partHasher.hash(part, 0, part.length, 0);
+            if (partHash != xxhash) {
+                throw new IllegalStateException("xxhash from content of part " + partId + " (" + partHash +
+                                                ") is not equal to xxhash in request (" + xxhash + ")");
+            }
+            if (receivedParts.get(partId)) return;
+
+            write(part, offset);
+            receivedParts.set(partId);
+            receivedSize += part.length;
+            writeReceivedParts();
+        }
+
+        /**
+         * Sets the size of the parts to receive, and returns the ids of the parts of that size which have not been
+         * received yet. Parts received with a different part size are discarded.
+         */
+        synchronized int[] missingParts(int partSize) {
+            verifyNotAbandoned();
+            if (partSize <= 0) throw new IllegalArgumentException("Part size must be positive, was " + partSize);
+
+            if (partSize != this.partSize) {
+                resetReceivedParts();
+                this.partSize = partSize;
+            }
+            int[] missing = new int[partCount() - receivedParts.cardinality()];
+            for (int partId = receivedParts.nextClearBit(0), i = 0; i < missing.length; partId = receivedParts.nextClearBit(partId + 1)) {
+                missing[i++] = partId;
+            }
+            return missing;
+        }
+
+        synchronized File close(long hash) {
+            return close(hash, contentHash -> true);
+        }
+
+        /**
+         * Completes this transfer after verifying the content against the given xxhash from the sender, and
+         * checking that the xxhash of the content is accepted by the given predicate.
+         */
+        synchronized File close(long hash, LongPredicate acceptedContent) {
+            verifyNotAbandoned();
+            try {
+                return complete(hash, acceptedContent);
+            } finally {
+                abandoned = true;
+            }
+        }
+
+        private File complete(long hash, LongPredicate acceptedContent) {
+            long contentHash;
+            try {
+                contentHash = hashContent();
+                channel.close();
+            } catch (IOException e) {
+                deleteInprogressFiles();
+                log.log(LogLevel.ERROR, "Failed reading file(" + inprogressFile.toPath() + "): " + e.getMessage(), e);
+                throw new RuntimeException("Failed reading file(" + inprogressFile.toPath() + "): ", e);
+            }
+            if (contentHash != hash) {
+                deleteInprogressFiles();
+                throw new RuntimeException("xxhash from content (" + contentHash + ") is not equal to xxhash in request (" + hash + ")");
+            }
+            if ( ! acceptedContent.test(contentHash)) {
+                deleteInprogressFiles();
+                throw new RuntimeException("xxhash from content (" + contentHash + ") is not accepted for '" + reference.value() + "'");
             }
             File file = new File(fileReferenceDir, fileName);
             try {
@@ -117,6 +239,10 @@ public class FileReceiver {
                     log.log(LogLevel.DEBUG, () -> "Archived file, unpacking " + inprogressFile + " to " + decompressedDir);
                     CompressedFileReference.decompress(inprogressFile, decompressedDir);
                     moveFileToDestination(decompressedDir, fileReferenceDir);
+                    // Keep the archive, to serve exactly what was received to peers, without compressing it again
+                    File compressedDir = compressedFileReferenceDir(downloadDirectory, reference);
+                    Files.createDirectories(compressedDir.toPath());
+                    moveFileToDestination(inprogressFile, new File(compressedDir, fileName));
                 } else {
                     try {
                         Files.createDirectories(fileReferenceDir.toPath());
@@ -131,20 +257,144 @@ public class FileReceiver {
                 log.log(LogLevel.ERROR, "Failed writing file: " + e.getMessage(), e);
                 throw new RuntimeException("Failed writing file: ", e);
             } finally {
-                try {
-                    if (inprogressFile.exists()) {
-                        Files.delete(inprogressFile.toPath());
-                    }
-                } catch (IOException e) {
-                    log.log(LogLevel.ERROR, "Failed deleting " + inprogressFile.getAbsolutePath() + ": " + e.getMessage(), e);
-                }
+                deleteInprogressFiles();
             }
             return file;
         }
 
+        /** Stops this session, leaving what has been received for a later session for the same file */
+        synchronized void abandon() {
+            if (abandoned) return;
+
+            abandoned = true;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.log(LogLevel.WARNING, "Failed closing " + inprogressFile.getAbsolutePath() + ": " + e.getMessage());
+            }
+        }
+
         double percentageReceived() {
-            return (double)currentFileSize/(double)fileSize;
+            return (double)receivedSize/(double)fileSize;
+        }
+
+        private int partCount() {
+            return (int) ((fileSize + partSize - 1) / partSize);
+        }
+
+        private void write(byte [] part, long offset) {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(part);
+                for (long position = offset; buffer.hasRemaining(); ) {
+                    position += channel.write(buffer, position);
+                }
+            } catch (IOException e) {
+                log.log(LogLevel.ERROR, "Failed writing to file(" + inprogressFile.toPath() + "): " + e.getMessage(), e);
+                deleteInprogressFiles();
+                abandon();
+                throw new RuntimeException("Failed writing to file(" + inprogressFile.toPath() + "): ", e);
+            }
+            // Content received in order is hashed as it arrives, the rest when the session is closed
+            if (offset == hashedSize) {
+                hasher.update(part, 0, part.length);
+                hashedSize += part.length;
+            }
         }
+
+        private void truncateInprogressFile() {
+            try {
+                channel.truncate(0);
+            } catch (IOException e) {
+                String msg = "Failed truncating inprogress file " + inprogressFile.toPath() + ": ";
+                log.log(LogLevel.ERROR, msg + e.getMessage(), e);
+                throw new RuntimeException(msg, e);
+            }
+        }
+
+        private long hashContent() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(0x10000);
+            for (int read; hashedSize < channel.size(); hashedSize += read) {
+                buffer.clear();
+                read = channel.read(buffer, hashedSize);
+                if (read <= 0) break;
+                hasher.update(buffer.array(), 0, read);
+            }
+            return hasher.getValue();
+        }
+
+        private void resetReceivedParts() {
+            receivedParts.clear();
+            receivedSize = 0;
+            partSize = 0;
+            hashedSize = 0;
+            hasher.reset();
+            partsFile.delete();
+        }
+
+        // The parts file holds the file size and part size, followed by a bit for each received part
+        private void readReceivedParts() {
+            if ( ! partsFile.exists()) return;
+
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(partsFile.toPath()));
+                if (buffer.remaining() < 12 || buffer.getLong() != fileSize) {
+                    resetReceivedParts();
+                    return;
+                }
+                partSize = buffer.getInt();
+                if (partSize <= 0) {
+                    resetReceivedParts();
+                    return;
+                }
+                receivedParts.or(BitSet.valueOf(buffer));
+                receivedParts.clear(partCount(), Math.max(partCount(), receivedParts.length()));
+                for (int partId = receivedParts.nextSetBit(0); partId >= 0; partId = receivedParts.nextSetBit(partId + 1)) {
+                    receivedSize += Math.min(partSize, fileSize - (long) partId * partSize);
+                }
+                log.log(LogLevel.DEBUG, () -> "Resuming download of " + fileName + " for '" + reference.value() + "' with " +
+                                              receivedParts.cardinality() + " of " + partCount() + " parts received");
+            } catch (IOException e) {
+                log.log(LogLevel.WARNING, "Failed reading " + partsFile.getAbsolutePath() + ", starting over: " + e.getMessage());
+                resetReceivedParts();
+            }
+        }
+
+        private void writeReceivedParts() {
+            byte[] parts = receivedParts.toByteArray();
+            ByteBuffer buffer = ByteBuffer.allocate(12 + parts.length);
+            buffer.putLong(fileSize).putInt(partSize).put(parts);
+            try {
+                Files.write(partsFile.toPath(), buffer.array());
+            } catch (IOException e) {
+                // Only means a later session will receive the parts again
+                log.log(LogLevel.WARNING, "Failed writing " + partsFile.getAbsolutePath() + ": " + e.getMessage());
+            }
+        }
+
+        private void verifyNotAbandoned() {
+            if (abandoned)
+                throw new IllegalStateException("Session " + sessionId + " for " + fileName + " in '" + reference.value() +
+                                                "' is abandoned or closed");
+        }
+
+        private void deleteInprogressFiles() {
+            if (abandoned) return;
+
+            try {
+                Files.deleteIfExists(inprogressFile.toPath());
+                Files.deleteIfExists(partsFile.toPath());
+            } catch (IOException e) {
+                log.log(LogLevel.ERROR, "Failed deleting " + inprogressFile.getAbsolutePath() + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Returns the directory holding the archive which the given compressed file reference was received as,
+     * after it is unpacked into the download directory.
+     */
+    static File compressedFileReferenceDir(File downloadDirectory, FileReference reference) {
+        return new File(new File(downloadDirectory, ".compressed"), reference.value());
     }
 
     FileReceiver(Supervisor supervisor, FileReferenceDownloader downloader, File downloadDirectory, File tmpDirectory) {
@@ -152,9 +402,51 @@ public class FileReceiver {
         this.downloader = downloader;
         this.downloadDirectory = downloadDirectory;
         this.tmpDirectory = tmpDirectory;
+        deletePartialDownloads(tmpDirectory, Instant.now().minus(maxAgeOfPartialDownloads));
         registerMethods();
     }
 
+    /**
+     * Deletes the files of partial downloads in the given directory which were last written before the given instant,
+     * as well as parts files without the file in progress they belong to. These are left behind by sessions which
+     * were abandoned and never resumed, e.g., because the file reference was no longer needed. Other files are
+     * not touched, as the directory may be the download directory.
+     */
+    static void deletePartialDownloads(File tmpDirectory, Instant lastWrittenBefore) {
+        File[] files = tmpDirectory.listFiles();
+        if (files == null) return;
+
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(INPROGRESS_SUFFIX)) {
+                File partsFile = new File(tmpDirectory, name.substring(0, name.length() - INPROGRESS_SUFFIX.length()) + PARTS_SUFFIX);
+                // A resumable download is kept as long as either of its files is written to
+                if (lastWritten(file).isBefore(lastWrittenBefore) && lastWritten(partsFile).isBefore(lastWrittenBefore)) {
+                    deletePartialDownloadFile(partsFile); // Before the file in progress, so parts never refer to a missing file
+                    deletePartialDownloadFile(file);
+                }
+            }
+            else if (name.endsWith(PARTS_SUFFIX)) {
+                File inprogressFile = new File(tmpDirectory, name.substring(0, name.length() - PARTS_SUFFIX.length()) + INPROGRESS_SUFFIX);
+                if ( ! inprogressFile.exists())
+                    deletePartialDownloadFile(file);
+            }
+        }
+    }
+
+    private static Instant lastWritten(File file) {
+        return Instant.ofEpochMilli(file.lastModified()); // 0 if the file does not exist
+    }
+
+    private static void deletePartialDownloadFile(File file) {
+        try {
+            if (Files.deleteIfExists(file.toPath()))
+                log.log(LogLevel.DEBUG, () -> "Deleted abandoned partial download " + file.getAbsolutePath());
+        } catch (IOException e) {
+            log.log(LogLevel.WARNING, "Failed deleting abandoned partial download " + file.getAbsolutePath() + ": " + e.getMessage());
+        }
+    }
+
     private void registerMethods() {
         receiveFileMethod(this).forEach(supervisor::addMethod);
     }
@@ -176,6 +468,19 @@ public class FileReceiver {
                 .paramDesc(2, "partid", "relative part number starting at zero")
                 .paramDesc(3, "data", "bytes in this part")
                 .returnDesc(0, "ret", "0 if success, 1 otherwise"));
+        methods.add(new Method(MISSING_PARTS_METHOD, "sii", "iI", handler,"missingFileParts")
+                .paramDesc(0, "filereference", "file reference to download")
+                .paramDesc(1, "session-id", "Session id to be used for this transfer")
+                .paramDesc(2, "partsize", "size in bytes of all parts but the last")
+                .returnDesc(0, "ret", "0 if success, 1 otherwise")
+                .returnDesc(1, "partids", "ids of the parts which have not been received"));
+        methods.add(new Method(RECEIVE_VERIFIED_PART_METHOD, "siixl", "i", handler,"receiveVerifiedFilePart")
+                .paramDesc(0, "filereference", "file reference to download")
+                .paramDesc(1, "session-id", "Session id to be used for this transfer")
+                .paramDesc(2, "partid", "part number, starting at zero, with parts of the size given in missingFileParts")
+                .paramDesc(3, "data", "bytes in this part")
+                .paramDesc(4, "crc-code", "crc code (xxhash64) of the bytes in this part")
+                .returnDesc(0, "ret", "0 if success, 1 otherwise"));
         methods.add(new Method(RECEIVE_EOF_METHOD, "silis", "i", handler,"receiveFileEof")
                 .paramDesc(0, "filereference", "file reference to download")
                 .paramDesc(1, "session-id", "Session id to be used for this transfer")
@@ -224,6 +529,12 @@ public class FileReceiver {
                 log.severe("Session id " + sessionId + " already exist, impossible. Request from(" + req.target() + ")");
             } else {
                 try {
+                    // A new transfer of a file replaces an unfinished one, and resumes from where it stopped
+                    sessions.values().removeIf(session -> {
+                        if ( ! session.reference.equals(reference) || ! session.fileName.equals(fileName)) return false;
+                        session.abandon();
+                        return true;
+                    });
                     sessions.put(sessionId, new Session(downloadDirectory, tmpDirectory, sessionId, reference,
                                                         FileReferenceData.Type.valueOf(type),fileName, fileSize));
                 } catch (Exception e) {
@@ -251,12 +562,59 @@ public class FileReceiver {
             log.severe("Got exception " + e);
             retval = 1;
         }
-        double completeness = (double) session.currentFileSize / (double) session.fileSize;
+        double completeness = session.percentageReceived();
         log.log(LogLevel.DEBUG, () -> String.format("%.1f percent of '%s' downloaded", completeness * 100, reference.value()));
         downloader.setDownloadStatus(reference, completeness);
         req.returnValues().add(new Int32Value(retval));
     }
 
+    @SuppressWarnings({"UnusedDeclaration"})
+    public final void missingFileParts(Request req) {
+        log.log(LogLevel.DEBUG, () -> "Received method call '" + req.methodName() + "' with parameters : " + req.parameters());
+
+        FileReference reference = new FileReference(req.parameters().get(0).asString());
+        int sessionId = req.parameters().get(1).asInt32();
+        int partSize = req.parameters().get(2).asInt32();
+        Session session = getSession(sessionId);
+        int retval = verifySession(session, sessionId, reference);
+        int[] missingParts = new int[0];
+        if (retval == 0) {
+            try {
+                missingParts = session.missingParts(partSize);
+            } catch (Exception e) {
+                log.severe("Got exception " + e);
+                retval = 1;
+            }
+        }
+        req.returnValues().add(new Int32Value(retval));
+        req.returnValues().add(new Int32Array(missingParts));
+    }
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    public final void receiveVerifiedFilePart(Request req) {
+        log.log(LogLevel.DEBUG, () -> "Received method call '" + req.methodName() + "' with parameters : " + req.parameters());
+
+        FileReference reference = new FileReference(req.parameters().get(0).asString());
+        int sessionId = req.parameters().get(1).asInt32();
+        int partId = req.parameters().get(2).asInt32();
+        byte [] part = req.parameters().get(3).asData();
+        long xxhash = req.parameters().get(4).asInt64();
+        Session session = getSession(sessionId);
+        int retval = verifySession(session, sessionId, reference);
+        if (retval == 0) {
+            try {
+                session.addPart(partId, part, xxhash);
+            } catch (Exception e) {
+                log.severe("Got exception " + e);
+                retval = 1;
+            }
+            double completeness = session.percentageReceived();
+            log.log(LogLevel.DEBUG, () -> String.format("%.1f percent of '%s' downloaded", completeness * 100, reference.value()));
+            downloader.setDownloadStatus(reference, completeness);
+        }
+        req.returnValues().add(new Int32Value(retval));
+    }
+
     @SuppressWarnings({"UnusedDeclaration"})
     public final void receiveFileEof(Request req) {
         log.log(LogLevel.DEBUG, () -> "Received method call '" + req.methodName() + "' with parameters : " + req.parameters());
@@ -265,10 +623,17 @@ public class FileReceiver {
         long xxhash = req.parameters().get(2).asInt64();
         Session session = getSession(sessionId);
         int retval = verifySession(session, sessionId, reference);
-        File file = session.close(xxhash);
-        downloader.completedDownloading(reference, file);
-        synchronized (sessions) {
-            sessions.remove(sessionId);
+        if (retval == 0) {
+            try {
+                File file = session.close(xxhash, contentHash -> downloader.acceptsContent(reference, contentHash, req.target()));
+                downloader.completedDownloading(reference, file);
+            } catch (Exception e) {
+                log.log(LogLevel.WARNING, "Failed completing download of '" + reference.value() + "': " + e.getMessage());
+                retval = 1;
+            }
+            synchronized (sessions) {
+                sessions.remove(sessionId);
+            }
         }
         req.returnValues().add(new Int32Value(retval));
     }
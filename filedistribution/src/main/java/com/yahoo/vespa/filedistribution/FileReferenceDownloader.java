@@ -7,25 +7,42 @@ import com.yahoo.concurrent.DaemonThreadFactory;
 import com.yahoo.config.FileReference;
 import com.yahoo.jrt.Int32Value;
 import com.yahoo.jrt.Request;
+import com.yahoo.jrt.Spec;
+import com.yahoo.jrt.StringArray;
 import com.yahoo.jrt.StringValue;
+import com.yahoo.jrt.Supervisor;
+import com.yahoo.jrt.Target;
 import com.yahoo.log.LogLevel;
 import com.yahoo.vespa.config.Connection;
 import com.yahoo.vespa.config.ConnectionPool;
 
 import java.io.File;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 /**
  * Downloads file reference using rpc requests to config server and keeps track of files being downloaded
  * <p>
+ * When peer downloads are enabled, file references are first requested from peers which the config server knows
+ * have them, and file references which are downloaded are advertised to the config server as available from
+ * this, see {@link FileReferencePeers}. Content from peers is only accepted if its xxhash is one of those
+ * the config server has sent for the file reference.
+ * <p>
  * Some methods are synchronized to make sure access to downloads is atomic
  *
  * @author hmusum
@@ -35,21 +52,48 @@ public class FileReferenceDownloader {
 
     private final static Logger log = Logger.getLogger(FileReferenceDownloader.class.getName());
     private final static Duration rpcTimeout = Duration.ofSeconds(10);
+    private final static Duration peerUnavailablePeriod = Duration.ofMinutes(1);
+    private final static int maxPeerConnections = 10;
 
     private final ExecutorService downloadExecutor =
             Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new DaemonThreadFactory("filereference downloader"));
     private final ConnectionPool connectionPool;
     private final Map<FileReference, FileReferenceDownload> downloads = new LinkedHashMap<>();
     private final Map<FileReference, Double> downloadStatus = new HashMap<>();  // between 0 and 1
+    // The peer each file reference is being downloaded from, if any, and the content it must have
+    private final Map<FileReference, PeerDownload> peerDownloads = new HashMap<>();
     private final Duration downloadTimeout;
     private final Duration sleepBetweenRetries;
+    private final Supervisor supervisor;
+    // Peers which did not serve a file reference, and until when to not ask them again
+    private final Map<String, Instant> unavailablePeers = new HashMap<>();
+    private final Map<String, Target> peerConnections = new LinkedHashMap<String, Target>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Target> eldest) {
+            if (size() <= maxPeerConnections) return false;
+            eldest.getValue().close();
+            return true;
+        }
+    };
+    // All connections made to peers, also those no longer in use, to tell content from peers from that of config servers
+    private final Set<Target> peerTargets = Collections.newSetFromMap(new WeakHashMap<>());
+    private volatile Optional<String> peerSpec = Optional.empty();
 
     FileReferenceDownloader(File downloadDirectory, File tmpDirectory, ConnectionPool connectionPool, Duration timeout, Duration sleepBetweenRetries) {
         this.connectionPool = connectionPool;
         this.downloadTimeout = timeout;
         this.sleepBetweenRetries = sleepBetweenRetries;
+        this.supervisor = connectionPool.getSupervisor();
         // Needed to receive RPC calls receiveFile* from server after asking for files
-        new FileReceiver(connectionPool.getSupervisor(), this, downloadDirectory, tmpDirectory);
+        new FileReceiver(supervisor, this, downloadDirectory, tmpDirectory);
+    }
+
+    /**
+     * Makes this download file references from peers which have them, when possible, and advertise
+     * the file references it downloads as available from the given spec.
+     */
+    void enablePeerDownloads(String spec) {
+        peerSpec = Optional.of(spec);
     }
 
     private void startDownload(Duration timeout, FileReferenceDownload fileReferenceDownload) {
@@ -93,7 +137,9 @@ public class FileReferenceDownloader {
             if (download != null) {
                 downloadStatus.put(fileReference, 1.0);
                 downloads.remove(fileReference);
+                peerDownloads.remove(fileReference);
                 download.future().set(Optional.of(file));
+                peerSpec.ifPresent(spec -> advertise(spec, fileReference));
             } else {
                 log.log(LogLevel.DEBUG, () -> "Received '" + fileReference + "', which was not requested. Can be ignored if happening during upgrades/restarts");
             }
@@ -104,10 +150,45 @@ public class FileReferenceDownloader {
         synchronized (downloads) {
             downloadStatus.put(fileReference, 0.0);
             downloads.remove(fileReference);
+            peerDownloads.remove(fileReference);
+        }
+    }
+
+    /**
+     * Returns whether content of the given file reference with the given xxhash, received on the given connection,
+     * is accepted. Content from config servers is always accepted, while content from peers must have an xxhash
+     * which the config server has sent for the file reference. If content from a peer is rejected, the peer is
+     * not used for a while, and the file reference is downloaded again.
+     */
+    boolean acceptsContent(FileReference fileReference, long xxhash, Target source) {
+        synchronized (peerConnections) {
+            if ( ! peerTargets.contains(source)) return true;
+        }
+        FileReferenceDownload retry;
+        synchronized (downloads) {
+            PeerDownload peerDownload = peerDownloads.get(fileReference);
+            if (peerDownload != null && peerDownload.xxhashes.contains(xxhash)) return true;
+
+            log.log(LogLevel.WARNING, "Rejecting content of file reference '" + fileReference.value() + "' from peer " +
+                                      (peerDownload == null ? source : peerDownload.peer) + ": Its xxhash " + xxhash +
+                                      " does not match content sent by the config server");
+            if (peerDownload == null) return false;
+
+            peerDownloads.remove(fileReference);
+            markUnavailable(peerDownload.peer);
+            retry = downloads.get(fileReference);
         }
+        if (retry != null)
+            downloadExecutor.submit(() -> startDownload(downloadTimeout, retry));
+        return false;
     }
 
     private boolean startDownloadRpc(FileReferenceDownload fileReferenceDownload, int retryCount) {
+        if (peerSpec.isPresent() && startDownloadFromPeer(fileReferenceDownload)) return true;
+        synchronized (downloads) {
+            peerDownloads.remove(fileReferenceDownload.fileReference());
+        }
+
         Connection connection = connectionPool.getCurrent();
         Request request = new Request("filedistribution.serveFile");
         String fileReference = fileReferenceDownload.fileReference().value();
@@ -134,6 +215,77 @@ public class FileReferenceDownloader {
         }
     }
 
+    private boolean startDownloadFromPeer(FileReferenceDownload fileReferenceDownload) {
+        FileReference fileReference = fileReferenceDownload.fileReference();
+        Request peersRequest = new Request(FileReferencePeers.GET_PEERS_METHOD);
+        peersRequest.parameters().add(new StringValue(fileReference.value()));
+        execute(peersRequest, connectionPool.getCurrent());
+        if (peersRequest.isError() || ! peersRequest.checkReturnTypes("SL")) {
+            log.log(LogLevel.DEBUG, () -> "Could not get peers for file reference '" + fileReference.value() + "': " + peersRequest.errorMessage());
+            return false;
+        }
+        Set<Long> xxhashes = LongStream.of(peersRequest.returnValues().get(1).asInt64Array()).boxed().collect(Collectors.toSet());
+        for (String peer : availablePeers(peersRequest.returnValues().get(0).asStringArray())) {
+            // Recorded before asking, as the peer starts sending as soon as it has answered
+            synchronized (downloads) {
+                peerDownloads.put(fileReference, new PeerDownload(peer, xxhashes));
+            }
+            Request request = new Request("filedistribution.serveFile");
+            request.parameters().add(new StringValue(fileReference.value()));
+            request.parameters().add(new Int32Value(1)); // Peers should only serve what they have
+            peerConnection(peer).invokeSync(request, (double) rpcTimeout.getSeconds());
+            if (validateResponse(request) && request.returnValues().get(0).asInt32() == 0) {
+                log.log(LogLevel.DEBUG, () -> "Found file reference '" + fileReference.value() + "' available at peer " + peer);
+                return true;
+            }
+            log.log(LogLevel.DEBUG, () -> "File reference '" + fileReference.value() + "' not available at peer " + peer +
+                                          (request.isError() ? ": " + request.errorMessage() : ""));
+            markUnavailable(peer);
+        }
+        return false;
+    }
+
+    /** Returns the given peers, except this and those which have failed recently */
+    private List<String> availablePeers(String[] peers) {
+        Instant now = Instant.now();
+        synchronized (unavailablePeers) {
+            unavailablePeers.values().removeIf(until -> until.isBefore(now));
+            return Stream.of(peers)
+                    .filter(peer -> ! peer.equals(peerSpec.orElse(null)))
+                    .filter(peer -> ! unavailablePeers.containsKey(peer))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private void markUnavailable(String peer) {
+        synchronized (unavailablePeers) {
+            unavailablePeers.put(peer, Instant.now().plus(peerUnavailablePeriod));
+        }
+    }
+
+    // Connections are kept to serve as the connection the peer sends the file reference back on
+    private Target peerConnection(String peer) {
+        synchronized (peerConnections) {
+            Target target = peerConnections.get(peer);
+            if (target == null || ! target.isValid()) {
+                target = supervisor.connect(new Spec(peer));
+                peerConnections.put(peer, target);
+                peerTargets.add(target);
+            }
+            return target;
+        }
+    }
+
+    private void advertise(String spec, FileReference fileReference) {
+        Request request = new Request(FileReferencePeers.ADD_PEER_METHOD);
+        request.parameters().add(new StringValue(spec));
+        request.parameters().add(new StringArray(new String[] { fileReference.value() }));
+        connectionPool.getCurrent().invokeAsync(request, (double) rpcTimeout.getSeconds(), advertisement -> {
+            if (advertisement.isError())
+                log.log(LogLevel.DEBUG, () -> "Failed advertising file reference '" + fileReference.value() + "': " + advertisement.errorMessage());
+        });
+    }
+
     boolean isDownloading(FileReference fileReference) {
         synchronized (downloads) {
             return downloads.containsKey(fileReference);
@@ -197,4 +349,17 @@ public class FileReferenceDownloader {
     public Duration getDownloadTimeout() {
         return downloadTimeout;
     }
+
+    /** A download from a peer, and the xxhashes of the content the config server has sent for the file reference */
+    private static class PeerDownload {
+
+        private final String peer;
+        private final Set<Long> xxhashes;
+
+        PeerDownload(String peer, Set<Long> xxhashes) {
+            this.peer = peer;
+            this.xxhashes = xxhashes;
+        }
+
+    }
 }
@@ -0,0 +1,146 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.filedistribution;
+
+import com.yahoo.config.FileReference;
+import com.yahoo.jrt.Target;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps track of which peers have advertised that they have downloaded file references, so downloaders
+ * can get file references from those peers instead of from config servers. Peers are identified by the spec
+ * of the RPC server they serve file references on. Only the most recently advertised peers of the most
+ * recently used file references are kept.
+ * <p>
+ * Peers are only handed out together with the xxhashes of the content this has sent for the file reference,
+ * so downloaders can verify what they get from peers. Advertisements are only accepted from clients which
+ * this has sent the file reference to, or handed out peers of it to, on the connection they advertise on.
+ *
+ * @see FileDistributionRpcServer
+ */
+public class FileReferencePeers {
+
+    public final static String ADD_PEER_METHOD = "filedistribution.addFileReferencePeer";
+    public final static String GET_PEERS_METHOD = "filedistribution.getFileReferencePeers";
+
+    private static final int maxFileReferences = 1000;
+    private static final int maxPeersPerFileReference = 100;
+    private static final int maxXxhashesPerFileReference = 10;
+
+    private final Random random;
+    private final Map<FileReference, Entry> entries = new LinkedHashMap<FileReference, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FileReference, Entry> eldest) {
+            return size() > maxFileReferences;
+        }
+    };
+
+    public FileReferencePeers() {
+        this(new Random());
+    }
+
+    FileReferencePeers(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * Records that the given client has asked for the given file reference, and may advertise it when it has
+     * downloaded it. This must be done before the content is sent, as clients advertise as soon as they have it.
+     */
+    public synchronized void serving(Target client, FileReference fileReference) {
+        entry(fileReference).clients.add(client);
+    }
+
+    /** Records that content of the given file reference, having the given xxhash, was sent */
+    public synchronized void served(FileReference fileReference, long xxhash) {
+        Entry entry = entry(fileReference);
+        entry.xxhashes.remove(xxhash);
+        entry.xxhashes.add(xxhash);
+        removeEldest(entry.xxhashes, maxXxhashesPerFileReference);
+    }
+
+    /**
+     * Adds the given peer as having the given file reference, if the client advertising it was sent the file
+     * reference, or peers of it, by this.
+     *
+     * @return whether the peer was added
+     */
+    public synchronized boolean add(Target advertiser, String peer, FileReference fileReference) {
+        Entry entry = entries.get(fileReference);
+        if (entry == null || ! entry.clients.contains(advertiser)) return false;
+
+        add(entry, peer);
+        return true;
+    }
+
+    /** Adds the given peer as having the given file reference */
+    synchronized void add(String peer, FileReference fileReference) {
+        add(entry(fileReference), peer);
+    }
+
+    /**
+     * Returns at most the given number of peers having the given file reference, picked at random to spread load,
+     * and allows the given client to advertise the file reference when it has downloaded it. No peers are returned
+     * if this has not sent the file reference, as their content cannot be verified then.
+     */
+    public synchronized List<String> get(Target client, FileReference fileReference, int count) {
+        Entry entry = entries.get(fileReference);
+        if (entry == null || entry.xxhashes.isEmpty()) return Collections.emptyList();
+
+        entry.clients.add(client);
+        return get(fileReference, count);
+    }
+
+    /** Returns at most the given number of peers having the given file reference, picked at random to spread load */
+    public synchronized List<String> get(FileReference fileReference, int count) {
+        Entry entry = entries.get(fileReference);
+        if (entry == null) return Collections.emptyList();
+
+        List<String> candidates = new ArrayList<>(entry.peers);
+        Collections.shuffle(candidates, random);
+        return candidates.subList(0, Math.min(count, candidates.size()));
+    }
+
+    /** Returns the xxhashes of the content this has sent for the given file reference, which peers must serve */
+    public synchronized long[] xxhashes(FileReference fileReference) {
+        Entry entry = entries.get(fileReference);
+        if (entry == null) return new long[0];
+        return entry.xxhashes.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private Entry entry(FileReference fileReference) {
+        return entries.computeIfAbsent(fileReference, reference -> new Entry());
+    }
+
+    private static void add(Entry entry, String peer) {
+        entry.peers.remove(peer);
+        entry.peers.add(peer);
+        removeEldest(entry.peers, maxPeersPerFileReference);
+    }
+
+    private static void removeEldest(Set<?> set, int maxSize) {
+        if (set.size() <= maxSize) return;
+        Iterator<?> eldest = set.iterator();
+        eldest.next();
+        eldest.remove();
+    }
+
+    private static class Entry {
+
+        final LinkedHashSet<String> peers = new LinkedHashSet<>();
+        final LinkedHashSet<Long> xxhashes = new LinkedHashSet<>();
+        // Connections are only weakly referenced, so clients are forgotten when their connections are gone
+        final Set<Target> clients = Collections.newSetFromMap(new WeakHashMap<>());
+
+    }
+
+}
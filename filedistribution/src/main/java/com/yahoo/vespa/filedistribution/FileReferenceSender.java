@@ -0,0 +1,198 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.filedistribution;
+
+import com.yahoo.config.FileReference;
+import com.yahoo.jrt.DataValue;
+import com.yahoo.jrt.Int32Value;
+import com.yahoo.jrt.Int64Value;
+import com.yahoo.jrt.Request;
+import com.yahoo.jrt.RequestWaiter;
+import com.yahoo.jrt.StringValue;
+import com.yahoo.jrt.Target;
+import net.jpountz.xxhash.XXHash64;
+import net.jpountz.xxhash.XXHashFactory;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+/**
+ * Sends a file reference to a target in parts, by calling the methods of its {@link FileReceiver}. Targets which
+ * can tell which parts they are missing get only those, verified by their xxhash, with several parts in flight at
+ * once. Other targets get all parts, in order.
+ */
+public class FileReferenceSender {
+
+    private static final Logger log = Logger.getLogger(FileReferenceSender.class.getName());
+
+    private static final int PART_SIZE = 0x100000;
+    private static final int MAX_PARTS_IN_FLIGHT = 8;
+    private final XXHash64 partHasher = XXHashFactory.fastestInstance().hash64();
+    private final Target target;
+
+    public FileReferenceSender(Target target) {
+        this.target = target;
+    }
+
+    @Override
+    public String toString() {
+        return target.toString();
+    }
+
+    /** Sends the given file reference data, followed by the given status, which is non-zero if the data could not be read */
+    public void send(FileReferenceData fileData, int statusCode, String statusDescription) {
+        int session = sendMeta(fileData);
+        Optional<BitSet> missingParts = requestMissingParts(session, fileData);
+        if (missingParts.isPresent())
+            sendMissingParts(session, fileData, missingParts.get());
+        else
+            sendParts(session, fileData);
+        sendEof(session, fileData, statusCode, statusDescription);
+    }
+
+    private Optional<BitSet> requestMissingParts(int session, FileReferenceData fileData) {
+        Request request = new Request(FileReceiver.MISSING_PARTS_METHOD);
+        request.parameters().add(new StringValue(fileData.fileReference().value()));
+        request.parameters().add(new Int32Value(session));
+        request.parameters().add(new Int32Value(PART_SIZE));
+        invokeRpcIfValidConnection(request);
+        if (request.errorCode() == com.yahoo.jrt.ErrorCode.NO_SUCH_METHOD) {
+            return Optional.empty(); // Target only receives parts in order
+        } else if (request.isError()) {
+            throw new IllegalArgumentException("Failed delivering reference '" + fileData.fileReference().value() + "' to " +
+                                                       target.toString() + " with error: '" + request.errorMessage() + "'.");
+        } else {
+            if (request.returnValues().get(0).asInt32() != 0) {
+                throw new IllegalArgumentException("Unknown error from target '" + target.toString() + "' during rpc call " + request.methodName());
+            }
+            BitSet missingParts = new BitSet();
+            for (int partId : request.returnValues().get(1).asInt32Array())
+                missingParts.set(partId);
+            return Optional.of(missingParts);
+        }
+    }
+
+    // All content is read, also of parts which are not sent, as the xxhash of the whole file is computed while reading
+    private void sendMissingParts(int session, FileReferenceData fileData, BitSet missingParts) {
+        Semaphore partsInFlight = new Semaphore(MAX_PARTS_IN_FLIGHT);
+        AtomicReference<String> error = new AtomicReference<>();
+        ByteBuffer bb = ByteBuffer.allocate(PART_SIZE);
+        for (int partId = 0; readPart(fileData, bb) && error.get() == null; partId++) {
+            if (missingParts.get(partId)) {
+                byte [] buf = Arrays.copyOf(bb.array(), bb.position());
+                partsInFlight.acquireUninterruptibly();
+                sendPartAsync(session, fileData.fileReference(), partId, buf, request -> {
+                    if (request.isError())
+                        error.compareAndSet(null, "Failed delivering reference '" + fileData.fileReference().value() + "' to " +
+                                                  target.toString() + " with error: '" + request.errorMessage() + "'.");
+                    else if (request.returnValues().get(0).asInt32() != 0)
+                        error.compareAndSet(null, "Unknown error from target '" + target.toString() + "' during rpc call " + request.methodName());
+                    partsInFlight.release();
+                });
+            }
+            bb.clear();
+        }
+        partsInFlight.acquireUninterruptibly(MAX_PARTS_IN_FLIGHT);
+        if (error.get() != null) throw new IllegalArgumentException(error.get());
+    }
+
+    private boolean readPart(FileReferenceData fileData, ByteBuffer bb) {
+        while (bb.hasRemaining() && fileData.nextContent(bb) > 0) { }
+        return bb.position() > 0;
+    }
+
+    private void sendPartAsync(int session, FileReference ref, int partId, byte [] buf, RequestWaiter waiter) {
+        Request request = new Request(FileReceiver.RECEIVE_VERIFIED_PART_METHOD);
+        request.parameters().add(new StringValue(ref.value()));
+        request.parameters().add(new Int32Value(session));
+        request.parameters().add(new Int32Value(partId));
+        request.parameters().add(new DataValue(buf));
+        request.parameters().add(new Int64Value(partHasher.hash(buf, 0, buf.length, 0)));
+        if (target.isValid()) {
+            target.invokeAsync(request, 600, waiter);
+        } else {
+            throw new RuntimeException("Connection to " + target + " is invalid", target.getConnectionLostReason());
+        }
+    }
+
+    private void sendParts(int session, FileReferenceData fileData) {
+        ByteBuffer bb = ByteBuffer.allocate(0x100000);
+        for (int partId = 0, read = fileData.nextContent(bb); read >= 0; partId++, read = fileData.nextContent(bb)) {
+            byte [] buf = bb.array();
+            if (buf.length != bb.position()) {
+                buf = new byte [bb.position()];
+                bb.flip();
+                bb.get(buf);
+            }
+            sendPart(session, fileData.fileReference(), partId, buf);
+            bb.clear();
+        }
+    }
+
+    private int sendMeta(FileReferenceData fileData) {
+        Request request = new Request(FileReceiver.RECEIVE_META_METHOD);
+        request.parameters().add(new StringValue(fileData.fileReference().value()));
+        request.parameters().add(new StringValue(fileData.filename()));
+        request.parameters().add(new StringValue(fileData.type().name()));
+        request.parameters().add(new Int64Value(fileData.size()));
+        invokeRpcIfValidConnection(request);
+        if (request.isError()) {
+            log.warning("Failed delivering meta for reference '" + fileData.fileReference().value() + "' with file '" + fileData.filename() + "' to " +
+                    target.toString() + " with error: '" + request.errorMessage() + "'.");
+            return 1;
+        } else {
+            if (request.returnValues().get(0).asInt32() != 0) {
+                throw new IllegalArgumentException("Unknown error from target '" + target.toString() + "' during rpc call " + request.methodName());
+            }
+            return request.returnValues().get(1).asInt32();
+        }
+    }
+
+    private void sendPart(int session, FileReference ref, int partId, byte [] buf) {
+        Request request = new Request(FileReceiver.RECEIVE_PART_METHOD);
+        request.parameters().add(new StringValue(ref.value()));
+        request.parameters().add(new Int32Value(session));
+        request.parameters().add(new Int32Value(partId));
+        request.parameters().add(new DataValue(buf));
+        invokeRpcIfValidConnection(request);
+        if (request.isError()) {
+            throw new IllegalArgumentException("Failed delivering reference '" + ref.value() + "' to " +
+                                                       target.toString() + " with error: '" + request.errorMessage() + "'.");
+        } else {
+            if (request.returnValues().get(0).asInt32() != 0) {
+                throw new IllegalArgumentException("Unknown error from target '" + target.toString() + "' during rpc call " + request.methodName());
+            }
+        }
+    }
+
+    private void sendEof(int session, FileReferenceData fileData, int statusCode, String statusDescription) {
+        Request request = new Request(FileReceiver.RECEIVE_EOF_METHOD);
+        request.parameters().add(new StringValue(fileData.fileReference().value()));
+        request.parameters().add(new Int32Value(session));
+        request.parameters().add(new Int64Value(fileData.xxhash()));
+        request.parameters().add(new Int32Value(statusCode));
+        request.parameters().add(new StringValue(statusDescription));
+        invokeRpcIfValidConnection(request);
+        if (request.isError()) {
+            throw new IllegalArgumentException("Failed delivering reference '" + fileData.fileReference().value() + "' with file '" + fileData.filename() + "' to " +
+                                                       target.toString() + " with error: '" + request.errorMessage() + "'.");
+        } else {
+            if (request.returnValues().get(0).asInt32() != 0) {
+                throw new IllegalArgumentException("Unknown error from target '" + target.toString() + "' during rpc call " + request.methodName());
+            }
+        }
+    }
+
+    private void invokeRpcIfValidConnection(Request request) {
+        if (target.isValid()) {
+            target.invokeSync(request, 600);
+        } else {
+            throw new RuntimeException("Connection to " + target + " is invalid", target.getConnectionLostReason());
+        }
+    }
+
+}
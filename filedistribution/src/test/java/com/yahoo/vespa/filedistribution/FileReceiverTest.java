@@ -11,13 +11,20 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.stream.Collectors;
 
 public class FileReceiverTest {
     private File root;
@@ -64,6 +71,128 @@ public class FileReceiverTest {
         File downloadDir = new File(root, "ref");
         assertEquals("1", IOUtils.readFile(new File(downloadDir, "a")));
         assertEquals("2", IOUtils.readFile(new File(downloadDir, "b")));
+        File archive = new File(FileReceiver.compressedFileReferenceDir(root, new FileReference("ref")), "a");
+        assertArrayEquals("The received archive is kept for serving to peers", data, Files.readAllBytes(archive.toPath()));
+    }
+
+    @Test
+    public void receivePartsOutOfOrder() throws IOException {
+        byte[] content = Utf8.toBytes("first part\nsecond part\nthird part\n");
+        FileReceiver.Session session = new FileReceiver.Session(root, tempDir, 1, new FileReference("ref"),
+                                                                FileReferenceData.Type.file, "myfile", content.length);
+        assertArrayEquals(new int[] { 0, 1, 2 }, session.missingParts(12));
+        addPart(session, content, 12, 2);
+        addPart(session, content, 12, 0);
+        assertArrayEquals(new int[] { 1 }, session.missingParts(12));
+        addPart(session, content, 12, 1);
+        assertEquals(1.0, session.percentageReceived(), 0.0001);
+
+        File file = session.close(hasher.hash(ByteBuffer.wrap(content), 0));
+        assertEquals(Utf8.toString(content), Utf8.toString(Files.readAllBytes(file.toPath())));
+        assertEquals(0, tempDir.list().length);
+    }
+
+    @Test
+    public void abandonedPartialDownloadsAreDeleted() throws IOException {
+        byte[] content = Utf8.toBytes("first part\nsecond part\nthird part\n");
+        FileReceiver.Session old = new FileReceiver.Session(root, tempDir, 1, new FileReference("old"),
+                                                            FileReferenceData.Type.file, "myfile", content.length);
+        old.missingParts(12);
+        addPart(old, content, 12, 1);
+        old.abandon();
+        FileReceiver.Session recent = new FileReceiver.Session(root, tempDir, 2, new FileReference("recent"),
+                                                               FileReferenceData.Type.file, "myfile", content.length);
+        recent.missingParts(12);
+        addPart(recent, content, 12, 1);
+        recent.abandon();
+        File orphanedParts = new File(tempDir, "orphan-myfile.parts");
+        File other = new File(tempDir, "other");
+        assertTrue(orphanedParts.createNewFile());
+        assertTrue(other.createNewFile());
+
+        Instant now = Instant.now();
+        long longAgo = now.minus(Duration.ofDays(2)).toEpochMilli();
+        for (File file : tempDir.listFiles())
+            assertTrue(file.setLastModified(file.getName().startsWith("recent") ? now.toEpochMilli() : longAgo));
+
+        FileReceiver.deletePartialDownloads(tempDir, now.minus(Duration.ofDays(1)));
+        assertEquals(Arrays.asList("other", "recent-myfile.inprogress", "recent-myfile.parts"),
+                     Arrays.stream(tempDir.list()).sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void resumeInterruptedTransfer() throws IOException {
+        byte[] content = Utf8.toBytes("first part\nsecond part\nthird part\n");
+        FileReference ref = new FileReference("ref");
+        FileReceiver.Session first = new FileReceiver.Session(root, tempDir, 1, ref, FileReferenceData.Type.file, "myfile", content.length);
+        first.missingParts(12);
+        addPart(first, content, 12, 1);
+        first.abandon();
+
+        FileReceiver.Session second = new FileReceiver.Session(root, tempDir, 2, ref, FileReferenceData.Type.file, "myfile", content.length);
+        assertEquals(12.0 / content.length, second.percentageReceived(), 0.0001);
+        assertArrayEquals(new int[] { 0, 2 }, second.missingParts(12));
+        addPart(second, content, 12, 2);
+        addPart(second, content, 12, 0);
+        File file = second.close(hasher.hash(ByteBuffer.wrap(content), 0));
+        assertEquals(Utf8.toString(content), Utf8.toString(Files.readAllBytes(file.toPath())));
+
+        FileReceiver.Session third = new FileReceiver.Session(root, tempDir, 3, ref, FileReferenceData.Type.file, "other", content.length);
+        third.missingParts(12);
+        addPart(third, content, 12, 1);
+        assertArrayEquals("Parts of another size are received again", new int[] { 0, 1, 2, 3 }, third.missingParts(10));
+    }
+
+    @Test
+    public void workForAbandonedSessionDoesNotDisturbTheSessionResumingIt() throws IOException {
+        byte[] content = Utf8.toBytes("first part\nsecond part\nthird part\n");
+        FileReference ref = new FileReference("ref");
+        FileReceiver.Session first = new FileReceiver.Session(root, tempDir, 1, ref, FileReferenceData.Type.file, "myfile", content.length);
+        first.missingParts(12);
+        addPart(first, content, 12, 1);
+
+        // A new meta for the same file abandons the first session, while a part for it is still in flight
+        first.abandon();
+        FileReceiver.Session second = new FileReceiver.Session(root, tempDir, 2, ref, FileReferenceData.Type.file, "myfile", content.length);
+        try {
+            addPart(first, content, 12, 2);
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("is abandoned or closed"));
+        }
+        try {
+            first.close(hasher.hash(ByteBuffer.wrap(content), 0));
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("is abandoned or closed"));
+        }
+
+        assertArrayEquals(new int[] { 0, 2 }, second.missingParts(12));
+        addPart(second, content, 12, 0);
+        addPart(second, content, 12, 2);
+        File file = second.close(hasher.hash(ByteBuffer.wrap(content), 0));
+        assertEquals(Utf8.toString(content), Utf8.toString(Files.readAllBytes(file.toPath())));
+        assertEquals(0, tempDir.list().length);
+    }
+
+    @Test
+    public void partWithWrongHashIsRejected() {
+        byte[] content = Utf8.toBytes("first part\nsecond part\n");
+        FileReceiver.Session session = new FileReceiver.Session(root, tempDir, 1, new FileReference("ref"),
+                                                                FileReferenceData.Type.file, "myfile", content.length);
+        session.missingParts(12);
+        try {
+            session.addPart(0, Arrays.copyOf(content, 12), 17);
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("is not equal to xxhash in request"));
+        }
+        assertArrayEquals(new int[] { 0, 1 }, session.missingParts(12));
+    }
+
+    private void addPart(FileReceiver.Session session, byte[] content, int partSize, int partId) {
+        byte[] part = Arrays.copyOfRange(content, partId * partSize, Math.min(content.length, (partId + 1) * partSize));
+        session.addPart(partId, part, hasher.hash(part, 0, part.length, 0));
     }
 
     private void transferPartsAndAssert(FileReference ref, String fileName, String all, int numParts) throws IOException {
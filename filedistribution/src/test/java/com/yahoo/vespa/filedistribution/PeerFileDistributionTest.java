@@ -0,0 +1,235 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.filedistribution;
+
+import com.yahoo.concurrent.DaemonThreadFactory;
+import com.yahoo.config.FileReference;
+import com.yahoo.io.IOUtils;
+import com.yahoo.jrt.Acceptor;
+import com.yahoo.jrt.Int32Value;
+import com.yahoo.jrt.Int64Array;
+import com.yahoo.jrt.ListenFailedException;
+import com.yahoo.jrt.Method;
+import com.yahoo.jrt.Request;
+import com.yahoo.jrt.Spec;
+import com.yahoo.jrt.StringArray;
+import com.yahoo.jrt.StringValue;
+import com.yahoo.jrt.Supervisor;
+import com.yahoo.jrt.Transport;
+import com.yahoo.vespa.config.JRTConnectionPool;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Simulates a config server and several nodes downloading the same file reference, on local ports.
+ */
+public class PeerFileDistributionTest {
+
+    private static final FileReference fileReference = new FileReference("model");
+    private static final int nodeCount = 5;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final List<Supervisor> supervisors = new ArrayList<>();
+    private final byte[] content = new byte[3 * 1024 * 1024 + 17];
+
+    @After
+    public void shutdown() {
+        supervisors.forEach(supervisor -> supervisor.transport().shutdown().join());
+    }
+
+    @Test
+    public void nodes_download_from_each_other_instead_of_from_config_server() throws Exception {
+        ConfigServer configServer = new ConfigServer();
+        List<FileDownloader> nodes = createNodes(configServer, true);
+
+        for (FileDownloader node : nodes) {
+            assertDownloaded(node);
+            waitForAdvertisement(configServer, nodes.indexOf(node) + 1);
+        }
+        assertEquals(1, configServer.serves.get());
+        assertEquals(content.length, configServer.bytesServed.get());
+    }
+
+    @Test
+    public void all_nodes_download_from_config_server_without_peers() throws Exception {
+        ConfigServer configServer = new ConfigServer();
+        List<FileDownloader> nodes = createNodes(configServer, false);
+
+        for (FileDownloader node : nodes)
+            assertDownloaded(node);
+        assertEquals(nodeCount, configServer.serves.get());
+        assertEquals((long) nodeCount * content.length, configServer.bytesServed.get());
+        assertEquals(Collections.emptyList(), configServer.peers.get(fileReference, nodeCount));
+    }
+
+    @Test
+    public void unavailable_peers_are_skipped() throws Exception {
+        ConfigServer configServer = new ConfigServer();
+        List<FileDownloader> nodes = createNodes(configServer, true);
+        assertDownloaded(nodes.get(0));
+        waitForAdvertisement(configServer, 1);
+        configServer.peers.add("tcp/localhost:1", fileReference);
+
+        assertDownloaded(nodes.get(1));
+        assertEquals(1, configServer.serves.get());
+    }
+
+    @Test
+    public void content_from_peers_not_matching_that_of_config_server_is_rejected() throws Exception {
+        ConfigServer configServer = new ConfigServer();
+        List<FileDownloader> nodes = createNodes(configServer, true);
+        assertDownloaded(nodes.get(0));
+        waitForAdvertisement(configServer, 1);
+
+        byte[] tampered = content.clone();
+        tampered[0]++;
+        Files.write(nodes.get(0).getFile(fileReference).get().toPath(), tampered);
+
+        assertDownloaded(nodes.get(1));
+        assertEquals(2, configServer.serves.get());
+    }
+
+    @Test
+    public void advertisements_from_clients_not_served_are_rejected() throws Exception {
+        ConfigServer configServer = new ConfigServer();
+        Request request = new Request(FileReferencePeers.ADD_PEER_METHOD);
+        request.parameters().add(new StringValue("tcp/localhost:1"));
+        request.parameters().add(new StringArray(new String[] { fileReference.value() }));
+        createSupervisor().connect(new Spec(configServer.spec)).invokeSync(request, 60);
+
+        assertEquals(1, request.returnValues().get(0).asInt32());
+        assertEquals(Collections.emptyList(), configServer.peers.get(fileReference, nodeCount));
+    }
+
+    @Test
+    public void peers_are_limited_and_picked_at_random() {
+        FileReferencePeers peers = new FileReferencePeers(new Random(1));
+        for (int i = 0; i < 200; i++)
+            peers.add("tcp/host" + i + ":19090", fileReference);
+        peers.add("tcp/host0:19090", fileReference);
+
+        assertEquals(5, peers.get(fileReference, 5).size());
+        assertEquals(100, peers.get(fileReference, 1000).size());
+        assertTrue("Re-advertised peer is kept", peers.get(fileReference, 1000).contains("tcp/host0:19090"));
+        assertTrue(peers.get(new FileReference("other"), 5).isEmpty());
+    }
+
+    private void assertDownloaded(FileDownloader node) throws IOException {
+        Optional<File> file = node.getFile(fileReference);
+        assertTrue(file.isPresent());
+        assertArrayEquals(content, Files.readAllBytes(file.get().toPath()));
+    }
+
+    private void waitForAdvertisement(ConfigServer configServer, int peerCount) throws InterruptedException {
+        long end = System.currentTimeMillis() + 60_000;
+        while (configServer.peers.get(fileReference, nodeCount).size() < peerCount && System.currentTimeMillis() < end)
+            Thread.sleep(10);
+        assertEquals(peerCount, configServer.peers.get(fileReference, nodeCount).size());
+    }
+
+    private List<FileDownloader> createNodes(ConfigServer configServer, boolean peerDownloads) throws IOException, ListenFailedException {
+        List<FileDownloader> nodes = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            JRTConnectionPool connectionPool = new JRTConnectionPool(Collections.singletonList(configServer.spec));
+            supervisors.add(connectionPool.getSupervisor());
+            File downloadDirectory = temporaryFolder.newFolder();
+            FileDownloader downloader = new FileDownloader(connectionPool, downloadDirectory, downloadDirectory,
+                                                           Duration.ofSeconds(60), Duration.ofMillis(100));
+            Supervisor supervisor = createSupervisor();
+            Acceptor acceptor = supervisor.listen(new Spec(0));
+            if (peerDownloads)
+                new FileDistributionRpcServer(supervisor, downloader, "tcp/localhost:" + acceptor.port());
+            else
+                new FileDistributionRpcServer(supervisor, downloader);
+            nodes.add(downloader);
+        }
+        return nodes;
+    }
+
+    private Supervisor createSupervisor() {
+        Supervisor supervisor = new Supervisor(new Transport());
+        supervisors.add(supervisor);
+        return supervisor;
+    }
+
+    /** Serves the file reference and keeps track of peers, like the file distribution methods of config servers */
+    public class ConfigServer {
+
+        private final FileReferencePeers peers = new FileReferencePeers();
+        private final AtomicInteger serves = new AtomicInteger();
+        private final AtomicLong bytesServed = new AtomicLong();
+        private final ExecutorService executor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("config server"));
+        private final File file;
+        private final String spec;
+
+        ConfigServer() throws IOException, ListenFailedException {
+            new Random(0).nextBytes(content);
+            file = new File(temporaryFolder.newFolder(fileReference.value()), "model.bin");
+            IOUtils.writeFile(file, content);
+
+            Supervisor supervisor = createSupervisor();
+            supervisor.addMethod(new Method("filedistribution.serveFile", "si", "is", this, "serveFile"));
+            supervisor.addMethod(new Method(FileReferencePeers.ADD_PEER_METHOD, "sS", "i", this, "addFileReferencePeer"));
+            supervisor.addMethod(new Method(FileReferencePeers.GET_PEERS_METHOD, "s", "SL", this, "getFileReferencePeers"));
+            spec = "tcp/localhost:" + supervisor.listen(new Spec(0)).port();
+        }
+
+        @SuppressWarnings("UnusedDeclaration")
+        public void serveFile(Request request) {
+            request.detach();
+            peers.serving(request.target(), fileReference);
+            executor.execute(() -> {
+                request.returnValues().add(new Int32Value(0)).add(new StringValue("OK"));
+                request.returnRequest();
+                try {
+                    FileReferenceData fileData = new LazyFileReferenceData(fileReference, file.getName(), FileReferenceData.Type.file, file);
+                    serves.incrementAndGet();
+                    bytesServed.addAndGet(fileData.size());
+                    new FileReferenceSender(request.target()).send(fileData, 0, "OK");
+                    peers.served(fileReference, fileData.xxhash());
+                    fileData.close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+
+        @SuppressWarnings("UnusedDeclaration")
+        public void addFileReferencePeer(Request request) {
+            boolean accepted = true;
+            for (String reference : request.parameters().get(1).asStringArray())
+                accepted &= peers.add(request.target(), request.parameters().get(0).asString(), new FileReference(reference));
+            request.returnValues().add(new Int32Value(accepted ? 0 : 1));
+        }
+
+        @SuppressWarnings("UnusedDeclaration")
+        public void getFileReferencePeers(Request request) {
+            FileReference reference = new FileReference(request.parameters().get(0).asString());
+            request.returnValues().add(new StringArray(peers.get(request.target(), reference, nodeCount).toArray(new String[0])));
+            request.returnValues().add(new Int64Array(peers.xxhashes(reference)));
+        }
+
+    }
+
+}
@@ -0,0 +1,247 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.indexinglanguage;
+
+import com.yahoo.vespa.indexinglanguage.expressions.ClearStateExpression;
+import com.yahoo.vespa.indexinglanguage.expressions.EchoExpression;
+import com.yahoo.vespa.indexinglanguage.expressions.Expression;
+import com.yahoo.vespa.indexinglanguage.expressions.ForEachExpression;
+import com.yahoo.vespa.indexinglanguage.expressions.GetVarExpression;
+import com.yahoo.vespa.indexinglanguage.expressions.GuardExpression;
+import com.yahoo.vespa.indexinglanguage.expressions.InputExpression;
+import com.yahoo.vespa.indexinglanguage.expressions.NowExpression;
+import com.yahoo.vespa.indexinglanguage.expressions.OutputExpression;
+import com.yahoo.vespa.indexinglanguage.expressions.RandomExpression;
+import com.yahoo.vespa.indexinglanguage.expressions.ScriptExpression;
+import com.yahoo.vespa.indexinglanguage.expressions.SelectInputExpression;
+import com.yahoo.vespa.indexinglanguage.expressions.SetLanguageExpression;
+import com.yahoo.vespa.indexinglanguage.expressions.SetVarExpression;
+import com.yahoo.vespa.indexinglanguage.expressions.StatementExpression;
+import com.yahoo.vespa.indexinglanguage.expressions.TokenizeExpression;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compiles scripts into a form which gives the same result, but is cheaper to execute.
+ * Statements which compute the same value from the same input, and only differ in the fields the value is
+ * output to, are fused into a single statement. This way a field which is e.g. indexed by one statement and
+ * summarized by another is tokenized once, and all the outputs share the tokenized value.
+ * <p>
+ * A statement is fused into an earlier one only when no statement between them depends on the order of the two,
+ * and when computing the value has no effects besides the outputs: Statements using variables, language
+ * selection, or values which differ between executions, are left as they are.
+ *
+ * @see ExpressionOptimizer
+ */
+public class ScriptCompiler extends ExpressionConverter {
+
+    @Override
+    protected boolean shouldConvert(Expression exp) {
+        return exp instanceof ScriptExpression;
+    }
+
+    @Override
+    protected Expression doConvert(Expression exp) {
+        return fuse((ScriptExpression)innerConvert((ScriptExpression)exp));
+    }
+
+    private static ScriptExpression fuse(ScriptExpression script) {
+        List<Pipeline> pipelines = new ArrayList<>(script.size());
+        for (StatementExpression statement : script) {
+            pipelines.add(new Pipeline(statement));
+        }
+        boolean fused = false;
+        for (int i = 0; i < pipelines.size(); ++i) {
+            Pipeline target = pipelines.get(i);
+            if (target.prefix == null) continue;
+
+            for (int j = i + 1; j < pipelines.size(); ) {
+                Pipeline candidate = pipelines.get(j);
+                if (target.canFuse(candidate, pipelines.subList(i + 1, j))) {
+                    target = target.fuse(candidate);
+                    pipelines.set(i, target);
+                    pipelines.remove(j);
+                    fused = true;
+                } else {
+                    ++j;
+                }
+            }
+        }
+        if ( ! fused) return script;
+
+        List<StatementExpression> statements = new ArrayList<>(pipelines.size());
+        for (Pipeline pipeline : pipelines) {
+            statements.add(pipeline.statement);
+        }
+        return new ScriptExpression(statements);
+    }
+
+    /** Returns the name of the document field which is accessed by the given field name or path */
+    private static String documentFieldOf(String fieldName) {
+        for (int i = 0; i < fieldName.length(); ++i) {
+            char c = fieldName.charAt(i);
+            if (c == '.' || c == '{' || c == '[') {
+                return fieldName.substring(0, i);
+            }
+        }
+        return fieldName;
+    }
+
+    /**
+     * A statement seen as a prefix computing a value, followed by outputs of that value. Statements either consist
+     * of just that pipeline, or of "clear_state | guard { pipeline; }", which is how indexing statements are written
+     * when a search definition is deployed.
+     */
+    private static class Pipeline {
+
+        final StatementExpression statement;
+        final boolean guarded;
+
+        /** The expressions computing the value, or null if this can not be fused with other statements */
+        final List<Expression> prefix;
+
+        /** The outputs of the value computed by the prefix */
+        final List<Expression> outputs;
+
+        /** The document fields read by this, or null if these are not known */
+        final Set<String> reads;
+
+        /** The document fields written by this, or null if these are not known */
+        final Set<String> writes;
+
+        Pipeline(StatementExpression statement) {
+            this.statement = statement;
+            List<Expression> body = statement.asList();
+            boolean guarded = false;
+            if (body.size() == 2 && body.get(0) instanceof ClearStateExpression && body.get(1) instanceof GuardExpression) {
+                Expression inner = ((GuardExpression)body.get(1)).getInnerExpression();
+                if (inner instanceof ScriptExpression && ((ScriptExpression)inner).size() == 1) {
+                    body = ((ScriptExpression)inner).get(0).asList();
+                    guarded = true;
+                }
+            }
+            this.guarded = guarded;
+
+            int split = body.size();
+            while (split > 0 && body.get(split - 1) instanceof OutputExpression) {
+                --split;
+            }
+            this.outputs = body.subList(split, body.size());
+
+            FieldAccessVisitor access = new FieldAccessVisitor();
+            access.visit(statement);
+            this.reads = access.opaque ? null : access.reads;
+            this.writes = access.opaque ? null : access.writes;
+
+            boolean fusable = split > 0 && split < body.size() && body.get(0) instanceof InputExpression;
+            for (int i = 0; fusable && i < split; ++i) {
+                fusable = isPure(body.get(i));
+            }
+            this.prefix = fusable && reads != null ? body.subList(0, split) : null;
+        }
+
+        /** Returns whether the given statement, which comes after the given statements, can be fused into this */
+        boolean canFuse(Pipeline candidate, List<Pipeline> between) {
+            if (candidate.prefix == null || candidate.guarded != guarded || ! candidate.prefix.equals(prefix)) {
+                return false;
+            }
+            // The candidate reads the value written by this, unless the prefix gives the same value when repeated
+            if ( ! Collections.disjoint(writes, candidate.reads) && ! isIdempotent(prefix)) {
+                return false;
+            }
+            for (Pipeline pipeline : between) {
+                if (pipeline.reads == null ||
+                    ! Collections.disjoint(pipeline.writes, candidate.reads) ||
+                    ! Collections.disjoint(pipeline.writes, candidate.writes) ||
+                    ! Collections.disjoint(pipeline.reads, candidate.writes)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Returns a pipeline which outputs the value of this to the outputs of both this and the given pipeline */
+        Pipeline fuse(Pipeline other) {
+            List<Expression> body = new ArrayList<>(prefix);
+            body.addAll(outputs);
+            body.addAll(other.outputs);
+            StatementExpression statement = new StatementExpression(body);
+            if (guarded) {
+                statement = new StatementExpression(new ClearStateExpression(),
+                                                    new GuardExpression(new ScriptExpression(statement)));
+            }
+            return new Pipeline(statement);
+        }
+
+    }
+
+    /** Returns whether the given expression computes the same value each time, without any other effects */
+    private static boolean isPure(Expression exp) {
+        PurityVisitor visitor = new PurityVisitor();
+        visitor.visit(exp);
+        return visitor.pure;
+    }
+
+    /** Returns whether applying the given prefix to its own output returns an equal value */
+    private static boolean isIdempotent(List<Expression> prefix) {
+        for (Expression exp : prefix.subList(1, prefix.size())) { // the first is the input
+            if (exp instanceof ForEachExpression) {
+                exp = ((ForEachExpression)exp).getInnerExpression();
+                if (exp instanceof StatementExpression && ((StatementExpression)exp).size() == 1) {
+                    exp = ((StatementExpression)exp).get(0);
+                }
+            }
+            if ( ! (exp instanceof TokenizeExpression)) {
+                return false; // tokenizing is idempotent as already annotated strings are not annotated again
+            }
+        }
+        return true;
+    }
+
+    private static class PurityVisitor extends ExpressionVisitor {
+
+        boolean pure = true;
+
+        @Override
+        protected void doVisit(Expression exp) {
+            pure &= ! (exp instanceof OutputExpression ||
+                       exp instanceof SetVarExpression ||
+                       exp instanceof GetVarExpression ||
+                       exp instanceof ClearStateExpression ||
+                       exp instanceof SetLanguageExpression ||
+                       exp instanceof EchoExpression ||
+                       exp instanceof NowExpression ||
+                       exp instanceof RandomExpression);
+        }
+    }
+
+    private static class FieldAccessVisitor extends ExpressionVisitor {
+
+        final Set<String> reads = new HashSet<>();
+        final Set<String> writes = new HashSet<>();
+        boolean opaque = false;
+
+        @Override
+        protected void doVisit(Expression exp) {
+            if (exp instanceof InputExpression) {
+                add(((InputExpression)exp).getFieldName(), reads);
+            } else if (exp instanceof OutputExpression) {
+                add(((OutputExpression)exp).getFieldName(), writes);
+            } else if (exp instanceof SelectInputExpression || exp instanceof SetLanguageExpression) {
+                opaque = true; // Reads fields this does not track, or changes how later statements are executed
+            }
+        }
+
+        private void add(String fieldName, Set<String> fields) {
+            if (fieldName == null) {
+                opaque = true;
+            } else {
+                fields.add(documentFieldOf(fieldName));
+            }
+        }
+    }
+
+}
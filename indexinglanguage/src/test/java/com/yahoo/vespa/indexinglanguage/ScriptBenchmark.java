@@ -0,0 +1,96 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.indexinglanguage;
+
+import com.yahoo.document.ArrayDataType;
+import com.yahoo.document.DataType;
+import com.yahoo.document.Document;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.Field;
+import com.yahoo.document.datatypes.Array;
+import com.yahoo.document.datatypes.IntegerFieldValue;
+import com.yahoo.document.datatypes.StringFieldValue;
+import com.yahoo.language.simple.SimpleLinguistics;
+import com.yahoo.vespa.indexinglanguage.expressions.Expression;
+import com.yahoo.vespa.indexinglanguage.expressions.ScriptExpression;
+import com.yahoo.vespa.indexinglanguage.expressions.StatementExpression;
+import com.yahoo.vespa.indexinglanguage.parser.ParseException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Microbenchmark of executing a typical indexing script on documents, as done by the indexing document processor,
+ * comparing the script as written with the script compiled by {@link ScriptCompiler}. Usage: ScriptBenchmark [documents]
+ */
+public class ScriptBenchmark {
+
+    private static final String[] statements = {
+            "clear_state | guard { input title | tokenize normalize stem:\"BEST\" | summary title | index title; }",
+            "clear_state | guard { input body | tokenize normalize stem:\"BEST\" | summary body | index body; }",
+            "clear_state | guard { input body | tokenize normalize stem:\"BEST\" | summary body_dynamic; }",
+            "clear_state | guard { input popularity | attribute popularity | summary popularity; }",
+            "clear_state | guard { input tags | for_each { tokenize normalize stem:\"BEST\" } | summary tags | index tags; }"
+    };
+
+    static DocumentType createType() {
+        DocumentType type = new DocumentType("bench");
+        type.addField(new Field("title", DataType.STRING));
+        type.addField(new Field("body", DataType.STRING));
+        type.addField(new Field("body_dynamic", DataType.STRING));
+        type.addField(new Field("popularity", DataType.INT));
+        type.addField(new Field("tags", new ArrayDataType(DataType.STRING)));
+        return type;
+    }
+
+    @SuppressWarnings("deprecation")
+    static ScriptExpression createScript(DocumentType type) throws ParseException {
+        List<StatementExpression> list = new ArrayList<>();
+        for (String statement : statements)
+            list.add(StatementExpression.fromString(statement, new SimpleLinguistics()));
+        ScriptExpression script = new ScriptExpression(list);
+        script.verify(type.createFieldValue());
+        return script;
+    }
+
+    static List<Document> createDocuments(DocumentType type, int count) {
+        List<Document> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Document document = new Document(type, "id:bench:bench::" + i);
+            document.setFieldValue("title", new StringFieldValue("The title of document number " + i));
+            document.setFieldValue("body", new StringFieldValue("The body of the document, which is quite a bit longer " +
+                                                                "than the title of the document, and contains some " +
+                                                                "repeated words, like document and words, " + i));
+            document.setFieldValue("popularity", new IntegerFieldValue(i));
+            Array<StringFieldValue> tags = new Array<>(DataType.getArray(DataType.STRING));
+            tags.add(new StringFieldValue("first tag"));
+            tags.add(new StringFieldValue("second tag " + i));
+            document.setFieldValue("tags", tags);
+            documents.add(document);
+        }
+        return documents;
+    }
+
+    private static double execute(Expression script, List<Document> documents) {
+        AdapterFactory adapterFactory = new SimpleAdapterFactory();
+        long startTime = System.nanoTime();
+        for (Document document : documents)
+            script.execute(adapterFactory, document);
+        return (System.nanoTime() - startTime) / 1000.0 / documents.size();
+    }
+
+    public static void main(String[] args) throws ParseException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        DocumentType type = createType();
+        ScriptExpression script = createScript(type);
+        Expression compiled = new ScriptCompiler().convert(script);
+
+        for (int round = 0; round < 10; round++) { // the first rounds are warmup
+            double writtenTime = execute(script, createDocuments(type, count));
+            double compiledTime = execute(compiled, createDocuments(type, count));
+
+            // Typical after warmup on one core: written 115 us, compiled 70 us per document
+            System.out.printf("Written: %6.2f us, compiled: %6.2f us per document\n", writtenTime, compiledTime);
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.indexinglanguage;
+
+import com.yahoo.document.DataType;
+import com.yahoo.document.Document;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.Field;
+import com.yahoo.document.datatypes.StringFieldValue;
+import com.yahoo.vespa.indexinglanguage.expressions.Expression;
+import com.yahoo.vespa.indexinglanguage.expressions.ScriptExpression;
+import com.yahoo.vespa.indexinglanguage.parser.ParseException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ScriptCompilerTestCase {
+
+    @Test
+    public void requireThatStatementsComputingTheSameValueAreFused() {
+        assertCompiled("{ input a | tokenize | index a; input a | tokenize | summary b; }",
+                       "{ input a | tokenize | index a | summary b; }");
+        assertCompiled("{ input a | lowercase | index b; input c | attribute c; input a | lowercase | summary d; }",
+                       "{ input a | lowercase | index b | summary d; input c | attribute c; }");
+        assertCompiled("{ input a | tokenize | index a; input a | tokenize | summary b; input a | tokenize | attribute c; }",
+                       "{ input a | tokenize | index a | summary b | attribute c; }");
+        assertCompiled("{ clear_state | guard { input a | tokenize normalize | index a; }; " +
+                       "  clear_state | guard { input a | tokenize normalize | summary b; }; }",
+                       "{ clear_state | guard { input a | tokenize normalize | index a | summary b; }; }");
+        assertCompiled("{ input a | for_each { tokenize } | index a; input a | for_each { tokenize } | summary a; }",
+                       "{ input a | for_each { tokenize } | index a | summary a; }");
+        assertCompiled("{ input a | if (input b == 'c') { input a | { input a | summary b; input a | summary c; }; }; }",
+                       "{ input a | if (input b == 'c') { input a | { input a | summary b | summary c; }; }; }");
+    }
+
+    @Test
+    public void requireThatStatementsComputingDifferentValuesAreNotFused() {
+        assertNotCompiled("{ input a | tokenize | index a; input a | tokenize normalize | summary b; }");
+        assertNotCompiled("{ input a | tokenize | index a; input b | tokenize | summary b; }");
+        assertNotCompiled("{ input a | tokenize | index a; clear_state | guard { input a | tokenize | summary b; }; }");
+        assertNotCompiled("{ input a | now | index a; input a | now | summary b; }");
+        assertNotCompiled("{ input a | get_var b | index a; input a | get_var b | summary b; }");
+        assertNotCompiled("{ input a | set_var b | index a; input a | set_var b | summary b; }");
+        assertNotCompiled("{ 'a' | index a; 'a' | summary b; }");
+    }
+
+    @Test
+    public void requireThatStatementsAreNotFusedAcrossStatementsDependingOnTheirOrder() {
+        assertNotCompiled("{ input a | trim | index b; input c | summary a; input a | trim | summary d; }");
+        assertNotCompiled("{ input a | trim | index b; input d | summary e; input a | trim | summary d; }");
+        assertNotCompiled("{ input a | trim | index b; input c | summary d; input a | trim | summary d; }");
+        assertNotCompiled("{ input a | trim | index b; input c | set_language; input a | trim | summary d; }");
+        assertNotCompiled("{ input a | trim | index b; select_input { c: summary c; }; input a | trim | summary d; }");
+        assertCompiled("{ input a | trim | index b; input c | summary e; input a | trim | summary d; }",
+                       "{ input a | trim | index b | summary d; input c | summary e; }");
+    }
+
+    @Test
+    public void requireThatStatementsAreFusedWhenReadingTheirOwnOutputOnlyIfThisGivesTheSameValue() {
+        assertNotCompiled("{ input a | lowercase | index a; input a | lowercase | summary b; }");
+        assertNotCompiled("{ input a | trim | tokenize | index a; input a | trim | tokenize | summary b; }");
+        assertCompiled("{ input a | tokenize | tokenize normalize | index a; input a | tokenize | tokenize normalize | summary b; }",
+                       "{ input a | tokenize | tokenize normalize | index a | summary b; }");
+    }
+
+    @Test
+    public void requireThatCompiledScriptsProduceTheSameDocuments() throws ParseException {
+        DocumentType type = new DocumentType("test");
+        type.addField(new Field("title", DataType.STRING));
+        type.addField(new Field("title_summary", DataType.STRING));
+        type.addField(new Field("body", DataType.STRING));
+        Expression script = ScriptExpression.fromString("{ clear_state | guard { input title | tokenize normalize stem:\"BEST\" | index title; }; " +
+                                                  "  clear_state | guard { input body | lowercase | summary body; }; " +
+                                                  "  clear_state | guard { input title | tokenize normalize stem:\"BEST\" | summary title_summary; }; }");
+        script.verify(type.createFieldValue());
+        Expression compiled = new ScriptCompiler().convert(script);
+        assertEquals(2, ((ScriptExpression)compiled).size());
+
+        Document output = script.execute(new SimpleAdapterFactory(), createDocument(type));
+        Document compiledOutput = compiled.execute(new SimpleAdapterFactory(), createDocument(type));
+        assertEquals(output, compiledOutput);
+        assertNotNull(((StringFieldValue)compiledOutput.getFieldValue("title_summary")).getSpanTree("linguistics"));
+        assertSame(compiledOutput.getFieldValue("title"), compiledOutput.getFieldValue("title_summary"));
+    }
+
+    private static Document createDocument(DocumentType type) {
+        Document document = new Document(type, "id:ns:test::");
+        document.setFieldValue("title", new StringFieldValue("The Title of a Document"));
+        document.setFieldValue("body", new StringFieldValue("The body of the document"));
+        return document;
+    }
+
+    private static void assertCompiled(String script, String expected) {
+        try {
+            assertEquals(ScriptExpression.fromString(expected).toString(),
+                         new ScriptCompiler().convert(ScriptExpression.fromString(script)).toString());
+        } catch (ParseException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    private static void assertNotCompiled(String script) {
+        assertCompiled(script, script);
+    }
+
+}
@@ -100,8 +100,9 @@ public class Acceptor {
     private void run() {
         while (serverChannel.isOpen()) {
             try {
-                parent.addConnection(new Connection(parent, owner, serverChannel.accept()));
-                parent.sync();
+                TransportThread transportThread = parent.selectThread();
+                transportThread.addConnection(new Connection(transportThread, owner, serverChannel.accept()));
+                transportThread.sync();
             } catch (ClosedChannelException ignore) {
             } catch (Exception e) {
                 log.log(Level.WARNING, "Error accepting connection", e);
@@ -9,11 +9,22 @@ class Buffer {
 
     static final int MAX_IO = 65000;
 
+    private final BufferPool pool;
     private ByteBuffer buf;
     private int        readPos;
     private int        writePos;
     private boolean    readMode;
 
+    private ByteBuffer alloc(int size) {
+        return (pool != null) ? pool.allocate(size) : ByteBuffer.allocate(size);
+    }
+
+    private void free(ByteBuffer old) {
+        if (pool != null) {
+            pool.release(old);
+        }
+    }
+
     private void setReadMode() {
         if (readMode) {
             buf.limit(writePos);
@@ -54,18 +65,51 @@ class Buffer {
             if (buf.capacity() + free < minFree) {
                 size = buf.capacity() + minFree;
             }
-            ByteBuffer tmp = ByteBuffer.allocate(size);
+            ByteBuffer tmp = alloc(size);
             tmp.order(buf.order());
             buf.position(readPos);
             buf.limit(writePos);
             tmp.put(buf);
+            free(buf);
             buf = tmp;
             readPos = 0;
         }
     }
 
+    /**
+     * Create a buffer backed by heap memory.
+     *
+     * @param size initial buffer size
+     **/
     public Buffer(int size) {
-        buf = ByteBuffer.allocate(size);
+        this(size, null);
+    }
+
+    /**
+     * Create a buffer backed by memory obtained from the given
+     * pool. Call {@link #dispose} to hand the memory back to the pool
+     * when the buffer is no longer needed.
+     *
+     * @param size initial buffer size
+     * @param pool where to allocate memory, null means heap memory
+     **/
+    public Buffer(int size, BufferPool pool) {
+        this.pool = pool;
+        buf = alloc(size);
+        readPos = 0;
+        writePos = 0;
+        readMode = false;
+    }
+
+    /**
+     * Release the memory backing this buffer to the pool it was
+     * obtained from. Any data in the buffer is discarded. The buffer
+     * may still be used afterwards, in which case new memory will be
+     * allocated as needed.
+     **/
+    public void dispose() {
+        free(buf);
+        buf = ByteBuffer.allocate(0);
         readPos = 0;
         writePos = 0;
         readMode = false;
@@ -75,14 +119,16 @@ class Buffer {
         int rpos = readMode? buf.position() : readPos;
         int wpos = readMode? writePos : buf.position();
         int used = wpos - rpos;
-        if (used > size || buf.capacity() <= size) {
+        int capacity = (pool != null) ? BufferPool.capacityFor(size) : size;
+        if (used > size || buf.capacity() <= capacity) {
             return false;
         }
-        ByteBuffer tmp = ByteBuffer.allocate(size);
+        ByteBuffer tmp = alloc(size);
         tmp.order(buf.order());
         buf.position(rpos);
         buf.limit(wpos);
         tmp.put(buf);
+        free(buf);
         buf = tmp;
         readPos = 0;
         writePos = used;
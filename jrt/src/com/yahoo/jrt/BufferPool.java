@@ -0,0 +1,128 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.jrt;
+
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A pool of direct byte buffers used as connection read and write
+ * buffers. Buffers are handed out in power-of-two size classes, and
+ * released buffers are kept for reuse as long as the total number of
+ * retained bytes stays below a fixed limit. Requests larger than the
+ * largest size class are served by unpooled heap buffers.
+ *
+ * <p>Using direct buffers lets socket reads and writes go straight
+ * to and from the buffer, avoiding the temporary direct buffer copy
+ * done by the JDK for heap buffers, while pooling avoids both the
+ * cost of allocating direct memory and young generation churn from
+ * repeatedly allocating large heap buffers when connection buffers
+ * grow and shrink.
+ **/
+class BufferPool {
+
+    static final int MIN_CLASS_BITS = 12; // 4 KiB
+    static final int MAX_CLASS_BITS = 23; // 8 MiB
+    static final long DEFAULT_MAX_RETAINED_BYTES = 64L * 1024 * 1024;
+
+    private static final BufferPool instance = new BufferPool(DEFAULT_MAX_RETAINED_BYTES, TransportMetrics.getInstance());
+
+    private final List<ConcurrentLinkedQueue<ByteBuffer>> classes = new ArrayList<>();
+    private final long             maxRetainedBytes;
+    private final AtomicLong       retainedBytes = new AtomicLong(0);
+    private final TransportMetrics metrics;
+
+    BufferPool(long maxRetainedBytes, TransportMetrics metrics) {
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.metrics = metrics;
+        for (int bits = MIN_CLASS_BITS; bits <= MAX_CLASS_BITS; bits++) {
+            classes.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /**
+     * Obtain the pool shared by all transports in this JVM.
+     *
+     * @return the shared buffer pool
+     **/
+    static BufferPool getInstance() { return instance; }
+
+    private static int sizeClass(int size) {
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+        return Math.max(bits, MIN_CLASS_BITS) - MIN_CLASS_BITS;
+    }
+
+    /**
+     * Obtain the capacity of the buffer that would be returned when
+     * asking for at least the given number of bytes.
+     *
+     * @return buffer capacity
+     * @param size minimum buffer size
+     **/
+    static int capacityFor(int size) {
+        int sizeClass = sizeClass(size);
+        if (sizeClass + MIN_CLASS_BITS > MAX_CLASS_BITS) {
+            return size;
+        }
+        return 1 << (sizeClass + MIN_CLASS_BITS);
+    }
+
+    /**
+     * Allocate a cleared buffer with room for at least the given
+     * number of bytes.
+     *
+     * @return the buffer
+     * @param size minimum buffer size
+     **/
+    ByteBuffer allocate(int size) {
+        int sizeClass = sizeClass(size);
+        if (sizeClass >= classes.size()) {
+            return ByteBuffer.allocate(size);
+        }
+        ByteBuffer buf = classes.get(sizeClass).poll();
+        if (buf != null) {
+            retainedBytes.addAndGet(-buf.capacity());
+            metrics.addBufferPoolBytesRetained(-buf.capacity());
+            metrics.incrementBufferPoolHits();
+            buf.clear();
+            return buf;
+        }
+        metrics.incrementBufferPoolMisses();
+        return ByteBuffer.allocateDirect(1 << (sizeClass + MIN_CLASS_BITS));
+    }
+
+    /**
+     * Return a buffer obtained from {@link #allocate} to the
+     * pool. The buffer must not be used by the caller afterwards.
+     *
+     * @param buf the buffer to release
+     **/
+    void release(ByteBuffer buf) {
+        if (!buf.isDirect()) {
+            return;
+        }
+        int sizeClass = sizeClass(buf.capacity());
+        if (sizeClass >= classes.size() || (1 << (sizeClass + MIN_CLASS_BITS)) != buf.capacity()) {
+            return;
+        }
+        if (retainedBytes.addAndGet(buf.capacity()) > maxRetainedBytes) {
+            retainedBytes.addAndGet(-buf.capacity());
+            return;
+        }
+        metrics.addBufferPoolBytesRetained(buf.capacity());
+        classes.get(sizeClass).offer(buf);
+    }
+
+    /**
+     * Obtain the number of bytes currently held by this pool.
+     *
+     * @return bytes retained for reuse
+     **/
+    long retainedBytes() {
+        return retainedBytes.get();
+    }
+}
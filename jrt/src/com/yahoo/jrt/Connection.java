@@ -33,15 +33,15 @@ class Connection extends Target {
     private int           state      = INITIAL;
     private Queue         queue      = new Queue();
     private Queue         myQueue    = new Queue();
-    private Buffer        input      = new Buffer(READ_SIZE * 2);
-    private Buffer        output     = new Buffer(WRITE_SIZE * 2);
+    private Buffer        input      = new Buffer(READ_SIZE * 2, BufferPool.getInstance());
+    private Buffer        output     = new Buffer(WRITE_SIZE * 2, BufferPool.getInstance());
     private int           maxInputSize  = 64*1024;
     private int           maxOutputSize = 64*1024;
     private Map<Integer, ReplyHandler> replyMap = new HashMap<>();
     private Map<TargetWatcher, TargetWatcher> watchers = new IdentityHashMap<>();
     private int           activeReqs = 0;
     private int           writeWork  = 0;
-    private Transport     parent;
+    private TransportThread parent;
     private Supervisor    owner;
     private Spec          spec;
     private CryptoSocket  socket;
@@ -88,17 +88,17 @@ class Connection extends Target {
         }
     }
 
-    public Connection(Transport parent, Supervisor owner,
+    public Connection(TransportThread parent, Supervisor owner,
                       SocketChannel channel) {
 
         this.parent = parent;
         this.owner = owner;
-        this.socket = parent.createCryptoSocket(channel, true);
+        this.socket = parent.transport().createCryptoSocket(channel, true);
         server = true;
         owner.sessionInit(this);
     }
 
-    public Connection(Transport parent, Supervisor owner, Spec spec, Object context) {
+    public Connection(TransportThread parent, Supervisor owner, Spec spec, Object context) {
         super(context);
         this.parent = parent;
         this.owner = owner;
@@ -115,7 +115,7 @@ class Connection extends Target {
         maxOutputSize = bytes;
     }
 
-    public Transport transport() {
+    public TransportThread transportThread() {
         return parent;
     }
 
@@ -170,7 +170,7 @@ class Connection extends Target {
             return this;
         }
         try {
-            socket = parent.createCryptoSocket(SocketChannel.open(spec.address()), false);
+            socket = parent.transport().createCryptoSocket(SocketChannel.open(spec.address()), false);
         } catch (Exception e) {
             setLostReason(e);
         }
@@ -358,6 +358,8 @@ class Connection extends Target {
         if (selectionKey != null) {
             selectionKey.cancel();
         }
+        input.dispose();
+        output.dispose();
     }
 
     public boolean isClosed() {
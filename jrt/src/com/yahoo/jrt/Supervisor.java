@@ -2,7 +2,8 @@
 package com.yahoo.jrt;
 
 
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -16,37 +17,9 @@ import java.util.HashMap;
  **/
 public class Supervisor {
 
-    private class AddMethod implements Runnable {
-        private Method method;
-        AddMethod(Method method) {
-            this.method = method;
-        }
-        public void run() {
-            methodMap.put(method.name(), method);
-        }
-    }
-
-    private class RemoveMethod implements Runnable {
-        private String methodName;
-        private Method method = null;
-        RemoveMethod(String methodName) {
-            this.methodName = methodName;
-        }
-        RemoveMethod(Method method) {
-            this.methodName = method.name();
-            this.method = method;
-        }
-        public void run() {
-            Method m = methodMap.remove(methodName);
-            if (method != null && m != method) {
-                methodMap.put(method.name(), method);
-            }
-        }
-    }
-
     private Transport               transport;
     private SessionHandler          sessionHandler = null;
-    private HashMap<String, Method> methodMap      = new HashMap<>();
+    private Map<String, Method>     methodMap      = new ConcurrentHashMap<>();
     private int                     maxInputBufferSize  = 0;
     private int                     maxOutputBufferSize = 0;
 
@@ -94,7 +67,7 @@ public class Supervisor {
      *
      * @return the method map
      **/
-    HashMap<String, Method> methodMap() {
+    Map<String, Method> methodMap() {
         return methodMap;
     }
 
@@ -122,7 +95,7 @@ public class Supervisor {
      * @param method the method to add
      **/
     public void addMethod(Method method) {
-        transport.perform(new AddMethod(method));
+        methodMap.put(method.name(), method);
     }
 
     /**
@@ -131,7 +104,7 @@ public class Supervisor {
      * @param methodName name of the method to remove
      **/
     public void removeMethod(String methodName) {
-        transport.perform(new RemoveMethod(methodName));
+        methodMap.remove(methodName);
     }
 
     /**
@@ -142,7 +115,7 @@ public class Supervisor {
      * @param method the method to remove
      **/
     public void removeMethod(Method method) {
-        transport.perform(new RemoveMethod(method));
+        methodMap.remove(method.name(), method);
     }
 
     /**
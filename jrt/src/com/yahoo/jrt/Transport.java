@@ -2,11 +2,8 @@
 package com.yahoo.jrt;
 
 
-import java.io.IOException;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -17,178 +14,84 @@ import java.util.logging.Logger;
  * multiplexed network IO, handles scheduled tasks and keeps track of
  * some additional helper threads. A single Transport object can back
  * multiple {@link Supervisor} objects.
+ *
+ * <p>Network IO may be spread across several transport threads, each
+ * with its own selector. Every connection is assigned to a single
+ * transport thread when it is created, and all IO and reply handling
+ * for that connection is performed by that thread. Scheduled tasks
+ * and commands passed to {@link #perform perform} are handled by the
+ * first transport thread. Note that when using more than one
+ * transport thread, reply and request callbacks for different
+ * connections may run concurrently with each other and with tasks.
  **/
 public class Transport {
 
-    private static final int OPEN    = 1;
-    private static final int CLOSING = 2;
-    private static final int CLOSED  = 3;
+    private static final Logger log = Logger.getLogger(Transport.class.getName());
 
-    private class Run implements Runnable {
-        public void run() {
-            try {
-                Transport.this.run();
-            } catch (Throwable problem) {
-                handleFailure(problem, Transport.this);
-            }
-        }
-    }
-
-    private class AddConnectionCmd implements Runnable {
-        private Connection conn;
-        AddConnectionCmd(Connection conn) { this.conn = conn; }
-        public void run() { handleAddConnection(conn); }
-    }
-
-    private class CloseConnectionCmd implements Runnable {
-        private Connection conn;
-        CloseConnectionCmd(Connection conn) { this.conn = conn; }
-        public void run() { handleCloseConnection(conn); }
-    }
-
-    private class EnableWriteCmd implements Runnable {
-        private Connection conn;
-        EnableWriteCmd(Connection conn) { this.conn = conn; }
-        public void run() { handleEnableWrite(conn); }
-    }
-
-    private class SyncCmd implements Runnable {
-        boolean done = false;
-        public synchronized void waitDone() {
-            while (!done) {
-                try { wait(); } catch (InterruptedException e) {}
-            }
-        }
-        public synchronized void run() {
-            done = true;
-            notify();
-        }
-    }
-
-    private static Logger log = Logger.getLogger(Transport.class.getName());
-
-    private FatalErrorHandler fatalHandler; // NB: this must be set first
-    private CryptoEngine      cryptoEngine;
-    private Thread            thread;
-    private Queue             queue;
-    private Queue             myQueue;
-    private Connector         connector;
-    private Closer            closer;
-    private Scheduler         scheduler;
-    private int               state;
-    private Selector          selector;
-    private final TransportMetrics metrics = TransportMetrics.getInstance();
-
-    private void handleAddConnection(Connection conn) {
-        if (conn.isClosed()) {
-            if (conn.hasSocket()) {
-                closer.closeLater(conn);
-            }
-            return;
-        }
-        if (!conn.init(selector)) {
-            handleCloseConnection(conn);
-        }
-    }
-
-    private void handleCloseConnection(Connection conn) {
-        if (conn.isClosed()) {
-            return;
-        }
-        conn.fini();
-        if (conn.hasSocket()) {
-            closer.closeLater(conn);
-        }
-    }
-
-    private void handleEnableWrite(Connection conn) {
-        if (conn.isClosed()) {
-            return;
-        }
-        conn.enableWrite();
-    }
-
-    private boolean postCommand(Runnable cmd) {
-        boolean wakeup;
-        synchronized (this) {
-            if (state == CLOSED) {
-                return false;
-            }
-            wakeup = queue.isEmpty();
-            queue.enqueue(cmd);
-        }
-        if (wakeup) {
-            selector.wakeup();
-        }
-        return true;
-    }
-
-    private void handleEvents() {
-        synchronized (this) {
-            queue.flush(myQueue);
-        }
-        while (!myQueue.isEmpty()) {
-            ((Runnable)myQueue.dequeue()).run();
-        }
-    }
-
-    private boolean handleIOEvents(Connection conn,
-                                   SelectionKey key) {
-        if (conn.isClosed()) {
-            return true;
-        }
-        if (key.isReadable()) {
-            try {
-                conn.handleReadEvent();
-            } catch (IOException e) {
-                conn.setLostReason(e);
-                return false;
-            }
-        }
-        if (key.isWritable()) {
-            try {
-                conn.handleWriteEvent();
-            } catch (IOException e) {
-                conn.setLostReason(e);
-                return false;
-            }
-        }
-        return true;
-    }
+    private final FatalErrorHandler fatalHandler; // NB: this must be set first
+    private final CryptoEngine      cryptoEngine;
+    private final Connector         connector;
+    private final TransportThread[] threads;
+    private final AtomicInteger     runCnt;
+    private final AtomicInteger     nextThread = new AtomicInteger(0);
+    private final TransportMetrics  metrics = TransportMetrics.getInstance();
 
     /**
      * Create a new Transport object with the given fatal error
-     * handler and CryptoEngine. If a fatal error occurs when no fatal
-     * error handler is registered, the default action is to log the
-     * error and exit with exit code 1.
+     * handler, CryptoEngine and number of transport threads. If a
+     * fatal error occurs when no fatal error handler is registered,
+     * the default action is to log the error and exit with exit code
+     * 1.
      *
      * @param fatalHandler fatal error handler
      * @param cryptoEngine crypto engine to use
+     * @param numThreads number of transport threads performing network IO
      **/
-    public Transport(FatalErrorHandler fatalHandler, CryptoEngine cryptoEngine) {
+    public Transport(FatalErrorHandler fatalHandler, CryptoEngine cryptoEngine, int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("jrt: number of transport threads must be at least 1, was " + numThreads);
+        }
         synchronized (this) {
             this.fatalHandler = fatalHandler; // NB: this must be set first
         }
         this.cryptoEngine = cryptoEngine;
-        thread    = new Thread(new Run(), "<jrt-transport>");
-        queue     = new Queue();
-        myQueue   = new Queue();
-        connector = new Connector(this);
-        closer    = new Closer(this);
-        scheduler = new Scheduler(System.currentTimeMillis());
-        state     = OPEN;
-        try {
-            selector = Selector.open();
-        } catch (Exception e) {
-            throw new Error("Could not open transport selector", e);
+        this.connector = new Connector(this);
+        this.runCnt = new AtomicInteger(numThreads);
+        this.threads = new TransportThread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            threads[i] = new TransportThread(this, (numThreads == 1) ? "<jrt-transport>" : "<jrt-transport-" + i + ">");
         }
-        thread.setDaemon(true);
-        thread.start();
     }
+    public Transport(FatalErrorHandler fatalHandler, CryptoEngine cryptoEngine) { this(fatalHandler, cryptoEngine, 1); }
+    public Transport(CryptoEngine cryptoEngine, int numThreads) { this(null, cryptoEngine, numThreads); }
     public Transport(CryptoEngine cryptoEngine) { this(null, cryptoEngine); }
     public Transport(FatalErrorHandler fatalHandler) { this(fatalHandler, CryptoEngine.createDefault()); }
+    public Transport(int numThreads) { this(null, CryptoEngine.createDefault(), numThreads); }
     public Transport() { this(null, CryptoEngine.createDefault()); }
 
+    /**
+     * Select the transport thread to be used for a new
+     * connection. Connections are spread across threads in a round
+     * robin fashion.
+     *
+     * @return the selected transport thread
+     **/
+    TransportThread selectThread() {
+        if (threads.length == 1) {
+            return threads[0];
+        }
+        return threads[Math.floorMod(nextThread.getAndIncrement(), threads.length)];
+    }
+
+    /**
+     * Obtain the number of transport threads used by this Transport.
+     *
+     * @return number of transport threads
+     **/
+    public int numThreads() {
+        return threads.length;
+    }
+
     /**
      * Use the underlying CryptoEngine to create a CryptoSocket.
      *
@@ -243,171 +146,99 @@ public class Transport {
      *             if this flag is set
      */
     Connection connect(Supervisor owner, Spec spec, Object context, boolean sync) {
-        Connection conn = new Connection(this, owner, spec, context);
+        Connection conn = new Connection(selectThread(), owner, spec, context);
         if (sync) {
-            addConnection(conn.connect());
+            conn.transportThread().addConnection(conn.connect());
         } else {
             connector.connectLater(conn);
         }
         return conn;
     }
 
-    /**
-     * Add a connection to the set of connections handled by this
-     * Transport. Invoked by the {@link Connector} class.
-     *
-     * @param conn the connection to add
-     **/
-    void addConnection(Connection conn) {
-        if (!postCommand(new AddConnectionCmd(conn))) {
-            perform(new CloseConnectionCmd(conn));
-        }
-    }
-
-    /**
-     * Request an asynchronous close of a connection.
-     *
-     * @param conn the connection to close
-     **/
-    void closeConnection(Connection conn) {
-        postCommand(new CloseConnectionCmd(conn));
-    }
-
-    /**
-     * Request an asynchronous enabling of write events for a
-     * connection.
-     *
-     * @param conn the connection to enable write events for
-     **/
-    void enableWrite(Connection conn) {
-        if (Thread.currentThread() == thread) {
-            handleEnableWrite(conn);
-        } else {
-            postCommand(new EnableWriteCmd(conn));
-        }
-    }
-
     /**
      * Create a {@link Task} that can be scheduled for execution in
-     * the transport thread.
+     * the (first) transport thread.
      *
      * @return the newly created Task
      * @param cmd what to run when the task is executed
      **/
     public Task createTask(Runnable cmd) {
-        return new Task(scheduler, cmd);
+        return threads[0].createTask(cmd);
     }
 
     /**
      * Perform the given command in such a way that it does not run
-     * concurrently with the transport thread or other commands
-     * performed by invoking this method. This method will continue to
-     * work even after the transport thread has been shut down.
+     * concurrently with the (first) transport thread or other
+     * commands performed by invoking this method. This method will
+     * continue to work even after the transport thread has been shut
+     * down.
      *
      * @param cmd the command to perform
      **/
     public void perform(Runnable cmd) {
-        if (Thread.currentThread() == thread) {
-            cmd.run();
-            return;
-        }
-        if (!postCommand(cmd)) {
-            join();
-            synchronized (thread) {
-                cmd.run();
-            }
-        }
+        threads[0].perform(cmd);
     }
 
     /**
-     * Synchronize with the transport thread. This method will block
+     * Synchronize with the transport threads. This method will block
      * until all commands issued before this method was invoked has
-     * completed. If the transport thread has been shut down (or is in
-     * the progress of being shut down) this method will instead wait
-     * for the transport thread to complete, since no more commands
-     * will be performed, and waiting would be forever. Invoking this
-     * method from the transport thread is not a good idea.
+     * completed. If the transport threads have been shut down (or
+     * are in the progress of being shut down) this method will
+     * instead wait for the transport threads to complete, since no
+     * more commands will be performed, and waiting would be
+     * forever. Invoking this method from a transport thread is not a
+     * good idea.
      *
      * @return this object, to enable chaining
      **/
     public Transport sync() {
-        SyncCmd cmd = new SyncCmd();
-        if (postCommand(cmd)) {
-            cmd.waitDone();
-        } else {
-            join();
+        for (TransportThread thread : threads) {
+            thread.sync();
         }
         return this;
     }
 
-    private void run() {
-        while (state == OPEN) {
-
-            // perform I/O selection
-            try {
-                selector.select(100);
-            } catch (IOException e) {
-                log.log(Level.WARNING, "error during select", e);
-            }
-
-            // handle internal events
-            handleEvents();
-
-            // handle I/O events
-            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
-            while (keys.hasNext()) {
-                SelectionKey key = keys.next();
-                Connection conn = (Connection) key.attachment();
-                keys.remove();
-                if (!handleIOEvents(conn, key)) {
-                    handleCloseConnection(conn);
-                }
-            }
-
-            // check scheduled tasks
-            scheduler.checkTasks(System.currentTimeMillis());
-        }
+    /**
+     * Invoked by each transport thread when it starts shutting
+     * down. Blocks until all pending asynchronous connects have been
+     * handed over to their transport threads.
+     **/
+    void waitConnectorDone() {
         connector.shutdown().waitDone();
-        synchronized (this) {
-            state = CLOSED;
-        }
-        handleEvents();
-        Iterator<SelectionKey> keys = selector.keys().iterator();
-        while (keys.hasNext()) {
-            SelectionKey key = keys.next();
-            Connection conn = (Connection) key.attachment();
-            handleCloseConnection(conn);
+    }
+
+    /**
+     * Invoked by each transport thread when it has completed. The
+     * last thread to complete will shut down the shared helper
+     * threads and the crypto engine.
+     *
+     * @param thread the transport thread that is done
+     **/
+    void notifyDone(TransportThread thread) {
+        if (runCnt.decrementAndGet() == 0) {
+            connector.exit().join();
+            try { cryptoEngine.close(); } catch (Exception e) {}
         }
-        try { selector.close(); } catch (Exception e) {}
-        closer.shutdown().join();
-        connector.exit().join();
-        try { cryptoEngine.close(); } catch (Exception e) {}
     }
 
     /**
-     * Initiate controlled shutdown of the transport thread.
+     * Initiate controlled shutdown of the transport threads.
      *
      * @return this object, to enable chaining with join
      **/
     public Transport shutdown() {
-        synchronized (this) {
-            if (state == OPEN) {
-                state = CLOSING;
-                selector.wakeup();
-            }
+        for (TransportThread thread : threads) {
+            thread.shutdown();
         }
         return this;
     }
 
     /**
-     * Wait for the transport thread to finish.
+     * Wait for the transport threads to finish.
      **/
     public void join() {
-        while (true) {
-            try {
-                thread.join();
-                return;
-            } catch (InterruptedException e) {}
+        for (TransportThread thread : threads) {
+            thread.join();
         }
     }
 
@@ -19,6 +19,9 @@ public class TransportMetrics {
     private final AtomicLong clientTlsConnectionsEstablished = new AtomicLong(0);
     private final AtomicLong serverUnencryptedConnectionsEstablished = new AtomicLong(0);
     private final AtomicLong clientUnencryptedConnectionsEstablished = new AtomicLong(0);
+    private final AtomicLong bufferPoolHits = new AtomicLong(0);
+    private final AtomicLong bufferPoolMisses = new AtomicLong(0);
+    private final AtomicLong bufferPoolBytesRetained = new AtomicLong(0);
 
     private TransportMetrics() {}
 
@@ -48,6 +51,19 @@ public class TransportMetrics {
         return clientUnencryptedConnectionsEstablished.get();
     }
 
+    public long bufferPoolHits() {
+        return bufferPoolHits.get();
+    }
+
+    public long bufferPoolMisses() {
+        return bufferPoolMisses.get();
+    }
+
+    /** Returns the number of bytes currently held by the connection buffer pool for reuse */
+    public long bufferPoolBytesRetained() {
+        return bufferPoolBytesRetained.get();
+    }
+
     public Snapshot snapshot() { return new Snapshot(this); }
 
     void incrementTlsCertificateVerificationFailures() {
@@ -74,6 +90,18 @@ public class TransportMetrics {
         clientUnencryptedConnectionsEstablished.incrementAndGet();
     }
 
+    void incrementBufferPoolHits() {
+        bufferPoolHits.incrementAndGet();
+    }
+
+    void incrementBufferPoolMisses() {
+        bufferPoolMisses.incrementAndGet();
+    }
+
+    void addBufferPoolBytesRetained(long bytes) {
+        bufferPoolBytesRetained.addAndGet(bytes);
+    }
+
     @Override
     public String toString() {
         return "TransportMetrics{" +
@@ -83,11 +111,14 @@ public class TransportMetrics {
                 ", clientTlsConnectionsEstablished=" + clientTlsConnectionsEstablished +
                 ", serverUnencryptedConnectionsEstablished=" + serverUnencryptedConnectionsEstablished +
                 ", clientUnencryptedConnectionsEstablished=" + clientUnencryptedConnectionsEstablished +
+                ", bufferPoolHits=" + bufferPoolHits +
+                ", bufferPoolMisses=" + bufferPoolMisses +
+                ", bufferPoolBytesRetained=" + bufferPoolBytesRetained +
                 '}';
     }
 
     public static class Snapshot {
-        public static final Snapshot EMPTY = new Snapshot(0, 0, 0, 0, 0, 0);
+        public static final Snapshot EMPTY = new Snapshot(0, 0, 0, 0, 0, 0, 0, 0);
 
         private final long tlsCertificateVerificationFailures;
         private final long peerAuthorizationFailures;
@@ -95,6 +126,8 @@ public class TransportMetrics {
         private final long clientTlsConnectionsEstablished;
         private final long serverUnencryptedConnectionsEstablished;
         private final long clientUnencryptedConnectionsEstablished;
+        private final long bufferPoolHits;
+        private final long bufferPoolMisses;
 
         private Snapshot(TransportMetrics metrics) {
             this(metrics.tlsCertificateVerificationFailures.get(),
@@ -102,7 +135,9 @@ public class TransportMetrics {
                  metrics.serverTlsConnectionsEstablished.get(),
                  metrics.clientTlsConnectionsEstablished.get(),
                  metrics.serverUnencryptedConnectionsEstablished.get(),
-                 metrics.clientUnencryptedConnectionsEstablished.get());
+                 metrics.clientUnencryptedConnectionsEstablished.get(),
+                 metrics.bufferPoolHits.get(),
+                 metrics.bufferPoolMisses.get());
         }
 
         private Snapshot(long tlsCertificateVerificationFailures,
@@ -110,13 +145,17 @@ public class TransportMetrics {
                         long serverTlsConnectionsEstablished,
                         long clientTlsConnectionsEstablished,
                         long serverUnencryptedConnectionsEstablished,
-                        long clientUnencryptedConnectionsEstablished) {
+                        long clientUnencryptedConnectionsEstablished,
+                        long bufferPoolHits,
+                        long bufferPoolMisses) {
             this.tlsCertificateVerificationFailures = tlsCertificateVerificationFailures;
             this.peerAuthorizationFailures = peerAuthorizationFailures;
             this.serverTlsConnectionsEstablished = serverTlsConnectionsEstablished;
             this.clientTlsConnectionsEstablished = clientTlsConnectionsEstablished;
             this.serverUnencryptedConnectionsEstablished = serverUnencryptedConnectionsEstablished;
             this.clientUnencryptedConnectionsEstablished = clientUnencryptedConnectionsEstablished;
+            this.bufferPoolHits = bufferPoolHits;
+            this.bufferPoolMisses = bufferPoolMisses;
         }
 
         public long tlsCertificateVerificationFailures() { return tlsCertificateVerificationFailures; }
@@ -125,6 +164,8 @@ public class TransportMetrics {
         public long clientTlsConnectionsEstablished() { return clientTlsConnectionsEstablished; }
         public long serverUnencryptedConnectionsEstablished() { return serverUnencryptedConnectionsEstablished; }
         public long clientUnencryptedConnectionsEstablished() { return clientUnencryptedConnectionsEstablished; }
+        public long bufferPoolHits() { return bufferPoolHits; }
+        public long bufferPoolMisses() { return bufferPoolMisses; }
 
         public Snapshot changesSince(Snapshot base) {
             return new Snapshot(
@@ -133,7 +174,9 @@ public class TransportMetrics {
                 changesSince(base, Snapshot::serverTlsConnectionsEstablished),
                 changesSince(base, Snapshot::clientTlsConnectionsEstablished),
                 changesSince(base, Snapshot::serverUnencryptedConnectionsEstablished),
-                changesSince(base, Snapshot::clientUnencryptedConnectionsEstablished));
+                changesSince(base, Snapshot::clientUnencryptedConnectionsEstablished),
+                changesSince(base, Snapshot::bufferPoolHits),
+                changesSince(base, Snapshot::bufferPoolMisses));
         }
 
         private long changesSince(Snapshot base, ToLongFunction<Snapshot> metricProperty) {
@@ -149,6 +192,8 @@ public class TransportMetrics {
                     ", clientTlsConnectionsEstablished=" + clientTlsConnectionsEstablished +
                     ", serverUnencryptedConnectionsEstablished=" + serverUnencryptedConnectionsEstablished +
                     ", clientUnencryptedConnectionsEstablished=" + clientUnencryptedConnectionsEstablished +
+                    ", bufferPoolHits=" + bufferPoolHits +
+                    ", bufferPoolMisses=" + bufferPoolMisses +
                     '}';
         }
     }
@@ -0,0 +1,96 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.jrt;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BufferPoolTest {
+
+    private final TransportMetrics metrics = TransportMetrics.getInstance();
+
+    @org.junit.Test
+    public void testSizeClasses() {
+        assertEquals(4096, BufferPool.capacityFor(1));
+        assertEquals(4096, BufferPool.capacityFor(4096));
+        assertEquals(8192, BufferPool.capacityFor(4097));
+        assertEquals(1 << BufferPool.MAX_CLASS_BITS, BufferPool.capacityFor(1 << BufferPool.MAX_CLASS_BITS));
+        assertEquals((1 << BufferPool.MAX_CLASS_BITS) + 1, BufferPool.capacityFor((1 << BufferPool.MAX_CLASS_BITS) + 1));
+    }
+
+    @org.junit.Test
+    public void testReuse() {
+        BufferPool pool = new BufferPool(1024 * 1024, metrics);
+        TransportMetrics.Snapshot before = metrics.snapshot();
+        ByteBuffer a = pool.allocate(5000);
+        assertTrue(a.isDirect());
+        assertEquals(8192, a.capacity());
+        a.put((byte)1);
+        pool.release(a);
+        assertEquals(8192, pool.retainedBytes());
+        ByteBuffer b = pool.allocate(8000);
+        assertSame(a, b);
+        assertEquals(0, b.position());
+        assertEquals(8192, b.limit());
+        assertEquals(0, pool.retainedBytes());
+        ByteBuffer c = pool.allocate(8000);
+        assertNotSame(b, c);
+        TransportMetrics.Snapshot diff = metrics.snapshot().changesSince(before);
+        assertTrue(diff.bufferPoolHits() >= 1);
+        assertTrue(diff.bufferPoolMisses() >= 2);
+    }
+
+    @org.junit.Test
+    public void testRetainedBytesAreBounded() {
+        BufferPool pool = new BufferPool(16384, metrics);
+        ByteBuffer a = pool.allocate(8192);
+        ByteBuffer b = pool.allocate(8192);
+        ByteBuffer c = pool.allocate(8192);
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+        assertEquals(16384, pool.retainedBytes());
+    }
+
+    @org.junit.Test
+    public void testLargeBuffersAreNotPooled() {
+        BufferPool pool = new BufferPool(Long.MAX_VALUE, metrics);
+        int size = (1 << BufferPool.MAX_CLASS_BITS) + 1;
+        ByteBuffer a = pool.allocate(size);
+        assertFalse(a.isDirect());
+        assertEquals(size, a.capacity());
+        pool.release(a);
+        assertEquals(0, pool.retainedBytes());
+    }
+
+    @org.junit.Test
+    public void testPooledBufferGrowShrinkAndDispose() {
+        BufferPool pool = new BufferPool(1024 * 1024, metrics);
+        Buffer buf = new Buffer(4096, pool);
+        byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte)i;
+        }
+        buf.getWritable(data.length).put(data);
+        assertEquals(4096, pool.retainedBytes());
+        assertEquals(data.length, buf.bytes());
+        byte[] head = new byte[9000];
+        buf.getReadable().get(head);
+        assertTrue(buf.shrink(4096));
+        assertEquals(16384, pool.retainedBytes());
+        assertFalse(buf.shrink(4096));
+        ByteBuffer rb = buf.getReadable();
+        assertEquals(1000, rb.remaining());
+        assertEquals(data[9000], rb.get());
+        buf.dispose();
+        assertEquals(0, buf.bytes());
+        assertEquals(16384 + 4096, pool.retainedBytes());
+        buf.getWritable(10).put((byte)42);
+        assertEquals(42, buf.getReadable().get());
+    }
+
+}
@@ -0,0 +1,93 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.jrt;
+
+import org.junit.After;
+import org.junit.Before;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class MultiThreadedTransportTest {
+
+    Supervisor server;
+    Acceptor   acceptor;
+    Supervisor client;
+    Set<Thread> serverThreads = new HashSet<>();
+
+    @Before
+    public void setUp() throws ListenFailedException {
+        server   = new Supervisor(new Transport(4));
+        client   = new Supervisor(new Transport(4));
+        acceptor = server.listen(new Spec(0));
+        server.addMethod(new Method("concat", "ss", "s", this, "rpc_concat"));
+    }
+
+    @After
+    public void tearDown() {
+        acceptor.shutdown().join();
+        client.transport().shutdown().join();
+        server.transport().shutdown().join();
+    }
+
+    public void rpc_concat(Request req) {
+        synchronized (serverThreads) {
+            serverThreads.add(Thread.currentThread());
+        }
+        req.returnValues().add(new StringValue(req.parameters().get(0).asString() +
+                                               req.parameters().get(1).asString()));
+    }
+
+    @org.junit.Test
+    public void testThreadCount() {
+        assertEquals(4, server.transport().numThreads());
+        assertEquals(1, new Transport().shutdown().numThreads());
+    }
+
+    @org.junit.Test(expected = IllegalArgumentException.class)
+    public void testRequireAtLeastOneThread() {
+        new Transport(0);
+    }
+
+    @org.junit.Test
+    public void testInvokeOverManyConnections() {
+        List<Target> targets = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            targets.add(client.connect(new Spec("localhost", acceptor.port())));
+        }
+        for (int i = 0; i < targets.size(); i++) {
+            Request req = new Request("concat");
+            req.parameters().add(new StringValue("abc"));
+            req.parameters().add(new StringValue(String.valueOf(i)));
+            targets.get(i).invokeSync(req, 5.0);
+            assertTrue(!req.isError());
+            assertEquals("abc" + i, req.returnValues().get(0).asString());
+        }
+        assertEquals(4, serverThreads.size());
+        for (Target target : targets) {
+            target.close();
+        }
+        client.transport().sync();
+        for (Target target : targets) {
+            assertTrue(!target.isValid());
+        }
+    }
+
+    @org.junit.Test
+    public void testTasksAndPerformRunInSameThread() {
+        Test.Barrier barrier = new Test.Barrier();
+        Thread[] threads = new Thread[2];
+        Task task = client.transport().createTask(() -> { threads[0] = Thread.currentThread(); barrier.breakIt(); });
+        task.scheduleNow();
+        barrier.waitFor();
+        client.transport().perform(() -> threads[1] = Thread.currentThread());
+        client.transport().sync();
+        assertEquals(threads[0], threads[1]);
+    }
+
+}
@@ -0,0 +1,107 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.jrt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures request throughput over many connections using a single
+ * transport thread versus several transport threads on both the client
+ * and the server side. Not run as part of the unit tests; run main manually.
+ */
+public class TransportBenchmark {
+
+    private static final int connections = 64;
+    private static final int outstandingPerConnection = 16;
+    private static final int payloadSize = 1024;
+    private static final long warmupMillis = 2000;
+    private static final long runMillis = 10000;
+
+    private static class Client implements RequestWaiter {
+
+        private final Target target;
+        private final byte[] payload = new byte[payloadSize];
+        private final AtomicLong completed;
+        private volatile boolean stopped = false;
+        private final CountDownLatch done = new CountDownLatch(outstandingPerConnection);
+
+        Client(Target target, AtomicLong completed) {
+            this.target = target;
+            this.completed = completed;
+        }
+
+        void start() {
+            for (int i = 0; i < outstandingPerConnection; i++)
+                send();
+        }
+
+        private void send() {
+            Request request = new Request("echo");
+            request.parameters().add(new DataValue(payload));
+            target.invokeAsync(request, 60.0, this);
+        }
+
+        @Override
+        public void handleRequestDone(Request request) {
+            if (request.isError())
+                throw new IllegalStateException("Request failed: " + request.errorMessage());
+            completed.incrementAndGet();
+            if (stopped)
+                done.countDown();
+            else
+                send();
+        }
+
+        void stop() throws InterruptedException {
+            stopped = true;
+            done.await();
+            target.close();
+        }
+
+    }
+
+    public void rpc_echo(Request request) {
+        request.returnValues().add(request.parameters().get(0));
+    }
+
+    private double run(int threads) throws Exception {
+        Supervisor server = new Supervisor(new Transport(threads));
+        Supervisor client = new Supervisor(new Transport(threads));
+        server.addMethod(new Method("echo", "x", "x", this, "rpc_echo"));
+        Acceptor acceptor = server.listen(new Spec(0));
+
+        AtomicLong completed = new AtomicLong();
+        List<Client> clients = new ArrayList<>();
+        for (int i = 0; i < connections; i++)
+            clients.add(new Client(client.connect(new Spec("localhost", acceptor.port())), completed));
+        clients.forEach(Client::start);
+
+        Thread.sleep(warmupMillis);
+        long startCount = completed.get();
+        long startTime = System.nanoTime();
+        Thread.sleep(runMillis);
+        long requests = completed.get() - startCount;
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        for (Client c : clients)
+            c.stop();
+        acceptor.shutdown().join();
+        client.transport().shutdown().join();
+        server.transport().shutdown().join();
+        return requests / seconds;
+    }
+
+    public static void main(String[] args) throws Exception {
+        TransportBenchmark benchmark = new TransportBenchmark();
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() / 2;
+        double baseline = benchmark.run(1);
+        System.out.printf("%2d transport thread(s): %10.0f requests/s%n", 1, baseline);
+        for (int threads = 2; threads <= maxThreads; threads *= 2) {
+            double throughput = benchmark.run(threads);
+            System.out.printf("%2d transport thread(s): %10.0f requests/s (%.2fx)%n", threads, throughput, throughput / baseline);
+        }
+    }
+
+}
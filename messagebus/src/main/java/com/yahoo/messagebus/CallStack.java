@@ -58,6 +58,16 @@ public class CallStack {
         stack.clear();
     }
 
+    /**
+     * Returns the handler of the bottom frame of this stack, which is the handler that will receive the reply last.
+     *
+     * @return The bottom handler, or null if this is empty.
+     */
+    ReplyHandler bottom() {
+        StackFrame frame = stack.peekLast();
+        return frame == null ? null : frame.handler;
+    }
+
     /**
      * Returns the number of elements of the callstack.
      *
@@ -139,7 +139,7 @@ public class MessageBus implements ConfigHandler, NetworkOwner, MessageHandler,
             throw new IllegalStateException("Network failed to become ready in time.");
 
         // Start messenger.
-        msn = new Messenger();
+        msn = new Messenger(params.getMessengerThreads());
 
         RetryPolicy retryPolicy = params.getRetryPolicy();
         if (retryPolicy != null) {
@@ -19,6 +19,7 @@ public class MessageBusParams {
     private RetryPolicy retryPolicy;
     private int maxPendingCount;
     private int maxPendingSize;
+    private int messengerThreads;
 
     /**
      * Constructs a new instance of this parameter object with default values for all members.
@@ -27,6 +28,7 @@ public class MessageBusParams {
         retryPolicy = new RetryTransientErrorsPolicy();
         maxPendingCount = 1024;
         maxPendingSize = 128 * 1024 * 1024;
+        messengerThreads = 1;
     }
 
     /**
@@ -39,6 +41,7 @@ public class MessageBusParams {
         retryPolicy = params.retryPolicy;
         maxPendingCount = params.maxPendingCount;
         maxPendingSize = params.maxPendingSize;
+        messengerThreads = params.messengerThreads;
     }
 
     /**
@@ -143,4 +146,26 @@ public class MessageBusParams {
         this.maxPendingSize = maxSize;
         return this;
     }
+
+    /**
+     * Returns the number of threads used to deliver messages and replies.
+     *
+     * @return The number of threads.
+     */
+    public int getMessengerThreads() {
+        return messengerThreads;
+    }
+
+    /**
+     * Sets the number of threads used to deliver messages and replies. Ordering is preserved for messages having
+     * the same sequence id, and for replies returned to the same session. Unsequenced messages may be delivered
+     * in any order.
+     *
+     * @param numThreads The number of threads to set, which must be positive.
+     * @return This, to allow chaining.
+     */
+    public MessageBusParams setMessengerThreads(int numThreads) {
+        this.messengerThreads = numThreads;
+        return this;
+    }
 }
@@ -3,6 +3,7 @@ package com.yahoo.messagebus;
 
 import com.yahoo.concurrent.DaemonThreadFactory;
 import com.yahoo.log.LogLevel;
+import com.yahoo.messagebus.routing.RoutingNode;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
@@ -13,13 +14,23 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 /**
- * <p>This class implements a single thread that is able to process arbitrary
+ * <p>This class implements a pool of threads that are able to process arbitrary
  * tasks. Tasks are enqueued using the synchronized {@link #enqueue(Task)}
  * method, and are run in the order they were enqueued.</p>
  *
+ * <p>Messages and replies are distributed over the threads such that all
+ * messages with the same sequence id, and all replies which will be returned
+ * to the same session, are processed in the order they were delivered.
+ * Unsequenced messages are spread evenly over the threads, and may be processed
+ * in any order. Replies are kept in order per session, so replies to a single
+ * session, or to an intermediate session forwarding messages, are processed by
+ * one thread at a time. With a single thread, everything is processed in
+ * delivery order.</p>
+ *
  * @author Simon Thoresen Hult
  */
 public class Messenger implements Runnable {
@@ -27,20 +38,37 @@ public class Messenger implements Runnable {
     private static final Logger log = Logger.getLogger(Messenger.class.getName());
     private final AtomicBoolean destroyed = new AtomicBoolean(false);
     private final List<Task> children = new ArrayList<>();
-    private final ExecutorService sendExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("messenger.send"));
-    private final Queue<Task> queue = new ArrayDeque<>();
-
-    private final Thread thread = new Thread(this, "Messenger");
+    private final ExecutorService[] sendExecutors;
+    private final Worker[] workers;
+    private final AtomicInteger unsequencedCount = new AtomicInteger();
 
     public Messenger() {
-        thread.setDaemon(true);
+        this(1);
+    }
+
+    /**
+     * <p>Creates a messenger which processes tasks in the given number of
+     * threads.</p>
+     *
+     * @param numThreads The number of threads to use, which must be positive.
+     */
+    public Messenger(int numThreads) {
+        if (numThreads < 1)
+            throw new IllegalArgumentException("Number of messenger threads must be positive, but was " + numThreads);
+        sendExecutors = new ExecutorService[numThreads];
+        workers = new Worker[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            String suffix = numThreads == 1 ? "" : "." + i;
+            sendExecutors[i] = Executors.newSingleThreadExecutor(new DaemonThreadFactory("messenger.send" + suffix));
+            workers[i] = new Worker("Messenger" + suffix, i == 0);
+        }
     }
 
     /**
      * <p>Adds a recurrent task to this that is to be run for every iteration of
-     * the main loop. This task must be very light-weight as to not block the
-     * messenger. Note that this method is NOT thread-safe, so it should NOT be
-     * used after calling {@link #start()}.</p>
+     * the main loop of the first thread. This task must be very light-weight as
+     * to not block the messenger. Note that this method is NOT thread-safe, so it
+     * should NOT be used after calling {@link #start()}.</p>
      *
      * @param task The task to add.
      */
@@ -49,19 +77,22 @@ public class Messenger implements Runnable {
     }
 
     /**
-     * <p>Starts the internal thread. This must be done AFTER all recurrent
+     * <p>Starts the internal threads. This must be done AFTER all recurrent
      * tasks have been added.</p>
      *
      * @see #addRecurrentTask(Task)
      */
     public void start() {
-        thread.start();
+        for (Worker worker : workers) {
+            worker.thread.start();
+        }
     }
 
     /**
      * <p>Convenience method to post a {@link Task} that delivers a {@link
      * Message} to a {@link MessageHandler} to the queue of tasks to be
-     * executed.</p>
+     * executed. Messages having the same sequence id are delivered in order,
+     * while unsequenced messages are spread over all threads.</p>
      *
      * @param msg     The message to send.
      * @param handler The handler to send to.
@@ -72,7 +103,9 @@ public class Messenger implements Runnable {
             return;
         }
         try {
-            sendExecutor.execute(new MessageTask(msg, handler));
+            int index = msg.hasSequenceId() ? indexOf(msg.getSequenceId())
+                                            : Math.floorMod(unsequencedCount.getAndIncrement(), sendExecutors.length);
+            sendExecutors[index].execute(new MessageTask(msg, handler));
         } catch (RejectedExecutionException e) {
             msg.discard();
             log.warning("Execution rejected " + e.getMessage());
@@ -82,46 +115,76 @@ public class Messenger implements Runnable {
     /**
      * <p>Convenience method to post a {@link Task} that delivers a {@link
      * Reply} to a {@link ReplyHandler} to the queue of tasks to be
-     * executed.</p>
+     * executed. Replies which will be returned to the same session are
+     * delivered in order.</p>
      *
      * @param reply   The reply to return.
      * @param handler The handler to return to.
      */
     public void deliverReply(final Reply reply, final ReplyHandler handler) {
-        enqueue(new ReplyTask(reply, handler));
+        enqueue(new ReplyTask(reply, handler), workers[indexOf(System.identityHashCode(ownerOf(reply, handler)))]);
     }
 
     /**
-     * <p>Enqueues the given task in the list of tasks that this worker is to
-     * process. If this thread has been destroyed previously, this method
-     * invokes {@link Messenger.Task#destroy()}.</p>
+     * <p>Returns the handler the given reply will finally be returned to, which
+     * is the handler at the bottom of its call stack. Replies from the network
+     * are delivered to a new routing node per message, before the call stack of
+     * the message is transferred to the reply, so in that case the call stack
+     * of the message of the routing node is used.</p>
+     */
+    private static ReplyHandler ownerOf(Reply reply, ReplyHandler handler) {
+        CallStack stack = handler instanceof RoutingNode ? ((RoutingNode)handler).getMessage().getCallStack()
+                                                         : reply.getCallStack();
+        ReplyHandler owner = stack.bottom();
+        return owner != null ? owner : handler;
+    }
+
+    /**
+     * <p>Enqueues the given task in the list of tasks that the first thread is to
+     * process. If this has been destroyed previously, this method invokes
+     * {@link Messenger.Task#destroy()}.</p>
      *
      * @param task The task to enqueue.
      */
     public void enqueue(final Task task) {
+        enqueue(task, workers[0]);
+    }
+
+    private void enqueue(Task task, Worker worker) {
         if (destroyed.get()) {
             task.destroy();
             return;
         }
-        synchronized (this) {
-            queue.offer(task);
-            if (queue.size() == 1) {
-                notify();
-            }
-        }
+        worker.enqueue(task);
+    }
+
+    /** Returns the index of the thread processing tasks with the given key */
+    private int indexOf(long key) {
+        if (workers.length == 1) return 0;
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int)((hash >>> 32) % workers.length);
     }
 
     /**
-     * <p>Handshakes with the internal thread. If this method is called using
-     * the messenger thread, this will deadlock.</p>
+     * <p>Handshakes with all the internal threads. If this method is called
+     * using a messenger thread, this returns immediately, as waiting for self
+     * would deadlock.</p>
      */
     public void sync() {
-        if (Thread.currentThread() == thread) {
-            return; // no need to wait for self
+        for (Worker worker : workers) {
+            if (Thread.currentThread() == worker.thread) {
+                return; // no need to wait for self, and we cannot wait for others
+            }
+        }
+        List<SyncTask> tasks = new ArrayList<>(workers.length);
+        for (Worker worker : workers) {
+            SyncTask task = new SyncTask();
+            enqueue(task, worker);
+            tasks.add(task);
+        }
+        for (SyncTask task : tasks) {
+            task.await();
         }
-        final SyncTask task = new SyncTask();
-        enqueue(task);
-        task.await();
     }
 
     /**
@@ -134,16 +197,17 @@ public class Messenger implements Runnable {
      */
     public boolean destroy() {
         boolean done = false;
-        enqueue(Terminate.INSTANCE);
+        for (Worker worker : workers) {
+            enqueue(Terminate.INSTANCE, worker);
+        }
         if (!destroyed.getAndSet(true)) {
-            sendExecutor.shutdownNow().forEach((Runnable task) -> {((MessageTask) task).msg.discard();});
+            for (ExecutorService sendExecutor : sendExecutors) {
+                sendExecutor.shutdownNow().forEach((Runnable task) -> {((MessageTask) task).msg.discard();});
+            }
             try {
-                synchronized (this) {
-                    while (!queue.isEmpty()) {
-                        wait();
-                    }
+                for (Worker worker : workers) {
+                    worker.awaitTermination();
                 }
-                thread.join();
             } catch (final InterruptedException e) {
                 // ignore
             }
@@ -152,53 +216,98 @@ public class Messenger implements Runnable {
         return done;
     }
 
+    /**
+     * <p>Runs the task loop of the first thread, which also runs the recurrent
+     * tasks. This is invoked by that thread, and should not be called
+     * directly.</p>
+     */
     @Override
     public void run() {
-        while (true) {
-            Task task = null;
+        workers[0].run();
+    }
+
+    /** A thread processing a queue of tasks in order */
+    private class Worker implements Runnable {
+
+        private final Queue<Task> queue = new ArrayDeque<>();
+        private final boolean runsRecurrentTasks;
+        private final Thread thread;
+
+        Worker(String name, boolean runsRecurrentTasks) {
+            this.runsRecurrentTasks = runsRecurrentTasks;
+            this.thread = new Thread(this, name);
+            thread.setDaemon(true);
+        }
+
+        synchronized void enqueue(Task task) {
+            queue.offer(task);
+            if (queue.size() == 1) {
+                notify();
+            }
+        }
+
+        void awaitTermination() throws InterruptedException {
             synchronized (this) {
-                if (queue.isEmpty()) {
+                while (!queue.isEmpty()) {
+                    wait();
+                }
+            }
+            thread.join();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Task task = null;
+                synchronized (this) {
+                    if (queue.isEmpty()) {
+                        try {
+                            wait(100);
+                        } catch (final InterruptedException e) {
+                            continue;
+                        }
+                    }
+                    if (queue.size() > 0) {
+                        task = queue.poll();
+                    }
+                }
+                if (task == Terminate.INSTANCE) {
+                    break;
+                }
+                if (task != null) {
                     try {
-                        wait(100);
-                    } catch (final InterruptedException e) {
-                        continue;
+                        task.run();
+                    } catch (final Exception e) {
+                        log.log(LogLevel.ERROR, "An exception was thrown while running " + task.getClass().getName(), e);
+                    }
+                    try {
+                        task.destroy();
+                    } catch (final Exception e) {
+                        log.warning("An exception was thrown while destroying " + task.getClass().getName() + ": " +
+                                    e.toString());
+                        log.warning("Someone, somewhere might have to wait indefinetly for something.");
                     }
                 }
-                if (queue.size() > 0) {
-                    task = queue.poll();
+                if (runsRecurrentTasks) {
+                    for (final Task child : children) {
+                        child.run();
+                    }
                 }
             }
-            if (task == Terminate.INSTANCE) {
-                break;
-            }
-            if (task != null) {
-                try {
-                    task.run();
-                } catch (final Exception e) {
-                    log.log(LogLevel.ERROR, "An exception was thrown while running " + task.getClass().getName(), e);
+            if (runsRecurrentTasks) {
+                for (final Task child : children) {
+                    child.destroy();
                 }
-                try {
+            }
+            synchronized (this) {
+                while (!queue.isEmpty()) {
+                    final Task task = queue.poll();
                     task.destroy();
-                } catch (final Exception e) {
-                    log.warning("An exception was thrown while destroying " + task.getClass().getName() + ": " +
-                                e.toString());
-                    log.warning("Someone, somewhere might have to wait indefinetly for something.");
                 }
+                notify();
             }
-            for (final Task child : children) {
-                child.run();
-            }
-        }
-        for (final Task child : children) {
-            child.destroy();
-        }
-        synchronized (this) {
-            while (!queue.isEmpty()) {
-                final Task task = queue.poll();
-                task.destroy();
-            }
-            notify();
         }
+
     }
 
     /**
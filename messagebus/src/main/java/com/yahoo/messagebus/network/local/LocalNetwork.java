@@ -2,6 +2,7 @@
 package com.yahoo.messagebus.network.local;
 
 import com.yahoo.component.Vtag;
+import com.yahoo.concurrent.DaemonThreadFactory;
 import com.yahoo.jrt.slobrok.api.IMirror;
 import com.yahoo.messagebus.EmptyReply;
 import com.yahoo.messagebus.Error;
@@ -27,7 +28,7 @@ import static com.yahoo.messagebus.ErrorCode.NO_ADDRESS_FOR_SERVICE;
  */
 public class LocalNetwork implements Network {
 
-    private final Executor executor = Executors.newSingleThreadExecutor();
+    private final Executor executor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("local.network"));
     private final LocalWire wire;
     private final String hostId;
     private volatile NetworkOwner owner;
@@ -1,11 +1,22 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.messagebus;
 
+import com.yahoo.messagebus.routing.RoutingNode;
+import com.yahoo.messagebus.test.SimpleMessage;
+import com.yahoo.messagebus.test.SimpleReply;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -95,6 +106,84 @@ public class MessengerTestCase {
         assertTrue(tryMessenger(msn));
     }
 
+    @Test
+    public void requireThatRepliesToTheSameHandlerAreDeliveredInOrderWithMultipleThreads() throws InterruptedException {
+        Messenger msn = new Messenger(4);
+        msn.start();
+        List<OrderedReplyHandler> handlers = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            handlers.add(new OrderedReplyHandler());
+        }
+        for (int i = 0; i < 1000; i++) {
+            for (OrderedReplyHandler handler : handlers) {
+                msn.deliverReply(new SimpleReply(String.valueOf(i)), handler);
+            }
+        }
+        msn.sync();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        for (OrderedReplyHandler handler : handlers) {
+            assertEquals(1000, handler.values.size());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(String.valueOf(i), handler.values.get(i));
+            }
+            threads.addAll(handler.threads);
+        }
+        assertTrue("Replies are spread over threads", threads.size() > 1);
+        assertTrue(msn.destroy());
+    }
+
+    @Test
+    public void requireThatNetworkRepliesToTheSameSessionAreDeliveredSeriallyInOrderWithMultipleThreads() throws InterruptedException {
+        Messenger msn = new Messenger(4);
+        msn.start();
+        List<OrderedReplyHandler> sessions = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            sessions.add(new OrderedReplyHandler());
+        }
+        for (int i = 0; i < 1000; i++) {
+            for (OrderedReplyHandler session : sessions) {
+                Message msg = new SimpleMessage("foo");
+                msg.pushHandler(session);
+                msn.deliverReply(new SimpleReply(String.valueOf(i)), new ForwardingRoutingNode(msg));
+            }
+        }
+        msn.sync();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        for (OrderedReplyHandler session : sessions) {
+            assertFalse("Replies to a session are not handled concurrently", session.concurrent);
+            assertEquals(1000, session.values.size());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(String.valueOf(i), session.values.get(i));
+            }
+            assertEquals(1, session.threads.size());
+            threads.addAll(session.threads);
+        }
+        assertTrue("Sessions are spread over threads", threads.size() > 1);
+        assertTrue(msn.destroy());
+    }
+
+    @Test
+    public void requireThatSyncWaitsForAllThreads() throws InterruptedException {
+        Messenger msn = new Messenger(4);
+        msn.start();
+        List<OrderedReplyHandler> handlers = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            OrderedReplyHandler handler = new OrderedReplyHandler();
+            handlers.add(handler);
+            msn.deliverReply(new SimpleReply("foo"), handler);
+        }
+        msn.sync();
+        for (OrderedReplyHandler handler : handlers) {
+            assertEquals(Collections.singletonList("foo"), handler.values);
+        }
+        assertTrue(tryMessenger(msn));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requireThatThreadCountMustBePositive() {
+        new Messenger(0);
+    }
+
     private static boolean tryMessenger(Messenger msn) {
         MyTask task = new MyTask();
         msn.enqueue(task);
@@ -121,4 +210,36 @@ public class MessengerTestCase {
             destroyLatch.countDown();
         }
     }
+
+    private static class OrderedReplyHandler implements ReplyHandler {
+
+        final List<String> values = Collections.synchronizedList(new ArrayList<>());
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        final AtomicInteger active = new AtomicInteger();
+        volatile boolean concurrent = false;
+
+        @Override
+        public void handleReply(Reply reply) {
+            if (active.incrementAndGet() > 1) {
+                concurrent = true;
+            }
+            values.add(((SimpleReply)reply).getValue());
+            threads.add(Thread.currentThread().getName());
+            active.decrementAndGet();
+        }
+    }
+
+    /** A routing node which, like one receiving a reply from the network, returns the reply to its message's sender */
+    private static class ForwardingRoutingNode extends RoutingNode {
+
+        ForwardingRoutingNode(Message msg) {
+            super(null, null, null, null, msg);
+        }
+
+        @Override
+        public void handleReply(Reply reply) {
+            reply.swapState(getMessage());
+            reply.popHandler().handleReply(reply);
+        }
+    }
 }
@@ -0,0 +1,90 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.messagebus.network.local;
+
+import com.yahoo.messagebus.DestinationSession;
+import com.yahoo.messagebus.DestinationSessionParams;
+import com.yahoo.messagebus.Message;
+import com.yahoo.messagebus.MessageBus;
+import com.yahoo.messagebus.MessageBusParams;
+import com.yahoo.messagebus.Reply;
+import com.yahoo.messagebus.SourceSession;
+import com.yahoo.messagebus.SourceSessionParams;
+import com.yahoo.messagebus.StaticThrottlePolicy;
+import com.yahoo.messagebus.routing.Route;
+import com.yahoo.messagebus.test.SimpleMessage;
+import com.yahoo.messagebus.test.SimpleProtocol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds messages between two message buses on the local network, to measure how throughput
+ * scales with the number of messenger threads. Usage: LocalNetworkFeedBenchmark [maxThreads]
+ */
+public class LocalNetworkFeedBenchmark {
+
+    private static final int sessions = 8;
+    private static final int messagesPerSession = 50_000;
+
+    /** Returns the number of messages per second fed using the given number of messenger threads */
+    private static double feed(int messengerThreads) throws InterruptedException {
+        LocalWire wire = new LocalWire();
+        MessageBusParams params = new MessageBusParams().addProtocol(new SimpleProtocol())
+                                                        .setRetryPolicy(null)
+                                                        .setMaxPendingCount(0)
+                                                        .setMessengerThreads(messengerThreads);
+        MessageBus sourceBus = new MessageBus(new LocalNetwork(wire), params);
+        MessageBus destinationBus = new MessageBus(new LocalNetwork(wire), params);
+        DestinationSession[] destination = new DestinationSession[1];
+        destination[0] = destinationBus.createDestinationSession(new DestinationSessionParams()
+                                                                         .setMessageHandler(msg -> destination[0].acknowledge(msg)));
+        Route route = Route.parse(destination[0].getConnectionSpec());
+
+        CountDownLatch done = new CountDownLatch(sessions * messagesPerSession);
+        List<SourceSession> sources = new ArrayList<>();
+        for (int i = 0; i < sessions; i++) {
+            sources.add(sourceBus.createSourceSession(new SourceSessionParams()
+                                                              .setTimeout(600.0)
+                                                              .setThrottlePolicy(new StaticThrottlePolicy().setMaxPendingCount(256))
+                                                              .setReplyHandler((Reply reply) -> done.countDown())));
+        }
+
+        long startTime = System.nanoTime();
+        List<Thread> feeders = new ArrayList<>();
+        for (SourceSession source : sources) {
+            Thread feeder = new Thread(() -> {
+                try {
+                    for (int i = 0; i < messagesPerSession; i++) {
+                        Message msg = new SimpleMessage("message " + i).setRoute(route);
+                        if ( ! source.sendBlocking(msg).isAccepted())
+                            throw new IllegalStateException("Message was not accepted");
+                    }
+                }
+                catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            feeder.start();
+            feeders.add(feeder);
+        }
+        if ( ! done.await(10, TimeUnit.MINUTES))
+            throw new IllegalStateException("Timed out waiting for replies");
+        long elapsed = System.nanoTime() - startTime;
+        for (Thread feeder : feeders)
+            feeder.join();
+
+        sourceBus.destroy();
+        destinationBus.destroy();
+        return sessions * messagesPerSession / (elapsed / 1e9);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        feed(1); // warmup
+        for (int threads = 1; threads <= maxThreads; threads *= 2)
+            System.out.printf("%2d messenger threads: %10.0f messages/s\n", threads, feed(threads));
+    }
+
+}
@@ -101,7 +101,7 @@ public class FailedExpirer extends Maintainer {
         for (Node candidate : nodes) {
             if (NodeFailer.hasHardwareIssue(candidate, nodeRepository)) {
                 List<String> unparkedChildren = !candidate.type().isDockerHost() ? Collections.emptyList() :
-                        nodeRepository.list().childrenOf(candidate).asList().stream()
+                        nodeRepository.getChildNodes(candidate.hostname()).stream()
                                       .filter(node -> node.state() != Node.State.parked)
                                       .map(Node::hostname)
                                       .collect(Collectors.toList());
@@ -93,7 +93,7 @@ public class RetiredExpirer extends Maintainer {
     private boolean canRemove(Node node) {
         if (node.type().isDockerHost()) {
             if (nodeRepository()
-                    .list().childrenOf(node).asList().stream()
+                    .getChildNodes(node.hostname()).stream()
                     .allMatch(child -> child.state() == Node.State.parked ||
                                        child.state() == Node.State.failed)) {
                 log.info("Docker host " + node + " has no non-parked/failed children");
@@ -0,0 +1,62 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.hosted.provision.persistence;
+
+import com.yahoo.path.Path;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Records the children created and deleted by the transactions committed in this process, so caches can
+ * tell which changes to the children of a path were made by this process, without reading the children.
+ *
+ * Commits are recorded atomically with respect to {@link #takeWithoutConcurrentCommits}, so the changes taken
+ * are exactly those of the transactions committed since the previous time changes were taken.
+ */
+class CommittedChildChanges {
+
+    private final ReadWriteLock commitLock = new ReentrantReadWriteLock();
+
+    /** The number of creations and deletions of each child name, by parent path */
+    private Map<Path, Map<String, Integer>> changes = new HashMap<>();
+
+    /** Runs the given commit, and records the given creations and deletions of children if it succeeds */
+    void commit(Runnable commit, List<Path> changedChildren) {
+        commitLock.readLock().lock();
+        try {
+            commit.run();
+            synchronized (this) {
+                for (Path child : changedChildren)
+                    changes.computeIfAbsent(child.getParentPath(), parent -> new HashMap<>())
+                           .merge(child.getName(), 1, Integer::sum);
+            }
+        }
+        finally {
+            commitLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Applies the given function to the changes recorded since this was last called, by parent path,
+     * while no commits are in progress, and returns its result.
+     */
+    <T> T takeWithoutConcurrentCommits(Function<Map<Path, Map<String, Integer>>, T> function) {
+        commitLock.writeLock().lock();
+        try {
+            Map<Path, Map<String, Integer>> taken;
+            synchronized (this) {
+                taken = changes;
+                changes = new HashMap<>();
+            }
+            return function.apply(taken);
+        }
+        finally {
+            commitLock.writeLock().unlock();
+        }
+    }
+
+}
@@ -1,9 +1,14 @@
 package com.yahoo.vespa.hosted.provision.persistence;
 
+import com.yahoo.path.Path;
 import com.yahoo.vespa.curator.Curator;
 import com.yahoo.vespa.curator.recipes.CuratorCounter;
+import com.yahoo.vespa.curator.transaction.CuratorOperations;
 import com.yahoo.vespa.curator.transaction.CuratorTransaction;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * CuratorTransaction wrapper which increments a counter, to signal invalidation of node repository caches.
  *
@@ -17,15 +22,35 @@ import com.yahoo.vespa.curator.transaction.CuratorTransaction;
  * consistent view of the shared data, with one exception: when incrementing the counter fails. This is
  * assumed to be extremely rare, and the consequence is temporary neglect of cache invalidation.
  *
+ * Nodes created and deleted through {@link #create} and {@link #delete} are recorded in the given
+ * {@link CommittedChildChanges} when this commits successfully.
+ *
  * @author jonmv
  */
 class CountingCuratorTransaction extends CuratorTransaction {
 
     private final CuratorCounter counter;
+    private final CommittedChildChanges committedChildChanges;
+    private final List<Path> changedChildren = new ArrayList<>();
 
-    public CountingCuratorTransaction(Curator curator, CuratorCounter counter) {
+    public CountingCuratorTransaction(Curator curator, CuratorCounter counter, CommittedChildChanges committedChildChanges) {
         super(curator);
         this.counter = counter;
+        this.committedChildChanges = committedChildChanges;
+    }
+
+    /** Adds an operation creating the given path with the given data, which is recorded as a change of its parent */
+    public CountingCuratorTransaction create(Path path, byte[] data) {
+        add(CuratorOperations.create(path.getAbsolute(), data));
+        changedChildren.add(path);
+        return this;
+    }
+
+    /** Adds an operation deleting the given path, which is recorded as a change of its parent */
+    public CountingCuratorTransaction delete(Path path) {
+        add(CuratorOperations.delete(path.getAbsolute()));
+        changedChildren.add(path);
+        return this;
     }
 
     @Override
@@ -42,7 +67,7 @@ class CountingCuratorTransaction extends CuratorTransaction {
     @Override
     public void commit() {
         try {
-            super.commit();
+            committedChildChanges.commit(super::commit, changedChildren);
         }
         finally {
             counter.next();
@@ -9,6 +9,7 @@ import com.yahoo.vespa.curator.Curator;
 import com.yahoo.vespa.curator.Lock;
 import com.yahoo.vespa.curator.recipes.CuratorCounter;
 import com.yahoo.vespa.curator.transaction.CuratorTransaction;
+import org.apache.zookeeper.data.Stat;
 
 import java.time.Duration;
 import java.util.Arrays;
@@ -43,6 +44,9 @@ public class CuratorDatabase {
 
     private final Object cacheCreationLock = new Object();
 
+    /** The children created and deleted by transactions committed through this */
+    private final CommittedChildChanges committedChildChanges = new CommittedChildChanges();
+
     /**
      * All keys, to allow reentrancy.
      * This will grow forever with the number of applications seen, but this should be too slow to be a problem.
@@ -87,8 +91,14 @@ public class CuratorDatabase {
      * Important: It is the nested transaction which must be committed - never the curator transaction directly.
      */
     public CuratorTransaction newCuratorTransactionIn(NestedTransaction transaction) {
+        return newCountingCuratorTransactionIn(transaction);
+    }
+
+    /** As {@link #newCuratorTransactionIn}, but returns a transaction which can record changes to children */
+    CountingCuratorTransaction newCountingCuratorTransactionIn(NestedTransaction transaction) {
         // Wrap the curator transaction with an increment of the generation counter.
-        CountingCuratorTransaction curatorTransaction = new CountingCuratorTransaction(curator, changeGenerationCounter);
+        CountingCuratorTransaction curatorTransaction = new CountingCuratorTransaction(curator, changeGenerationCounter,
+                                                                                       committedChildChanges);
         transaction.add(curatorTransaction);
         return curatorTransaction;
     }
@@ -114,6 +124,31 @@ public class CuratorDatabase {
 
     Optional<byte[]> getData(Path path) { return getSession().getData(path); }
 
+    /** Returns the current value of the counter which is incremented after every write to this */
+    long changeGeneration() { return changeGenerationCounter.get(); }
+
+    /** Returns the children created and deleted by transactions committed through this */
+    CommittedChildChanges committedChildChanges() { return committedChildChanges; }
+
+    /**
+     * Returns the number of times a child has been created or deleted under the given path,
+     * or empty if the path does not exist. This is read from ZooKeeper, never from the cache.
+     */
+    Optional<Integer> readChildVersion(Path path) {
+        try {
+            return Optional.ofNullable(curator.framework().checkExists().forPath(path.getAbsolute())).map(Stat::getCversion);
+        }
+        catch (Exception e) {
+            throw new RuntimeException("Could not get stat of " + path.getAbsolute(), e);
+        }
+    }
+
+    /** Returns the immediate, local names of the children under this node, read from ZooKeeper, never from the cache */
+    List<String> readChildren(Path path) { return curator.getChildren(path); }
+
+    /** Returns the content of this node, read from ZooKeeper, never from the cache */
+    Optional<byte[]> readData(Path path) { return curator.getData(path); }
+
     /** Invalidates the current cache if outdated. */
     Session getSession() {
         if (changeGenerationCounter.get() != cache.get().generation)
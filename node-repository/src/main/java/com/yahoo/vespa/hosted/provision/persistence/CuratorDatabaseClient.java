@@ -73,10 +73,14 @@ public class CuratorDatabaseClient {
     private final Zone zone;
     private final CuratorCounter provisionIndexCounter;
 
+    /** The nodes, kept up to date incrementally, if caching is enabled */
+    private final Optional<NodeCache> nodeCache;
+
     public CuratorDatabaseClient(NodeFlavors flavors, Curator curator, Clock clock, Zone zone, boolean useCache) {
         this.nodeSerializer = new NodeSerializer(flavors);
         this.zone = zone;
         this.curatorDatabase = new CuratorDatabase(curator, root, useCache);
+        this.nodeCache = useCache ? Optional.of(new NodeCache(curatorDatabase, nodeSerializer, this::toPath)) : Optional.empty();
         this.clock = clock;
         this.provisionIndexCounter = new CuratorCounter(curator, root.append("provisionIndexCounter").getAbsolute());
         initZK();
@@ -104,13 +108,13 @@ public class CuratorDatabaseClient {
      */
     public List<Node> addNodesInState(List<Node> nodes, Node.State expectedState) {
         NestedTransaction transaction = new NestedTransaction();
-        CuratorTransaction curatorTransaction = curatorDatabase.newCuratorTransactionIn(transaction);
+        CountingCuratorTransaction curatorTransaction = curatorDatabase.newCountingCuratorTransactionIn(transaction);
         for (Node node : nodes) {
             if (node.state() != expectedState)
                 throw new IllegalArgumentException(node + " is not in the " + node.state() + " state");
 
             node = node.with(node.history().recordStateTransition(null, expectedState, Agent.system, clock.instant()));
-            curatorTransaction.add(CuratorOperations.create(toPath(node).getAbsolute(), nodeSerializer.toJson(node)));
+            curatorTransaction.create(toPath(node), nodeSerializer.toJson(node));
         }
         transaction.commit();
 
@@ -139,8 +143,8 @@ public class CuratorDatabaseClient {
 
         for (Node node : nodes) {
             Path path = toPath(node.state(), node.hostname());
-            CuratorTransaction curatorTransaction = curatorDatabase.newCuratorTransactionIn(transaction);
-            curatorTransaction.add(CuratorOperations.delete(path.getAbsolute()));
+            CountingCuratorTransaction curatorTransaction = curatorDatabase.newCountingCuratorTransactionIn(transaction);
+            curatorTransaction.delete(path);
         }
 
         transaction.commit();
@@ -209,7 +213,7 @@ public class CuratorDatabaseClient {
 
         List<Node> writtenNodes = new ArrayList<>(nodes.size());
 
-        CuratorTransaction curatorTransaction = curatorDatabase.newCuratorTransactionIn(transaction);
+        CountingCuratorTransaction curatorTransaction = curatorDatabase.newCountingCuratorTransactionIn(transaction);
         for (Node node : nodes) {
             Node newNode = new Node(node.id(), node.ipAddresses(), node.ipAddressPool().asSet(), node.hostname(),
                                     node.parentHostname(), node.flavor(),
@@ -218,8 +222,8 @@ public class CuratorDatabaseClient {
                                     toState.isAllocated() ? node.allocation() : Optional.empty(),
                                     node.history().recordStateTransition(node.state(), toState, agent, clock.instant()),
                                     node.type(), node.reports(), node.modelName());
-            curatorTransaction.add(CuratorOperations.delete(toPath(node).getAbsolute()))
-                              .add(CuratorOperations.create(toPath(toState, newNode.hostname()).getAbsolute(), nodeSerializer.toJson(newNode)));
+            curatorTransaction.delete(toPath(node))
+                              .create(toPath(toState, newNode.hostname()), nodeSerializer.toJson(newNode));
             writtenNodes.add(newNode);
         }
 
@@ -255,6 +259,8 @@ public class CuratorDatabaseClient {
      * If no states are given this returns all nodes.
      */
     public List<Node> getNodes(Node.State ... states) {
+        if (nodeCache.isPresent()) return nodeCache.get().get().nodes(states);
+
         List<Node> nodes = new ArrayList<>();
         if (states.length == 0)
             states = Node.State.values();
@@ -273,11 +279,37 @@ public class CuratorDatabaseClient {
      * If no states are given this returns all nodes.
      */
     public List<Node> getNodes(ApplicationId applicationId, Node.State ... states) {
+        if (nodeCache.isPresent()) return nodeCache.get().get().nodes(applicationId, states);
+
         List<Node> nodes = getNodes(states);
         nodes.removeIf(node -> ! node.allocation().isPresent() || ! node.allocation().get().owner().equals(applicationId));
         return nodes;
     }
 
+    /**
+     * Returns all nodes of the given type which are in one of the given states.
+     * If no states are given this returns all nodes of the given type.
+     */
+    public List<Node> getNodes(NodeType type, Node.State ... states) {
+        if (nodeCache.isPresent()) return nodeCache.get().get().nodes(type, states);
+
+        List<Node> nodes = getNodes(states);
+        nodes.removeIf(node -> node.type() != type);
+        return nodes;
+    }
+
+    /**
+     * Returns all nodes whose parent host is the given hostname which are in one of the given states.
+     * If no states are given this returns all children of the given host.
+     */
+    public List<Node> getChildNodes(String parentHostname, Node.State ... states) {
+        if (nodeCache.isPresent()) return nodeCache.get().get().childrenOf(parentHostname, states);
+
+        List<Node> nodes = getNodes(states);
+        nodes.removeIf(node -> ! node.parentHostname().equals(Optional.of(parentHostname)));
+        return nodes;
+    }
+
     /**
      * Returns a particular node, or empty if this noe is not in any of the given states.
      * If no states are given this returns the node if it is present in any state.
@@ -298,6 +330,8 @@ public class CuratorDatabaseClient {
      * If no states are given this returns the node if it is present in any state.
      */
     public Optional<Node> getNode(String hostname, Node.State ... states) {
+        if (nodeCache.isPresent()) return nodeCache.get().get().node(hostname, states);
+
         return getNode(curatorDatabase.getSession(), hostname, states);
     }
 
@@ -0,0 +1,248 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.hosted.provision.persistence;
+
+import com.yahoo.config.provision.ApplicationId;
+import com.yahoo.config.provision.NodeType;
+import com.yahoo.path.Path;
+import com.yahoo.vespa.hosted.provision.Node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * A cache of the nodes of the node repository, indexed by state, type, owner and parent hostname,
+ * which is updated incrementally when the curator database changes.
+ *
+ * Nodes are stored in a directory per state, and a stored node is never modified, only deleted and created anew.
+ * ZooKeeper increments the child version of a directory on every creation and deletion of a child, so the
+ * directories whose child version is unchanged are kept as they are. The changed directories are listed,
+ * and if the change in child version is fully accounted for by the children which were added or removed,
+ * and the children created and deleted by this process, only those children are read. Otherwise all children
+ * of the directory are read, but only those whose data changed are deserialized again.
+ *
+ * Like the curator database cache, this is refreshed when the change generation counter has moved, so reads
+ * done while holding a lock see all writes done while holding that lock.
+ */
+class NodeCache {
+
+    private final CuratorDatabase database;
+    private final NodeSerializer serializer;
+    private final Function<Node.State, Path> directoryOf;
+
+    private final Object refreshLock = new Object();
+    private volatile Snapshot snapshot = null;
+
+    /**
+     * Creates a node cache
+     *
+     * @param database the database to read nodes from
+     * @param serializer the serializer of the nodes
+     * @param directoryOf returns the path of the directory storing the nodes in the given state
+     */
+    NodeCache(CuratorDatabase database, NodeSerializer serializer, Function<Node.State, Path> directoryOf) {
+        this.database = database;
+        this.serializer = serializer;
+        this.directoryOf = directoryOf;
+    }
+
+    /** Returns a snapshot of the nodes which contains all writes completed before this was called */
+    Snapshot get() {
+        long generation = database.changeGeneration();
+        Snapshot current = snapshot;
+        if (current != null && current.generation == generation) return current;
+
+        synchronized (refreshLock) {
+            current = snapshot;
+            if (current != null && current.generation >= generation) return current; // Refreshed while we waited
+            snapshot = refresh(current, database.changeGeneration());
+            return snapshot;
+        }
+    }
+
+    private Snapshot refresh(Snapshot previous, long generation) {
+        // List changed directories while no commits are in progress, so the child changes committed by this
+        // are exactly those done between the previous and the current reading of the child versions
+        Map<Node.State, Listing> listings = database.committedChildChanges().takeWithoutConcurrentCommits(changes -> {
+            Map<Node.State, Listing> changed = new EnumMap<>(Node.State.class);
+            for (Node.State state : Node.State.values()) {
+                Path directory = directoryOf.apply(state);
+                int childVersion = database.readChildVersion(directory).orElse(-1);
+                if (previous != null && previous.directories.get(state).childVersion == childVersion) continue;
+
+                changed.put(state, new Listing(childVersion,
+                                               database.readChildren(directory),
+                                               changes.getOrDefault(directory, Collections.emptyMap())));
+            }
+            return changed;
+        });
+
+        Map<Node.State, Directory> directories = new EnumMap<>(Node.State.class);
+        for (Node.State state : Node.State.values()) {
+            Directory cached = previous == null ? null : previous.directories.get(state);
+            Listing listing = listings.get(state);
+            directories.put(state, listing == null ? cached : read(state, cached, listing));
+        }
+        return new Snapshot(generation, directories);
+    }
+
+    /** Returns the given directory updated to the given listing of it */
+    private Directory read(Node.State state, Directory cached, Listing listing) {
+        Map<String, CachedNode> cachedNodes = cached == null ? Collections.emptyMap() : cached.nodes;
+        boolean changesAreKnown = cached != null &&
+                                  listing.childVersion - cached.childVersion == minimumChildChanges(cachedNodes.keySet(), listing);
+
+        Path directory = directoryOf.apply(state);
+        Map<String, CachedNode> nodes = new LinkedHashMap<>();
+        for (String hostname : listing.children) {
+            CachedNode cachedNode = cachedNodes.get(hostname);
+            if (changesAreKnown && cachedNode != null && ! listing.committedChanges.containsKey(hostname)) {
+                nodes.put(hostname, cachedNode);
+                continue;
+            }
+
+            Optional<byte[]> data = database.readData(directory.append(hostname));
+            if ( ! data.isPresent()) continue; // Deleted after listing
+
+            if (cachedNode != null && Arrays.equals(cachedNode.data, data.get()))
+                nodes.put(hostname, cachedNode);
+            else
+                nodes.put(hostname, new CachedNode(data.get(), serializer.fromJson(state, data.get())));
+        }
+        return new Directory(listing.childVersion, nodes);
+    }
+
+    /**
+     * Returns the smallest number of child creations and deletions which can turn the given cached children
+     * into the given listing: one for each child added or removed, and as many as this committed for each child.
+     * If the child version changed by exactly this much, no other children were created or deleted.
+     */
+    private static long minimumChildChanges(Set<String> cached, Listing listing) {
+        Set<String> listed = new HashSet<>(listing.children);
+        Set<String> names = new HashSet<>(cached);
+        names.addAll(listed);
+        names.addAll(listing.committedChanges.keySet());
+
+        long changes = 0;
+        for (String name : names) {
+            int committed = listing.committedChanges.getOrDefault(name, 0);
+            changes += cached.contains(name) == listed.contains(name) ? committed : Math.max(1, committed);
+        }
+        return changes;
+    }
+
+    /** A consistent view of all nodes, read at a change generation */
+    static class Snapshot {
+
+        private final long generation;
+        private final Map<Node.State, Directory> directories;
+
+        private Snapshot(long generation, Map<Node.State, Directory> directories) {
+            this.generation = generation;
+            this.directories = directories;
+        }
+
+        /** Returns the nodes in any of the given states, or all nodes if no states are given */
+        List<Node> nodes(Node.State ... states) {
+            return collect(states, directory -> directory.nodeList);
+        }
+
+        /** Returns the nodes of the given type in any of the given states, or in any state if no states are given */
+        List<Node> nodes(NodeType type, Node.State ... states) {
+            return collect(states, directory -> directory.byType.getOrDefault(type, Collections.emptyList()));
+        }
+
+        /** Returns the nodes allocated to the given application in any of the given states, or in any state if no states are given */
+        List<Node> nodes(ApplicationId owner, Node.State ... states) {
+            return collect(states, directory -> directory.byOwner.getOrDefault(owner, Collections.emptyList()));
+        }
+
+        /** Returns the children of the given parent host in any of the given states, or in any state if no states are given */
+        List<Node> childrenOf(String parentHostname, Node.State ... states) {
+            return collect(states, directory -> directory.byParentHostname.getOrDefault(parentHostname, Collections.emptyList()));
+        }
+
+        /** Returns the node with the given hostname if it is in any of the given states, or in any state if no states are given */
+        Optional<Node> node(String hostname, Node.State ... states) {
+            for (Node.State state : statesOrAll(states)) {
+                CachedNode node = directories.get(state).nodes.get(hostname);
+                if (node != null) return Optional.of(node.node);
+            }
+            return Optional.empty();
+        }
+
+        private List<Node> collect(Node.State[] states, Function<Directory, List<Node>> nodesOf) {
+            List<Node> nodes = new ArrayList<>();
+            for (Node.State state : statesOrAll(states))
+                nodes.addAll(nodesOf.apply(directories.get(state)));
+            return nodes;
+        }
+
+        private static Node.State[] statesOrAll(Node.State[] states) {
+            return states.length == 0 ? Node.State.values() : states;
+        }
+
+    }
+
+    /** The nodes of a state directory, with indexes */
+    private static class Directory {
+
+        private final int childVersion;
+        private final Map<String, CachedNode> nodes;
+        private final List<Node> nodeList = new ArrayList<>();
+        private final Map<NodeType, List<Node>> byType = new EnumMap<>(NodeType.class);
+        private final Map<ApplicationId, List<Node>> byOwner = new HashMap<>();
+        private final Map<String, List<Node>> byParentHostname = new HashMap<>();
+
+        private Directory(int childVersion, Map<String, CachedNode> nodes) {
+            this.childVersion = childVersion;
+            this.nodes = nodes;
+            for (CachedNode cachedNode : nodes.values()) {
+                Node node = cachedNode.node;
+                nodeList.add(node);
+                byType.computeIfAbsent(node.type(), type -> new ArrayList<>()).add(node);
+                node.allocation().ifPresent(allocation -> byOwner.computeIfAbsent(allocation.owner(), owner -> new ArrayList<>()).add(node));
+                node.parentHostname().ifPresent(parent -> byParentHostname.computeIfAbsent(parent, hostname -> new ArrayList<>()).add(node));
+            }
+        }
+
+    }
+
+    /** A node and the data it was deserialized from */
+    private static class CachedNode {
+
+        private final byte[] data;
+        private final Node node;
+
+        private CachedNode(byte[] data, Node node) {
+            this.data = data;
+            this.node = node;
+        }
+
+    }
+
+    /** The children of a directory listed at a child version, and the changes to them committed by this */
+    private static class Listing {
+
+        private final int childVersion;
+        private final List<String> children;
+        private final Map<String, Integer> committedChanges;
+
+        private Listing(int childVersion, List<String> children, Map<String, Integer> committedChanges) {
+            this.childVersion = childVersion;
+            this.children = children;
+            this.committedChanges = committedChanges;
+        }
+
+    }
+
+}
@@ -54,7 +54,7 @@ public class NodePatcher {
             this.node = node;
             this.nodeRepository = nodeRepository;
             this.children = node.type().isDockerHost() ?
-                    nodeRepository.list().childrenOf(node).asList() :
+                    nodeRepository.getChildNodes(node.hostname()) :
                     Collections.emptyList();
         }
         catch (IOException e) {
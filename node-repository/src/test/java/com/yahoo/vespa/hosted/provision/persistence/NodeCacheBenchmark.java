@@ -0,0 +1,97 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.hosted.provision.persistence;
+
+import com.yahoo.config.provision.NodeFlavors;
+import com.yahoo.config.provision.NodeType;
+import com.yahoo.config.provision.Zone;
+import com.yahoo.path.Path;
+import com.yahoo.vespa.curator.mock.MockCurator;
+import com.yahoo.vespa.hosted.provision.Node;
+import com.yahoo.vespa.hosted.provision.node.Agent;
+import com.yahoo.vespa.hosted.provision.provisioning.FlavorConfigBuilder;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Measures the latency of the node reads done by maintainers, with writes between each read, when reading
+ * through the node cache, and when reading through the curator database cache which is discarded on each write.
+ * Not run as part of the unit tests; run main manually.
+ */
+public class NodeCacheBenchmark {
+
+    private static final int hostCount = 50;
+    private static final int childrenPerHost = 20;
+    private static final int warmupRounds = 20;
+    private static final int rounds = 50;
+
+    public static void main(String[] args) {
+        NodeFlavors flavors = FlavorConfigBuilder.createDummies("default");
+        MockCurator curator = new MockCurator();
+        CuratorDatabaseClient client = new CuratorDatabaseClient(flavors, curator, Clock.systemUTC(), Zone.defaultZone(), true);
+        CuratorDatabase database = new CuratorDatabase(curator, Path.fromString("/provision/v1"), true);
+        NodeSerializer serializer = new NodeSerializer(flavors);
+        addHostsWithChildren(client, flavors);
+
+        Random random = new Random(1);
+        long nodeCacheNanos = 0, curatorCacheNanos = 0;
+        for (int round = -warmupRounds; round < rounds; round++) {
+            if (round == 0) {
+                nodeCacheNanos = 0;
+                curatorCacheNanos = 0;
+            }
+            for (int i = 0; i < 5; i++) {
+                String hostname = "host" + (1 + random.nextInt(hostCount)) + "-child" + (1 + random.nextInt(childrenPerHost));
+                Node node = client.getNode(hostname).get();
+                client.writeTo(node.state(), node.with(node.status().withIncreasedFailCount()), Agent.system, Optional.empty());
+            }
+
+            long start = System.nanoTime();
+            int nodeCacheCount = client.getNodes(NodeType.tenant, Node.State.provisioned).size() +
+                                 client.getChildNodes("host1").size();
+            nodeCacheNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<Node> allNodes = readAllThroughCuratorCache(database, serializer);
+            int curatorCacheCount = (int) allNodes.stream().filter(node -> node.type() == NodeType.tenant).count() +
+                                    (int) allNodes.stream().filter(node -> node.parentHostname().equals(Optional.of("host1"))).count();
+            curatorCacheNanos += System.nanoTime() - start;
+            if (nodeCacheCount != curatorCacheCount)
+                throw new IllegalStateException("Read " + nodeCacheCount + " nodes through the node cache, but " +
+                                                curatorCacheCount + " through the curator cache");
+        }
+        System.out.printf("%d nodes, 5 writes between reads: node cache %.2f ms/read, curator cache %.2f ms/read%n",
+                          client.getNodes().size(), nodeCacheNanos / 1e6 / rounds, curatorCacheNanos / 1e6 / rounds);
+    }
+
+    /** Reads all nodes the way the curator database client did before it had a node cache */
+    private static List<Node> readAllThroughCuratorCache(CuratorDatabase database, NodeSerializer serializer) {
+        List<Node> nodes = new ArrayList<>();
+        CuratorDatabase.Session session = database.getSession();
+        Path directory = Path.fromString("/provision/v1/provisioned");
+        for (String hostname : session.getChildren(directory))
+            session.getData(directory.append(hostname)).ifPresent(data -> nodes.add(serializer.fromJson(Node.State.provisioned, data)));
+        return nodes;
+    }
+
+    private static void addHostsWithChildren(CuratorDatabaseClient client, NodeFlavors flavors) {
+        List<Node> nodes = new ArrayList<>();
+        for (int host = 1; host <= hostCount; host++) {
+            String hostname = "host" + host;
+            nodes.add(Node.create(hostname, Set.of("::" + host + ":0"), Collections.emptySet(), hostname, Optional.empty(),
+                                  flavors.getFlavorOrThrow("default"), NodeType.host));
+            for (int child = 1; child <= childrenPerHost; child++) {
+                String childHostname = hostname + "-child" + child;
+                nodes.add(Node.create(childHostname, Set.of("::" + host + ":" + child), Collections.emptySet(), childHostname,
+                                      Optional.of(hostname), flavors.getFlavorOrThrow("default"), NodeType.tenant));
+            }
+        }
+        client.addNodes(nodes);
+    }
+
+}
@@ -0,0 +1,211 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.hosted.provision.persistence;
+
+import com.yahoo.component.Version;
+import com.yahoo.config.provision.ApplicationId;
+import com.yahoo.config.provision.ClusterMembership;
+import com.yahoo.config.provision.NodeFlavors;
+import com.yahoo.config.provision.NodeType;
+import com.yahoo.config.provision.Zone;
+import com.yahoo.path.Path;
+import com.yahoo.vespa.curator.mock.MockCurator;
+import com.yahoo.vespa.curator.recipes.CuratorCounter;
+import com.yahoo.vespa.hosted.provision.Node;
+import com.yahoo.vespa.hosted.provision.node.Agent;
+import com.yahoo.vespa.hosted.provision.provisioning.FlavorConfigBuilder;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the node cache through the curator database client, by comparing with a client which does not cache.
+ */
+public class NodeCacheTest {
+
+    private static final ApplicationId application1 = ApplicationId.from("tenant1", "application1", "default");
+    private static final ApplicationId application2 = ApplicationId.from("tenant2", "application2", "default");
+
+    private final NodeFlavors flavors = FlavorConfigBuilder.createDummies("default");
+    private final MockCurator curator = new MockCurator();
+    private final CuratorDatabaseClient client = newClient(true);
+    private final CuratorDatabaseClient otherClient = newClient(true);
+    private final CuratorDatabaseClient uncachedClient = newClient(false);
+
+    @Test
+    public void nodes_are_found_through_indexes() {
+        addHostsWithChildren(client, 3, 4);
+        assertEquals(15, client.getNodes().size());
+        assertCachedEqualsUncached();
+
+        activate(client, application1, "host1-child1", "host1-child2", "host2-child1");
+        activate(client, application2, "host3-child1");
+        assertCachedEqualsUncached();
+        assertEquals(Set.of("host1-child1", "host1-child2", "host2-child1"),
+                     Set.copyOf(hostnamesOf(client.getNodes(application1, Node.State.active))));
+        assertEquals(Set.of("host1-child3", "host1-child4"),
+                     Set.copyOf(hostnamesOf(client.getChildNodes("host1", Node.State.provisioned))));
+        assertEquals(3, client.getNodes(NodeType.host).size());
+        assertEquals(Optional.of(Node.State.active), client.getNode("host3-child1").map(Node::state));
+        assertFalse(client.getNode("host3-child1", Node.State.provisioned).isPresent());
+
+        client.removeNodes(client.getChildNodes("host2", Node.State.provisioned));
+        assertEquals(List.of("host2-child1"), hostnamesOf(client.getChildNodes("host2")));
+        assertCachedEqualsUncached();
+    }
+
+    @Test
+    public void only_changed_nodes_are_replaced_after_local_writes() {
+        addHostsWithChildren(client, 2, 3);
+        Node unchanged = client.getNode("host1-child1").get();
+        Node changed = client.getNode("host1-child2").get();
+
+        client.writeTo(Node.State.provisioned, changed.with(changed.status().withWantToRetire(true)), Agent.system, Optional.empty());
+        assertSame(unchanged, client.getNode("host1-child1").get());
+        assertNotSame(changed, client.getNode("host1-child2").get());
+        assertTrue(client.getNode("host1-child2").get().status().wantToRetire());
+        assertCachedEqualsUncached();
+    }
+
+    @Test
+    public void writes_by_other_clients_are_seen() {
+        addHostsWithChildren(client, 2, 3);
+        assertEquals(8, otherClient.getNodes().size());
+        Node unchanged = client.getNode("host1-child1").get();
+
+        // Write through the other client, which this client has no record of
+        Node changed = otherClient.getNode("host1-child2").get();
+        otherClient.writeTo(Node.State.provisioned, changed.with(changed.status().withWantToRetire(true)), Agent.system, Optional.empty());
+        otherClient.writeTo(Node.State.dirty, otherClient.getNode("host2-child1").get(), Agent.system, Optional.empty());
+        otherClient.removeNodes(Collections.singletonList(otherClient.getNode("host2-child2").get()));
+
+        assertTrue(client.getNode("host1-child2").get().status().wantToRetire());
+        assertEquals(List.of("host2-child1"), hostnamesOf(client.getNodes(Node.State.dirty)));
+        assertFalse(client.getNode("host2-child2").isPresent());
+        assertSame("Unchanged nodes are not deserialized again", unchanged, client.getNode("host1-child1").get());
+        assertCachedEqualsUncached();
+
+        // Writes by both clients between reads
+        client.writeTo(Node.State.parked, client.getNode("host1-child3").get(), Agent.system, Optional.empty());
+        otherClient.writeTo(Node.State.parked, otherClient.getNode("host2-child3").get(), Agent.system, Optional.empty());
+        client.writeTo(Node.State.dirty, client.getNode("host1-child1").get(), Agent.system, Optional.empty());
+        assertEquals(Set.of("host1-child3", "host2-child3"), Set.copyOf(hostnamesOf(client.getNodes(Node.State.parked))));
+        assertEquals(Set.of("host1-child1", "host2-child1"), Set.copyOf(hostnamesOf(client.getNodes(Node.State.dirty))));
+        assertCachedEqualsUncached();
+    }
+
+    @Test
+    public void random_writes_by_several_clients_are_seen() {
+        Random random = new Random(1);
+        addHostsWithChildren(client, 5, 5);
+        List<CuratorDatabaseClient> writers = List.of(client, otherClient, uncachedClient);
+        for (int i = 0; i < 200; i++) {
+            CuratorDatabaseClient writer = writers.get(random.nextInt(writers.size()));
+            List<Node> nodes = writer.getNodes();
+            Node node = nodes.get(random.nextInt(nodes.size()));
+            Node.State toState = Node.State.values()[random.nextInt(Node.State.values().length)];
+            if (random.nextInt(10) == 0) {
+                writer.removeNodes(Collections.singletonList(node));
+                writer.addNodes(Collections.singletonList(Node.create(node.id(), node.ipAddresses(), node.ipAddressPool().asSet(),
+                                                                     node.hostname(), node.parentHostname(), node.flavor(),
+                                                                     node.type())));
+            }
+            else {
+                writer.writeTo(toState, node.with(node.status().withIncreasedFailCount()), Agent.system, Optional.empty());
+            }
+            if (random.nextBoolean())
+                assertCachedEqualsUncached();
+        }
+        assertCachedEqualsUncached();
+    }
+
+    @Test
+    public void children_created_and_deleted_by_other_processes_are_seen() {
+        addHostsWithChildren(client, 2, 3);
+        Node unchanged = client.getNode("host1").get();
+        Node removed = client.getNode("host1-child1").get();
+
+        // Write directly to ZooKeeper, so no client has a record of the changes to the child versions
+        Path provisioned = Path.fromString("/provision/v1/provisioned");
+        Node added = Node.create("host3", Set.of("::3:0"), Collections.emptySet(), "host3", Optional.empty(),
+                                 flavors.getFlavorOrThrow("default"), NodeType.host);
+        curator.set(provisioned.append("host3"), new NodeSerializer(flavors).toJson(added));
+        curator.delete(provisioned.append(removed.hostname()));
+        new CuratorCounter(curator, "/provision/v1/changeCounter").next();
+
+        assertTrue(client.getNode("host3").isPresent());
+        assertFalse(client.getNode(removed.hostname()).isPresent());
+        assertSame("Unchanged nodes are not deserialized again", unchanged, client.getNode("host1").get());
+        assertCachedEqualsUncached();
+    }
+
+    private CuratorDatabaseClient newClient(boolean useCache) {
+        return new CuratorDatabaseClient(flavors, curator, Clock.systemUTC(), Zone.defaultZone(), useCache);
+    }
+
+    private void addHostsWithChildren(CuratorDatabaseClient client, int hostCount, int childrenPerHost) {
+        List<Node> nodes = new ArrayList<>();
+        for (int host = 1; host <= hostCount; host++) {
+            String hostname = "host" + host;
+            nodes.add(Node.create(hostname, Set.of("::" + host + ":0"), Collections.emptySet(), hostname, Optional.empty(),
+                                  flavors.getFlavorOrThrow("default"), NodeType.host));
+            for (int child = 1; child <= childrenPerHost; child++) {
+                String childHostname = hostname + "-child" + child;
+                nodes.add(Node.create(childHostname, Set.of("::" + host + ":" + child), Collections.emptySet(), childHostname,
+                                      Optional.of(hostname), flavors.getFlavorOrThrow("default"), NodeType.tenant));
+            }
+        }
+        client.addNodes(nodes);
+    }
+
+    private void activate(CuratorDatabaseClient client, ApplicationId application, String ... hostnames) {
+        int index = 0;
+        List<Node> nodes = new ArrayList<>();
+        for (String hostname : hostnames) {
+            ClusterMembership membership = ClusterMembership.from("container/id1/0/" + index++, Version.fromString("7.0"));
+            nodes.add(client.getNode(hostname).get().allocate(application, membership, Instant.now()));
+        }
+        client.writeTo(Node.State.active, nodes, Agent.system, Optional.empty());
+    }
+
+    private void assertCachedEqualsUncached() {
+        for (CuratorDatabaseClient cachedClient : List.of(client, otherClient)) {
+            assertEquals(hostnamesOf(uncachedClient.getNodes()), hostnamesOf(cachedClient.getNodes()));
+            for (Node node : uncachedClient.getNodes()) {
+                Node cached = cachedClient.getNode(node.hostname()).get();
+                assertEquals(node.state(), cached.state());
+                assertEquals(node.status().failCount(), cached.status().failCount());
+                assertEquals(node.status().wantToRetire(), cached.status().wantToRetire());
+                assertEquals(node.allocation().map(allocation -> allocation.owner()),
+                             cached.allocation().map(allocation -> allocation.owner()));
+            }
+            for (Node.State state : Node.State.values()) {
+                assertEquals(hostnamesOf(uncachedClient.getNodes(state)), hostnamesOf(cachedClient.getNodes(state)));
+                for (NodeType type : NodeType.values())
+                    assertEquals(hostnamesOf(uncachedClient.getNodes(type, state)), hostnamesOf(cachedClient.getNodes(type, state)));
+                for (ApplicationId application : List.of(application1, application2))
+                    assertEquals(hostnamesOf(uncachedClient.getNodes(application, state)), hostnamesOf(cachedClient.getNodes(application, state)));
+            }
+            for (Node host : uncachedClient.getNodes(NodeType.host))
+                assertEquals(hostnamesOf(uncachedClient.getChildNodes(host.hostname())), hostnamesOf(cachedClient.getChildNodes(host.hostname())));
+        }
+    }
+
+    private static List<String> hostnamesOf(List<Node> nodes) {
+        return nodes.stream().map(Node::hostname).collect(Collectors.toList());
+    }
+
+}
@@ -6,14 +6,25 @@ import com.yahoo.document.predicate.Predicate;
 import com.yahoo.search.predicate.index.*;
 import com.yahoo.search.predicate.index.conjunction.ConjunctionHit;
 import com.yahoo.search.predicate.index.conjunction.ConjunctionIndex;
+import com.yahoo.search.predicate.serialization.MappedSectionReader;
 import com.yahoo.search.predicate.serialization.SerializationHelper;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -31,6 +42,11 @@ import java.util.stream.Stream;
  * </p><p>
  * Note that the {@link PredicateIndex} is thread-safe, but a {@link Searcher} is not.
  * Each thread <strong>must</strong> use its own searcher.
+ * </p><p>
+ * An index may be written to a file with {@link #writeToMappedFile(Path)}, and loaded with
+ * {@link #fromMappedFile(Path)}, which maps the file into memory instead of reading it: The dictionaries and
+ * interval store are then searched in place, and posting lists and intervals are copied to the heap only
+ * when first used by a search, so loading takes little time and heap regardless of the size of the index.
  * </p>
  * @author Magnar Nedland
  * @author bjorncs
@@ -39,6 +55,7 @@ import java.util.stream.Stream;
 public class PredicateIndex {
 
     private static final int SERIALIZATION_FORMAT_VERSION = 3;
+    private static final int MAPPED_FORMAT_VERSION = 1;
 
     private final PredicateRangeTermExpander expander;
     private final int[] internalToExternalIdMapping;
@@ -93,7 +110,16 @@ public class PredicateIndex {
      * Create a new searcher.
      */
     public Searcher searcher() {
-        return new Searcher();
+        return new Searcher(null);
+    }
+
+    /**
+     * Create a new searcher which searches large indexes by partitioning the document ids into as many ranges
+     * as the parallelism of the given pool, and searching these in parallel in the pool. Hits are returned in
+     * the same order as by {@link #searcher()}, but are all found before the stream is returned.
+     */
+    public Searcher searcher(ForkJoinPool pool) {
+        return new Searcher(pool);
     }
 
     public void writeToOutputStream(DataOutputStream out) throws IOException {
@@ -143,14 +169,85 @@ public class PredicateIndex {
         );
     }
 
+    /**
+     * Writes this to the given file in a format which is loaded by mapping it into memory.
+     *
+     * @see #fromMappedFile(Path)
+     */
+    public void writeToMappedFile(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream headerOut = new DataOutputStream(header);
+            headerOut.writeInt(MAPPED_FORMAT_VERSION);
+            config.writeToOutputStream(headerOut);
+            headerOut.writeInt(highestIntervalEnd);
+            SerializationHelper.writeByteSection(header.toByteArray(), out);
+            SerializationHelper.writeIntSection(internalToExternalIdMapping, out);
+            SerializationHelper.writeByteSection(minFeatureIndex, out);
+            SerializationHelper.writeShortSection(intervalEnds, out);
+            SerializationHelper.writeIntSection(zeroConstraintDocuments, out);
+            intervalIndex.writeMappedSections(out);
+            boundsIndex.writeMappedSections(out);
+            conjunctionIntervalIndex.writeMappedSections(out);
+            intervalStore.writeMappedSections(out);
+            conjunctionIndex.writeMappedSections(out);
+        }
+    }
+
+    /**
+     * Loads an index written by {@link #writeToMappedFile(Path)} by mapping the file into memory.
+     * Only the arrays indexed by document id are copied to the heap, and the file must not be changed while
+     * the returned index is in use.
+     */
+    public static PredicateIndex fromMappedFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedSectionReader in = new MappedSectionReader(channel);
+            DataInputStream header = in.nextStream();
+            int version = header.readInt();
+            if (version != MAPPED_FORMAT_VERSION) {
+                throw new IllegalArgumentException(String.format(
+                        "Invalid mapped format version. Expected %d, was %d.", MAPPED_FORMAT_VERSION, version));
+            }
+            Config config = Config.fromInputStream(header);
+            int highestIntervalEnd = header.readInt();
+            int[] internalToExternalIdMapping = in.nextIntArray();
+            byte[] minFeatureIndex = in.nextByteArray();
+            short[] intervalEnds = in.nextShortArray();
+            int[] zeroConstraintDocuments = in.nextIntArray();
+            SimpleIndex intervalIndex = SimpleIndex.fromMappedSections(in);
+            SimpleIndex boundsIndex = SimpleIndex.fromMappedSections(in);
+            SimpleIndex conjunctionIntervalIndex = SimpleIndex.fromMappedSections(in);
+            PredicateIntervalStore intervalStore = PredicateIntervalStore.fromMappedSections(in);
+            ConjunctionIndex conjunctionIndex = ConjunctionIndex.fromMappedSections(in);
+            return new PredicateIndex(
+                    config,
+                    internalToExternalIdMapping,
+                    minFeatureIndex,
+                    intervalEnds,
+                    highestIntervalEnd,
+                    intervalIndex,
+                    boundsIndex,
+                    conjunctionIntervalIndex,
+                    intervalStore,
+                    conjunctionIndex,
+                    zeroConstraintDocuments
+            );
+        }
+    }
+
     @Beta
     public class Searcher {
+        // Searches with fewer documents than this per partition are not partitioned
+        private static final int MIN_DOCUMENTS_PER_PARTITION = 4096;
+
         private final byte[] nPostingListsForDocument;
         private final ConjunctionIndex.Searcher conjunctionIndexSearcher;
+        private final ForkJoinPool pool;
 
-        private Searcher() {
+        private Searcher(ForkJoinPool pool) {
             this.nPostingListsForDocument = new byte[internalToExternalIdMapping.length];
             this.conjunctionIndexSearcher = conjunctionIndex.searcher();
+            this.pool = pool;
         }
 
         /**
@@ -160,65 +257,110 @@ public class PredicateIndex {
          * @return A stream of hits.
          */
         public Stream<Hit> search(PredicateQuery query) {
-            ArrayList<PostingList> postingLists = new ArrayList<>();
+            List<Supplier<PostingList>> postingListFactories = new ArrayList<>();
             for (PredicateQuery.Feature feature : query.getFeatures()) {
-                addIntervalPostingList(feature.featureHash, feature.subqueryBitmap, postingLists);
+                addIntervalPostingList(feature.featureHash, feature.subqueryBitmap, postingListFactories);
             }
             for (PredicateQuery.RangeFeature feature : query.getRangeFeatures()) {
                 expander.expand(
                         feature.key,
                         feature.value,
-                        featureHash -> addIntervalPostingList(featureHash, feature.subqueryBitmap, postingLists),
-                        (featureHash, value) -> addBoundsPostingList(featureHash, value, feature.subqueryBitmap, postingLists));
+                        featureHash -> addIntervalPostingList(featureHash, feature.subqueryBitmap, postingListFactories),
+                        (featureHash, value) -> addBoundsPostingList(featureHash, value, feature.subqueryBitmap, postingListFactories));
             }
-            addCompressedZStarPostingList(postingLists);
-            addConjunctionPostingLists(query, postingLists);
-            addZeroConstraintPostingList(postingLists);
+            addCompressedZStarPostingList(postingListFactories);
+            addConjunctionPostingLists(query, postingListFactories);
+            addZeroConstraintPostingList(postingListFactories);
 
+            List<PostingList> postingLists = createPostingLists(postingListFactories);
             CachedPostingListCounter counter = postingListCounter.get();
             counter.registerUsage(postingLists);
             counter.countPostingListsPerDocument(postingLists, nPostingListsForDocument);
+            int partitions = pool == null ? 1 : Math.min(pool.getParallelism(),
+                                                         nPostingListsForDocument.length / MIN_DOCUMENTS_PER_PARTITION);
+            if (partitions <= 1 || postingLists.isEmpty()) {
+                return new PredicateSearch(
+                        postingLists, nPostingListsForDocument, minFeatureIndex, intervalEnds, highestIntervalEnd).stream()
+                        // Map to external id. Note that internal id for first document is 1.
+                        .map(hit -> new Hit(internalToExternalIdMapping[hit.getDocId()], hit.getSubquery()));
+            }
+            return searchPartitions(postingLists, postingListFactories, partitions);
+        }
+
+        /**
+         * Searches disjoint ranges of the document ids in parallel, each with its own posting lists,
+         * and returns the hits of all the ranges in order when all are done.
+         */
+        private Stream<Hit> searchPartitions(List<PostingList> postingLists,
+                                             List<Supplier<PostingList>> postingListFactories,
+                                             int partitions) {
+            int nDocuments = nPostingListsForDocument.length;
+            int partitionSize = (nDocuments + partitions - 1) / partitions;
+            List<ForkJoinTask<List<Hit>>> tasks = new ArrayList<>(partitions);
+            for (int i = 0; i < partitions; i++) {
+                int fromDocId = i * partitionSize;
+                int toDocId = Math.min(nDocuments, fromDocId + partitionSize);
+                List<PostingList> partitionPostingLists = i == 0 ? postingLists : createPostingLists(postingListFactories);
+                tasks.add(pool.submit(() -> searchPartition(partitionPostingLists, fromDocId, toDocId)));
+            }
+            List<Hit> hits = new ArrayList<>();
+            for (ForkJoinTask<List<Hit>> task : tasks) {
+                hits.addAll(task.join());
+            }
+            return hits.stream();
+        }
+
+        private List<Hit> searchPartition(List<PostingList> postingLists, int fromDocId, int toDocId) {
             return new PredicateSearch(
-                    postingLists, nPostingListsForDocument, minFeatureIndex, intervalEnds, highestIntervalEnd).stream()
-                    // Map to external id. Note that internal id for first document is 1.
-                    .map(hit -> new Hit(internalToExternalIdMapping[hit.getDocId()], hit.getSubquery()));
+                    postingLists, nPostingListsForDocument, minFeatureIndex, intervalEnds, highestIntervalEnd)
+                    .stream(fromDocId, toDocId)
+                    .map(hit -> new Hit(internalToExternalIdMapping[hit.getDocId()], hit.getSubquery()))
+                    .collect(Collectors.toList());
+        }
+
+        private List<PostingList> createPostingLists(List<Supplier<PostingList>> postingListFactories) {
+            List<PostingList> postingLists = new ArrayList<>(postingListFactories.size());
+            for (Supplier<PostingList> factory : postingListFactories) {
+                postingLists.add(factory.get());
+            }
+            return postingLists;
         }
 
-        private void addCompressedZStarPostingList(List<PostingList> postingLists) {
+        private void addCompressedZStarPostingList(List<Supplier<PostingList>> postingLists) {
             SimpleIndex.Entry e = intervalIndex.getPostingList(Feature.Z_STAR_COMPRESSED_ATTRIBUTE_HASH);
             if (e != null) {
-                postingLists.add(new ZstarCompressedPostingList(intervalStore, e.docIds, e.dataRefs));
+                postingLists.add(() -> new ZstarCompressedPostingList(intervalStore, e.docIds, e.dataRefs));
             }
         }
 
         private void addBoundsPostingList(
-                long featureHash, int value, long subqueryBitMap, List<PostingList> postingLists) {
+                long featureHash, int value, long subqueryBitMap, List<Supplier<PostingList>> postingLists) {
             SimpleIndex.Entry e = boundsIndex.getPostingList(featureHash);
             if (e != null) {
-                postingLists.add(new BoundsPostingList(intervalStore, e.docIds, e.dataRefs, subqueryBitMap, value));
+                postingLists.add(() -> new BoundsPostingList(intervalStore, e.docIds, e.dataRefs, subqueryBitMap, value));
             }
         }
 
-        private void addIntervalPostingList(long featureHash, long subqueryBitMap, List<PostingList> postingLists) {
+        private void addIntervalPostingList(long featureHash, long subqueryBitMap, List<Supplier<PostingList>> postingLists) {
             SimpleIndex.Entry e = intervalIndex.getPostingList(featureHash);
             if (e != null) {
-                postingLists.add(new IntervalPostingList(intervalStore, e.docIds, e.dataRefs, subqueryBitMap));
+                postingLists.add(() -> new IntervalPostingList(intervalStore, e.docIds, e.dataRefs, subqueryBitMap));
             }
         }
 
-        private void addConjunctionPostingLists(PredicateQuery query, List<PostingList> postingLists) {
+        private void addConjunctionPostingLists(PredicateQuery query, List<Supplier<PostingList>> postingLists) {
             List<ConjunctionHit> hits = conjunctionIndexSearcher.search(query);
             for (ConjunctionHit hit : hits) {
                 SimpleIndex.Entry e = conjunctionIntervalIndex.getPostingList(hit.conjunctionId);
                 if (e != null) {
-                    postingLists.add(new IntervalPostingList(intervalStore, e.docIds, e.dataRefs, hit.subqueryBitmap));
+                    postingLists.add(() -> new IntervalPostingList(intervalStore, e.docIds, e.dataRefs, hit.subqueryBitmap));
                 }
             }
         }
 
-        private void addZeroConstraintPostingList(ArrayList<PostingList> postingLists) {
+        private void addZeroConstraintPostingList(List<Supplier<PostingList>> postingLists) {
             if (zeroConstraintDocuments.length > 0) {
-                postingLists.add(new ZeroConstraintPostingList(zeroConstraintDocuments));
+                postingLists.add(() -> new ZeroConstraintPostingList(zeroConstraintDocuments));
             }
         }
 
@@ -0,0 +1,376 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.predicate;
+
+import com.google.common.annotations.Beta;
+import com.yahoo.document.predicate.Predicate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * An index of {@link Predicate} objects which supports adding and removing documents while it is searched.
+ * <p>
+ * The index consists of immutable segments, each a {@link PredicateIndex}. Documents added with
+ * {@link #addDocument(int, Predicate)} and removed with {@link #removeDocument(int)} become visible to searches
+ * when {@link #commit()} is called, which indexes the added documents as a new segment, and marks the removed
+ * and replaced documents as removed in the segments holding them. When there are too many segments, or
+ * segments where most documents are removed, the segments are merged in the background, by indexing the
+ * remaining documents of them as a single segment.
+ * </p><p>
+ * Searches see the segments as they were when the search started, and are never blocked by changes.
+ * As with {@link PredicateIndex}, this is thread-safe, but a {@link Searcher} is not.
+ * Each thread <strong>must</strong> use its own searcher.
+ * </p>
+ *
+ * @see PredicateIndex
+ */
+@Beta
+public class SegmentedPredicateIndex implements AutoCloseable {
+
+    private static final int DEFAULT_MAX_SEGMENTS = 8;
+
+    private final Config config;
+    private final int maxSegments;
+    private final Executor mergeExecutor;
+    private final ExecutorService ownedMergeExecutor;
+    private final AtomicBoolean mergePending = new AtomicBoolean(false);
+    private final Object mergeMonitor = new Object();
+
+    // The segments visible to searches. Changes are published by replacing the list.
+    private volatile List<LiveSegment> segments = Collections.emptyList();
+
+    // The following are guarded by this
+    private final Map<Integer, Segment> owners = new HashMap<>();
+    private final Map<Integer, Predicate> pendingAdditions = new LinkedHashMap<>();
+    private final Set<Integer> pendingRemovals = new HashSet<>();
+
+    /** Creates an index which merges segments in a background thread owned by it, which is stopped by {@link #close()} */
+    public SegmentedPredicateIndex(Config config) {
+        this(config, DEFAULT_MAX_SEGMENTS, null);
+    }
+
+    /**
+     * Creates an index.
+     *
+     * @param config the configuration of each segment
+     * @param maxSegments the number of segments above which the smallest segments are merged
+     * @param mergeExecutor the executor to merge segments in, or null to use a thread owned by this index
+     */
+    public SegmentedPredicateIndex(Config config, int maxSegments, Executor mergeExecutor) {
+        if (maxSegments < 2) {
+            throw new IllegalArgumentException("Max segments must be at least 2, was " + maxSegments);
+        }
+        this.config = config;
+        this.maxSegments = maxSegments;
+        if (mergeExecutor == null) {
+            this.ownedMergeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "predicate-index-merger");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.mergeExecutor = ownedMergeExecutor;
+        } else {
+            this.ownedMergeExecutor = null;
+            this.mergeExecutor = mergeExecutor;
+        }
+    }
+
+    /**
+     * Adds a document, or replaces the document with the given id, when {@link #commit()} is called.
+     *
+     * @param docId a 32-bit document id, returned in the Hit objects when the predicate matches
+     * @param predicate the predicate to index
+     */
+    public synchronized void addDocument(int docId, Predicate predicate) {
+        pendingAdditions.put(docId, predicate);
+        pendingRemovals.remove(docId);
+    }
+
+    /** Removes the document with the given id, if any, when {@link #commit()} is called */
+    public synchronized void removeDocument(int docId) {
+        pendingAdditions.remove(docId);
+        pendingRemovals.add(docId);
+    }
+
+    /**
+     * Makes the documents added and removed since the last commit visible to searches, and starts merging
+     * segments in the background if this is now needed.
+     */
+    public void commit() {
+        synchronized (this) {
+            if (pendingAdditions.isEmpty() && pendingRemovals.isEmpty()) return;
+
+            Map<Segment, Set<Integer>> removals = new IdentityHashMap<>();
+            for (Integer docId : pendingRemovals) {
+                Segment owner = owners.remove(docId);
+                if (owner != null) {
+                    removals.computeIfAbsent(owner, segment -> new HashSet<>()).add(docId);
+                }
+            }
+            Segment added = null;
+            if ( ! pendingAdditions.isEmpty()) {
+                added = new Segment(config, new LinkedHashMap<>(pendingAdditions));
+                for (Integer docId : pendingAdditions.keySet()) {
+                    Segment owner = owners.put(docId, added);
+                    if (owner != null) {
+                        removals.computeIfAbsent(owner, segment -> new HashSet<>()).add(docId);
+                    }
+                }
+            }
+            List<LiveSegment> updated = new ArrayList<>(segments.size() + 1);
+            for (LiveSegment live : segments) {
+                updated.add(live.withRemoved(removals.get(live.segment)));
+            }
+            if (added != null) {
+                updated.add(new LiveSegment(added, Collections.emptySet()));
+            }
+            updated.removeIf(live -> live.size() == 0);
+            segments = Collections.unmodifiableList(updated);
+            pendingAdditions.clear();
+            pendingRemovals.clear();
+        }
+        if (selectSegmentsToMerge(segments).size() > 1 && mergePending.compareAndSet(false, true)) {
+            mergeExecutor.execute(this::merge);
+        }
+    }
+
+    /**
+     * Merges the segments which should be merged, if any. This is done in the background after commits,
+     * but may also be called directly.
+     */
+    public void merge() {
+        synchronized (mergeMonitor) {
+            mergePending.set(false);
+            Merge merge = prepareMerge();
+            if (merge != null) {
+                completeMerge(merge);
+            }
+        }
+    }
+
+    /**
+     * Indexes the remaining documents of the segments which should be merged as a new segment, without making it
+     * visible to searches. Returns null if no segments should be merged.
+     */
+    Merge prepareMerge() {
+        List<LiveSegment> toMerge = selectSegmentsToMerge(segments);
+        if (toMerge.size() < 2) return null;
+
+        Set<Segment> merging = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<Integer, Predicate> documents = new LinkedHashMap<>();
+        Map<Integer, Segment> sources = new HashMap<>();
+        for (LiveSegment live : toMerge) {
+            merging.add(live.segment);
+            for (Map.Entry<Integer, Predicate> document : live.segment.documents.entrySet()) {
+                if ( ! live.removed.contains(document.getKey())) {
+                    documents.put(document.getKey(), document.getValue());
+                    sources.put(document.getKey(), live.segment);
+                }
+            }
+        }
+        return new Merge(merging, sources, documents.isEmpty() ? null : new Segment(config, documents));
+    }
+
+    /**
+     * Replaces the merged segments by the segment produced by the given merge. Documents removed from the merged
+     * segments since the merge was prepared are removed from the new segment. A merged segment which is no longer
+     * present had all its documents removed by a commit.
+     */
+    synchronized void completeMerge(Merge merge) {
+        Map<Segment, LiveSegment> current = new IdentityHashMap<>();
+        for (LiveSegment live : segments) {
+            current.put(live.segment, live);
+        }
+        List<LiveSegment> updated = new ArrayList<>(segments.size());
+        for (LiveSegment live : segments) {
+            if ( ! merge.merging.contains(live.segment)) {
+                updated.add(live);
+            }
+        }
+        if (merge.merged != null) {
+            Set<Integer> removed = new HashSet<>();
+            for (Map.Entry<Integer, Segment> source : merge.sources.entrySet()) {
+                LiveSegment live = current.get(source.getValue());
+                if (live == null || live.removed.contains(source.getKey())) {
+                    removed.add(source.getKey());
+                } else {
+                    owners.put(source.getKey(), merge.merged);
+                }
+            }
+            LiveSegment mergedLive = new LiveSegment(merge.merged, removed);
+            if (mergedLive.size() > 0) {
+                updated.add(mergedLive);
+            }
+        }
+        segments = Collections.unmodifiableList(updated);
+    }
+
+    /**
+     * Returns the segments which should be merged: The smallest half of the segments if there are more than the
+     * max number of segments, and any segment where more than half the documents are removed.
+     */
+    private List<LiveSegment> selectSegmentsToMerge(List<LiveSegment> segments) {
+        List<LiveSegment> selected = new ArrayList<>();
+        List<LiveSegment> bySize = new ArrayList<>(segments);
+        bySize.sort(Comparator.comparingInt(LiveSegment::size));
+        for (int i = 0; i < bySize.size(); i++) {
+            LiveSegment live = bySize.get(i);
+            if ((segments.size() > maxSegments && i < segments.size() / 2) || live.removed.size() > live.size()) {
+                selected.add(live);
+            }
+        }
+        if (selected.size() == 1 && segments.size() > 1) { // Rewrite a segment with mostly removed documents
+            selected.add(bySize.get(bySize.get(0) == selected.get(0) ? 1 : 0));
+        }
+        return selected;
+    }
+
+    /** Returns the number of documents visible to searches */
+    public int size() {
+        int size = 0;
+        for (LiveSegment live : segments) {
+            size += live.size();
+        }
+        return size;
+    }
+
+    /** Returns the number of segments visible to searches */
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    public void rebuildPostingListCache() {
+        for (LiveSegment live : segments) {
+            live.segment.index.rebuildPostingListCache();
+        }
+    }
+
+    /**
+     * Create a new searcher.
+     */
+    public Searcher searcher() {
+        return new Searcher();
+    }
+
+    /** Stops merging segments in the background, if this index owns the thread doing that */
+    @Override
+    public void close() {
+        if (ownedMergeExecutor != null) {
+            ownedMergeExecutor.shutdownNow();
+        }
+    }
+
+    @Beta
+    public class Searcher {
+
+        private Map<Segment, PredicateIndex.Searcher> searchers = new IdentityHashMap<>();
+
+        /** The segments searched last, which have searchers in the map above */
+        private List<LiveSegment> searched = Collections.emptyList();
+
+        private Searcher() { }
+
+        /**
+         * Retrieves a stream of hits for the given query, from the segments visible when this is called.
+         * Hits are ordered by document id within each segment only.
+         *
+         * @param query Specifies the boolean variables that are true.
+         * @return A stream of hits.
+         */
+        public Stream<Hit> search(PredicateQuery query) {
+            List<LiveSegment> segments = SegmentedPredicateIndex.this.segments;
+            if (segments != searched) { // Drop the searchers of segments which are merged or emptied
+                Map<Segment, PredicateIndex.Searcher> current = new IdentityHashMap<>();
+                for (LiveSegment live : segments) {
+                    PredicateIndex.Searcher searcher = searchers.get(live.segment);
+                    if (searcher != null) {
+                        current.put(live.segment, searcher);
+                    }
+                }
+                searchers = current;
+                searched = segments;
+            }
+            return segments.stream().flatMap(live -> search(live, query));
+        }
+
+        private Stream<Hit> search(LiveSegment live, PredicateQuery query) {
+            Stream<Hit> hits = searchers.computeIfAbsent(live.segment, segment -> segment.index.searcher()).search(query);
+            return live.removed.isEmpty() ? hits : hits.filter(hit -> ! live.removed.contains(hit.getDocId()));
+        }
+
+    }
+
+    /** An immutable set of documents and the index of them */
+    private static class Segment {
+
+        final Map<Integer, Predicate> documents;
+        final PredicateIndex index;
+
+        Segment(Config config, Map<Integer, Predicate> documents) {
+            PredicateIndexBuilder builder = new PredicateIndexBuilder(config);
+            documents.forEach(builder::indexDocument);
+            this.documents = Collections.unmodifiableMap(documents);
+            this.index = builder.build();
+        }
+
+    }
+
+    /** A segment merged from other segments, which is not yet visible to searches */
+    static class Merge {
+
+        final Set<Segment> merging;
+        final Map<Integer, Segment> sources;
+        final Segment merged;
+
+        /**
+         * @param merging the segments which are merged
+         * @param sources the segment each document of the merged segment comes from
+         * @param merged the merged segment, or null if no documents remained in the merged segments
+         */
+        Merge(Set<Segment> merging, Map<Integer, Segment> sources, Segment merged) {
+            this.merging = merging;
+            this.sources = sources;
+            this.merged = merged;
+        }
+
+    }
+
+    /** A segment, and the documents of it which are removed, as seen by searches */
+    private static class LiveSegment {
+
+        final Segment segment;
+        final Set<Integer> removed;
+
+        LiveSegment(Segment segment, Set<Integer> removed) {
+            this.segment = segment;
+            this.removed = removed;
+        }
+
+        /** Returns this with the given documents removed in addition, without changing this */
+        LiveSegment withRemoved(Set<Integer> docIds) {
+            if (docIds == null) return this;
+            Set<Integer> removed = new HashSet<>(this.removed);
+            removed.addAll(docIds);
+            return new LiveSegment(segment, removed);
+        }
+
+        int size() {
+            return segment.documents.size() - removed.size();
+        }
+
+    }
+
+}
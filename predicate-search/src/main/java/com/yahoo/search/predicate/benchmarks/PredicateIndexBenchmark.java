@@ -24,6 +24,7 @@ import java.io.DataOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -37,9 +38,11 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static com.yahoo.search.predicate.benchmarks.PredicateIndexBenchmark.BenchmarkArguments.Algorithm;
 import static com.yahoo.search.predicate.benchmarks.PredicateIndexBenchmark.BenchmarkArguments.Format;
@@ -68,7 +71,7 @@ public class PredicateIndexBenchmark {
                 .build();
         PredicateIndex index = getIndex(args, config);
         if (args.indexOutputFile != null) {
-            writeIndexToFile(index, args.indexOutputFile);
+            writeIndexToFile(index, args.indexOutputFile, args.mapped);
         }
         if (args.queryFile != null) {
             runQueries(args, index);
@@ -105,6 +108,11 @@ public class PredicateIndexBenchmark {
             PredicateIndex index = builder.build();
             output.put("Time prepare index", System.currentTimeMillis() - start);
             return index;
+        } else if (args.mapped) {
+            long start = System.currentTimeMillis();
+            PredicateIndex index = PredicateIndex.fromMappedFile(Paths.get(args.indexFile));
+            output.put("Time map index", System.currentTimeMillis() - start);
+            return index;
         } else {
             try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args.indexFile)))) {
                 long start = System.currentTimeMillis();
@@ -115,7 +123,13 @@ public class PredicateIndexBenchmark {
         }
     }
 
-    private static void writeIndexToFile(PredicateIndex index, String indexOutputFile) throws IOException {
+    private static void writeIndexToFile(PredicateIndex index, String indexOutputFile, boolean mapped) throws IOException {
+        if (mapped) {
+            long start = System.currentTimeMillis();
+            index.writeToMappedFile(Paths.get(indexOutputFile));
+            output.put("Time write index", System.currentTimeMillis() - start);
+            return;
+        }
         try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexOutputFile)))) {
             long start = System.currentTimeMillis();
             index.writeToOutputStream(out);
@@ -134,8 +148,10 @@ public class PredicateIndexBenchmark {
         output.put("Feed file", args.feedFile);
         output.put("Query file", args.queryFile);
         output.put("Index file", args.indexFile);
+        output.put("Memory mapped index file", args.mapped);
         output.put("Query format", args.format);
         output.put("Warmup", args.warmup);
+        output.put("Max threads per search", args.maxParallelism);
     }
 
     private static void runQueries(BenchmarkArguments args, PredicateIndex index) throws IOException {
@@ -145,7 +161,30 @@ public class PredicateIndexBenchmark {
         rebuildPostingListCache(index);
         long warmup2 = warmup(queries, index, args.nThreads, args.warmup / 2);
         output.put("Time warmup after building posting cache", warmup2);
-        searchIndex(queries, index, args.nThreads, args.runtime);
+        searchIndex(queries, index::searcher, args.nThreads, args.runtime, output);
+        if (args.maxParallelism > 0) {
+            searchIndexInParallel(queries, index, args);
+        }
+    }
+
+    /**
+     * Runs the queries again with each query searched in parallel by 1, 2, 4 ... up to the given max number of threads,
+     * using a pool of that many threads for each search thread.
+     */
+    private static void searchIndexInParallel(List<PredicateQuery> queries, PredicateIndex index, BenchmarkArguments args) {
+        Map<String, Object> scaling = new TreeMap<>();
+        for (int parallelism = 1; parallelism <= args.maxParallelism; parallelism *= 2) {
+            List<ForkJoinPool> pools = new ArrayList<>();
+            for (int i = 0; i < args.nThreads; i++) {
+                pools.add(new ForkJoinPool(parallelism));
+            }
+            Iterator<ForkJoinPool> nextPool = pools.iterator();
+            Map<String, Object> metrics = new TreeMap<>();
+            searchIndex(queries, () -> index.searcher(nextPool.next()), args.nThreads, args.runtime, metrics);
+            pools.forEach(ForkJoinPool::shutdown);
+            scaling.put(String.format("Threads per search %03d", parallelism), metrics);
+        }
+        output.put("Parallel search", scaling);
     }
 
     private static void rebuildPostingListCache(PredicateIndex index) {
@@ -177,14 +216,15 @@ public class PredicateIndexBenchmark {
         return System.currentTimeMillis() - start;
     }
 
-    private static void searchIndex(List<PredicateQuery> queries, PredicateIndex index, int nThreads, int runtime) {
+    private static void searchIndex(List<PredicateQuery> queries, Supplier<PredicateIndex.Searcher> searchers,
+                                    int nThreads, int runtime, Map<String, Object> output) {
         ExecutorService executor = Executors.newFixedThreadPool(nThreads);
         Random random = new Random(42);
         List<QueryRunner> runners = new ArrayList<>();
         for (int i = 0; i < nThreads; i++) {
             List<PredicateQuery> shuffledQueries = new ArrayList<>(queries);
             Collections.shuffle(shuffledQueries, random);
-            runners.add(new QueryRunner(shuffledQueries, index.searcher()));
+            runners.add(new QueryRunner(shuffledQueries, searchers.get()));
         }
         long start = System.currentTimeMillis();
         List<Future<ResultMetrics>> futureResults = runners.stream().map(executor::submit).collect(toList());
@@ -288,6 +328,14 @@ public class PredicateIndexBenchmark {
         @Option(name = {"-wi", "--write-index"}, description = "Serialize index to the given file")
         public String indexOutputFile;
 
+        @Option(name = {"-m", "--mapped"},
+                description = "Read and write index files in the memory mapped format, to measure startup time")
+        public boolean mapped = false;
+
+        @Option(name = {"-ps", "--parallel-search"},
+                description = "Also run the queries with each query searched by 1, 2, 4 ... up to this many threads")
+        public int maxParallelism = 0;
+
         @Option(name = {"-quf", "--query-file"}, description = "File path to a query file")
         public String queryFile;
 
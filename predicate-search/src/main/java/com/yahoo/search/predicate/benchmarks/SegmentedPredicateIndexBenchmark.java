@@ -0,0 +1,212 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.predicate.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.yahoo.document.predicate.Predicate;
+import com.yahoo.search.predicate.Config;
+import com.yahoo.search.predicate.PredicateQuery;
+import com.yahoo.search.predicate.SegmentedPredicateIndex;
+import io.airlift.airline.Command;
+import io.airlift.airline.HelpOption;
+import io.airlift.airline.Option;
+import io.airlift.airline.SingleCommand;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A benchmark of query latency in a {@link SegmentedPredicateIndex} while documents are added and removed,
+ * using generated targeting predicates and queries.
+ */
+public class SegmentedPredicateIndexBenchmark {
+
+    private static final Map<String, Object> output = new TreeMap<>();
+
+    public static void main(String[] rawArgs) throws Exception {
+        BenchmarkArguments args = SingleCommand.singleCommand(BenchmarkArguments.class).parse(rawArgs);
+        if (args.helpOption.showHelpIfRequested()) return;
+        putBenchmarkArgumentsToOutput(args);
+
+        try (SegmentedPredicateIndex index = new SegmentedPredicateIndex(new Config.Builder().setArity(args.arity).build())) {
+            long start = System.currentTimeMillis();
+            Random random = new Random(42);
+            for (int i = 0; i < args.nDocuments; i++) {
+                index.addDocument(i, createPredicate(random));
+            }
+            index.commit();
+            output.put("Time indexing documents", System.currentTimeMillis() - start);
+
+            List<PredicateQuery> queries = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                queries.add(createQuery(random));
+            }
+            runQueries(index, queries, args.nThreads, args.warmup, 0, 0);
+            index.rebuildPostingListCache();
+            output.put("Idle", runQueries(index, queries, args.nThreads, args.runtime, 0, 0));
+            output.put("Under write load", runQueries(index, queries, args.nThreads, args.runtime, args.writeRate, args.nDocuments));
+            output.put("Segments", index.segmentCount());
+        }
+        writeOutputToStandardOut();
+    }
+
+    /** Returns the metrics of running the given queries while changing documents at the given rate per second */
+    private static Map<String, Object> runQueries(SegmentedPredicateIndex index, List<PredicateQuery> queries,
+                                                  int nThreads, int runtime, int writeRate, int nDocuments)
+            throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads + 1);
+        List<Future<ResultMetrics>> futureResults = new ArrayList<>();
+        for (int i = 0; i < nThreads; i++) {
+            futureResults.add(executor.submit(new QueryRunner(queries, index.searcher(), i)));
+        }
+        Future<Long> writes = executor.submit(new Writer(index, writeRate, nDocuments));
+        long start = System.currentTimeMillis();
+        Thread.sleep(runtime * 1000L);
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        long searchTime = System.currentTimeMillis() - start;
+
+        ResultMetrics combined = futureResults.get(0).get();
+        for (int i = 1; i < futureResults.size(); i++) {
+            combined.combine(futureResults.get(i).get());
+        }
+        Map<String, Object> metrics = new TreeMap<>();
+        combined.writeMetrics(metrics, searchTime);
+        metrics.put("Documents changed", writes.get());
+        return metrics;
+    }
+
+    private static Predicate createPredicate(Random random) {
+        return Predicate.fromString(String.format(
+                "country in ['c%d', 'c%d'] and segment in ['s%d', 's%d'] and age in [%d..%d] and gender not in ['g%d']",
+                random.nextInt(200), random.nextInt(200), random.nextInt(5000), random.nextInt(5000),
+                random.nextInt(30), 30 + random.nextInt(50), random.nextInt(3)));
+    }
+
+    private static PredicateQuery createQuery(Random random) {
+        PredicateQuery query = new PredicateQuery();
+        query.addFeature("country", "c" + random.nextInt(200));
+        for (int i = 0; i < 20; i++) {
+            query.addFeature("segment", "s" + random.nextInt(5000));
+        }
+        query.addFeature("gender", "g" + random.nextInt(3));
+        query.addRangeFeature("age", 18 + random.nextInt(60));
+        return query;
+    }
+
+    private static class QueryRunner implements Callable<ResultMetrics> {
+        private final List<PredicateQuery> queries;
+        private final SegmentedPredicateIndex.Searcher searcher;
+        private final int offset;
+
+        QueryRunner(List<PredicateQuery> queries, SegmentedPredicateIndex.Searcher searcher, int offset) {
+            this.queries = queries;
+            this.searcher = searcher;
+            this.offset = offset;
+        }
+
+        @Override
+        public ResultMetrics call() {
+            ResultMetrics result = new ResultMetrics();
+            for (int i = offset; !Thread.interrupted(); i++) {
+                long start = System.nanoTime();
+                long hits = searcher.search(queries.get(i % queries.size())).count();
+                double latencyMilliseconds = (System.nanoTime() - start) / 1_000_000d;
+                result.registerResult(hits, latencyMilliseconds);
+            }
+            return result;
+        }
+    }
+
+    /** Replaces and removes random documents at the given rate per second, committing every 100 ms */
+    private static class Writer implements Callable<Long> {
+        private final SegmentedPredicateIndex index;
+        private final int writeRate;
+        private final int nDocuments;
+
+        Writer(SegmentedPredicateIndex index, int writeRate, int nDocuments) {
+            this.index = index;
+            this.writeRate = writeRate;
+            this.nDocuments = nDocuments;
+        }
+
+        @Override
+        public Long call() {
+            Random random = new Random(7);
+            long changed = 0;
+            while (writeRate > 0 && !Thread.currentThread().isInterrupted()) {
+                for (int i = 0; i < writeRate / 10; i++, changed++) {
+                    int docId = random.nextInt(nDocuments);
+                    if (random.nextInt(4) == 0) {
+                        index.removeDocument(docId);
+                    } else {
+                        index.addDocument(docId, createPredicate(random));
+                    }
+                }
+                index.commit();
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            return changed;
+        }
+    }
+
+    private static void putBenchmarkArgumentsToOutput(BenchmarkArguments args) {
+        output.put("Arity", args.arity);
+        output.put("Documents", args.nDocuments);
+        output.put("Threads", args.nThreads);
+        output.put("Runtime", args.runtime);
+        output.put("Warmup", args.warmup);
+        output.put("Write rate", args.writeRate);
+    }
+
+    private static void writeOutputToStandardOut() {
+        try {
+            ObjectMapper objectMapper = new ObjectMapper();
+            objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
+            objectMapper.writeValue(System.out, output);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Command(name = "segmented-benchmark", description = "Java predicate search library benchmark with writes")
+    public static class BenchmarkArguments {
+
+        @Option(name = {"-t", "--threads"}, description = "Number of search threads")
+        public int nThreads = 1;
+
+        @Option(name = {"-a", "--arity"}, description = "Arity")
+        public int arity = 2;
+
+        @Option(name = {"-d", "--documents"}, description = "Number of generated documents to index")
+        public int nDocuments = 200_000;
+
+        @Option(name = {"-r", "--runtime"}, description = "Number of seconds to run queries, with and without writes")
+        public int runtime = 30;
+
+        @Option(name = {"-w", "--warmup"}, description = "Warmup in seconds.")
+        public int warmup = 10;
+
+        @Option(name = {"-wr", "--write-rate"}, description = "Number of documents to add or remove per second")
+        public int writeRate = 100;
+
+        @Inject
+        public HelpOption helpOption;
+    }
+
+}
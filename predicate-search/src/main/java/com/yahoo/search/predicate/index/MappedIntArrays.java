@@ -0,0 +1,79 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.predicate.index;
+
+import com.yahoo.search.predicate.serialization.MappedSectionReader;
+import com.yahoo.search.predicate.serialization.SerializationHelper;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * A list of int arrays stored consecutively in a memory mapped index.
+ * An array is copied to the heap the first time it is accessed, and the same instance is returned from then on,
+ * such that arrays may be used as identities, as posting lists are by {@link CachedPostingListCounter}.
+ * This way, loading an index costs nothing, and only the parts of it which are used by searches take up heap.
+ */
+public class MappedIntArrays {
+
+    /** The start of each array in data, followed by the end of the last */
+    private final IntBuffer offsets;
+    private final IntBuffer data;
+    private final AtomicReferenceArray<int[]> arrays;
+
+    private MappedIntArrays(IntBuffer offsets, IntBuffer data) {
+        this.offsets = offsets;
+        this.data = data;
+        this.arrays = new AtomicReferenceArray<>(Math.max(0, offsets.limit() - 1));
+    }
+
+    public int size() {
+        return arrays.length();
+    }
+
+    public int[] get(int index) {
+        int[] array = arrays.get(index);
+        if (array == null) {
+            int start = offsets.get(index);
+            array = new int[offsets.get(index + 1) - start];
+            IntBuffer source = data.duplicate();
+            source.position(start);
+            source.get(array);
+            if ( ! arrays.compareAndSet(index, null, array)) {
+                array = arrays.get(index);
+            }
+        }
+        return array;
+    }
+
+    /** Writes the given number of arrays, as returned by the given function */
+    public static void writeMappedSections(int size, IntFunction<int[]> arrays, DataOutputStream out) throws IOException {
+        long length = 0;
+        SerializationHelper.writeSectionSize((size + 1L) * Integer.BYTES, out);
+        for (int i = 0; i < size; i++) {
+            out.writeInt((int) length);
+            length += arrays.apply(i).length;
+            if (length > Integer.MAX_VALUE / Integer.BYTES) {
+                throw new IllegalArgumentException("Arrays of more than " + Integer.MAX_VALUE / Integer.BYTES +
+                                                   " values in total are too large to be memory mapped");
+            }
+        }
+        out.writeInt((int) length);
+
+        SerializationHelper.writeSectionSize(length * Integer.BYTES, out);
+        for (int i = 0; i < size; i++) {
+            for (int v : arrays.apply(i)) {
+                out.writeInt(v);
+            }
+        }
+    }
+
+    public static MappedIntArrays fromMappedSections(MappedSectionReader in) throws IOException {
+        IntBuffer offsets = in.nextInts();
+        IntBuffer data = in.nextInts();
+        return new MappedIntArrays(offsets, data);
+    }
+
+}
@@ -0,0 +1,58 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.predicate.index;
+
+import com.yahoo.search.predicate.serialization.MappedSectionReader;
+import com.yahoo.search.predicate.serialization.SerializationHelper;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.LongBuffer;
+
+/**
+ * The sorted keys of a dictionary in a memory mapped index, which are searched in place.
+ * The position of a key is the index of its value in the {@link MappedIntArrays} of the dictionary.
+ */
+public class MappedKeys {
+
+    private final LongBuffer keys;
+
+    private MappedKeys(LongBuffer keys) {
+        this.keys = keys;
+    }
+
+    public int size() {
+        return keys.limit();
+    }
+
+    public long get(int index) {
+        return keys.get(index);
+    }
+
+    /** Returns the position of the given key, or -1 if it is not present */
+    public int indexOf(long key) {
+        int low = 0;
+        int high = keys.limit() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = keys.get(mid);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Writes the given keys, which must be sorted */
+    public static void writeMappedSections(long[] sortedKeys, DataOutputStream out) throws IOException {
+        SerializationHelper.writeLongSection(sortedKeys, out);
+    }
+
+    public static MappedKeys fromMappedSections(MappedSectionReader in) throws IOException {
+        return new MappedKeys(in.nextLongs());
+    }
+
+}
@@ -2,6 +2,7 @@
 package com.yahoo.search.predicate.index;
 
 import com.google.common.primitives.Ints;
+import com.yahoo.search.predicate.serialization.MappedSectionReader;
 import com.yahoo.search.predicate.serialization.SerializationHelper;
 
 import java.io.DataInputStream;
@@ -19,23 +20,46 @@ import java.util.Map;
 public class PredicateIntervalStore {
 
     private final int[][] intervalsList;
+    private final MappedIntArrays mappedIntervalsList;
 
     public PredicateIntervalStore(int[][] intervalsList) {
         this.intervalsList = intervalsList;
+        this.mappedIntervalsList = null;
+    }
+
+    private PredicateIntervalStore(MappedIntArrays mappedIntervalsList) {
+        this.intervalsList = null;
+        this.mappedIntervalsList = mappedIntervalsList;
     }
 
     public int[] get(int intervalRef) {
+        if (intervalsList == null) {
+            return mappedIntervalsList.get(intervalRef);
+        }
         assert intervalRef < intervalsList.length;
         return intervalsList[intervalRef];
     }
 
+    private int size() {
+        return intervalsList != null ? intervalsList.length : mappedIntervalsList.size();
+    }
+
     public void writeToOutputStream(DataOutputStream out) throws IOException {
-        out.writeInt(intervalsList.length);
-        for (int[] intervals : intervalsList) {
-            SerializationHelper.writeIntArray(intervals, out);
+        int size = size();
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            SerializationHelper.writeIntArray(get(i), out);
         }
     }
 
+    public void writeMappedSections(DataOutputStream out) throws IOException {
+        MappedIntArrays.writeMappedSections(size(), this::get, out);
+    }
+
+    public static PredicateIntervalStore fromMappedSections(MappedSectionReader in) throws IOException {
+        return new PredicateIntervalStore(MappedIntArrays.fromMappedSections(in));
+    }
+
     public static PredicateIntervalStore fromInputStream(DataInputStream in) throws IOException {
         int length = in.readInt();
         int[][] intervalsList = new int[length][];
@@ -4,12 +4,14 @@ package com.yahoo.search.predicate.index;
 import com.gs.collections.api.map.primitive.LongObjectMap;
 import com.gs.collections.api.tuple.primitive.LongObjectPair;
 import com.gs.collections.impl.map.mutable.primitive.LongObjectHashMap;
+import com.yahoo.search.predicate.serialization.MappedSectionReader;
 import com.yahoo.search.predicate.serialization.SerializationHelper;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -24,9 +26,16 @@ import java.util.Map;
 public class SimpleIndex {
 
     private final LongObjectMap<Entry> dictionary;
+    private final MappedDictionary mappedDictionary;
 
     public SimpleIndex(LongObjectMap<Entry> dictionary) {
         this.dictionary = dictionary;
+        this.mappedDictionary = null;
+    }
+
+    private SimpleIndex(MappedDictionary mappedDictionary) {
+        this.dictionary = null;
+        this.mappedDictionary = mappedDictionary;
     }
 
     /**
@@ -36,10 +45,19 @@ public class SimpleIndex {
      * @return list of postings
      */
     public Entry getPostingList(long key) {
-        return dictionary.get(key);
+        return dictionary != null ? dictionary.get(key) : mappedDictionary.get(key);
     }
 
     public void writeToOutputStream(DataOutputStream out) throws IOException {
+        if (dictionary == null) {
+            out.writeInt(mappedDictionary.keys.size());
+            for (int i = 0; i < mappedDictionary.keys.size(); i++) {
+                out.writeLong(mappedDictionary.keys.get(i));
+                SerializationHelper.writeIntArray(mappedDictionary.docIds.get(i), out);
+                SerializationHelper.writeIntArray(mappedDictionary.dataRefs.get(i), out);
+            }
+            return;
+        }
         out.writeInt(dictionary.size());
         for (LongObjectPair<Entry> pair : dictionary.keyValuesView()) {
             out.writeLong(pair.getOne());
@@ -49,6 +67,27 @@ public class SimpleIndex {
         }
     }
 
+    /** Writes this in the memory mapped format, with the keys sorted such that they can be searched in place */
+    public void writeMappedSections(DataOutputStream out) throws IOException {
+        long[] keys;
+        if (dictionary != null) {
+            keys = dictionary.keysView().toSortedArray();
+        } else {
+            keys = new long[mappedDictionary.keys.size()];
+            Arrays.setAll(keys, mappedDictionary.keys::get);
+        }
+        MappedKeys.writeMappedSections(keys, out);
+        MappedIntArrays.writeMappedSections(keys.length, i -> getPostingList(keys[i]).docIds, out);
+        MappedIntArrays.writeMappedSections(keys.length, i -> getPostingList(keys[i]).dataRefs, out);
+    }
+
+    public static SimpleIndex fromMappedSections(MappedSectionReader in) throws IOException {
+        MappedKeys keys = MappedKeys.fromMappedSections(in);
+        MappedIntArrays docIds = MappedIntArrays.fromMappedSections(in);
+        MappedIntArrays dataRefs = MappedIntArrays.fromMappedSections(in);
+        return new SimpleIndex(new MappedDictionary(keys, docIds, dataRefs));
+    }
+
     public static SimpleIndex fromInputStream(DataInputStream in) throws IOException {
         int nEntries = in.readInt();
         LongObjectHashMap<Entry> dictionary = new LongObjectHashMap<>(nEntries);
@@ -62,6 +101,24 @@ public class SimpleIndex {
         return new SimpleIndex(dictionary);
     }
 
+    /** A dictionary which is searched in place in a memory mapped index */
+    private static class MappedDictionary {
+        private final MappedKeys keys;
+        private final MappedIntArrays docIds;
+        private final MappedIntArrays dataRefs;
+
+        private MappedDictionary(MappedKeys keys, MappedIntArrays docIds, MappedIntArrays dataRefs) {
+            this.keys = keys;
+            this.docIds = docIds;
+            this.dataRefs = dataRefs;
+        }
+
+        private Entry get(long key) {
+            int index = keys.indexOf(key);
+            return index < 0 ? null : new Entry(docIds.get(index), dataRefs.get(index));
+        }
+    }
+
     public static class Entry {
         public final int[] docIds;
         public final int[] dataRefs;
@@ -10,6 +10,9 @@ import com.gs.collections.impl.map.mutable.primitive.LongObjectHashMap;
 import com.yahoo.document.predicate.FeatureConjunction;
 import com.yahoo.search.predicate.PredicateQuery;
 import com.yahoo.search.predicate.SubqueryBitmap;
+import com.yahoo.search.predicate.index.MappedIntArrays;
+import com.yahoo.search.predicate.index.MappedKeys;
+import com.yahoo.search.predicate.serialization.MappedSectionReader;
 import com.yahoo.search.predicate.serialization.SerializationHelper;
 import com.yahoo.search.predicate.utils.PrimitiveArraySorter;
 
@@ -69,19 +72,73 @@ public class ConjunctionIndex {
         return new ConjunctionIndex(kIndex, zList, idMapping);
     }
 
+    public void writeMappedSections(DataOutputStream out) throws IOException {
+        SerializationHelper.writeIntSection(zList, out);
+        SerializationHelper.writeLongSection(idMapping, out);
+        int[] ks = kIndex.keysView().toSortedArray();
+        SerializationHelper.writeIntSection(ks, out);
+        for (int k : ks) {
+            kIndex.get(k).writeMappedSections(out);
+        }
+    }
+
+    public static ConjunctionIndex fromMappedSections(MappedSectionReader in) throws IOException {
+        int[] zList = in.nextIntArray();
+        long[] idMapping = in.nextLongArray();
+        int[] ks = in.nextIntArray();
+        IntObjectHashMap<FeatureIndex> kIndex = new IntObjectHashMap<>(ks.length);
+        for (int k : ks) {
+            kIndex.put(k, FeatureIndex.fromMappedSections(in));
+        }
+        kIndex.compact();
+        return new ConjunctionIndex(kIndex, zList, idMapping);
+    }
+
     public static class FeatureIndex {
         // Maps a feature id to conjunction id
         private final LongObjectMap<int[]> map;
+        // The same, when searched in place in a memory mapped index
+        private final MappedKeys mappedKeys;
+        private final MappedIntArrays mappedValues;
 
         public FeatureIndex(LongObjectMap<int[]> map) {
             this.map = map;
+            this.mappedKeys = null;
+            this.mappedValues = null;
+        }
+
+        private FeatureIndex(MappedKeys mappedKeys, MappedIntArrays mappedValues) {
+            this.map = null;
+            this.mappedKeys = mappedKeys;
+            this.mappedValues = mappedValues;
         }
 
         public Optional<int[]> getConjunctionIdsForFeature(long featureId) {
+            if (map == null) {
+                int index = mappedKeys.indexOf(featureId);
+                return index < 0 ? Optional.empty() : Optional.of(mappedValues.get(index));
+            }
             return Optional.ofNullable(map.get(featureId));
         }
 
+        private long[] sortedKeys() {
+            if (map != null) {
+                return map.keysView().toSortedArray();
+            }
+            long[] keys = new long[mappedKeys.size()];
+            Arrays.setAll(keys, mappedKeys::get);
+            return keys;
+        }
+
         public void writeToOutputStream(DataOutputStream out) throws IOException {
+            if (map == null) {
+                out.writeInt(mappedKeys.size());
+                for (int i = 0; i < mappedKeys.size(); i++) {
+                    out.writeLong(mappedKeys.get(i));
+                    SerializationHelper.writeIntArray(mappedValues.get(i), out);
+                }
+                return;
+            }
             out.writeInt(map.size());
             for (LongObjectPair<int[]> p : map.keyValuesView()) {
                 out.writeLong(p.getOne());
@@ -89,6 +146,17 @@ public class ConjunctionIndex {
             }
         }
 
+        public void writeMappedSections(DataOutputStream out) throws IOException {
+            long[] keys = sortedKeys();
+            MappedKeys.writeMappedSections(keys, out);
+            MappedIntArrays.writeMappedSections(keys.length, i -> getConjunctionIdsForFeature(keys[i]).get(), out);
+        }
+
+        public static FeatureIndex fromMappedSections(MappedSectionReader in) throws IOException {
+            MappedKeys keys = MappedKeys.fromMappedSections(in);
+            return new FeatureIndex(keys, MappedIntArrays.fromMappedSections(in));
+        }
+
         public static FeatureIndex fromInputStream(DataInputStream in) throws IOException {
             int mapSize = in.readInt();
             LongObjectHashMap<int[]> map = new LongObjectHashMap<>(mapSize);
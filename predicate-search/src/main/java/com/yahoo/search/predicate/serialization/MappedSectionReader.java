@@ -0,0 +1,101 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.predicate.serialization;
+
+import com.yahoo.search.predicate.PredicateIndex;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a file in the memory mapped format of {@link PredicateIndex}, which is a sequence of sections each consisting
+ * of its size in bytes followed by its content. Each section is mapped into memory rather than read, such that
+ * the content is accessed in place, and only the pages which are used are read from disk.
+ * The mapped sections remain valid after the channel is closed.
+ *
+ * @see SerializationHelper#writeSectionSize(long, java.io.DataOutputStream)
+ */
+public class MappedSectionReader {
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private long position = 0;
+
+    public MappedSectionReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.fileSize = channel.size();
+    }
+
+    /** Maps the next section into memory and returns it */
+    public ByteBuffer next() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Long.BYTES);
+        while (header.hasRemaining()) {
+            if (channel.read(header, position + header.position()) < 0) {
+                throw new EOFException("Expected a section at position " + position + ", but the file ends");
+            }
+        }
+        long size = header.getLong(0);
+        position += Long.BYTES;
+        if (size < 0 || size > Integer.MAX_VALUE || size > fileSize - position) {
+            throw new IllegalArgumentException("Invalid section size " + size + " at position " + position +
+                                               " of a file of " + fileSize + " bytes");
+        }
+        ByteBuffer section = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        position += size;
+        return section;
+    }
+
+    /** Maps the next section into memory and returns it as a buffer of ints */
+    public IntBuffer nextInts() throws IOException {
+        return next().asIntBuffer();
+    }
+
+    /** Maps the next section into memory and returns it as a buffer of longs */
+    public LongBuffer nextLongs() throws IOException {
+        return next().asLongBuffer();
+    }
+
+    /** Returns a stream of the content of the next section, for sections which should be read rather than mapped */
+    public DataInputStream nextStream() throws IOException {
+        return new DataInputStream(new ByteArrayInputStream(nextByteArray()));
+    }
+
+    /** Returns a copy of the content of the next section, for sections which are accessed as arrays */
+    public int[] nextIntArray() throws IOException {
+        IntBuffer buffer = nextInts();
+        int[] array = new int[buffer.remaining()];
+        buffer.get(array);
+        return array;
+    }
+
+    /** Returns a copy of the content of the next section, for sections which are accessed as arrays */
+    public long[] nextLongArray() throws IOException {
+        LongBuffer buffer = nextLongs();
+        long[] array = new long[buffer.remaining()];
+        buffer.get(array);
+        return array;
+    }
+
+    /** Returns a copy of the content of the next section, for sections which are accessed as arrays */
+    public short[] nextShortArray() throws IOException {
+        ShortBuffer buffer = next().asShortBuffer();
+        short[] array = new short[buffer.remaining()];
+        buffer.get(array);
+        return array;
+    }
+
+    /** Returns a copy of the content of the next section, for sections which are accessed as arrays */
+    public byte[] nextByteArray() throws IOException {
+        ByteBuffer buffer = next();
+        byte[] array = new byte[buffer.remaining()];
+        buffer.get(array);
+        return array;
+    }
+
+}
@@ -78,4 +78,41 @@ public class SerializationHelper {
         return array;
     }
 
+    /**
+     * Writes the size in bytes of a section of the memory mapped format read by {@link MappedSectionReader},
+     * which must be followed by exactly that many bytes.
+     */
+    public static void writeSectionSize(long size, DataOutputStream out) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Section of " + size + " bytes is too large to be memory mapped");
+        }
+        out.writeLong(size);
+    }
+
+    public static void writeIntSection(int[] array, DataOutputStream out) throws IOException {
+        writeSectionSize((long) array.length * Integer.BYTES, out);
+        for (int v : array) {
+            out.writeInt(v);
+        }
+    }
+
+    public static void writeByteSection(byte[] array, DataOutputStream out) throws IOException {
+        writeSectionSize(array.length, out);
+        out.write(array);
+    }
+
+    public static void writeLongSection(long[] array, DataOutputStream out) throws IOException {
+        writeSectionSize((long) array.length * Long.BYTES, out);
+        for (long v : array) {
+            out.writeLong(v);
+        }
+    }
+
+    public static void writeShortSection(short[] array, DataOutputStream out) throws IOException {
+        writeSectionSize((long) array.length * Short.BYTES, out);
+        for (short v : array) {
+            out.writeShort(v);
+        }
+    }
+
 }
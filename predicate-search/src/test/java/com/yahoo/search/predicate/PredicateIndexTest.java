@@ -2,13 +2,26 @@
 package com.yahoo.search.predicate;
 
 import com.yahoo.document.predicate.Predicate;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import static com.yahoo.search.predicate.serialization.SerializationTestHelper.assertSerializationDeserializationMatches;
 import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 /**
  * @author <a href="mailto:magnarn@yahoo-inc.com">Magnar Nedland</a>
@@ -18,6 +31,9 @@ public class PredicateIndexTest {
 
     private static final int DOC_ID = 42;
 
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
     @Test
     public void requireThatPredicateIndexCanSearch() {
         PredicateIndexBuilder builder = new PredicateIndexBuilder(10);
@@ -138,4 +154,89 @@ public class PredicateIndexTest {
         assertSerializationDeserializationMatches(
                 index, PredicateIndex::writeToOutputStream, PredicateIndex::fromInputStream);
     }
+
+    @Test
+    public void requireThatMemoryMappedIndexGivesTheSameHits() throws IOException {
+        PredicateIndexBuilder builder = new PredicateIndexBuilder(
+                new Config.Builder().setArity(10).setUseConjunctionAlgorithm(true).build());
+        builder.indexDocument(1, Predicate.fromString("country in ['no', 'se'] and gender in ['male']"));
+        builder.indexDocument(2, Predicate.fromString("country in ['no'] and gender not in ['male']"));
+        builder.indexDocument(3, Predicate.fromString("gender in ['female'] and age in [20..40]"));
+        builder.indexDocument(4, Predicate.fromString("true"));
+        builder.indexDocument(5, Predicate.fromString("(a in ['b'] and c in ['d']) or x in ['y']"));
+        PredicateIndex index = builder.build();
+        Path file = tmpFolder.newFile().toPath();
+        index.writeToMappedFile(file);
+        PredicateIndex mappedIndex = PredicateIndex.fromMappedFile(file);
+
+        PredicateQuery query = new PredicateQuery();
+        assertSameHits(index, mappedIndex, query);
+        query.addFeature("country", "no");
+        assertSameHits(index, mappedIndex, query);
+        query.addFeature("gender", "female");
+        query.addRangeFeature("age", 36);
+        assertSameHits(index, mappedIndex, query);
+        query.addFeature("gender", "male");
+        query.addFeature("a", "b");
+        query.addFeature("c", "d");
+        assertSameHits(index, mappedIndex, query);
+        mappedIndex.rebuildPostingListCache();
+        assertSameHits(index, mappedIndex, query);
+        assertEquals("[1, 3, 4, 5]", mappedIndex.searcher().search(query).collect(toList()).toString());
+
+        Path copy = tmpFolder.newFile().toPath();
+        mappedIndex.writeToMappedFile(copy);
+        assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(copy));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        mappedIndex.writeToOutputStream(new DataOutputStream(bytes));
+        PredicateIndex readIndex = PredicateIndex.fromInputStream(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertSameHits(index, readIndex, query);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requireThatStreamFormatIsNotMemoryMapped() throws IOException {
+        PredicateIndexBuilder builder = new PredicateIndexBuilder(10);
+        builder.indexDocument(1, Predicate.fromString("country in ['no', 'se'] and gender in ['male']"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        builder.build().writeToOutputStream(new DataOutputStream(bytes));
+        Path file = tmpFolder.newFile().toPath();
+        Files.write(file, bytes.toByteArray());
+        PredicateIndex.fromMappedFile(file);
+    }
+
+    @Test
+    public void requireThatParallelSearchGivesTheSameHitsInTheSameOrder() {
+        PredicateIndexBuilder builder = new PredicateIndexBuilder(
+                new Config.Builder().setArity(10).setUseConjunctionAlgorithm(true).build());
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            builder.indexDocument(i, Predicate.fromString(String.format(
+                    "country in ['c%d'] and gender not in ['g%d'] and age in [%d..%d]",
+                    random.nextInt(10), random.nextInt(3), random.nextInt(30), 30 + random.nextInt(50))));
+        }
+        PredicateIndex index = builder.build();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            PredicateIndex.Searcher searcher = index.searcher(pool);
+            for (int i = 0; i < 10; i++) {
+                PredicateQuery query = new PredicateQuery();
+                query.addFeature("country", "c" + i);
+                query.addFeature("gender", "g" + (i % 3));
+                query.addRangeFeature("age", 20 + 5 * i);
+                List<Hit> expected = index.searcher().search(query).collect(toList());
+                assertFalse(expected.isEmpty());
+                assertEquals(expected, searcher.search(query).collect(toList()));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertSameHits(PredicateIndex expected, PredicateIndex actual, PredicateQuery query) {
+        assertEquals(expected.searcher().search(query).collect(toList()).toString(),
+                     actual.searcher().search(query).collect(toList()).toString());
+    }
+
 }
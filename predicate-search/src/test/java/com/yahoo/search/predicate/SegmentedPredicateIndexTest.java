@@ -0,0 +1,183 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.predicate;
+
+import com.yahoo.document.predicate.Predicate;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentedPredicateIndexTest {
+
+    private static final Config config = new Config.Builder().setArity(10).build();
+
+    @Test
+    public void requireThatDocumentsAreSearchableWhenCommitted() {
+        SegmentedPredicateIndex index = new SegmentedPredicateIndex(config, 8, Runnable::run);
+        SegmentedPredicateIndex.Searcher searcher = index.searcher();
+        index.addDocument(1, Predicate.fromString("country in ['no', 'se'] and gender in ['male']"));
+        index.addDocument(2, Predicate.fromString("country in ['no'] and gender in ['female']"));
+        assertHits("[]", searcher, query());
+        index.commit();
+        assertHits("[1]", searcher, query("country", "no", "gender", "male"));
+        assertHits("[1, 2]", searcher, query("country", "no", "gender", "male", "gender", "female"));
+
+        index.addDocument(3, Predicate.fromString("gender in ['male'] and age in [20..40]"));
+        index.commit();
+        PredicateQuery query = query("country", "no", "gender", "male");
+        query.addRangeFeature("age", 36);
+        assertHits("[1, 3]", searcher, query);
+        assertEquals(2, index.segmentCount());
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void requireThatDocumentsCanBeRemovedAndReplaced() {
+        SegmentedPredicateIndex index = new SegmentedPredicateIndex(config, 8, Runnable::run);
+        SegmentedPredicateIndex.Searcher searcher = index.searcher();
+        index.addDocument(1, Predicate.fromString("country in ['no']"));
+        index.addDocument(2, Predicate.fromString("country in ['no']"));
+        index.addDocument(3, Predicate.fromString("country in ['se']"));
+        index.commit();
+        assertHits("[1, 2]", searcher, query("country", "no"));
+
+        index.removeDocument(1);
+        index.addDocument(2, Predicate.fromString("country in ['se']"));
+        index.addDocument(4, Predicate.fromString("country in ['no']"));
+        index.removeDocument(4);
+        assertHits("[1, 2]", searcher, query("country", "no"));
+        index.commit();
+        assertHits("[]", searcher, query("country", "no"));
+        assertHits("[3, 2]", searcher, query("country", "se"));
+        assertEquals(2, index.size());
+
+        index.addDocument(1, Predicate.fromString("country in ['no']"));
+        index.commit();
+        assertHits("[1]", searcher, query("country", "no"));
+    }
+
+    @Test
+    public void requireThatSegmentsAreMergedWithoutChangingHits() {
+        SegmentedPredicateIndex index = new SegmentedPredicateIndex(config, 4, Runnable::run);
+        SegmentedPredicateIndex.Searcher searcher = index.searcher();
+        for (int i = 1; i <= 20; i++) {
+            index.addDocument(i, Predicate.fromString("country in ['" + (i % 2 == 0 ? "no" : "se") + "']"));
+            if (i % 3 == 0) {
+                index.removeDocument(i - 1);
+            }
+            index.commit();
+            assertTrue(index.segmentCount() <= 4);
+        }
+        assertSortedHits("[4, 6, 10, 12, 16, 18, 20]", searcher, query("country", "no"));
+        assertSortedHits("[1, 3, 7, 9, 13, 15, 19]", searcher, query("country", "se"));
+        assertEquals(14, index.size());
+    }
+
+    @Test
+    public void requireThatSegmentsWithMostlyRemovedDocumentsAreMerged() {
+        SegmentedPredicateIndex index = new SegmentedPredicateIndex(config, 8, Runnable::run);
+        for (int i = 1; i <= 4; i++) {
+            index.addDocument(i, Predicate.fromString("country in ['no']"));
+        }
+        index.commit();
+        index.addDocument(5, Predicate.fromString("country in ['no']"));
+        index.commit();
+        assertEquals(2, index.segmentCount());
+        index.removeDocument(1);
+        index.removeDocument(2);
+        index.commit();
+        assertEquals(2, index.segmentCount());
+        index.removeDocument(3);
+        index.commit();
+        assertEquals(1, index.segmentCount());
+        assertHits("[4, 5]", index.searcher(), query("country", "no"));
+    }
+
+    @Test
+    public void requireThatChangesWhileMergingAreKept() {
+        List<Runnable> merges = new ArrayList<>();
+        SegmentedPredicateIndex index = new SegmentedPredicateIndex(config, 2, merges::add);
+        SegmentedPredicateIndex.Searcher searcher = index.searcher();
+        for (int i = 1; i <= 3; i++) {
+            index.addDocument(i, Predicate.fromString("country in ['no']"));
+            index.commit();
+        }
+        assertEquals(1, merges.size());
+        assertEquals(3, index.segmentCount());
+
+        index.removeDocument(1);
+        index.addDocument(2, Predicate.fromString("country in ['se']"));
+        index.commit();
+        merges.get(0).run();
+        assertEquals(2, index.segmentCount());
+        assertHits("[3]", searcher, query("country", "no"));
+        assertHits("[2]", searcher, query("country", "se"));
+
+        index.removeDocument(3);
+        index.commit();
+        assertHits("[]", searcher, query("country", "no"));
+    }
+
+    @Test
+    public void requireThatMergedSegmentsEmptiedWhileMergingAreHandled() {
+        SegmentedPredicateIndex index = new SegmentedPredicateIndex(config, 2, runnable -> {});
+        SegmentedPredicateIndex.Searcher searcher = index.searcher();
+        index.addDocument(1, Predicate.fromString("country in ['no']"));
+        index.addDocument(2, Predicate.fromString("country in ['no']"));
+        index.commit();
+        index.addDocument(3, Predicate.fromString("country in ['no']"));
+        index.commit();
+        index.addDocument(4, Predicate.fromString("country in ['no']"));
+        index.commit();
+        assertHits("[1, 2, 3, 4]", searcher, query("country", "no"));
+
+        SegmentedPredicateIndex.Merge merge = index.prepareMerge(); // Merges the segments holding 3 and 4
+        index.removeDocument(3);
+        index.commit();
+        assertEquals(2, index.segmentCount());
+        index.completeMerge(merge);
+        assertEquals(2, index.segmentCount());
+        assertEquals(3, index.size());
+        assertHits("[1, 2, 4]", searcher, query("country", "no"));
+
+        index.addDocument(3, Predicate.fromString("country in ['no']"));
+        index.removeDocument(4);
+        index.commit();
+        assertSortedHits("[1, 2, 3]", searcher, query("country", "no"));
+    }
+
+    @Test
+    public void requireThatSearchesSeeTheSegmentsAsTheyWereWhenStarted() {
+        SegmentedPredicateIndex index = new SegmentedPredicateIndex(config, 8, Runnable::run);
+        index.addDocument(1, Predicate.fromString("country in ['no']"));
+        index.commit();
+        Stream<Hit> hits = index.searcher().search(query("country", "no"));
+        index.removeDocument(1);
+        index.addDocument(2, Predicate.fromString("country in ['no']"));
+        index.commit();
+        assertEquals("[1]", hits.collect(toList()).toString());
+    }
+
+    private static PredicateQuery query(String ... features) {
+        PredicateQuery query = new PredicateQuery();
+        for (int i = 0; i < features.length; i += 2) {
+            query.addFeature(features[i], features[i + 1]);
+        }
+        return query;
+    }
+
+    private static void assertSortedHits(String expected, SegmentedPredicateIndex.Searcher searcher, PredicateQuery query) {
+        assertEquals(expected, searcher.search(query).sorted(Comparator.comparingInt(Hit::getDocId)).collect(toList()).toString());
+    }
+
+    private static void assertHits(String expected, SegmentedPredicateIndex.Searcher searcher, PredicateQuery query) {
+        assertEquals(expected, searcher.search(query).collect(toList()).toString());
+    }
+
+}
@@ -206,6 +206,21 @@ public class PredicateSearchTest {
         assertEquals(Arrays.asList(new Hit(0)).toString(), search.stream().collect(toList()).toString());
     }
 
+    @Test
+    public void requireThatRangeOfDocumentsCanBeSearched() {
+        byte[] minFeatures = new byte[]{1, 1, 1, 1, 1};
+        PostingList postingList = postingList(SubqueryBitmap.ALL_SUBQUERIES,
+                entry(0, 0x000100ff),
+                entry(1, 0x000100ff),
+                entry(3, 0x000100ff),
+                entry(4, 0x000100ff));
+        assertEquals(Arrays.asList(new Hit(1), new Hit(3)).toString(),
+                     createPredicateSearch(minFeatures, postingList).stream(1, 4).collect(toList()).toString());
+        assertEquals(Arrays.asList(new Hit(4)).toString(),
+                     createPredicateSearch(minFeatures, postingList).stream(4, 5).collect(toList()).toString());
+        assertEquals(0, createPredicateSearch(minFeatures, postingList).stream(2, 3).count());
+    }
+
     private static PredicateSearch createPredicateSearch(byte[] minFeatures, PostingList... postingLists) {
         byte[] nPostingListsForDocument = new byte[minFeatures.length];
         short[] intervalEnds = new short[minFeatures.length];
@@ -58,6 +58,7 @@ class ClientFeederV3 {
 
     private final Object monitor = new Object();
     private final StreamReaderV3 streamReaderV3;
+    private final DocumentTypeManager docTypeManager;
     private final AtomicInteger ongoingRequests = new AtomicInteger(0);
     private String hostName;
     private AtomicInteger threadsAvailableForFeeding;
@@ -76,6 +77,7 @@ class ClientFeederV3 {
         this.metric = metric;
         this.threadsAvailableForFeeding = threadsAvailableForFeeding;
         this.streamReaderV3 = new StreamReaderV3(feedReaderFactory, docTypeManager);
+        this.docTypeManager = docTypeManager;
         this.hostName = HostName.getLocalhost();
     }
 
@@ -286,7 +288,7 @@ class ClientFeederV3 {
                     null);
         }
 
-        DocumentOperationMessageV3 message = DocumentOperationMessageV3.create(operation, operationId, metric);
+        DocumentOperationMessageV3 message = DocumentOperationMessageV3.create(operation, operationId, docTypeManager, metric);
         if (message == null) {
             // typical end of feed
             return null;
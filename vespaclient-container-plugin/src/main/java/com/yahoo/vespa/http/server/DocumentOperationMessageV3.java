@@ -3,7 +3,9 @@ package com.yahoo.vespa.http.server;
 
 import com.yahoo.document.DocumentPut;
 import com.yahoo.document.DocumentRemove;
+import com.yahoo.document.DocumentTypeManager;
 import com.yahoo.document.DocumentUpdate;
+import com.yahoo.document.serialization.SerializedDocumentPut;
 import com.yahoo.documentapi.messagebus.protocol.PutDocumentMessage;
 import com.yahoo.documentapi.messagebus.protocol.RemoveDocumentMessage;
 import com.yahoo.documentapi.messagebus.protocol.UpdateDocumentMessage;
@@ -69,7 +71,17 @@ class DocumentOperationMessageV3 {
         return new DocumentOperationMessageV3(id, msg);
     }
 
-    static DocumentOperationMessageV3 newPutMessage(VespaXMLFeedReader.Operation op, String operationId) {
+    static DocumentOperationMessageV3 newPutMessage(VespaXMLFeedReader.Operation op, String operationId,
+                                                    DocumentTypeManager docTypeManager) {
+        if (op.getSerializedDocumentPut() != null) {
+            SerializedDocumentPut put = op.getSerializedDocumentPut();
+            put.setCondition(op.getCondition());
+            Message msg = new PutDocumentMessage(put, docTypeManager);
+
+            String id = (operationId == null) ? put.getId().toString() : operationId;
+            return new DocumentOperationMessageV3(id, msg);
+        }
+
         DocumentPut put = new DocumentPut(op.getDocument());
         put.setCondition(op.getCondition());
         Message msg = new PutDocumentMessage(put);
@@ -78,11 +90,12 @@ class DocumentOperationMessageV3 {
         return new DocumentOperationMessageV3(id, msg);
     }
 
-    static DocumentOperationMessageV3 create(VespaXMLFeedReader.Operation operation, String operationId, Metric metric) {
+    static DocumentOperationMessageV3 create(VespaXMLFeedReader.Operation operation, String operationId,
+                                             DocumentTypeManager docTypeManager, Metric metric) {
         switch (operation.getType()) {
             case DOCUMENT:
                 metric.add(MetricNames.NUM_PUTS, 1, null /*metricContext*/);
-                return newPutMessage(operation, operationId);
+                return newPutMessage(operation, operationId, docTypeManager);
             case REMOVE:
                 metric.add(MetricNames.NUM_REMOVES, 1, null /*metricContext*/);
                 return newRemoveMessage(operation, operationId);
@@ -34,7 +34,8 @@ public class FeedReaderFactory {
                     throw new RuntimeException("Could not create VespaXMLFeedReader", e);
                 }
             case JSON_UTF8:
-                return new JsonFeedReader(inputStream, docTypeManager);
+                // Puts are written directly to the binary document format, and only decoded by whoever needs the document
+                return new JsonFeedReader(inputStream, docTypeManager, true);
             default:
                 throw new IllegalStateException("Can not create feed reader for format: " + dataFormat);
         }
@@ -0,0 +1,410 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.slime;
+
+import java.io.ByteArrayOutputStream;
+
+import static com.yahoo.slime.BinaryFormat.decode_double;
+import static com.yahoo.slime.BinaryFormat.decode_meta;
+import static com.yahoo.slime.BinaryFormat.decode_type;
+import static com.yahoo.slime.BinaryFormat.decode_zigzag;
+
+/**
+ * Read-only access to binary Slime data without decoding it into a value tree.
+ * The symbol table is decoded once, and a single pass over the data records where each value starts
+ * and where the children of each array and object are found. Leaf values are decoded from the underlying
+ * buffer when they are accessed, so values which are never inspected never cause any allocation.
+ * <p>
+ * The underlying buffer must not be modified while it is inspected through this.
+ * This is multithread safe if the buffer is not modified.
+ **/
+public final class BinaryView implements Inspector {
+
+    private static final String emptyString = "";
+    private static final byte[] emptyData = new byte[0];
+
+    // Each value is represented by these entries in the index
+    private static final int POSITION = 0; // the position of the type and meta byte of the value
+    private static final int SYMBOL = 1;   // the symbol of the value if it is an object field
+    private static final int FIRST = 2;    // the index of the first child value if this is an array or object
+    private static final int COUNT = 3;    // the number of children if this is an array or object
+    private static final int ENTRY_SIZE = 4;
+
+    private final byte[] data;
+    private final SymbolTable names;
+    private final int[] index;
+    private final int value; // the offset of the index entry of this value
+
+    private BinaryView(byte[] data, SymbolTable names, int[] index, int value) {
+        this.data = data;
+        this.names = names;
+        this.index = index;
+        this.value = value;
+    }
+
+    /**
+     * Returns an inspector of the root value of the given binary Slime data.
+     *
+     * @see #inspect(byte[], int, int)
+     */
+    public static Inspector inspect(byte[] data) {
+        return inspect(data, 0, data.length);
+    }
+
+    /**
+     * Returns an inspector of the root value of the given binary Slime data, as produced by
+     * {@link BinaryFormat#encode}. The data is not copied.
+     * <p>
+     * If the data is not valid binary Slime this returns the root of the Slime produced by
+     * {@link BinaryFormat#decode(byte[], int, int)} instead, which describes the problem.
+     *
+     * @param data array containing the data to inspect
+     * @param offset where in the array the data starts
+     * @param length the number of bytes of data
+     */
+    public static Inspector inspect(byte[] data, int offset, int length) {
+        try {
+            return new Indexer(data, offset, length).index();
+        }
+        catch (IllegalArgumentException e) {
+            return BinaryFormat.decode(data, offset, length).get();
+        }
+    }
+
+    private int position() { return index[value + POSITION]; }
+    private byte typeAndMeta() { return data[position()]; }
+    private int count() { return index[value + COUNT]; }
+    private BinaryView child(int i) { return new BinaryView(data, names, index, index[value + FIRST] + i * ENTRY_SIZE); }
+    private int symbolOf(int i) { return index[index[value + FIRST] + i * ENTRY_SIZE + SYMBOL]; }
+
+    @Override
+    public boolean valid() { return true; }
+
+    @Override
+    public Type type() { return decode_type(typeAndMeta()); }
+
+    @Override
+    public int children() {
+        Type type = type();
+        return type == Type.ARRAY || type == Type.OBJECT ? count() : 0;
+    }
+
+    @Override
+    public int entries() { return type() == Type.ARRAY ? count() : 0; }
+
+    @Override
+    public int fields() { return type() == Type.OBJECT ? count() : 0; }
+
+    @Override
+    public boolean asBool() {
+        byte typeAndMeta = typeAndMeta();
+        return decode_type(typeAndMeta) == Type.BOOL && decode_meta(typeAndMeta) != 0;
+    }
+
+    @Override
+    public long asLong() {
+        switch (type()) {
+            case LONG: return decodeLong();
+            case DOUBLE: return (long)decodeDouble();
+            default: return 0;
+        }
+    }
+
+    @Override
+    public double asDouble() {
+        switch (type()) {
+            case LONG: return (double)decodeLong();
+            case DOUBLE: return decodeDouble();
+            default: return 0.0;
+        }
+    }
+
+    @Override
+    public String asString() {
+        if (type() != Type.STRING) return emptyString;
+        int position = position() + 1;
+        int size = (int)readSize(decode_meta(typeAndMeta()), position);
+        position += sizeBytes(decode_meta(typeAndMeta()), position);
+        return Utf8Codec.decode(data, position, size);
+    }
+
+    @Override
+    public byte[] asUtf8() {
+        return type() == Type.STRING ? copyBytes() : emptyData;
+    }
+
+    @Override
+    public byte[] asData() {
+        return type() == Type.DATA ? copyBytes() : emptyData;
+    }
+
+    @Override
+    public void accept(Visitor v) {
+        switch (type()) {
+            case NIX: v.visitNix(); break;
+            case BOOL: v.visitBool(asBool()); break;
+            case LONG: v.visitLong(decodeLong()); break;
+            case DOUBLE: v.visitDouble(decodeDouble()); break;
+            case STRING: v.visitString(copyBytes()); break;
+            case DATA: v.visitData(copyBytes()); break;
+            case ARRAY: v.visitArray(this); break;
+            case OBJECT: v.visitObject(this); break;
+        }
+    }
+
+    @Override
+    public void traverse(ArrayTraverser at) {
+        if (type() != Type.ARRAY) return;
+        for (int i = 0; i < count(); i++)
+            at.entry(i, child(i));
+    }
+
+    @Override
+    public void traverse(ObjectSymbolTraverser ot) {
+        if (type() != Type.OBJECT) return;
+        for (int i = 0; i < count(); i++)
+            ot.field(symbolOf(i), child(i));
+    }
+
+    @Override
+    public void traverse(ObjectTraverser ot) {
+        if (type() != Type.OBJECT) return;
+        for (int i = 0; i < count(); i++)
+            ot.field(names.inspect(symbolOf(i)), child(i));
+    }
+
+    @Override
+    public Inspector entry(int idx) {
+        if (type() != Type.ARRAY || idx < 0 || idx >= count()) return NixValue.invalid();
+        return child(idx);
+    }
+
+    @Override
+    public Inspector field(int sym) {
+        if (type() != Type.OBJECT) return NixValue.invalid();
+        for (int i = 0; i < count(); i++) {
+            if (symbolOf(i) == sym)
+                return child(i);
+        }
+        return NixValue.invalid();
+    }
+
+    @Override
+    public Inspector field(String name) {
+        int sym = names.lookup(name);
+        if (sym == SymbolTable.INVALID) return NixValue.invalid();
+        return field(sym);
+    }
+
+    @Override
+    public boolean equalTo(Inspector that) {
+        return Value.equal(this, that);
+    }
+
+    /** Returns true if the given object is a view of the same value in the same data */
+    @Override
+    public boolean equals(Object other) {
+        if (other == this) return true;
+        if ( ! (other instanceof BinaryView)) return false;
+        BinaryView o = (BinaryView)other;
+        return o.index == this.index && o.value == this.value;
+    }
+
+    @Override
+    public int hashCode() { return System.identityHashCode(index) + value; }
+
+    @Override
+    public String toString() {
+        try {
+            ByteArrayOutputStream a = new ByteArrayOutputStream();
+            new JsonFormat(true).encode(a, this);
+            byte[] utf8 = a.toByteArray();
+            return Utf8Codec.decode(utf8, 0, utf8.length);
+        } catch (Exception e) {
+            return "null";
+        }
+    }
+
+    private long decodeLong() {
+        int bytes = decode_meta(typeAndMeta());
+        int position = position() + 1;
+        long value = 0;
+        for (int i = 0; i < bytes; i++)
+            value |= (data[position + i] & 0xffL) << (i * 8);
+        return decode_zigzag(value);
+    }
+
+    private double decodeDouble() {
+        int bytes = decode_meta(typeAndMeta());
+        int position = position() + 1;
+        long value = 0;
+        for (int i = 0; i < bytes; i++)
+            value |= (data[position + i] & 0xffL) << (56 - i * 8);
+        return decode_double(value);
+    }
+
+    /** Returns a copy of the bytes of this string or data value */
+    private byte[] copyBytes() {
+        int meta = decode_meta(typeAndMeta());
+        int position = position() + 1;
+        int size = (int)readSize(meta, position);
+        position += sizeBytes(meta, position);
+        byte[] bytes = new byte[size];
+        System.arraycopy(data, position, bytes, 0, size);
+        return bytes;
+    }
+
+    private long readSize(int meta, int position) {
+        return meta == 0 ? readCompressedLong(data, position) : meta - 1;
+    }
+
+    private int sizeBytes(int meta, int position) {
+        if (meta != 0) return 0;
+        int bytes = 1;
+        while ((data[position++] & 0x80) != 0)
+            bytes++;
+        return bytes;
+    }
+
+    private static long readCompressedLong(byte[] data, int position) {
+        long next = data[position++];
+        long value = (next & 0x7f);
+        int shift = 7;
+        while ((next & 0x80) != 0) {
+            next = data[position++];
+            value |= ((next & 0x7f) << shift);
+            shift += 7;
+        }
+        return value;
+    }
+
+    /**
+     * Builds the index of all values in some binary Slime data in a single pass.
+     * The children of each array and object are stored consecutively, such that child i of a value
+     * is found at a fixed offset from the first child.
+     */
+    private static final class Indexer {
+
+        private final byte[] data;
+        private final int end;
+        private int position;
+
+        private final SymbolTable names = new SymbolTable();
+        private int[] index = new int[16 * ENTRY_SIZE];
+        private int used = 0;
+
+        Indexer(byte[] data, int offset, int length) {
+            if (offset < 0 || length < 0 || offset + length > data.length)
+                throw new IllegalArgumentException("Illegal offset " + offset + " and length " + length +
+                                                   " for a buffer of length " + data.length);
+            this.data = data;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        BinaryView index() {
+            decodeSymbolTable();
+            int root = allocate(1);
+            decodeValue(root);
+            return new BinaryView(data, names, index, root);
+        }
+
+        private void decodeSymbolTable() {
+            long numSymbols = readCompressedLong();
+            for (int i = 0; i < numSymbols; i++) {
+                int size = checkedSize(readCompressedLong());
+                if (names.insert(Utf8Codec.decode(data, position, size)) != i)
+                    throw new IllegalArgumentException("Duplicate symbols in symbol table");
+                position += size;
+            }
+        }
+
+        private void decodeValue(int value) {
+            index[value + POSITION] = position;
+            byte typeAndMeta = readByte();
+            int meta = decode_meta(typeAndMeta);
+            switch (decode_type(typeAndMeta)) {
+                case NIX:
+                case BOOL:
+                    break;
+                case LONG:
+                case DOUBLE:
+                    skip(meta);
+                    break;
+                case STRING:
+                case DATA:
+                    skip(checkedSize(readSize(meta)));
+                    break;
+                case ARRAY:
+                    decodeChildren(value, checkedSize(readSize(meta)), false);
+                    break;
+                case OBJECT:
+                    decodeChildren(value, checkedSize(readSize(meta)), true);
+                    break;
+            }
+        }
+
+        private void decodeChildren(int value, int count, boolean isObject) {
+            int first = allocate(count);
+            index[value + FIRST] = first;
+            index[value + COUNT] = count;
+            for (int i = 0; i < count; i++) {
+                int child = first + i * ENTRY_SIZE;
+                if (isObject) {
+                    long symbol = readCompressedLong();
+                    if (symbol >= names.symbols())
+                        throw new IllegalArgumentException("Unknown symbol " + symbol);
+                    index[child + SYMBOL] = (int)symbol;
+                }
+                decodeValue(child);
+            }
+        }
+
+        /** Reserves space for the given number of consecutive values and returns the index of the first */
+        private int allocate(int count) {
+            int first = used;
+            used += count * ENTRY_SIZE;
+            if (used > index.length) {
+                int[] newIndex = new int[Math.max(used, index.length * 2)];
+                System.arraycopy(index, 0, newIndex, 0, first);
+                index = newIndex;
+            }
+            return first;
+        }
+
+        /** Returns the given size if that many bytes remain, and throws otherwise */
+        private int checkedSize(long size) {
+            if (size > end - position)
+                throw new IllegalArgumentException("Underflow");
+            return (int)size;
+        }
+
+        private long readSize(int meta) {
+            return meta == 0 ? readCompressedLong() : meta - 1;
+        }
+
+        private long readCompressedLong() {
+            long next = readByte();
+            long value = (next & 0x7f);
+            int shift = 7;
+            while ((next & 0x80) != 0) {
+                next = readByte();
+                value |= ((next & 0x7f) << shift);
+                shift += 7;
+            }
+            return value;
+        }
+
+        private byte readByte() {
+            if (position == end)
+                throw new IllegalArgumentException("Underflow");
+            return data[position++];
+        }
+
+        private void skip(int bytes) {
+            checkedSize(bytes);
+            position += bytes;
+        }
+
+    }
+
+}
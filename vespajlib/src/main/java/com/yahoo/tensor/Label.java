@@ -0,0 +1,218 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Maps tensor cell labels to long ids, such that addresses can be stored and compared as arrays of primitives.
+ * Labels which are non-negative integers on canonical form are their own ids, while all other labels
+ * are interned and assigned a negative id.
+ * <p>
+ * Interned labels are only weakly referenced from the intern table. Whoever stores ids of interned labels must
+ * obtain them through a {@link Retainer}, which keeps those labels reachable. When no retainer of a label is
+ * reachable any longer, the label is removed from the table. Ids are never reused, so a label which is
+ * interned again after it was removed gets a new id.
+ * <p>
+ * This is multithread safe.
+ */
+final class Label {
+
+    /** The id returned for labels which have not been interned when they are looked up */
+    static final long UNKNOWN = Long.MIN_VALUE;
+
+    /** Numeric labels with more digits than this are interned as they may not fit in a long */
+    private static final int MAX_NUMERIC_DIGITS = 18;
+
+    private static final ConcurrentHashMap<String, InternedReference> byLabel = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Long, InternedReference> byId = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<Interned> reclaimed = new ReferenceQueue<>();
+    private static final AtomicLong nextId = new AtomicLong(-1);
+
+    private Label() {}
+
+    /** Returns the id of the given label, or UNKNOWN if it is not numeric and is not currently interned */
+    static long lookupId(String label) {
+        long numeric = numericId(label);
+        if (numeric >= 0) return numeric;
+        Interned interned = get(byLabel.get(label));
+        return interned == null ? UNKNOWN : interned.id;
+    }
+
+    /**
+     * Returns the label having the given id
+     *
+     * @throws IllegalArgumentException if no label has this id, which means it was not obtained through a retainer
+     *                                  which is still reachable
+     */
+    static String fromId(long id) {
+        if (id >= 0) return String.valueOf(id);
+        return interned(id).label;
+    }
+
+    /**
+     * Returns the given id as a long label
+     *
+     * @throws IllegalArgumentException if the label having this id is not a number
+     */
+    static long numericLabel(long id) {
+        if (id >= 0) return id;
+        try {
+            return Long.parseLong(fromId(id));
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a long label, but got '" + fromId(id) + "'");
+        }
+    }
+
+    private static Interned interned(long id) {
+        Interned interned = get(byId.get(id));
+        if (interned == null)
+            throw new IllegalArgumentException("No label has id " + id);
+        return interned;
+    }
+
+    /** Returns the interned instance of the given label, interning it if necessary */
+    private static Interned intern(String label) {
+        removeReclaimed();
+        while (true) {
+            InternedReference current = byLabel.get(label);
+            Interned interned = get(current);
+            if (interned != null) return interned;
+
+            Interned created = new Interned(label, nextId.getAndDecrement());
+            InternedReference reference = new InternedReference(created, reclaimed);
+            byId.put(created.id, reference); // before it is visible by label, such that its id can always be resolved
+            boolean installed = current == null ? byLabel.putIfAbsent(label, reference) == null
+                                                : byLabel.replace(label, current, reference);
+            if (installed) return created;
+            byId.remove(created.id); // another thread interned this label concurrently
+        }
+    }
+
+    private static void removeReclaimed() {
+        for (InternedReference reference; (reference = (InternedReference)reclaimed.poll()) != null; ) {
+            byLabel.remove(reference.label, reference);
+            byId.remove(reference.id, reference);
+        }
+    }
+
+    private static Interned get(InternedReference reference) {
+        return reference == null ? null : reference.get();
+    }
+
+    /** Returns the given label as a non-negative number if it is one on canonical form, and -1 otherwise */
+    private static long numericId(String label) {
+        int length = label.length();
+        if (length == 0 || length > MAX_NUMERIC_DIGITS) return -1;
+        if (length > 1 && label.charAt(0) == '0') return -1;
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = label.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * The interned labels whose ids are stored by some holder, such as a tensor.
+     * The ids returned by this stay valid as long as this is reachable.
+     * <p>
+     * Retaining all the labels of another retainer shares its set of labels rather than copying it, and a shared
+     * set is only copied when labels which are not in it are retained. A retainer which is used by a tensor, and
+     * therefore never changes, is thereby never written to by retainers sharing its labels.
+     * <p>
+     * This is not multithread safe.
+     */
+    static final class Retainer {
+
+        /** The retained labels, or null if none */
+        private Set<Interned> labels = null;
+
+        /** Whether the labels are shared with another retainer, such that they must be copied before they are changed */
+        private boolean shared = false;
+
+        /** Returns the id of the given label, interning and retaining it if necessary */
+        long toId(String label) {
+            long numeric = numericId(label);
+            if (numeric >= 0) return numeric;
+            return retain(intern(label));
+        }
+
+        /** Returns the id of the given numeric label, interning and retaining it if necessary */
+        long toId(long label) {
+            if (label >= 0) return label;
+            return toId(String.valueOf(label));
+        }
+
+        /** Retains the label of the given id, which must currently be retained by another retainer, and returns it */
+        long retain(long id) {
+            if (id >= 0) return id;
+            return retain(interned(id));
+        }
+
+        /** Retains all the labels retained by the given retainer */
+        void retainAll(Retainer other) {
+            if (other.labels == null || other.labels == labels) return;
+            if (labels == null) {
+                labels = other.labels;
+                shared = true;
+                if ( ! other.shared) // Retainers used by tensors are already shared, so these are not written to
+                    other.shared = true;
+            }
+            else if ( ! labels.containsAll(other.labels)) {
+                ownLabels().addAll(other.labels);
+            }
+        }
+
+        private long retain(Interned interned) {
+            if (labels == null || ! labels.contains(interned))
+                ownLabels().add(interned);
+            return interned.id;
+        }
+
+        /** Returns the labels of this, after copying them if they are shared, such that they can be changed */
+        private Set<Interned> ownLabels() {
+            if (labels == null)
+                labels = new HashSet<>();
+            else if (shared)
+                labels = new HashSet<>(labels);
+            shared = false;
+            return labels;
+        }
+
+    }
+
+    /** An interned label. Its id is valid as long as this is reachable. */
+    private static final class Interned {
+
+        private final String label;
+        private final long id;
+
+        private Interned(String label, long id) {
+            this.label = label;
+            this.id = id;
+        }
+
+    }
+
+    /** A weak reference to an interned label, which remembers its keys such that it can be removed once cleared */
+    private static final class InternedReference extends WeakReference<Interned> {
+
+        private final String label;
+        private final long id;
+
+        private InternedReference(Interned interned, ReferenceQueue<Interned> queue) {
+            super(interned, queue);
+            this.label = interned.label;
+            this.id = interned.id;
+        }
+
+    }
+
+}
@@ -2,12 +2,22 @@
 package com.yahoo.tensor;
 
 import com.google.common.collect.ImmutableMap;
+import com.yahoo.tensor.functions.Reduce;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.DoubleBinaryOperator;
+import java.util.stream.Collectors;
 
 /**
- * A sparse implementation of a tensor backed by a Map of cells to values.
+ * A sparse implementation of a tensor backed by an open addressing hash table of cells.
+ * Cell addresses are stored as arrays of label ids (see {@link Label}) and values as primitive doubles,
+ * such that no objects are created per cell unless cells are accessed by {@link TensorAddress}.
  *
  * @author bratseth
  */
@@ -15,31 +25,50 @@ public class MappedTensor implements Tensor {
 
     private final TensorType type;
 
-    private final ImmutableMap<TensorAddress, Double> cells;
+    /** The addresses of the cells of this */
+    private final AddressTable addresses;
+
+    /** The values of the cells of this, in the same order as their addresses */
+    private final double[] values;
 
     /** Creates a sparse tensor. The cell addresses must match the type. */
-    private MappedTensor(TensorType type, Map<TensorAddress, Double> cells) {
+    private MappedTensor(TensorType type, AddressTable addresses, double[] values) {
         this.type = type;
-        this.cells = ImmutableMap.copyOf(cells);
+        this.addresses = addresses;
+        this.values = values;
     }
 
     @Override
     public TensorType type() { return type; }
 
     @Override
-    public long size() { return cells.size(); }
+    public long size() { return addresses.size(); }
 
     @Override
-    public double get(TensorAddress address) { return cells.getOrDefault(address, Double.NaN); }
+    public double get(TensorAddress address) {
+        if (address.size() != addresses.rank()) return Double.NaN;
+        long[] labelIds = new long[address.size()];
+        for (int i = 0; i < labelIds.length; i++) {
+            labelIds[i] = address.lookupLabelId(i);
+            if (labelIds[i] == Label.UNKNOWN) return Double.NaN;
+        }
+        int index = addresses.indexOf(labelIds);
+        return index < 0 ? Double.NaN : values[index];
+    }
 
     @Override
-    public Iterator<Cell> cellIterator() { return new CellIteratorAdaptor(cells.entrySet().iterator()); }
+    public Iterator<Cell> cellIterator() { return new CellIterator(); }
 
     @Override
-    public Iterator<Double> valueIterator() { return cells.values().iterator(); }
+    public Iterator<Double> valueIterator() { return new ValueIterator(); }
 
     @Override
-    public Map<TensorAddress, Double> cells() { return cells; }
+    public Map<TensorAddress, Double> cells() {
+        ImmutableMap.Builder<TensorAddress, Double> builder = new ImmutableMap.Builder<>();
+        for (int i = 0; i < addresses.size(); i++)
+            builder.put(addresses.address(i), values[i]);
+        return builder.build();
+    }
 
     @Override
     public Tensor withType(TensorType other) {
@@ -47,11 +76,140 @@ public class MappedTensor implements Tensor {
             throw new IllegalArgumentException("MappedTensor.withType: types are not compatible. Current type: '" +
                     this.type.toString() + "', requested type: '" + type.toString() + "'");
         }
-        return new MappedTensor(other, cells);
+        return new MappedTensor(other, addresses, values);
+    }
+
+    /**
+     * Returns the join of this and the given tensor. This is computed on the label ids of the cells,
+     * without creating any addresses.
+     *
+     * @param argument the second argument of the join
+     * @param joinedType the type of the result, which must contain the dimensions of both arguments
+     * @param combinator the function combining a value of this with a value of the argument
+     */
+    public MappedTensor join(MappedTensor argument, TensorType joinedType, DoubleBinaryOperator combinator) {
+        // Index the cells of the smaller tensor by their labels in the common dimensions
+        boolean swapped = this.size() > argument.size();
+        MappedTensor indexed = swapped ? argument : this;
+        MappedTensor probing = swapped ? this : argument;
+
+        int[] indexedToJoined = mapIndexes(indexed.type, joinedType);
+        int[] probingToJoined = mapIndexes(probing.type, joinedType);
+        List<String> commonDimensions = new ArrayList<>(indexed.type.dimensionNames());
+        commonDimensions.retainAll(probing.type.dimensionNames());
+        int[] indexedCommon = indexesOf(commonDimensions, indexed.type);
+        int[] probingCommon = indexesOf(commonDimensions, probing.type);
+
+        // The common addresses are only used during the join, so they need not retain their labels
+        AddressTable commonAddresses = new AddressTable(commonDimensions.size(), indexed.addresses.size(), new Label.Retainer());
+        int[] firstCellWithCommonAddress = new int[indexed.addresses.size()];
+        int[] nextCellWithCommonAddress = new int[indexed.addresses.size()];
+        Arrays.fill(firstCellWithCommonAddress, -1);
+        long[] commonAddress = new long[commonDimensions.size()];
+        for (int i = indexed.addresses.size() - 1; i >= 0; i--) { // backwards to produce cells in order
+            indexed.addresses.copyLabelIds(i, indexedCommon, commonAddress);
+            int commonIndex = commonAddresses.add(commonAddress);
+            nextCellWithCommonAddress[i] = firstCellWithCommonAddress[commonIndex];
+            firstCellWithCommonAddress[commonIndex] = i;
+        }
+
+        Builder builder = new Builder(joinedType, Math.max(indexed.addresses.size(), probing.addresses.size()));
+        builder.addresses.retainer.retainAll(indexed.addresses.retainer);
+        builder.addresses.retainer.retainAll(probing.addresses.retainer);
+        long[] joinedAddress = new long[joinedType.dimensions().size()];
+        for (int p = 0; p < probing.addresses.size(); p++) {
+            probing.addresses.copyLabelIds(p, probingCommon, commonAddress);
+            int commonIndex = commonAddresses.indexOf(commonAddress);
+            if (commonIndex < 0) continue;
+            probing.addresses.mapLabelIds(p, probingToJoined, joinedAddress);
+            for (int i = firstCellWithCommonAddress[commonIndex]; i >= 0; i = nextCellWithCommonAddress[i]) {
+                indexed.addresses.mapLabelIds(i, indexedToJoined, joinedAddress);
+                double value = swapped ? combinator.applyAsDouble(probing.values[p], indexed.values[i])
+                                       : combinator.applyAsDouble(indexed.values[i], probing.values[p]);
+                builder.cell(joinedAddress, value);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns this reduced to the given type, which must contain a non-empty subset of the dimensions of this.
+     * This is computed on the label ids of the cells, without creating any addresses.
+     *
+     * @param reducedType the type of the result
+     * @param aggregator the aggregator to apply to the values of the cells which are reduced to the same cell
+     */
+    public MappedTensor reduce(TensorType reducedType, Reduce.Aggregator aggregator) {
+        int[] retainedIndexes = indexesOf(dimensionNamesOf(reducedType), type);
+        AddressTable reducedAddresses = new AddressTable(retainedIndexes.length, addresses.size(), addresses.retainer);
+        double[] aggregates = new double[addresses.size()];
+        int[] counts = new int[addresses.size()];
+        long[] reducedAddress = new long[retainedIndexes.length];
+        for (int i = 0; i < addresses.size(); i++) {
+            addresses.copyLabelIds(i, retainedIndexes, reducedAddress);
+            int reducedIndex = reducedAddresses.add(reducedAddress);
+            if (counts[reducedIndex] == 0)
+                aggregates[reducedIndex] = initialValue(aggregator);
+            aggregates[reducedIndex] = aggregate(aggregator, aggregates[reducedIndex], values[i]);
+            counts[reducedIndex]++;
+        }
+
+        double[] reducedValues = new double[reducedAddresses.size()];
+        for (int i = 0; i < reducedValues.length; i++) {
+            switch (aggregator) {
+                case avg: reducedValues[i] = aggregates[i] / counts[i]; break;
+                case count: reducedValues[i] = counts[i]; break;
+                default: reducedValues[i] = aggregates[i];
+            }
+        }
+        return new MappedTensor(reducedType, reducedAddresses.trimmed(), reducedValues);
+    }
+
+    // These must produce the same values as the value aggregators of Reduce
+    private static double initialValue(Reduce.Aggregator aggregator) {
+        switch (aggregator) {
+            case prod: return 1.0;
+            case max: return Double.MIN_VALUE;
+            case min: return Double.MAX_VALUE;
+            default: return 0.0;
+        }
+    }
+
+    private static double aggregate(Reduce.Aggregator aggregator, double aggregate, double value) {
+        switch (aggregator) {
+            case avg: case sum: return aggregate + value;
+            case count: return aggregate;
+            case prod: return aggregate * value;
+            case max: return value > aggregate ? value : aggregate;
+            case min: return value < aggregate ? value : aggregate;
+            default: throw new UnsupportedOperationException("Aggregator " + aggregator + " is not implemented");
+        }
+    }
+
+    /** Returns the index in toType of each dimension in fromType, or -1 if it is not present */
+    private static int[] mapIndexes(TensorType fromType, TensorType toType) {
+        int[] toIndexes = new int[fromType.dimensions().size()];
+        for (int i = 0; i < fromType.dimensions().size(); i++)
+            toIndexes[i] = toType.indexOfDimension(fromType.dimensions().get(i).name()).orElse(-1);
+        return toIndexes;
+    }
+
+    private static List<String> dimensionNamesOf(TensorType type) {
+        return type.dimensions().stream().map(TensorType.Dimension::name).collect(Collectors.toList());
+    }
+
+    /** Returns the index in the given type of each of the given dimensions, in order */
+    private static int[] indexesOf(Collection<String> dimensions, TensorType type) {
+        return dimensions.stream().mapToInt(dimension -> type.indexOfDimension(dimension).get()).toArray();
     }
 
     @Override
-    public int hashCode() { return cells.hashCode(); }
+    public int hashCode() {
+        int hashCode = 0;
+        for (int i = 0; i < addresses.size(); i++)
+            hashCode += addresses.address(i).hashCode() ^ Double.hashCode(values[i]); // as Map.hashCode
+        return hashCode;
+    }
 
     @Override
     public String toString() { return Tensor.toStandardString(this); }
@@ -65,12 +223,17 @@ public class MappedTensor implements Tensor {
     public static class Builder implements Tensor.Builder {
 
         private final TensorType type;
-        private final ImmutableMap.Builder<TensorAddress, Double> cells = new ImmutableMap.Builder<>();
+        private final AddressTable addresses;
+        private final long[] labelIds;
+        private double[] values;
 
-        public static Builder of(TensorType type) { return new Builder(type); }
+        public static Builder of(TensorType type) { return new Builder(type, 16); }
 
-        private Builder(TensorType type) {
+        private Builder(TensorType type, int expectedSize) {
             this.type = type;
+            this.addresses = new AddressTable(type.dimensions().size(), expectedSize, new Label.Retainer());
+            this.labelIds = new long[type.dimensions().size()];
+            this.values = new double[expectedSize];
         }
 
         public CellBuilder cell() {
@@ -82,40 +245,222 @@ public class MappedTensor implements Tensor {
 
         @Override
         public Builder cell(TensorAddress address, double value) {
-            cells.put(address, value);
-            return this;
+            if (address.size() != labelIds.length)
+                throw new IllegalArgumentException("Cannot add cell at " + address + " to " + type +
+                                                   ": Expected " + labelIds.length + " labels");
+            for (int i = 0; i < labelIds.length; i++)
+                labelIds[i] = address.labelId(i, addresses.retainer);
+            return cell(labelIds, value);
         }
 
         @Override
         public Builder cell(double value, long... labels) {
-            cells.put(TensorAddress.of(labels), value);
+            if (labels.length != labelIds.length)
+                throw new IllegalArgumentException("Cannot add cell at " + Arrays.toString(labels) + " to " + type +
+                                                   ": Expected " + labelIds.length + " labels");
+            for (int i = 0; i < labelIds.length; i++)
+                labelIds[i] = addresses.retainer.toId(labels[i]);
+            return cell(labelIds, value);
+        }
+
+        private Builder cell(long[] labelIds, double value) {
+            int size = addresses.size();
+            int index = addresses.add(labelIds);
+            if (index < size)
+                throw new IllegalArgumentException("Multiple values for cell " + addresses.address(index).toString(type));
+            if (index == values.length)
+                values = Arrays.copyOf(values, values.length * 2 + 1);
+            values[index] = value;
             return this;
         }
 
         @Override
         public MappedTensor build() {
-            return new MappedTensor(type, cells.build());
+            return new MappedTensor(type, addresses.trimmed(), Arrays.copyOf(values, addresses.size()));
         }
 
     }
 
-    private static class CellIteratorAdaptor implements Iterator<Cell> {
+    /**
+     * A set of addresses represented as label ids, stored in an open addressing hash table.
+     * Each address is assigned an index in insertion order.
+     */
+    private static final class AddressTable {
+
+        private final int rank;
+
+        /** Retains the labels of the ids in this, which must not change once this is used by a tensor */
+        private final Label.Retainer retainer;
+
+        /** The label ids of each address, address by address */
+        private long[] labelIds;
+
+        /** The index + 1 of the address hashed to each slot, or 0 if the slot is empty */
+        private int[] slots;
+
+        private int size = 0;
+
+        AddressTable(int rank, int expectedSize, Label.Retainer retainer) {
+            this(rank, new long[rank * Math.max(expectedSize, 1)], new int[slotsFor(Math.max(expectedSize, 1))], retainer);
+        }
+
+        private AddressTable(int rank, long[] labelIds, int[] slots, Label.Retainer retainer) {
+            this.rank = rank;
+            this.retainer = retainer;
+            this.labelIds = labelIds;
+            this.slots = slots;
+        }
+
+        int rank() { return rank; }
+
+        int size() { return size; }
+
+        /** Returns the index of the given address, or -1 if it is not present */
+        int indexOf(long[] address) {
+            int mask = slots.length - 1;
+            for (int slot = hash(address) & mask; ; slot = (slot + 1) & mask) {
+                int entry = slots[slot];
+                if (entry == 0) return -1;
+                if (equals(entry - 1, address)) return entry - 1;
+            }
+        }
+
+        /** Adds the given address if it is not already present, and returns its index */
+        int add(long[] address) {
+            if (2 * (size + 1) > slots.length)
+                rehash(slots.length * 2);
+            int mask = slots.length - 1;
+            int slot = hash(address) & mask;
+            for (; slots[slot] != 0; slot = (slot + 1) & mask)
+                if (equals(slots[slot] - 1, address)) return slots[slot] - 1;
+
+            if ((size + 1) * rank > labelIds.length)
+                labelIds = Arrays.copyOf(labelIds, labelIds.length * 2);
+            System.arraycopy(address, 0, labelIds, size * rank, rank);
+            slots[slot] = ++size;
+            return size - 1;
+        }
 
-        private final Iterator<Map.Entry<TensorAddress, Double>> adaptedIterator;
+        /** Returns the address at the given index */
+        TensorAddress address(int index) {
+            return TensorAddress.ofIds(Arrays.copyOfRange(labelIds, index * rank, index * rank + rank), retainer);
+        }
+
+        /** Copies the given label ids of the address at the given index, in order, to the given array */
+        void copyLabelIds(int index, int[] labelIndexes, long[] to) {
+            for (int i = 0; i < labelIndexes.length; i++)
+                to[i] = labelIds[index * rank + labelIndexes[i]];
+        }
 
-        private CellIteratorAdaptor(Iterator<Map.Entry<TensorAddress, Double>> adaptedIterator) {
-            this.adaptedIterator = adaptedIterator;
+        /** Copies the label ids of the address at the given index to the given positions in the given array */
+        void mapLabelIds(int index, int[] toIndexes, long[] to) {
+            for (int i = 0; i < rank; i++)
+                to[toIndexes[i]] = labelIds[index * rank + i];
         }
 
+        /** Returns a copy of this which uses no more memory than necessary, and which retains its labels without copying them */
+        AddressTable trimmed() {
+            Label.Retainer retainer = new Label.Retainer();
+            retainer.retainAll(this.retainer);
+            AddressTable trimmed = new AddressTable(rank, Arrays.copyOf(labelIds, size * rank), slots, retainer);
+            trimmed.size = size;
+            if (slots.length > slotsFor(size))
+                trimmed.rehash(slotsFor(size));
+            else
+                trimmed.slots = Arrays.copyOf(slots, slots.length);
+            return trimmed;
+        }
+
+        private boolean equals(int index, long[] address) {
+            int offset = index * rank;
+            for (int i = 0; i < rank; i++)
+                if (labelIds[offset + i] != address[i]) return false;
+            return true;
+        }
+
+        private int hash(long[] address) {
+            long hash = 0;
+            for (long labelId : address)
+                hash = (hash + labelId) * 0x9E3779B97F4A7C15L;
+            return (int)(hash ^ (hash >>> 32));
+        }
+
+        private int hash(int index) {
+            long hash = 0;
+            for (int i = index * rank; i < index * rank + rank; i++)
+                hash = (hash + labelIds[i]) * 0x9E3779B97F4A7C15L;
+            return (int)(hash ^ (hash >>> 32));
+        }
+
+        private void rehash(int slotCount) {
+            slots = new int[slotCount];
+            int mask = slotCount - 1;
+            for (int index = 0; index < size; index++) {
+                int slot = hash(index) & mask;
+                while (slots[slot] != 0)
+                    slot = (slot + 1) & mask;
+                slots[slot] = index + 1;
+            }
+        }
+
+        /** Returns the number of slots to use for the given number of addresses: A power of 2 at least twice as large */
+        private static int slotsFor(int size) {
+            return Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1;
+        }
+
+    }
+
+    private class CellIterator implements Iterator<Cell> {
+
+        private int index = 0;
+
         @Override
-        public boolean hasNext() { return adaptedIterator.hasNext(); }
+        public boolean hasNext() { return index < addresses.size(); }
 
         @Override
         public Cell next() {
-            Map.Entry<TensorAddress, Double> entry = adaptedIterator.next();
-            return new Cell(entry.getKey(), entry.getValue());
+            if ( ! hasNext()) throw new NoSuchElementException("No cell at " + index);
+            return new LazyCell(index++);
         }
 
     }
 
+    private class ValueIterator implements Iterator<Double> {
+
+        private int index = 0;
+
+        @Override
+        public boolean hasNext() { return index < addresses.size(); }
+
+        @Override
+        public Double next() {
+            if ( ! hasNext()) throw new NoSuchElementException("No cell at " + index);
+            return values[index++];
+        }
+
+    }
+
+    /** A Cell which does not create its TensorAddress unless it really has to */
+    private final class LazyCell extends Tensor.Cell {
+
+        private final int index;
+        private TensorAddress address = null;
+
+        private LazyCell(int index) {
+            super(null, null);
+            this.index = index;
+        }
+
+        @Override
+        public TensorAddress getKey() {
+            if (address == null)
+                address = addresses.address(index);
+            return address;
+        }
+
+        @Override
+        public Double getValue() { return values[index]; }
+
+    }
+
 }
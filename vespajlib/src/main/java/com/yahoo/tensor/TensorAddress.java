@@ -22,6 +22,14 @@ public abstract class TensorAddress implements Comparable<TensorAddress> {
         return new NumericTensorAddress(labels);
     }
 
+    /**
+     * Returns an address of the labels having the given ids, which must be retained by the given retainer.
+     * The given array is owned by the returned address.
+     */
+    static TensorAddress ofIds(long[] labelIds, Label.Retainer retainer) {
+        return new LabelIdTensorAddress(labelIds, retainer);
+    }
+
     /** Returns the number of labels in this */
     public abstract int size();
 
@@ -42,6 +50,12 @@ public abstract class TensorAddress implements Comparable<TensorAddress> {
 
     public abstract TensorAddress withLabel(int labelIndex, long label);
 
+    /** Returns the id of the i'th label in this, interning the label if it has no id and retaining it by the given retainer */
+    long labelId(int i, Label.Retainer retainer) { return retainer.toId(label(i)); }
+
+    /** Returns the id of the i'th label in this, or {@link Label#UNKNOWN} if it has none */
+    long lookupLabelId(int i) { return Label.lookupId(label(i)); }
+
     public final boolean isEmpty() { return size() == 0; }
 
     @Override
@@ -142,6 +156,12 @@ public abstract class TensorAddress implements Comparable<TensorAddress> {
         @Override
         public long numericLabel(int i) { return labels[i]; }
 
+        @Override
+        long labelId(int i, Label.Retainer retainer) { return retainer.toId(labels[i]); }
+
+        @Override
+        long lookupLabelId(int i) { return labels[i] >= 0 ? labels[i] : super.lookupLabelId(i); }
+
         @Override
         public TensorAddress withLabel(int index, long label) {
             long[] labels = Arrays.copyOf(this.labels, this.labels.length);
@@ -156,6 +176,52 @@ public abstract class TensorAddress implements Comparable<TensorAddress> {
 
     }
 
+    /** An address whose labels are represented by their ids. Labels are only looked up when requested. */
+    private static final class LabelIdTensorAddress extends TensorAddress {
+
+        private final long[] labelIds;
+
+        /** Keeps the labels of this interned as long as this is used */
+        private final Label.Retainer retainer;
+
+        private LabelIdTensorAddress(long[] labelIds, Label.Retainer retainer) {
+            this.labelIds = labelIds;
+            this.retainer = retainer;
+        }
+
+        @Override
+        public int size() { return labelIds.length; }
+
+        @Override
+        public String label(int i) { return Label.fromId(labelIds[i]); }
+
+        @Override
+        public long numericLabel(int i) { return Label.numericLabel(labelIds[i]); }
+
+        @Override
+        public TensorAddress withLabel(int index, long label) {
+            String[] labels = new String[labelIds.length];
+            for (int i = 0; i < labels.length; i++)
+                labels[i] = i == index ? String.valueOf(label) : label(i);
+            return TensorAddress.of(labels);
+        }
+
+        @Override
+        long labelId(int i, Label.Retainer retainer) { return retainer.retain(labelIds[i]); }
+
+        @Override
+        long lookupLabelId(int i) { return labelIds[i]; }
+
+        @Override
+        public String toString() {
+            StringBuilder b = new StringBuilder("[");
+            for (int i = 0; i < labelIds.length; i++)
+                b.append(i > 0 ? ", " : "").append(label(i));
+            return b.append("]").toString();
+        }
+
+    }
+
     /** Supports building of a tensor address */
     public static class Builder {
 
@@ -2,10 +2,9 @@
 package com.yahoo.tensor.functions;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Sets;
 import com.yahoo.tensor.DimensionSizes;
 import com.yahoo.tensor.IndexedTensor;
-import com.yahoo.tensor.PartialAddress;
+import com.yahoo.tensor.MappedTensor;
 import com.yahoo.tensor.Tensor;
 import com.yahoo.tensor.TensorAddress;
 import com.yahoo.tensor.TensorType;
@@ -15,13 +14,11 @@ import com.yahoo.tensor.evaluation.TypeContext;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.Set;
 import java.util.function.DoubleBinaryOperator;
 
 /**
@@ -87,31 +84,78 @@ public class Join extends PrimitiveTensorFunction {
 
     static Tensor evaluate(Tensor a, Tensor b, TensorType joinedType, DoubleBinaryOperator combinator) {
         // Choose join algorithm
-        if (hasSingleIndexedDimension(a) && hasSingleIndexedDimension(b) && a.type().dimensions().get(0).name().equals(b.type().dimensions().get(0).name()))
-            return indexedVectorJoin((IndexedTensor)a, (IndexedTensor)b, joinedType, combinator);
+        if (a instanceof MappedTensor && b instanceof MappedTensor)
+            return ((MappedTensor)a).join((MappedTensor)b, joinedType, combinator);
+        else if (a instanceof IndexedTensor && b instanceof IndexedTensor)
+            return indexedJoin((IndexedTensor)a, (IndexedTensor)b, joinedType, combinator);
         else if (joinedType.dimensions().size() == a.type().dimensions().size() && joinedType.dimensions().size() == b.type().dimensions().size())
             return singleSpaceJoin(a, b, joinedType, combinator);
         else if (a.type().dimensions().containsAll(b.type().dimensions()))
-            return subspaceJoin(b, a, joinedType, true, combinator);
+            return generalSubspaceJoin(b, a, joinedType, true, combinator);
         else if (b.type().dimensions().containsAll(a.type().dimensions()))
-            return subspaceJoin(a, b, joinedType, false, combinator);
+            return generalSubspaceJoin(a, b, joinedType, false, combinator);
         else
-            return generalJoin(a, b, joinedType, combinator);
+            return mappedHashJoin(a, b, joinedType, combinator);
+    }
 
+    /**
+     * Joins two dense tensors by iterating over the cells of the joined tensor in value order,
+     * stepping through the values of each argument using its stride in each of the joined dimensions.
+     */
+    private static Tensor indexedJoin(IndexedTensor a, IndexedTensor b, TensorType joinedType, DoubleBinaryOperator combinator) {
+        DimensionSizes joinedSizes = joinedSize(joinedType, a, b);
+        IndexedTensor.BoundBuilder builder = (IndexedTensor.BoundBuilder)Tensor.Builder.of(joinedType, joinedSizes);
+        if (joinedSizes.totalSize() > 0)
+            indexedJoin(a, 0, strides(a, joinedType), b, 0, strides(b, joinedType),
+                        0, joinedSizes, 0, builder, combinator);
+        return builder.build();
     }
 
-    private static boolean hasSingleIndexedDimension(Tensor tensor) {
-        return tensor.type().dimensions().size() == 1 && tensor.type().dimensions().get(0).isIndexed();
+    /**
+     * Joins the subspaces of a and b starting at the given offsets which span the given dimension and
+     * all dimensions after it, into the joined tensor starting at the given index.
+     *
+     * @return the index in the joined tensor following the last cell joined
+     */
+    private static long indexedJoin(IndexedTensor a, long aOffset, long[] aStrides,
+                                    IndexedTensor b, long bOffset, long[] bStrides,
+                                    int dimension, DimensionSizes joinedSizes, long joinedIndex,
+                                    IndexedTensor.BoundBuilder builder, DoubleBinaryOperator combinator) {
+        if (dimension == joinedSizes.dimensions()) { // scalars
+            builder.cellByDirectIndex(joinedIndex, combinator.applyAsDouble(a.get(aOffset), b.get(bOffset)));
+            return joinedIndex + 1;
+        }
+
+        long size = joinedSizes.size(dimension);
+        long aStride = aStrides[dimension];
+        long bStride = bStrides[dimension];
+        if (dimension == joinedSizes.dimensions() - 1) {
+            for (long i = 0; i < size; i++)
+                builder.cellByDirectIndex(joinedIndex++, combinator.applyAsDouble(a.get(aOffset + i * aStride),
+                                                                                  b.get(bOffset + i * bStride)));
+            return joinedIndex;
+        }
+        for (long i = 0; i < size; i++)
+            joinedIndex = indexedJoin(a, aOffset + i * aStride, aStrides, b, bOffset + i * bStride, bStrides,
+                                      dimension + 1, joinedSizes, joinedIndex, builder, combinator);
+        return joinedIndex;
     }
 
-    private static Tensor indexedVectorJoin(IndexedTensor a, IndexedTensor b, TensorType type, DoubleBinaryOperator combinator) {
-        long joinedRank = Math.min(a.dimensionSizes().size(0), b.dimensionSizes().size(0));
-        Iterator<Double> aIterator = a.valueIterator();
-        Iterator<Double> bIterator = b.valueIterator();
-        IndexedTensor.Builder builder = IndexedTensor.Builder.of(type, new DimensionSizes.Builder(1).set(0, joinedRank).build());
-        for (int i = 0; i < joinedRank; i++)
-            builder.cell(combinator.applyAsDouble(aIterator.next(), bIterator.next()), i);
-        return builder.build();
+    /**
+     * Returns the distance between consecutive values of each dimension of the given type in the values
+     * of the given tensor, or 0 for dimensions the tensor does not have.
+     */
+    static long[] strides(IndexedTensor tensor, TensorType type) {
+        long[] strides = new long[type.dimensions().size()];
+        DimensionSizes sizes = tensor.dimensionSizes();
+        long stride = 1;
+        for (int i = tensor.type().dimensions().size() - 1; i >= 0; i--) {
+            Optional<Integer> index = type.indexOfDimension(tensor.type().dimensions().get(i).name());
+            if (index.isPresent())
+                strides[index.get()] = stride;
+            stride *= sizes.size(i);
+        }
+        return strides;
     }
 
     /** When both tensors have the same dimensions, at most one cell matches a cell in the other tensor */
@@ -126,55 +170,7 @@ public class Join extends PrimitiveTensorFunction {
         return builder.build();
     }
 
-    /** Join a tensor into a superspace */
-    private static Tensor subspaceJoin(Tensor subspace, Tensor superspace, TensorType joinedType, boolean reversedArgumentOrder, DoubleBinaryOperator combinator) {
-        if (subspace instanceof IndexedTensor && superspace instanceof IndexedTensor)
-            return indexedSubspaceJoin((IndexedTensor) subspace, (IndexedTensor) superspace, joinedType, reversedArgumentOrder, combinator);
-        else
-            return generalSubspaceJoin(subspace, superspace, joinedType, reversedArgumentOrder, combinator);
-    }
-
-    private static Tensor indexedSubspaceJoin(IndexedTensor subspace, IndexedTensor superspace, TensorType joinedType, boolean reversedArgumentOrder, DoubleBinaryOperator combinator) {
-        if (subspace.size() == 0 || superspace.size() == 0) // special case empty here to avoid doing it when finding sizes
-            return Tensor.Builder.of(joinedType, new DimensionSizes.Builder(joinedType.dimensions().size()).build()).build();
-
-        DimensionSizes joinedSizes = joinedSize(joinedType, subspace, superspace);
-
-        IndexedTensor.Builder builder = (IndexedTensor.Builder)Tensor.Builder.of(joinedType, joinedSizes);
-
-        // Find dimensions which are only in the supertype
-        Set<String> superDimensionNames = new HashSet<>(superspace.type().dimensionNames());
-        superDimensionNames.removeAll(subspace.type().dimensionNames());
-
-        for (Iterator<IndexedTensor.SubspaceIterator> i = superspace.subspaceIterator(superDimensionNames, joinedSizes); i.hasNext(); ) {
-            IndexedTensor.SubspaceIterator subspaceInSuper = i.next();
-            joinSubspaces(subspace.valueIterator(), subspace.size(),
-                    subspaceInSuper, subspaceInSuper.size(),
-                    reversedArgumentOrder, builder, combinator);
-        }
-
-        return builder.build();
-    }
-
-    private static void joinSubspaces(Iterator<Double> subspace, long subspaceSize,
-                                      Iterator<Tensor.Cell> superspace, long superspaceSize,
-                                      boolean reversedArgumentOrder, IndexedTensor.Builder builder,
-                                      DoubleBinaryOperator combinator) {
-        long joinedLength = Math.min(subspaceSize, superspaceSize);
-        if (reversedArgumentOrder) {
-            for (int i = 0; i < joinedLength; i++) {
-                Tensor.Cell supercell = superspace.next();
-                builder.cell(supercell, combinator.applyAsDouble(supercell.getValue(), subspace.next()));
-            }
-        } else {
-            for (int i = 0; i < joinedLength; i++) {
-                Tensor.Cell supercell = superspace.next();
-                builder.cell(supercell, combinator.applyAsDouble(subspace.next(), supercell.getValue()));
-            }
-        }
-    }
-
-    private static DimensionSizes joinedSize(TensorType joinedType, IndexedTensor a, IndexedTensor b) {
+    static DimensionSizes joinedSize(TensorType joinedType, IndexedTensor a, IndexedTensor b) {
         DimensionSizes.Builder builder = new DimensionSizes.Builder(joinedType.dimensions().size());
         for (int i = 0; i < builder.dimensions(); i++) {
             String dimensionName = joinedType.dimensions().get(i).name();
@@ -220,69 +216,6 @@ public class Join extends PrimitiveTensorFunction {
         return TensorAddress.of(subspaceLabels);
     }
 
-    /** Slow join which works for any two tensors */
-    private static Tensor generalJoin(Tensor a, Tensor b, TensorType joinedType, DoubleBinaryOperator combinator) {
-        if (a instanceof IndexedTensor && b instanceof IndexedTensor)
-            return indexedGeneralJoin((IndexedTensor) a, (IndexedTensor) b, joinedType, combinator);
-        else
-            return mappedHashJoin(a, b, joinedType, combinator);
-    }
-
-    private static Tensor indexedGeneralJoin(IndexedTensor a, IndexedTensor b, TensorType joinedType, DoubleBinaryOperator combinator) {
-        DimensionSizes joinedSize = joinedSize(joinedType, a, b);
-        Tensor.Builder builder = Tensor.Builder.of(joinedType, joinedSize);
-        int[] aToIndexes = mapIndexes(a.type(), joinedType);
-        int[] bToIndexes = mapIndexes(b.type(), joinedType);
-        joinTo(a, b, joinedType, joinedSize, aToIndexes, bToIndexes, builder, combinator);
-        return builder.build();
-    }
-
-    private static void joinTo(IndexedTensor a, IndexedTensor b, TensorType joinedType, DimensionSizes joinedSize,
-                               int[] aToIndexes, int[] bToIndexes, Tensor.Builder builder,
-                               DoubleBinaryOperator combinator) {
-        Set<String> sharedDimensions = Sets.intersection(a.type().dimensionNames(), b.type().dimensionNames());
-        Set<String> dimensionsOnlyInA = Sets.difference(a.type().dimensionNames(), b.type().dimensionNames());
-
-        DimensionSizes aIterateSize = joinedSizeOf(a.type(), joinedType, joinedSize);
-        DimensionSizes bIterateSize = joinedSizeOf(b.type(), joinedType, joinedSize);
-
-        // for each combination of dimensions only in a
-        for (Iterator<IndexedTensor.SubspaceIterator> ia = a.subspaceIterator(dimensionsOnlyInA, aIterateSize); ia.hasNext(); ) {
-            IndexedTensor.SubspaceIterator aSubspace = ia.next();
-            // for each combination of dimensions in a which is also in b
-            while (aSubspace.hasNext()) {
-                Tensor.Cell aCell = aSubspace.next();
-                PartialAddress matchingBCells = partialAddress(a.type(), aSubspace.address(), sharedDimensions);
-                // for each matching combination of dimensions ony in b
-                for (IndexedTensor.SubspaceIterator bSubspace = b.cellIterator(matchingBCells, bIterateSize); bSubspace.hasNext(); ) {
-                    Tensor.Cell bCell = bSubspace.next();
-                    TensorAddress joinedAddress = joinAddresses(aCell.getKey(), aToIndexes, bCell.getKey(), bToIndexes, joinedType);
-                    double joinedValue = combinator.applyAsDouble(aCell.getValue(), bCell.getValue());
-                    builder.cell(joinedAddress, joinedValue);
-                }
-            }
-        }
-    }
-
-    private static PartialAddress partialAddress(TensorType addressType, TensorAddress address, Set<String> retainDimensions) {
-        PartialAddress.Builder builder = new PartialAddress.Builder(retainDimensions.size());
-        for (int i = 0; i < addressType.dimensions().size(); i++)
-            if (retainDimensions.contains(addressType.dimensions().get(i).name()))
-                builder.add(addressType.dimensions().get(i).name(), address.numericLabel(i));
-        return builder.build();
-    }
-
-    /** Returns the sizes from the joined sizes which are present in the type argument */
-    private static DimensionSizes joinedSizeOf(TensorType type, TensorType joinedType, DimensionSizes joinedSizes) {
-        DimensionSizes.Builder builder = new DimensionSizes.Builder(type.dimensions().size());
-        int dimensionIndex = 0;
-        for (int i = 0; i < joinedType.dimensions().size(); i++) {
-            if (type.dimensionNames().contains(joinedType.dimensions().get(i).name()))
-                builder.set(dimensionIndex++, joinedSizes.size(i));
-        }
-        return builder.build();
-    }
-
     private static Tensor mappedGeneralJoin(Tensor a, Tensor b, TensorType joinedType, DoubleBinaryOperator combinator) {
         int[] aToIndexes = mapIndexes(a.type(), joinedType);
         int[] bToIndexes = mapIndexes(b.type(), joinedType);
@@ -2,8 +2,12 @@
 package com.yahoo.tensor.functions;
 
 import com.google.common.collect.ImmutableList;
+import com.yahoo.tensor.Tensor;
 import com.yahoo.tensor.TensorType;
+import com.yahoo.tensor.evaluation.EvaluationContext;
+import com.yahoo.tensor.evaluation.TypeContext;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -43,6 +47,19 @@ public class Matmul extends CompositeTensorFunction {
                           dimension);
     }
 
+    /** Evaluates this without creating the joined tensor when possible, see {@link ReduceJoin} */
+    @Override
+    public <NAMETYPE extends TypeContext.Name> Tensor evaluate(EvaluationContext<NAMETYPE> context) {
+        Tensor a = argument1.evaluate(context);
+        Tensor b = argument2.evaluate(context);
+        List<String> dimensions = Collections.singletonList(dimension);
+        if (a.type().dimension(dimension).isPresent() && b.type().dimension(dimension).isPresent())
+            return new ReduceJoin(new ConstantTensor(a), new ConstantTensor(b), ScalarFunctions.multiply(),
+                                  Reduce.Aggregator.sum, dimensions).evaluate(context);
+        TensorType joinedType = Join.outputType(a.type(), b.type());
+        return Reduce.evaluate(Join.evaluate(a, b, joinedType, ScalarFunctions.multiply()), dimensions, Reduce.Aggregator.sum);
+    }
+
     @Override
     public String toString(ToStringContext context) {
         return "matmul(" + argument1.toString(context) + ", " + argument2.toString(context) + ", " + dimension + ")";
@@ -2,7 +2,9 @@
 package com.yahoo.tensor.functions;
 
 import com.google.common.collect.ImmutableList;
+import com.yahoo.tensor.DimensionSizes;
 import com.yahoo.tensor.IndexedTensor;
+import com.yahoo.tensor.MappedTensor;
 import com.yahoo.tensor.Tensor;
 import com.yahoo.tensor.TensorAddress;
 import com.yahoo.tensor.TensorType;
@@ -129,13 +131,18 @@ public class Reduce extends PrimitiveTensorFunction {
 
         // Special case: Reduce all
         if (dimensions.isEmpty() || dimensions.size() == argument.type().dimensions().size())
-            if (argument.type().dimensions().size() == 1 && argument instanceof IndexedTensor)
-                return reduceIndexedVector((IndexedTensor)argument, aggregator);
+            if (argument instanceof IndexedTensor)
+                return reduceAllIndexed((IndexedTensor)argument, aggregator);
             else
                 return reduceAllGeneral(argument, aggregator);
 
         TensorType reducedType = type(argument.type(), dimensions);
 
+        if (argument instanceof MappedTensor)
+            return ((MappedTensor)argument).reduce(reducedType, aggregator);
+        if (argument instanceof IndexedTensor && argument.size() > 0)
+            return reduceIndexed((IndexedTensor)argument, reducedType, dimensions, aggregator);
+
         // Reduce cells
         Map<TensorAddress, ValueAggregator> aggregatingCells = new HashMap<>();
         for (Iterator<Tensor.Cell> i = argument.cellIterator(); i.hasNext(); ) {
@@ -172,13 +179,84 @@ public class Reduce extends PrimitiveTensorFunction {
         return Tensor.Builder.of(TensorType.empty).cell((valueAggregator.aggregatedValue())).build();
     }
 
-    private static Tensor reduceIndexedVector(IndexedTensor argument, Aggregator aggregator) {
+    private static Tensor reduceAllIndexed(IndexedTensor argument, Aggregator aggregator) {
         ValueAggregator valueAggregator = ValueAggregator.ofType(aggregator);
-        for (int i = 0; i < argument.dimensionSizes().size(0); i++)
+        for (long i = 0; i < argument.size(); i++)
             valueAggregator.aggregate(argument.get(i));
         return Tensor.Builder.of(TensorType.empty).cell((valueAggregator.aggregatedValue())).build();
     }
 
+    /**
+     * Reduces a dense tensor by iterating over the cells of the reduced tensor in value order, aggregating
+     * the values reduced into each by stepping through the values of the argument using its strides.
+     */
+    private static Tensor reduceIndexed(IndexedTensor argument, TensorType reducedType, List<String> dimensions,
+                                        Aggregator aggregator) {
+        long[] strides = Join.strides(argument, argument.type());
+        int retainedCount = reducedType.dimensions().size();
+        long[] retainedSizes = new long[retainedCount];
+        long[] retainedStrides = new long[retainedCount];
+        long[] reducedSizes = new long[strides.length - retainedCount];
+        long[] reducedStrides = new long[strides.length - retainedCount];
+        DimensionSizes.Builder reducedTensorSizes = new DimensionSizes.Builder(retainedCount);
+        for (int i = 0, retained = 0, reduced = 0; i < strides.length; i++) {
+            long size = argument.dimensionSizes().size(i);
+            if (dimensions.contains(argument.type().dimensions().get(i).name())) {
+                reducedSizes[reduced] = size;
+                reducedStrides[reduced++] = strides[i];
+            }
+            else {
+                reducedTensorSizes.set(retained, size);
+                retainedSizes[retained] = size;
+                retainedStrides[retained++] = strides[i];
+            }
+        }
+
+        IndexedTensor.BoundBuilder builder =
+                (IndexedTensor.BoundBuilder)Tensor.Builder.of(reducedType, reducedTensorSizes.build());
+        reduceIndexed(argument, 0, 0, retainedSizes, retainedStrides, reducedSizes, reducedStrides,
+                      0, builder, ValueAggregator.ofType(aggregator));
+        return builder.build();
+    }
+
+    /**
+     * Reduces the subspace of the argument starting at the given offset which spans the given retained dimension
+     * and all retained dimensions after it, into the reduced tensor starting at the given index.
+     *
+     * @return the index in the reduced tensor following the last cell reduced into
+     */
+    private static long reduceIndexed(IndexedTensor argument, long offset, int dimension,
+                                      long[] retainedSizes, long[] retainedStrides,
+                                      long[] reducedSizes, long[] reducedStrides,
+                                      long reducedIndex, IndexedTensor.BoundBuilder builder,
+                                      ValueAggregator valueAggregator) {
+        if (dimension == retainedSizes.length) {
+            valueAggregator.reset();
+            aggregate(argument, offset, 0, reducedSizes, reducedStrides, valueAggregator);
+            builder.cellByDirectIndex(reducedIndex, valueAggregator.aggregatedValue());
+            return reducedIndex + 1;
+        }
+        for (long i = 0; i < retainedSizes[dimension]; i++)
+            reducedIndex = reduceIndexed(argument, offset + i * retainedStrides[dimension], dimension + 1,
+                                         retainedSizes, retainedStrides, reducedSizes, reducedStrides,
+                                         reducedIndex, builder, valueAggregator);
+        return reducedIndex;
+    }
+
+    /** Aggregates the values of the subspace of the argument starting at the given offset */
+    private static void aggregate(IndexedTensor argument, long offset, int dimension,
+                                  long[] sizes, long[] strides, ValueAggregator valueAggregator) {
+        long size = sizes[dimension];
+        long stride = strides[dimension];
+        if (dimension == sizes.length - 1) {
+            for (long i = 0; i < size; i++)
+                valueAggregator.aggregate(argument.get(offset + i * stride));
+            return;
+        }
+        for (long i = 0; i < size; i++)
+            aggregate(argument, offset + i * stride, dimension + 1, sizes, strides, valueAggregator);
+    }
+
     static abstract class ValueAggregator {
 
         static ValueAggregator ofType(Aggregator aggregator) {
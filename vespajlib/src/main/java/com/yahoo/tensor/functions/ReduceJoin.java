@@ -9,7 +9,6 @@ import com.yahoo.tensor.TensorType;
 import com.yahoo.tensor.evaluation.EvaluationContext;
 import com.yahoo.tensor.evaluation.TypeContext;
 
-import java.util.Arrays;
 import java.util.List;
 import java.util.function.DoubleBinaryOperator;
 import java.util.stream.Collectors;
@@ -205,66 +204,66 @@ public class ReduceJoin extends CompositeTensorFunction {
         return builder.build();
     }
 
+    /**
+     * Evaluates the reduce-join by iterating over the cells of the reduced tensor in value order, and for each
+     * aggregating the combined values over the common dimensions by stepping through each argument using its strides.
+     */
     private Tensor evaluateGeneral(IndexedTensor a, IndexedTensor b, TensorType reducedType) {
         IndexedTensor.BoundBuilder builder = (IndexedTensor.BoundBuilder)IndexedTensor.Builder.of(reducedType);
-        TensorType onlyInA = Reduce.outputType(a.type(), dimensions);
-        TensorType onlyInB = Reduce.outputType(b.type(), dimensions);
         TensorType common = dimensionsInCommon(a, b);
-
-        // pre-calculate strides for each index position
-        long[] stridesA = strides(a.type());
-        long[] stridesB = strides(b.type());
-        long[] stridesResult = strides(reducedType);
-
-        // mapping of dimension indexes
-        int[] mapOnlyAToA = Join.mapIndexes(onlyInA, a.type());
-        int[] mapCommonToA = Join.mapIndexes(common, a.type());
-        int[] mapOnlyBToB = Join.mapIndexes(onlyInB, b.type());
-        int[] mapCommonToB = Join.mapIndexes(common, b.type());
-        int[] mapOnlyAToResult = Join.mapIndexes(onlyInA, reducedType);
-        int[] mapOnlyBToResult = Join.mapIndexes(onlyInB, reducedType);
-
-        // TODO: refactor with code in IndexedTensor and Join
-
-        MultiDimensionIterator ic = new MultiDimensionIterator(common);
-        Reduce.ValueAggregator agg = Reduce.ValueAggregator.ofType(aggregator);
-        for (MultiDimensionIterator ia = new MultiDimensionIterator(onlyInA); ia.hasNext(); ia.next()) {
-            for (MultiDimensionIterator ib = new MultiDimensionIterator(onlyInB); ib.hasNext(); ib.next()) {
-                agg.reset();
-                for (ic.reset(); ic.hasNext(); ic.next()) {
-                    double va = a.get(toDirectIndex(ia, ic, stridesA, mapOnlyAToA, mapCommonToA));
-                    double vb = b.get(toDirectIndex(ib, ic, stridesB, mapOnlyBToB, mapCommonToB));
-                    agg.aggregate(combinator.applyAsDouble(va, vb));
-                }
-                builder.cellByDirectIndex(toDirectIndex(ia, ib, stridesResult, mapOnlyAToResult, mapOnlyBToResult),
-                                          agg.aggregatedValue());
-            }
-        }
+        evaluateGeneral(a, 0, Join.strides(a, reducedType), Join.strides(a, common),
+                        b, 0, Join.strides(b, reducedType), Join.strides(b, common),
+                        0, sizes(reducedType), sizes(common),
+                        0, builder, Reduce.ValueAggregator.ofType(aggregator));
         return builder.build();
     }
 
-    private long toDirectIndex(MultiDimensionIterator iter, MultiDimensionIterator common, long[] strides, int[] map, int[] commonmap) {
-        long directIndex = 0;
-        for (int i = 0; i < iter.length(); ++i) {
-            directIndex += strides[map[i]] * iter.iterator[i];
-        }
-        for (int i = 0; i < common.length(); ++i) {
-            directIndex += strides[commonmap[i]] * common.iterator[i];
+    /**
+     * Reduce-joins the subspaces of a and b starting at the given offsets which span the given reduced dimension
+     * and all reduced dimensions after it, into the reduced tensor starting at the given index.
+     *
+     * @return the index in the reduced tensor following the last cell reduced into
+     */
+    private long evaluateGeneral(IndexedTensor a, long aOffset, long[] aStrides, long[] aCommonStrides,
+                                 IndexedTensor b, long bOffset, long[] bStrides, long[] bCommonStrides,
+                                 int dimension, long[] sizes, long[] commonSizes,
+                                 long reducedIndex, IndexedTensor.BoundBuilder builder, Reduce.ValueAggregator agg) {
+        if (dimension == sizes.length) {
+            agg.reset();
+            if (commonSizes.length == 0)
+                agg.aggregate(combinator.applyAsDouble(a.get(aOffset), b.get(bOffset)));
+            else
+                aggregate(a, aOffset, aCommonStrides, b, bOffset, bCommonStrides, 0, commonSizes, agg);
+            builder.cellByDirectIndex(reducedIndex, agg.aggregatedValue());
+            return reducedIndex + 1;
         }
-        return directIndex;
+        for (long i = 0; i < sizes[dimension]; i++)
+            reducedIndex = evaluateGeneral(a, aOffset + i * aStrides[dimension], aStrides, aCommonStrides,
+                                           b, bOffset + i * bStrides[dimension], bStrides, bCommonStrides,
+                                           dimension + 1, sizes, commonSizes, reducedIndex, builder, agg);
+        return reducedIndex;
     }
 
-    private long[] strides(TensorType type) {
-        long[] strides = new long[type.dimensions().size()];
-        if (strides.length > 0) {
-            long previous = 1;
-            strides[strides.length - 1] = previous;
-            for (int i = strides.length - 2; i >= 0; --i) {
-                strides[i] = previous * type.dimensions().get(i + 1).size().get();
-                previous = strides[i];
-            }
+    /** Aggregates the combined values of the common subspaces of a and b starting at the given offsets */
+    private void aggregate(IndexedTensor a, long aOffset, long[] aStrides,
+                           IndexedTensor b, long bOffset, long[] bStrides,
+                           int dimension, long[] sizes, Reduce.ValueAggregator agg) {
+        long aStride = aStrides[dimension];
+        long bStride = bStrides[dimension];
+        if (dimension == sizes.length - 1) {
+            for (long i = 0; i < sizes[dimension]; i++)
+                agg.aggregate(combinator.applyAsDouble(a.get(aOffset + i * aStride), b.get(bOffset + i * bStride)));
+            return;
         }
-        return strides;
+        for (long i = 0; i < sizes[dimension]; i++)
+            aggregate(a, aOffset + i * aStride, aStrides, b, bOffset + i * bStride, bStrides, dimension + 1, sizes, agg);
+    }
+
+    private static long[] sizes(TensorType type) {
+        long[] sizes = new long[type.dimensions().size()];
+        for (int i = 0; i < sizes.length; i++)
+            sizes[i] = type.dimensions().get(i).size().get();
+        return sizes;
     }
 
     private TensorType dimensionsInCommon(IndexedTensor a, IndexedTensor b) {
@@ -322,51 +321,4 @@ public class ReduceJoin extends CompositeTensorFunction {
                                 Reduce.commaSeparated(dimensions) + ")";
     }
 
-    private static class MultiDimensionIterator {
-
-        private long[] bounds;
-        private long[] iterator;
-        private int remaining;
-
-        MultiDimensionIterator(TensorType type) {
-            bounds = new long[type.dimensions().size()];
-            iterator = new long[type.dimensions().size()];
-            for (int i = 0; i < bounds.length; ++i) {
-                bounds[i] = type.dimensions().get(i).size().get();
-            }
-            reset();
-        }
-
-        public int length() {
-            return iterator.length;
-        }
-
-        public boolean hasNext() {
-            return remaining > 0;
-        }
-
-        public void reset() {
-            remaining = 1;
-            for (int i = iterator.length - 1; i >= 0; --i) {
-                iterator[i] = 0;
-                remaining *= bounds[i];
-            }
-        }
-
-        public void next() {
-            for (int i = iterator.length - 1; i >= 0; --i) {
-                iterator[i] += 1;
-                if (iterator[i] < bounds[i]) {
-                    break;
-                }
-                iterator[i] = 0;
-            }
-            remaining -= 1;
-        }
-
-        public String toString() {
-            return Arrays.toString(iterator);
-        }
-    }
-
 }
@@ -2,6 +2,9 @@
 package com.yahoo.tensor.functions;
 
 import com.google.common.collect.ImmutableList;
+import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.evaluation.EvaluationContext;
+import com.yahoo.tensor.evaluation.TypeContext;
 
 import java.util.List;
 
@@ -42,6 +45,14 @@ public class XwPlusB extends CompositeTensorFunction {
                         ScalarFunctions.add());
     }
 
+    /** Evaluates this without creating the joined tensor of x and w when possible, see {@link Matmul} */
+    @Override
+    public <NAMETYPE extends TypeContext.Name> Tensor evaluate(EvaluationContext<NAMETYPE> context) {
+        Tensor xw = new Matmul(x, w, dimension).evaluate(context);
+        Tensor bias = b.evaluate(context);
+        return Join.evaluate(xw, bias, Join.outputType(xw.type(), bias.type()), ScalarFunctions.add());
+    }
+
     @Override
     public String toString(ToStringContext context) {
         return "xw_plus_b(" + x.toString(context) + ", " +
@@ -0,0 +1,144 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.slime;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryViewTestCase {
+
+    private static Slime createSlime() {
+        Slime slime = new Slime();
+        Cursor root = slime.setObject();
+        root.setNix("nix");
+        root.setBool("true", true);
+        root.setBool("false", false);
+        root.setLong("long", -123456789012L);
+        root.setLong("zero", 0);
+        root.setDouble("double", 3.25);
+        root.setString("string", "foo");
+        root.setString("utf8", "æøå and a string which is long enough to need a separate size");
+        root.setData("data", new byte[] { 1, 2, 3 });
+        Cursor array = root.setArray("array");
+        for (int i = 0; i < 40; i++)
+            array.addLong(i);
+        Cursor objects = root.setArray("objects");
+        for (int i = 0; i < 3; i++) {
+            Cursor object = objects.addObject();
+            object.setString("name", "object" + i);
+            object.setArray("empty");
+            object.setObject("nested").setDouble("value", i);
+        }
+        return slime;
+    }
+
+    @Test
+    public void testViewIsEqualToDecodedSlime() {
+        Slime slime = createSlime();
+        byte[] data = BinaryFormat.encode(slime);
+        Inspector view = BinaryView.inspect(data);
+        assertTrue(view instanceof BinaryView);
+        assertTrue(view.equalTo(slime.get()));
+        assertTrue(slime.get().equalTo(view));
+        assertTrue(view.equalTo(BinaryFormat.decode(data).get()));
+        assertEquals(slime.get().toString(), view.toString());
+    }
+
+    @Test
+    public void testValueAccess() {
+        Inspector root = BinaryView.inspect(BinaryFormat.encode(createSlime()));
+        assertEquals(Type.OBJECT, root.type());
+        assertEquals(11, root.fields());
+        assertEquals(11, root.children());
+        assertEquals(0, root.entries());
+
+        assertTrue(root.field("nix").valid());
+        assertEquals(Type.NIX, root.field("nix").type());
+        assertTrue(root.field("true").asBool());
+        assertFalse(root.field("false").asBool());
+        assertEquals(-123456789012L, root.field("long").asLong());
+        assertEquals(-123456789012.0, root.field("long").asDouble(), 0);
+        assertEquals(0, root.field("zero").asLong());
+        assertEquals(3.25, root.field("double").asDouble(), 0);
+        assertEquals(3, root.field("double").asLong());
+        assertEquals("foo", root.field("string").asString());
+        assertArrayEquals(new byte[] { 'f', 'o', 'o' }, root.field("string").asUtf8());
+        assertEquals("æøå and a string which is long enough to need a separate size",
+                     root.field("utf8").asString());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, root.field("data").asData());
+
+        Inspector array = root.field("array");
+        assertEquals(40, array.entries());
+        assertEquals(0, array.fields());
+        for (int i = 0; i < 40; i++)
+            assertEquals(i, array.entry(i).asLong());
+        assertFalse(array.entry(40).valid());
+        assertFalse(array.entry(-1).valid());
+        assertFalse(array.field("name").valid());
+
+        Inspector object = root.field("objects").entry(2);
+        assertEquals("object2", object.field("name").asString());
+        assertEquals(0, object.field("empty").entries());
+        assertEquals(2.0, object.field("nested").field("value").asDouble(), 0);
+        assertFalse(object.field("unknown").valid());
+        assertFalse(object.field("long").valid());
+        assertFalse(object.entry(0).valid());
+
+        // mismatching types give default values
+        assertEquals("", root.field("long").asString());
+        assertEquals(0, root.field("string").asLong());
+        assertEquals(0, root.field("data").asUtf8().length);
+        assertFalse(root.field("string").asBool());
+    }
+
+    @Test
+    public void testTraversal() {
+        Inspector root = BinaryView.inspect(BinaryFormat.encode(createSlime()));
+        List<String> names = new ArrayList<>();
+        root.traverse((ObjectTraverser) (name, inspector) -> names.add(name));
+        assertEquals(List.of("nix", "true", "false", "long", "zero", "double", "string", "utf8", "data",
+                             "array", "objects"), names);
+
+        List<Long> values = new ArrayList<>();
+        root.field("array").traverse((ArrayTraverser) (index, inspector) -> values.add(inspector.asLong()));
+        assertEquals(40, values.size());
+        assertEquals(39L, (long)values.get(39));
+
+        root.traverse((ObjectSymbolTraverser) (symbol, inspector) -> assertTrue(inspector.equalTo(root.field(symbol))));
+    }
+
+    @Test
+    public void testViewsOfTheSameValueAreEqual() {
+        Inspector root = BinaryView.inspect(BinaryFormat.encode(createSlime()));
+        assertEquals(root.field("objects").entry(1), root.field("objects").entry(1));
+        assertEquals(root.field("objects").entry(1).hashCode(), root.field("objects").entry(1).hashCode());
+        assertNotEquals(root.field("objects").entry(1), root.field("objects").entry(2));
+    }
+
+    @Test
+    public void testViewOfPartOfBuffer() {
+        byte[] data = BinaryFormat.encode(createSlime());
+        byte[] padded = new byte[data.length + 10];
+        System.arraycopy(data, 0, padded, 5, data.length);
+        assertTrue(BinaryView.inspect(padded, 5, data.length).equalTo(createSlime().get()));
+    }
+
+    @Test
+    public void testInvalidDataFallsBackToDecoding() {
+        byte[] data = BinaryFormat.encode(createSlime());
+        for (int length = 0; length < data.length; length += 7) {
+            Inspector view = BinaryView.inspect(data, 0, length);
+            assertFalse(view instanceof BinaryView);
+            assertTrue(view.equalTo(BinaryFormat.decode(data, 0, length).get()));
+            assertTrue(view.field("error_message").valid());
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor;
+
+import com.yahoo.tensor.evaluation.MapEvaluationContext;
+import com.yahoo.tensor.functions.ConstantTensor;
+import com.yahoo.tensor.functions.Join;
+import com.yahoo.tensor.functions.Matmul;
+import com.yahoo.tensor.functions.Reduce;
+import com.yahoo.tensor.functions.TensorFunction;
+import com.yahoo.tensor.functions.XwPlusB;
+
+import java.util.Random;
+
+/**
+ * Microbenchmark of tensor functions on dense (indexed) tensors.
+ */
+public class DenseTensorFunctionBenchmark {
+
+    private final static Random random = new Random(1);
+
+    /** Returns the average time in milliseconds spent evaluating the given function */
+    public double benchmark(int iterations, TensorFunction function) {
+        MapEvaluationContext context = new MapEvaluationContext();
+        evaluate(function, context, Math.max(iterations / 10, 10)); // warmup
+        System.gc();
+        long startTime = System.nanoTime();
+        evaluate(function, context, iterations);
+        long totalTime = System.nanoTime() - startTime;
+        return totalTime / 1_000_000.0 / iterations;
+    }
+
+    private double evaluate(TensorFunction function, MapEvaluationContext context, int iterations) {
+        double result = 0;
+        for (int i = 0; i < iterations; i++)
+            result += function.evaluate(context).size();
+        return result;
+    }
+
+    private static ConstantTensor tensor(String type) {
+        TensorType tensorType = TensorType.fromSpec(type);
+        Tensor.Builder builder = Tensor.Builder.of(tensorType);
+        long[] indexes = new long[tensorType.dimensions().size()];
+        fill(builder, tensorType, 0, indexes);
+        return new ConstantTensor(builder.build());
+    }
+
+    private static void fill(Tensor.Builder builder, TensorType type, int dimension, long[] indexes) {
+        if (dimension == indexes.length) {
+            builder.cell(random.nextDouble(), indexes);
+            return;
+        }
+        for (long i = 0; i < type.dimensions().get(dimension).size().get(); i++) {
+            indexes[dimension] = i;
+            fill(builder, type, dimension + 1, indexes);
+        }
+    }
+
+    public static void main(String[] args) {
+        DenseTensorFunctionBenchmark benchmark = new DenseTensorFunctionBenchmark();
+        double time;
+
+        // Before dense fast paths: 0.73 ms, after: 0.26 ms
+        time = benchmark.benchmark(500, new Join(tensor("tensor(x[100],y[100])"), tensor("tensor(x[100],y[100])"),
+                                                 (a, b) -> a + b));
+        System.out.printf("Join, same dimensions:      %1$8.3f ms\n", time);
+
+        // Before dense fast paths: 0.33 ms, after: 0.11 ms
+        time = benchmark.benchmark(500, new Join(tensor("tensor(x[100],y[100])"), tensor("tensor(y[100])"),
+                                                 (a, b) -> a * b));
+        System.out.printf("Join, subspace:             %1$8.3f ms\n", time);
+
+        // Before dense fast paths: 62 ms, after: 2.5 ms
+        time = benchmark.benchmark(50, new Join(tensor("tensor(x[64],y[64])"), tensor("tensor(y[64],z[64])"),
+                                                (a, b) -> a * b));
+        System.out.printf("Join, general:              %1$8.3f ms\n", time);
+
+        // Before dense fast paths: 12 ms, after: 0.52 ms
+        time = benchmark.benchmark(100, new Reduce(tensor("tensor(x[256],y[256])"), Reduce.Aggregator.sum, "y"));
+        System.out.printf("Reduce, one dimension:      %1$8.3f ms\n", time);
+
+        // Before dense fast paths: 141 ms, after: 2.0 ms
+        time = benchmark.benchmark(50, new Matmul(tensor("tensor(x[64],y[64])"), tensor("tensor(y[64],z[64])"), "y"));
+        System.out.printf("Matmul:                     %1$8.3f ms\n", time);
+
+        // Before dense fast paths: 51 ms, after: 0.42 ms
+        time = benchmark.benchmark(50, new XwPlusB(tensor("tensor(d0[1],x[256])"), tensor("tensor(x[256],y[128])"),
+                                                   tensor("tensor(y[128])"), "x"));
+        System.out.printf("XwPlusB, one layer:         %1$8.3f ms\n", time);
+    }
+
+}
@@ -4,8 +4,14 @@ package com.yahoo.tensor;
 import com.google.common.collect.Sets;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Basic tensor tests. Tensor operations are tested in EvaluationTestCase
@@ -48,4 +54,132 @@ public class MappedTensorTestCase {
         assertEquals("tensor(x{},y{}):{{x:0,y:0}:1.0,{x:1,y:0}:2.0}", tensor.toString());
     }
 
+    @Test
+    public void testCellAccess() {
+        TensorType type = new TensorType.Builder().mapped("x").mapped("y").build();
+        Tensor tensor = Tensor.Builder.of(type).
+                cell().label("x", "a").label("y", "0").value(1).
+                cell().label("x", "b").label("y", "007").value(2).
+                cell(3, 1, 2).build();
+        assertEquals(3, tensor.size());
+        assertEquals(1.0, tensor.get(TensorAddress.of(new String[] {"a", "0"})), 0.0);
+        assertEquals(1.0, tensor.get(TensorAddress.of(new String[] {"a", "x"}).withLabel(1, 0)), 0.0);
+        assertEquals(2.0, tensor.get(TensorAddress.of(new String[] {"b", "007"})), 0.0);
+        assertEquals(3.0, tensor.get(TensorAddress.of(1, 2)), 0.0);
+        assertEquals(3.0, tensor.get(TensorAddress.of(new String[] {"1", "2"})), 0.0);
+        assertTrue(Double.isNaN(tensor.get(TensorAddress.of(new String[] {"b", "7"}))));
+        assertTrue(Double.isNaN(tensor.get(TensorAddress.of(new String[] {"never-seen-label", "0"}))));
+        assertTrue(Double.isNaN(tensor.get(TensorAddress.of(1))));
+
+        Map<TensorAddress, Double> cells = new HashMap<>();
+        for (Iterator<Tensor.Cell> i = tensor.cellIterator(); i.hasNext(); ) {
+            Tensor.Cell cell = i.next();
+            cells.put(cell.getKey(), cell.getValue());
+        }
+        assertEquals(tensor.cells(), cells);
+        assertEquals(1, cells.keySet().stream().filter(address -> address.label(1).equals("007")).count());
+        assertEquals(tensor.cells().hashCode(), tensor.hashCode());
+    }
+
+    @Test
+    public void testMultipleValuesForCell() {
+        try {
+            Tensor.from("tensor(x{}):{{x:a}:1,{x:b}:2,{x:a}:3}");
+            fail("Expected exception");
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals("Multiple values for cell {x:a}", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testJoin() {
+        assertJoin("tensor(x{},y{}):{{x:a,y:0}:6,{x:a,y:1}:8,{x:b,y:0}:10}",
+                   "tensor(x{}):{{x:a}:2,{x:b}:5,{x:c}:7}",
+                   "tensor(x{},y{}):{{x:a,y:0}:3,{x:a,y:1}:4,{x:b,y:0}:2,{x:d,y:0}:1}");
+        assertJoin("tensor(x{},y{}):{{x:a,y:0}:6,{x:a,y:1}:8,{x:b,y:0}:10}",
+                   "tensor(x{},y{}):{{x:a,y:0}:3,{x:a,y:1}:4,{x:b,y:0}:2,{x:d,y:0}:1}",
+                   "tensor(x{}):{{x:a}:2,{x:b}:5,{x:c}:7}");
+        assertJoin("tensor(x{},y{}):{{x:a,y:b}:6,{x:c,y:b}:12}",
+                   "tensor(x{}):{{x:a}:2,{x:c}:4}",
+                   "tensor(y{}):{{y:b}:3}");
+        assertJoin("tensor(x{},y{},z{}):{{x:a,y:b,z:c}:6,{x:a,y:b,z:d}:8,{x:e,y:b,z:c}:15,{x:e,y:b,z:d}:20}",
+                   "tensor(x{},y{}):{{x:a,y:b}:2,{x:e,y:b}:5,{x:a,y:f}:1}",
+                   "tensor(y{},z{}):{{y:b,z:c}:3,{y:b,z:d}:4}");
+        assertJoin("tensor(x{}):{}",
+                   "tensor(x{}):{{x:a}:2}",
+                   "tensor(x{}):{{x:b}:3}");
+    }
+
+    @Test
+    public void testJoinArgumentOrder() {
+        Tensor a = Tensor.from("tensor(x{}):{{x:a}:6,{x:b}:8}");
+        Tensor b = Tensor.from("tensor(x{},y{}):{{x:a,y:0}:2,{x:a,y:1}:3,{x:b,y:0}:4}");
+        assertEquals(Tensor.from("tensor(x{},y{}):{{x:a,y:0}:3,{x:a,y:1}:2,{x:b,y:0}:2}"), a.divide(b));
+        assertEquals(Tensor.from("tensor(x{},y{}):{{x:a,y:0}:0.3333333333333333,{x:a,y:1}:0.5,{x:b,y:0}:0.5}"), b.divide(a));
+    }
+
+    @Test
+    public void testReduce() {
+        Tensor tensor = Tensor.from("tensor(x{},y{},z{}):{{x:a,y:0,z:0}:1,{x:a,y:1,z:0}:2,{x:b,y:0,z:1}:3,{x:a,y:0,z:1}:4}");
+        assertEquals(Tensor.from("tensor(x{}):{{x:a}:7,{x:b}:3}"), tensor.sum(Arrays.asList("y", "z")));
+        assertEquals(Tensor.from("tensor(x{},z{}):{{x:a,z:0}:3,{x:b,z:1}:3,{x:a,z:1}:4}"), tensor.sum("y"));
+        assertEquals(Tensor.from("tensor(x{},z{}):{{x:a,z:0}:1.5,{x:b,z:1}:3,{x:a,z:1}:4}"), tensor.avg("y"));
+        assertEquals(Tensor.from("tensor(x{},z{}):{{x:a,z:0}:2,{x:b,z:1}:1,{x:a,z:1}:1}"), tensor.count("y"));
+        assertEquals(Tensor.from("tensor(x{},z{}):{{x:a,z:0}:2,{x:b,z:1}:3,{x:a,z:1}:4}"), tensor.prod("y"));
+        assertEquals(Tensor.from("tensor(x{},z{}):{{x:a,z:0}:2,{x:b,z:1}:3,{x:a,z:1}:4}"), tensor.max("y"));
+        assertEquals(Tensor.from("tensor(x{},z{}):{{x:a,z:0}:1,{x:b,z:1}:3,{x:a,z:1}:4}"), tensor.min("y"));
+        assertEquals(Tensor.from("tensor(y{}):{{y:0}:8,{y:1}:2}"), tensor.sum(Arrays.asList("x", "z")));
+        assertEquals(Tensor.from("tensor():{10}"), tensor.sum());
+    }
+
+    @Test
+    public void testLabelsAreReclaimedWhenNoTensorUsesThem() throws InterruptedException {
+        String label = "reclaimable" + System.nanoTime();
+        Tensor tensor = Tensor.from("tensor(x{}):{{x:" + label + "}:2}");
+        Tensor joined = tensor.multiply(Tensor.from("tensor(x{},y{}):{{x:" + label + ",y:a}:3}"));
+        tensor = null;
+        assertLabelIsInternedAfterGc(true, label);
+        assertEquals(6.0, joined.get(TensorAddress.of(new String[] { label, "a" })), 0.0);
+
+        joined = null;
+        assertLabelIsInternedAfterGc(false, label);
+    }
+
+    @Test
+    public void testLabelsAddedToBuilderAfterBuildingAreNotRetainedByTheBuiltTensor() throws InterruptedException {
+        String first = "first" + System.nanoTime();
+        String second = "second" + System.nanoTime();
+        MappedTensor.Builder builder = MappedTensor.Builder.of(TensorType.fromSpec("tensor(x{})"));
+        builder.cell(TensorAddress.of(new String[] { first }), 1.0);
+        Tensor tensor = builder.build();
+        builder.cell(TensorAddress.of(new String[] { second }), 2.0);
+        Tensor joined = tensor.multiply(builder.build());
+        assertEquals(1.0, joined.get(TensorAddress.of(new String[] { first })), 0.0);
+
+        builder = null;
+        joined = null;
+        assertLabelIsInternedAfterGc(false, second);
+        assertLabelIsInternedAfterGc(true, first);
+        assertEquals(1.0, tensor.get(TensorAddress.of(new String[] { first })), 0.0);
+    }
+
+    private void assertLabelIsInternedAfterGc(boolean interned, String label) throws InterruptedException {
+        int attempts = 0;
+        do {
+            System.gc();
+            Thread.sleep(10);
+        } while (++attempts < 100 && (Label.lookupId(label) != Label.UNKNOWN) != interned);
+        assertEquals(interned, Label.lookupId(label) != Label.UNKNOWN);
+    }
+
+    private void assertJoin(String expected, String a, String b) {
+        Tensor mappedA = Tensor.from(a);
+        Tensor mappedB = Tensor.from(b);
+        assertTrue(mappedA instanceof MappedTensor && mappedB instanceof MappedTensor);
+        Tensor joined = mappedA.multiply(mappedB);
+        assertTrue(joined instanceof MappedTensor);
+        assertEquals(Tensor.from(expected), joined);
+    }
+
 }
@@ -1,10 +1,15 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.tensor.functions;
 
+import com.yahoo.tensor.IndexedTensor;
 import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorType;
 import org.junit.Test;
 
+import java.util.Iterator;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author bratseth
@@ -46,4 +51,37 @@ public class JoinTestCase {
                              .divide(Tensor.from("tensor(y[],z[]):{ {y:0,z:0}:2, {y:1,z:0}:4, {y:2,z:0}:6 }")));
     }
 
+    /** Test the dense join against the mapped join */
+    @Test
+    public void testJoinIndexed() {
+        assertJoinIndexed("tensor(x[2],y[3])", "tensor(x[2],y[3])");
+        assertJoinIndexed("tensor(x[2],y[3])", "tensor(y[3])");
+        assertJoinIndexed("tensor(y[3])", "tensor(x[2],y[3],z[2])");
+        assertJoinIndexed("tensor(x[2],y[3])", "tensor(y[3],z[4])");
+        assertJoinIndexed("tensor(x[2],z[3])", "tensor(y[2])");
+        assertJoinIndexed("tensor(x[3])", "tensor(x[2],y[2])");
+        assertJoinIndexed("tensor()", "tensor(x[2],y[2])");
+        assertJoinIndexed("tensor()", "tensor()");
+    }
+
+    private void assertJoinIndexed(String aType, String bType) {
+        Tensor a = Tensor.random(TensorType.fromSpec(aType));
+        Tensor b = Tensor.random(TensorType.fromSpec(bType));
+        Tensor joined = a.subtract(b);
+        assertTrue(joined instanceof IndexedTensor);
+        assertEquals(mapped(joined), mapped(a).subtract(mapped(b)));
+    }
+
+    static Tensor mapped(Tensor tensor) {
+        TensorType.Builder type = new TensorType.Builder();
+        for (TensorType.Dimension dimension : tensor.type().dimensions())
+            type.mapped(dimension.name());
+        Tensor.Builder builder = Tensor.Builder.of(type.build());
+        for (Iterator<Tensor.Cell> i = tensor.cellIterator(); i.hasNext(); ) {
+            Tensor.Cell cell = i.next();
+            builder.cell(cell.getKey(), cell.getValue());
+        }
+        return builder.build();
+    }
+
 }
@@ -0,0 +1,49 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor.functions;
+
+import com.yahoo.tensor.IndexedTensor;
+import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorType;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReduceTestCase {
+
+    /** Test the dense reduce against the mapped reduce */
+    @Test
+    public void testReduceIndexed() {
+        Tensor tensor = Tensor.random(TensorType.fromSpec("tensor(x[2],y[3],z[4])"));
+        for (Reduce.Aggregator aggregator : Reduce.Aggregator.values()) {
+            assertReduceIndexed(tensor, aggregator, "x");
+            assertReduceIndexed(tensor, aggregator, "y");
+            assertReduceIndexed(tensor, aggregator, "z");
+            assertReduceIndexed(tensor, aggregator, "x", "z");
+            assertReduceIndexed(tensor, aggregator, "y", "z");
+            assertReduceIndexed(tensor, aggregator, "x", "y", "z");
+            assertReduceIndexed(tensor, aggregator);
+        }
+    }
+
+    @Test
+    public void testReduceIndexedValues() {
+        Tensor tensor = Tensor.from("tensor(x[2],y[3]):{{x:0,y:0}:1,{x:0,y:1}:2,{x:0,y:2}:3,{x:1,y:0}:4,{x:1,y:1}:5,{x:1,y:2}:6}");
+        assertEquals(Tensor.from("tensor(x[2]):{{x:0}:6,{x:1}:15}"), tensor.sum("y"));
+        assertEquals(Tensor.from("tensor(y[3]):{{y:0}:5,{y:1}:7,{y:2}:9}"), tensor.sum("x"));
+        assertEquals(Tensor.from("tensor(y[3]):{{y:0}:4,{y:1}:10,{y:2}:18}"), tensor.prod("x"));
+        assertEquals(Tensor.from("tensor(x[2]):{{x:0}:2,{x:1}:5}"), tensor.avg("y"));
+    }
+
+    private void assertReduceIndexed(Tensor tensor, Reduce.Aggregator aggregator, String ... dimensions) {
+        List<String> dimensionList = Arrays.asList(dimensions);
+        Tensor reduced = tensor.reduce(aggregator, dimensionList);
+        assertTrue(reduced instanceof IndexedTensor);
+        assertEquals(aggregator + " over " + dimensionList,
+                     JoinTestCase.mapped(reduced), JoinTestCase.mapped(tensor).reduce(aggregator, dimensionList));
+    }
+
+}
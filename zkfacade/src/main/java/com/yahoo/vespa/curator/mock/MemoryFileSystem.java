@@ -118,6 +118,9 @@ class MemoryFileSystem extends FileSystem {
 
         private Map<String, Node> children = new LinkedHashMap<>();
 
+        /** The number of changes to the children of this, like the cversion of a ZooKeeper node */
+        private int childVersion = 0;
+
         private Node(Node parent, String name) {
             this(parent, name, new byte[0]);
         }
@@ -134,6 +137,9 @@ class MemoryFileSystem extends FileSystem {
         /** Replaces the content of this file */
         public void setContent(byte[] content) { this.content = Arrays.copyOf(content, content.length); }
 
+        /** Returns the number of times a child has been added to or removed from this */
+        public int childVersion() { return childVersion; }
+
         /**
          * Returns the node given by the path.
          *
@@ -172,6 +178,7 @@ class MemoryFileSystem extends FileSystem {
 
             Node child = new Node(this, name);
             children.put(name, child);
+            childVersion++;
             return child;
         }
 
@@ -181,6 +188,7 @@ class MemoryFileSystem extends FileSystem {
          * @return the node which was replaced by this, or null if none
          */
         public Node add(Node node) {
+            childVersion++;
             return children.put(node.name(), node);
         }
 
@@ -191,7 +199,10 @@ class MemoryFileSystem extends FileSystem {
          * @return the removed node, or null if none
          */
         public Node remove(String name) {
-            return children.remove(name);
+            Node removed = children.remove(name);
+            if (removed != null)
+                childVersion++;
+            return removed;
         }
 
         /** Returns an unmodifiable map of the immediate children of this indexed by their local name */
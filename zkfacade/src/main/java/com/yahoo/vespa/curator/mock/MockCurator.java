@@ -797,10 +797,11 @@ public class MockCurator extends Curator {
 
         @Override
         public Stat forPath(String path) throws Exception {
-            if (exists(path, fileSystem.root()))
-                return new Stat(); // A more accurate mock should set the stat fields
-            else
-                return null;
+            if ( ! exists(path, fileSystem.root())) return null;
+
+            Stat stat = new Stat(); // A more accurate mock should set the remaining stat fields
+            stat.setCversion(getNode(path, fileSystem.root()).childVersion());
+            return stat;
         }
 
         @Override